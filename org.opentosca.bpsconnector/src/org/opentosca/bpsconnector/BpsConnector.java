@@ -1,34 +1,25 @@
 package org.opentosca.bpsconnector;
 
 import java.io.File;
-import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.rmi.RemoteException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.activation.DataHandler;
 import javax.activation.FileDataSource;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
 import javax.xml.namespace.QName;
 
 import org.apache.axis2.AxisFault;
-import org.apache.axis2.Constants;
-import org.apache.axis2.client.ServiceClient;
 import org.apache.axis2.client.Stub;
-import org.apache.axis2.java.security.SSLProtocolSocketFactory;
-import org.apache.axis2.java.security.TrustAllTrustManager;
-import org.apache.axis2.transport.http.HTTPConstants;
-import org.apache.commons.httpclient.protocol.Protocol;
-import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.bps.management.schema.DeployedPackagesPaginated;
@@ -48,8 +39,6 @@ import org.wso2.carbon.bpel.deployer.services.BPELUploaderStub;
 import org.wso2.carbon.bpel.deployer.services.UploadService;
 import org.wso2.carbon.bpel.deployer.services.types.xsd.UploadedFileItem;
 import org.wso2.carbon.core.services.authentication.AuthenticationAdminAuthenticationExceptionException;
-import org.wso2.carbon.core.services.authentication.AuthenticationAdminStub;
-import org.wso2.carbon.core.services.authentication.Login;
 
 /**
  * 
@@ -71,6 +60,20 @@ import org.wso2.carbon.core.services.authentication.Login;
  * authentication plus upload.
  * </p>
  * 
+ * <p>
+ * The login and the stubs are reused between the operations of all connectors
+ * by a {@link BpsSession} per BPS and user. If the BPS rejects an expired
+ * session, the connector logs in again and repeats the operation once.
+ * </p>
+ * 
+ * <p>
+ * The results of the management queries, i.e. the deployed packages, the
+ * PIDs and the info of a process, are cached for a short time by the
+ * {@link BpsQueryCache} of the session. Deployments and undeployments
+ * invalidate the cache. Polling for the PIDs of a freshly deployed package
+ * always queries the BPS.
+ * </p>
+ * 
  * <br>
  * Copyright 2012 IAAS University of Stuttgart <br>
  * 
@@ -84,34 +87,78 @@ import org.wso2.carbon.core.services.authentication.Login;
 
 public class BpsConnector {
 	
-	private String adress;
-	private String user;
-	private String passwd;
-	private String cookie;
-	
 	private final static Logger LOG = LoggerFactory.getLogger(BpsConnector.class);
 	
+	// the PIDs of a deployed package are polled with a delay starting at
+	// PID_POLL_MIN_DELAY, doubled after each poll up to PID_POLL_MAX_DELAY,
+	// until they are found or PID_POLL_TIMEOUT is exceeded (milliseconds)
+	private final static long PID_POLL_MIN_DELAY = 25;
+	private final static long PID_POLL_MAX_DELAY = 2000;
+	private final static long PID_POLL_TIMEOUT = 100000;
+	
 	
 	/**
-	 * Sets the endpoint of this connector
+	 * An operation of a WSO2 BPS invoked with a stub
 	 * 
-	 * @param uri the uri to the endpoint of WSO2 BPS
+	 * @param <S> type of the stub
+	 * @param <T> type of the result
+	 * @param <E> exception of the operation
 	 */
-	private void setEndpoint(String uri) {
-		BpsConnector.LOG.debug("Setting address");
-		this.adress = uri;
+	private interface Invocation<S extends Stub, T, E extends Exception> {
+		
+		T invoke(S stub) throws RemoteException, E;
 	}
 	
+	
 	/**
-	 * Sets the login data of this connector
+	 * Invokes an operation with a stub of the session. If the BPS rejects the
+	 * session, it is logged in again and the operation is repeated once.
 	 * 
-	 * @param user admin name
-	 * @param pw admin password
+	 * @param session the session at the BPS
+	 * @param type of the stub
+	 * @param invocation the operation
+	 * @return the result of the operation
+	 * @throws RemoteException is thrown when connection failed
+	 * @throws AuthenticationAdminAuthenticationExceptionException is thrown
+	 *             when login was wrong
+	 * @throws UnknownHostException is thrown when no connection can be
+	 *             established
+	 */
+	private <S extends Stub, T, E extends Exception> T invoke(BpsSession session, Class<S> type, Invocation<S, T, E> invocation) throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException, E {
+		
+		S stub = session.borrow(type);
+		
+		try {
+			for (int attempt = 0;; attempt++) {
+				
+				String cookie = session.getCookie();
+				session.setCookie(stub, cookie);
+				
+				try {
+					return invocation.invoke(stub);
+					
+				} catch (AxisFault e) {
+					if ((attempt > 0) || !BpsConnector.isSessionFault(e)) {
+						throw e;
+					}
+					BpsConnector.LOG.info("Session at BPS {} was rejected. Logging in again.", session.getAddress());
+					session.invalidate(cookie);
+				}
+			}
+		} finally {
+			session.release(stub);
+		}
+	}
+	
+	/**
+	 * @param fault of an invocation
+	 * @return if the fault indicates an expired or missing session
 	 */
-	private void setLogin(String user, String pw) {
-		BpsConnector.LOG.debug("Setting login data");
-		this.user = user;
-		this.passwd = pw;
+	private static boolean isSessionFault(AxisFault fault) {
+		
+		String message = String.valueOf(fault.getMessage()).toLowerCase();
+		
+		return message.contains("session") || message.contains("login") || message.contains("access denied") || message.contains("unauthori") || message.contains("302") || message.contains("401");
 	}
 	
 	/**
@@ -130,43 +177,64 @@ public class BpsConnector {
 		}
 		String pid = null;
 		try {
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
+			BpsSession session = BpsSession.get(uri, user, pw);
 			String fileName = process.getName();
 			String fileType = fileName.substring(fileName.lastIndexOf(".") + 1, fileName.length());
 			BpsConnector.LOG.debug("Trying to deploy file: {}", process.getAbsolutePath());
-			String packageId = this.deployFile(process, fileName, fileType);
+			String packageId = this.deployFile(session, process, fileName, fileType);
+			
+			// the BPS doesn't notify about deployed packages, thus it is
+			// polled until a pid is set. Most packages are deployed within
+			// milliseconds, thus the delay starts small and grows, so the
+			// BPS isn't overworked by packages that take longer.
 			List<QName> pidsOfPackage = new ArrayList<QName>();
-			// this is a "brutal" hack <=> pulling from server until a pid is
-			// set
-			int pullCount = 0;
-			while (pidsOfPackage.isEmpty() & (pullCount < 50)) {
+			Set<String> foreignPids = new HashSet<String>();
+			long start = System.currentTimeMillis();
+			long delay = BpsConnector.PID_POLL_MIN_DELAY;
+			int pollCount = 0;
+			boolean interrupted = false;
+			
+			while (true) {
 				BpsConnector.LOG.debug("Polling for pid with packageId " + packageId);
-				pidsOfPackage = this.getPIDsForPackageId(packageId, uri, user, pw);
-				if (pidsOfPackage.isEmpty()) {
-					// as we don't want the bps to be overworked we wait here
-					try {
-						Thread.sleep(2000);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
+				pidsOfPackage = this.getPIDsForPackageId(packageId, session, foreignPids);
+				pollCount++;
+				
+				if (!pidsOfPackage.isEmpty() || interrupted || ((System.currentTimeMillis() - start) >= BpsConnector.PID_POLL_TIMEOUT)) {
+					break;
+				}
+				
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					// one last poll, the interruption is restored afterwards
+					interrupted = true;
 				}
-				// for safety
-				pullCount++;
+				delay = Math.min(2 * delay, BpsConnector.PID_POLL_MAX_DELAY);
+			}
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			
+			long waited = System.currentTimeMillis() - start;
+			
+			if (pidsOfPackage.isEmpty()) {
+				BpsConnector.LOG.warn("No pid of package {} found after {} polls in {} ms.", new Object[] {packageId, pollCount, waited});
+			} else {
+				BpsConnector.LOG.info("Pid of package {} found after {} polls in {} ms.", new Object[] {packageId, pollCount, waited});
 			}
 			
 			pid = this.calcHighestPid(pidsOfPackage, packageId);
 			
+			// results queried while the package was deployed are outdated
+			session.getQueryCache().invalidate();
+			
 		} catch (RemoteException e) {
 			BpsConnector.LOG.error("RemoteException: Server not available", e);
 			return null;
 		} catch (AuthenticationAdminAuthenticationExceptionException e) {
 			BpsConnector.LOG.error("Auth at BPS failed", e);
 			return null;
-		} catch (ProcessManagementException e) {
-			BpsConnector.LOG.error("The Process isn't valid", e);
-			return null;
 		} catch (UnknownHostException e) {
 			BpsConnector.LOG.error("UnknownHostException: ", e);
 			return null;
@@ -216,18 +284,25 @@ public class BpsConnector {
 	 * @return a possibly empty List of QName denoting PIDs
 	 */
 	public List<QName> getPIDsForPackageId(String packageId, String uri, String user, String pw) {
+		return this.getPIDsForPackageId(packageId, BpsSession.get(uri, user, pw), new HashSet<String>());
+	}
+	
+	/**
+	 * Returns pids for the given package on the bps of the session
+	 * 
+	 * @param packageId a String representing the packageId on a bps
+	 * @param session the session at the bps
+	 * @param foreignPids pids known to belong to other packages, which aren't
+	 *            checked again. The pids of other packages found are added.
+	 * @return a possibly empty List of QName denoting PIDs
+	 */
+	private List<QName> getPIDsForPackageId(String packageId, BpsSession session, Set<String> foreignPids) {
 		List<QName> pids = new ArrayList<QName>();
 		
 		try {
-			// set up authentication
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
-			
 			BpsConnector.LOG.debug("Fetching pid for package: " + packageId);
-			// set up service stub and data for request
-			ProcessManagementServiceStub stub = this.getProcessManagementServiceStub();
-			GetAllProcesses processReq = new GetAllProcesses();
+			// set up data for request
+			final GetAllProcesses processReq = new GetAllProcesses();
 			
 			// takes all processes, taken from
 			// http://wso2.org/project/bps/2.1.0/docs/management_api.html
@@ -238,7 +313,13 @@ public class BpsConnector {
 			ProcessIDList pidList = null;
 			while (pidList == null) {
 				// send request
-				pidList = ((ProcessManagementServiceStub) this.setCookie(stub)).getAllProcesses(processReq);
+				pidList = this.invoke(session, ProcessManagementServiceStub.class, new Invocation<ProcessManagementServiceStub, ProcessIDList, ProcessManagementException>() {
+					
+					@Override
+					public ProcessIDList invoke(ProcessManagementServiceStub stub) throws RemoteException, ProcessManagementException {
+						return stub.getAllProcesses(processReq);
+					}
+				});
 			}
 			
 			// this can happen if the bps has no process deployed
@@ -249,15 +330,26 @@ public class BpsConnector {
 				}
 				
 				// get ProcessInfo per pid
-				GetProcessInfoIn req2 = new GetProcessInfoIn();
+				final GetProcessInfoIn req2 = new GetProcessInfoIn();
 				for (String pid : pidList.getPid()) {
+					if (foreignPids.contains(pid)) {
+						continue;
+					}
 					req2.setPid(QName.valueOf(pid));
 					// request process info for pid
-					ProcessInfo info = ((ProcessManagementServiceStub) this.setCookie(stub)).getProcessInfo(req2);
+					ProcessInfo info = this.invoke(session, ProcessManagementServiceStub.class, new Invocation<ProcessManagementServiceStub, ProcessInfo, ProcessManagementException>() {
+						
+						@Override
+						public ProcessInfo invoke(ProcessManagementServiceStub stub) throws RemoteException, ProcessManagementException {
+							return stub.getProcessInfo(req2);
+						}
+					});
 					BpsConnector.LOG.debug("Checking packageName for Pid: " + pid);
 					BpsConnector.LOG.debug("Package name of PID is: " + info.getProcessInfo().getDeploymentInfo().getPackageName());
 					if (info.getProcessInfo().getDeploymentInfo().getPackageName().startsWith(packageId + "-")) {
 						pids.add(QName.valueOf(pid));
+					} else {
+						foreignPids.add(pid);
 					}
 				}
 			}
@@ -290,11 +382,7 @@ public class BpsConnector {
 		UndeployBPELPackage request = new UndeployBPELPackage();
 		request.set_package(PID);
 		try {
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
-			BPELPackageManagementServiceStub stub = this.getBPELPackageManagementServiceStub();
-			((BPELPackageManagementServiceStub) this.setCookie(stub)).undeployBPELPackage(request);
+			this.undeployPackage(BpsSession.get(uri, user, pw), request);
 		} catch (AxisFault e) {
 			BpsConnector.LOG.error("AxisFault: ", e);
 			return false;
@@ -361,10 +449,11 @@ public class BpsConnector {
 		request.set_package(packageName);
 		
 		try {
-			// authenticate with bps
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
+			// authenticate with bps and call BPS backend
+			this.undeployPackage(BpsSession.get(uri, user, pw), request);
+		} catch (AxisFault e) {
+			BpsConnector.LOG.error("Initializing Axis2 Stub for BPS access failed", e);
+			return false;
 		} catch (RemoteException e) {
 			BpsConnector.LOG.error("Some remote exception occured while calling the BPS", e);
 			return false;
@@ -374,19 +463,6 @@ public class BpsConnector {
 		} catch (AuthenticationAdminAuthenticationExceptionException e) {
 			BpsConnector.LOG.error("Some error at the BPS occured", e);
 			return false;
-		}
-		
-		try {
-			// Init axis2 stub
-			BPELPackageManagementServiceStub stub = this.getBPELPackageManagementServiceStub();
-			// set the cookie from authentication and call BPS backend
-			((BPELPackageManagementServiceStub) this.setCookie(stub)).undeployBPELPackage(request);
-		} catch (AxisFault e) {
-			BpsConnector.LOG.error("Initializing Axis2 Stub for BPS access failed", e);
-			return false;
-		} catch (RemoteException e) {
-			BpsConnector.LOG.error("Some remote exception occured while calling the BPS", e);
-			return false;
 		} catch (PackageManagementException e) {
 			BpsConnector.LOG.error("Some error at the BPS occured", e);
 			return false;
@@ -396,50 +472,62 @@ public class BpsConnector {
 	}
 	
 	/**
-	 * Logs into the WSO2 BPS declared in the address field
+	 * Undeploys a package from the WSO2 BPS of the session
 	 * 
-	 * @throws RemoteException is thrown when connection failed
-	 * @throws AuthenticationAdminAuthenticationExceptionException is thrown
-	 *             when login was wrong
-	 * @throws UnknownHostException is thrown when no connection can be
-	 *             established
+	 * @param session the session at the BPS
+	 * @param request the undeployment request
 	 */
-	private void login() throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException {
-		BpsConnector.LOG.debug("Logging in to BPS");
-		Login login = new Login();
-		login.setUsername(this.user);
-		login.setPassword(this.passwd);
-		login.setRemoteAddress(InetAddress.getLocalHost().getHostAddress());
-		AuthenticationAdminStub stub = this.getAuthenticationAdminStub();
-		stub._getServiceClient().getOptions().setManageSession(true);
-		stub.login(login);
-		this.cookie = (String) stub._getServiceClient().getLastOperationContext().getProperty(HTTPConstants.COOKIE_STRING);
+	private void undeployPackage(BpsSession session, final UndeployBPELPackage request) throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException, PackageManagementException {
+		try {
+			this.invoke(session, BPELPackageManagementServiceStub.class, new Invocation<BPELPackageManagementServiceStub, Void, PackageManagementException>() {
+				
+				@Override
+				public Void invoke(BPELPackageManagementServiceStub stub) throws RemoteException, PackageManagementException {
+					stub.undeployBPELPackage(request);
+					return null;
+				}
+			});
+		} finally {
+			session.getQueryCache().invalidate();
+		}
 	}
 	
 	/**
 	 * Deploys process referenced in FileObject
 	 * 
+	 * @param session the session at the BPS
 	 * @param file process to deploy
 	 * @param fileName name of the process file
 	 * @param fileType type of the process file
 	 * @return Id Id of the uploaded package
 	 * @throws RemoteException is thrown when no connection is available
-	 * @throws ProcessManagementException is thrown when deployment had a
-	 *             failure
+	 * @throws AuthenticationAdminAuthenticationExceptionException is thrown
+	 *             when login was wrong
+	 * @throws UnknownHostException is thrown when no connection can be
+	 *             established
 	 */
-	private String deployFile(File file, String fileName, String fileType) throws RemoteException, ProcessManagementException {
+	private String deployFile(BpsSession session, File file, String fileName, String fileType) throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException {
 		String fileNameshort = fileName.substring(0, fileName.indexOf("." + fileType));
 		
 		UploadedFileItem tempFile = new UploadedFileItem();
 		tempFile.setDataHandler(new DataHandler(new FileDataSource(file)));
 		tempFile.setFileName(fileName);
 		tempFile.setFileType(fileType);
-		UploadService upload = new UploadService();
+		final UploadService upload = new UploadService();
 		upload.addFileItems(tempFile);
 		
-		BPELUploaderStub stub = this.getBPELUploaderStub();
-		
-		((BPELUploaderStub) this.setCookie(stub)).uploadService(upload);
+		try {
+			this.invoke(session, BPELUploaderStub.class, new Invocation<BPELUploaderStub, Void, RuntimeException>() {
+				
+				@Override
+				public Void invoke(BPELUploaderStub stub) throws RemoteException {
+					stub.uploadService(upload);
+					return null;
+				}
+			});
+		} finally {
+			session.getQueryCache().invalidate();
+		}
 		return fileNameshort;
 	}
 	
@@ -455,21 +543,30 @@ public class BpsConnector {
 		List<String> packageIds = new ArrayList<String>();
 		
 		try {
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
+			BpsSession session = BpsSession.get(uri, user, pw);
+			BpsQueryCache cache = session.getQueryCache();
 			
-			// set up service stub and data for request
-			BPELPackageManagementServiceStub stub = this.getBPELPackageManagementServiceStub();
+			String[] cached = cache.get("packages", String[].class);
+			if (cached != null) {
+				return new ArrayList<String>(Arrays.asList(cached));
+			}
+			long generation = cache.getGeneration();
 			
-			ListDeployedPackagesPaginated processReq = new ListDeployedPackagesPaginated();
+			// set up data for request
+			final ListDeployedPackagesPaginated processReq = new ListDeployedPackagesPaginated();
 			int count = 0;
 			int pages = 1;
 			
 			while (count < pages) {
 				processReq.setPage(count);
 				// make request
-				DeployedPackagesPaginated result = ((BPELPackageManagementServiceStub) this.setCookie(stub)).listDeployedPackagesPaginated(processReq);
+				DeployedPackagesPaginated result = this.invoke(session, BPELPackageManagementServiceStub.class, new Invocation<BPELPackageManagementServiceStub, DeployedPackagesPaginated, PackageManagementException>() {
+					
+					@Override
+					public DeployedPackagesPaginated invoke(BPELPackageManagementServiceStub stub) throws RemoteException, PackageManagementException {
+						return stub.listDeployedPackagesPaginated(processReq);
+					}
+				});
 				
 				// process response
 				pages = result.getPages();
@@ -478,6 +575,7 @@ public class BpsConnector {
 				}
 				count++;
 			}
+			cache.put("packages", packageIds.toArray(new String[packageIds.size()]), generation);
 		} catch (AxisFault e) {
 			BpsConnector.LOG.error("Error with Axis2 Framework", e);
 		} catch (RemoteException e) {
@@ -492,20 +590,6 @@ public class BpsConnector {
 		return packageIds;
 	}
 	
-	/**
-	 * Sets the cookie for a given axis2 client request
-	 * 
-	 * @param stub org.apache.axis2.client.Stub Object of the Axis2 library
-	 * @return the changed stub
-	 */
-	private Stub setCookie(Stub stub) {
-		stub._getServiceClient().getOptions().setProperty(Constants.Configuration.ENABLE_MTOM, Constants.VALUE_TRUE);
-		stub._getServiceClient().getOptions().setManageSession(true);
-		stub._getServiceClient().getOptions().setTimeOutInMilliSeconds(60000000);
-		stub._getServiceClient().getOptions().setProperty(HTTPConstants.COOKIE_STRING, this.cookie);
-		return stub;
-	}
-	
 	/**
 	 * Returns a map from partnerLink as string to an endpoint as URI, denoting
 	 * the partnerLink
@@ -548,17 +632,9 @@ public class BpsConnector {
 		
 		// set up authentication
 		try {
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
-			
-			// set up service stub and data for request
-			ProcessManagementServiceStub stub = this.getProcessManagementServiceStub();
-			GetProcessInfoIn processReq = new GetProcessInfoIn();
-			processReq.setPid(QName.valueOf(pid));
+			BpsSession session = BpsSession.get(uri, user, pw);
 			
-			// make request
-			ProcessInfo info = ((ProcessManagementServiceStub) this.setCookie(stub)).getProcessInfo(processReq);
+			ProcessInfo info = this.getProcessInfo(session, pid);
 			
 			BpsConnector.LOG.debug("Looking for endpoint for process " + info.getProcessInfo().getDefinitionInfo().getProcessName());
 			
@@ -592,29 +668,106 @@ public class BpsConnector {
 		return partnerLinkToEndpointURIs;
 	}
 	
+	/**
+	 * Returns the state of a process on the referenced WSO2 BPS
+	 * 
+	 * @param pid the PID of the BPEL 2.0 Process
+	 * @param uri the URI to WSO2 BPS
+	 * @param user the login username for the WSO2 BPS
+	 * @param pw the login password for the WSO2 BPS
+	 * @return the state of the process, i.e. ACTIVE, RETIRED or DISABLED, or
+	 *         null if the process doesn't exist or the BPS couldn't be queried
+	 */
+	public String getProcessState(String pid, String uri, String user, String pw) {
+		if ((pid == null) | (uri == null) | (user == null) | (pw == null)) {
+			return null;
+		}
+		
+		try {
+			ProcessInfo info = this.getProcessInfo(BpsSession.get(uri, user, pw), pid);
+			return info.getProcessInfo().getStatus().getValue();
+			
+		} catch (UnknownHostException e) {
+			BpsConnector.LOG.error("Error with host address", e);
+		} catch (AuthenticationAdminAuthenticationExceptionException e) {
+			BpsConnector.LOG.error("Error with request-processing at AdminAuthenticationService", e);
+		} catch (RemoteException e) {
+			BpsConnector.LOG.debug("Error while sending request", e);
+		} catch (ProcessManagementException e) {
+			BpsConnector.LOG.debug("Process " + pid + " wasn't found", e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the info of a process on the bps of the session. The info is
+	 * cached.
+	 * 
+	 * @param session the session at the bps
+	 * @param pid the PID of the process
+	 * @return the info of the process
+	 */
+	private ProcessInfo getProcessInfo(BpsSession session, String pid) throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException, ProcessManagementException {
+		BpsQueryCache cache = session.getQueryCache();
+		String key = "info:" + pid;
+		
+		ProcessInfo info = cache.get(key, ProcessInfo.class);
+		if (info != null) {
+			return info;
+		}
+		long generation = cache.getGeneration();
+		
+		// set up data for request
+		final GetProcessInfoIn processReq = new GetProcessInfoIn();
+		processReq.setPid(QName.valueOf(pid));
+		
+		// make request
+		info = this.invoke(session, ProcessManagementServiceStub.class, new Invocation<ProcessManagementServiceStub, ProcessInfo, ProcessManagementException>() {
+			
+			@Override
+			public ProcessInfo invoke(ProcessManagementServiceStub stub) throws RemoteException, ProcessManagementException {
+				return stub.getProcessInfo(processReq);
+			}
+		});
+		
+		cache.put(key, info, generation);
+		return info;
+	}
+	
 	public List<String> getAllPIDs(String uri, String user, String pw) {
 		List<String> pidStringList = new ArrayList<String>();
 		
 		try {
 			// set up authentication
-			this.setEndpoint(uri);
-			this.setLogin(user, pw);
-			this.login();
+			BpsSession session = BpsSession.get(uri, user, pw);
+			BpsQueryCache cache = session.getQueryCache();
 			
-			// set up service stub and data for request
-			ProcessManagementServiceStub stub = this.getProcessManagementServiceStub();
-			GetAllProcesses processReq = new GetAllProcesses();
+			String[] cached = cache.get("pids", String[].class);
+			if (cached != null) {
+				return new ArrayList<String>(Arrays.asList(cached));
+			}
+			long generation = cache.getGeneration();
+			
+			// set up data for request
+			final GetAllProcesses processReq = new GetAllProcesses();
 			
 			// takes all processes, taken from
 			// http://wso2.org/project/bps/2.1.0/docs/management_api.html
 			processReq.setGetAllProcesses("name}}* namespace=*");
 			
 			// send request
-			ProcessIDList pidList = ((ProcessManagementServiceStub) this.setCookie(stub)).getAllProcesses(processReq);
+			ProcessIDList pidList = this.invoke(session, ProcessManagementServiceStub.class, new Invocation<ProcessManagementServiceStub, ProcessIDList, ProcessManagementException>() {
+				
+				@Override
+				public ProcessIDList invoke(ProcessManagementServiceStub stub) throws RemoteException, ProcessManagementException {
+					return stub.getAllProcesses(processReq);
+				}
+			});
 			
 			// check for case when there are no process deployed anymore
 			if (pidList.getPid() == null) {
 				BpsConnector.LOG.debug("Returned ProcessIDList from BPS is null, assuming no process is deployed on BPS");
+				cache.put("pids", new String[0], generation);
 				return new ArrayList<String>();
 			}
 			
@@ -622,6 +775,7 @@ public class BpsConnector {
 			for (String pid : pidList.getPid()) {
 				pidStringList.add(pid);
 			}
+			cache.put("pids", pidStringList.toArray(new String[pidStringList.size()]), generation);
 		} catch (UnknownHostException e1) {
 			e1.printStackTrace();
 		} catch (AuthenticationAdminAuthenticationExceptionException e1) {
@@ -643,73 +797,4 @@ public class BpsConnector {
 		return "openTOSCA WSO2 BPS Connector v1.0";
 	}
 	
-	/**
-	 * Initializes a ProcessManagementServiceStub with added SSL Options
-	 * 
-	 * @return a ProcessManagementServiceStub with added SSL Options
-	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
-	 */
-	private ProcessManagementServiceStub getProcessManagementServiceStub() throws AxisFault {
-		ProcessManagementServiceStub stub = new ProcessManagementServiceStub(this.adress + "/services/ProcessManagementService");
-		this.setSSLTrustManager(stub._getServiceClient());
-		return stub;
-	}
-	
-	/**
-	 * Initializes a BPELPackageManagementStub with added SSL Options
-	 * 
-	 * @return a BPELPackageManagementStub with added SSL Options
-	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
-	 */
-	private BPELPackageManagementServiceStub getBPELPackageManagementServiceStub() throws AxisFault {
-		BPELPackageManagementServiceStub stub = new BPELPackageManagementServiceStub(this.adress + "/services/BPELPackageManagementService");
-		this.setSSLTrustManager(stub._getServiceClient());
-		return stub;
-	}
-	
-	/**
-	 * Initializes a BPELUploaderStub with added SSL Options
-	 * 
-	 * @return a BPELUploaderStub with added SSL Options
-	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
-	 */
-	private BPELUploaderStub getBPELUploaderStub() throws AxisFault {
-		BPELUploaderStub stub = new BPELUploaderStub(this.adress + "/services/BPELUploader");
-		this.setSSLTrustManager(stub._getServiceClient());
-		return stub;
-	}
-	
-	/**
-	 * Initializes an AuthenticationAdminStub with added SSL Options
-	 * 
-	 * @return an AuthenticationAdminStub with added SSL Options
-	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
-	 */
-	private AuthenticationAdminStub getAuthenticationAdminStub() throws AxisFault {
-		AuthenticationAdminStub stub = new AuthenticationAdminStub(this.adress + "/services/AuthenticationAdmin");
-		this.setSSLTrustManager(stub._getServiceClient());
-		return stub;
-	}
-	
-	/**
-	 * Sets options on given serviceClient to accept all SSL certificates
-	 * 
-	 * @param serviceClient an Axis2 serviceClient
-	 */
-	private void setSSLTrustManager(ServiceClient serviceClient) {
-		
-		try {
-			// following excerpt is taken from here:
-			// http://axis.apache.org/axis2/java/core/api/org/apache/axis2/java/security/TrustAllTrustManager.html
-			SSLContext sslCtx = SSLContext.getInstance("SSL");
-			sslCtx.init(null, new TrustManager[] {new TrustAllTrustManager()}, null);
-			serviceClient.getOptions().setProperty(HTTPConstants.CUSTOM_PROTOCOL_HANDLER, new Protocol("https", (ProtocolSocketFactory) new SSLProtocolSocketFactory(sslCtx), 443));
-			
-		} catch (NoSuchAlgorithmException e) {
-			BpsConnector.LOG.warn("Couldn't load SSLContext", e);
-		} catch (KeyManagementException e) {
-			BpsConnector.LOG.warn("Couldn't load TrustManager into SSLContext", e);
-		}
-	}
-	
 }
@@ -0,0 +1,154 @@
+package org.opentosca.bpsconnector;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the results of management queries at a WSO2 BPS.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The results, e.g. the deployed packages or the state of a process, are kept
+ * for a short time, thus frequent checks don't query the BPS each time. Each
+ * deployment or undeployment at the BPS invalidates all results. A query that
+ * was started before an invalidation doesn't store its result, as it may be
+ * outdated already.<br>
+ * <br>
+ * 
+ * The cache counts hits, misses and invalidations and logs them periodically.
+ * 
+ * 
+ * @see BpsSession#getQueryCache()
+ * 
+ */
+class BpsQueryCache {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(BpsQueryCache.class);
+	
+	// the statistics are logged after this number of lookups
+	private static final long STATISTICS_INTERVAL = 1000;
+	
+	private final String address;
+	private final long ttl;
+	
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	
+	// incremented by each invalidation
+	private final AtomicLong generation = new AtomicLong();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	
+	
+	/**
+	 * @param address of the BPS, used for logging.
+	 * @param ttl time in milliseconds a result is kept.
+	 */
+	BpsQueryCache(String address, long ttl) {
+		this.address = address;
+		this.ttl = ttl;
+	}
+	
+	/**
+	 * Returns the result of a query if it is cached and not expired.
+	 * 
+	 * @param key identifying the query.
+	 * @param type of the result.
+	 * @return the result or <tt>null</tt> if the query has to be done.
+	 */
+	<T> T get(String key, Class<T> type) {
+		
+		Entry entry = this.entries.get(key);
+		
+		if ((entry != null) && (entry.generation == this.generation.get()) && ((System.currentTimeMillis() - entry.created) <= this.ttl)) {
+			this.count(this.hits);
+			return type.cast(entry.value);
+		}
+		
+		if (entry != null) {
+			this.entries.remove(key, entry);
+		}
+		
+		this.count(this.misses);
+		return null;
+	}
+	
+	/**
+	 * Returns the generation to pass to {@link #put(String, Object, long)},
+	 * which has to be obtained before the query is started.
+	 * 
+	 * @return the current generation of the cache.
+	 */
+	long getGeneration() {
+		return this.generation.get();
+	}
+	
+	/**
+	 * Caches the result of a query, unless the cache was invalidated since the
+	 * query was started.
+	 * 
+	 * @param key identifying the query.
+	 * @param value the result.
+	 * @param generation returned by {@link #getGeneration()} before the query.
+	 */
+	void put(String key, Object value, long generation) {
+		
+		if (generation == this.generation.get()) {
+			this.entries.put(key, new Entry(value, generation));
+		}
+	}
+	
+	/**
+	 * Discards all cached results, as the deployed packages and processes of
+	 * the BPS have changed.
+	 */
+	void invalidate() {
+		this.generation.incrementAndGet();
+		this.entries.clear();
+		this.invalidations.incrementAndGet();
+		BpsQueryCache.LOG.debug("Query cache of BPS {} was invalidated. {}", this.address, this);
+	}
+	
+	private void count(AtomicLong counter) {
+		counter.incrementAndGet();
+		
+		if (((this.hits.get() + this.misses.get()) % BpsQueryCache.STATISTICS_INTERVAL) == 0) {
+			BpsQueryCache.LOG.info("Query cache of BPS {}: {}", this.address, this);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		long hits = this.hits.get();
+		long lookups = hits + this.misses.get();
+		long ratio = lookups == 0 ? 0 : (100 * hits) / lookups;
+		return "Lookups: " + lookups + ", hits: " + hits + " (" + ratio + " %), invalidations: " + this.invalidations.get() + ", cached results: " + this.entries.size();
+	}
+	
+	
+	/**
+	 * Cached result of a query
+	 */
+	private static class Entry {
+		
+		private final Object value;
+		private final long generation;
+		private final long created = System.currentTimeMillis();
+		
+		
+		Entry(Object value, long generation) {
+			this.value = value;
+			this.generation = generation;
+		}
+	}
+}
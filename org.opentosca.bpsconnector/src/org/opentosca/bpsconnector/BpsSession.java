@@ -0,0 +1,309 @@
+package org.opentosca.bpsconnector;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.rmi.RemoteException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.client.Stub;
+import org.apache.axis2.java.security.SSLProtocolSocketFactory;
+import org.apache.axis2.java.security.TrustAllTrustManager;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.bps.management.wsdl.bpelpackagemanagement.BPELPackageManagementServiceStub;
+import org.wso2.bps.management.wsdl.processmanagement.ProcessManagementServiceStub;
+import org.wso2.carbon.bpel.deployer.services.BPELUploaderStub;
+import org.wso2.carbon.core.services.authentication.AuthenticationAdminAuthenticationExceptionException;
+import org.wso2.carbon.core.services.authentication.AuthenticationAdminStub;
+import org.wso2.carbon.core.services.authentication.Login;
+
+/**
+ * Authenticated session at a WSO2 BPS with a pool of Axis2 stubs.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The sessions are cached per BPS address and user, thus the connectors of
+ * all deployments share one login. A session that was idle for longer than
+ * the BPS keeps it is renewed before its next use, and
+ * {@link #invalidate(String)} forces a new login if the BPS rejected the
+ * session anyway.<br>
+ * <br>
+ * 
+ * Axis2 stubs are expensive to create, but not thread-safe. Thus each
+ * invocation borrows an idle stub of the session, or creates one if there is
+ * none, and returns it afterwards.<br>
+ * <br>
+ * 
+ * The results of management queries are cached per session by a
+ * {@link BpsQueryCache}.
+ * 
+ * 
+ * @see BpsConnector
+ * 
+ */
+class BpsSession {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(BpsSession.class);
+	
+	// Carbon expires sessions idle for 15 minutes by default
+	private static final long MAX_IDLE_TIME = 10 * 60 * 1000;
+	
+	// idle stubs kept per stub type
+	private static final int MAX_IDLE_STUBS = 8;
+	
+	// results of management queries are kept for this time (milliseconds)
+	private static final long QUERY_CACHE_TTL = 5000;
+	
+	private static final ConcurrentMap<String, BpsSession> sessions = new ConcurrentHashMap<String, BpsSession>();
+	
+	private static Protocol httpsProtocol = null;
+	
+	private final String address;
+	private final String user;
+	private final String password;
+	
+	private String cookie = null;
+	private long lastUsed = 0;
+	
+	private final ConcurrentMap<Class<?>, Queue<Stub>> idleStubs = new ConcurrentHashMap<Class<?>, Queue<Stub>>();
+	
+	private final BpsQueryCache queryCache;
+	
+	
+	private BpsSession(String address, String user, String password) {
+		this.address = address;
+		this.user = user;
+		this.password = password;
+		this.queryCache = new BpsQueryCache(address, BpsSession.QUERY_CACHE_TTL);
+	}
+	
+	/**
+	 * Returns the cached session at a BPS and creates it if needed. The login
+	 * is done at the first invocation.
+	 * 
+	 * @param address the uri of the WSO2 BPS
+	 * @param user the username for the WSO2 BPS
+	 * @param password the password for the WSO2 BPS
+	 * @return the session
+	 */
+	static BpsSession get(String address, String user, String password) {
+		
+		String key = user + "@" + address;
+		BpsSession session = BpsSession.sessions.get(key);
+		
+		// a changed password replaces the session
+		if ((session == null) || !session.password.equals(password)) {
+			session = new BpsSession(address, user, password);
+			BpsSession.sessions.put(key, session);
+		}
+		return session;
+	}
+	
+	String getAddress() {
+		return this.address;
+	}
+	
+	/**
+	 * @return the cache of the management queries at the BPS
+	 */
+	BpsQueryCache getQueryCache() {
+		return this.queryCache;
+	}
+	
+	/**
+	 * Returns the cookie of the session and logs in if there is no session or
+	 * it was idle for too long.
+	 * 
+	 * @return the cookie identifying the session
+	 * @throws RemoteException is thrown when connection failed
+	 * @throws AuthenticationAdminAuthenticationExceptionException is thrown
+	 *             when login was wrong
+	 * @throws UnknownHostException is thrown when no connection can be
+	 *             established
+	 */
+	synchronized String getCookie() throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException {
+		
+		long now = System.currentTimeMillis();
+		
+		if ((this.cookie == null) || ((now - this.lastUsed) > BpsSession.MAX_IDLE_TIME)) {
+			this.login();
+		}
+		this.lastUsed = now;
+		return this.cookie;
+	}
+	
+	/**
+	 * Discards the session, thus the next invocation logs in again. If the
+	 * session was renewed in the meantime, the new session is kept.
+	 * 
+	 * @param cookie of the rejected session
+	 */
+	synchronized void invalidate(String cookie) {
+		if ((cookie != null) && cookie.equals(this.cookie)) {
+			this.cookie = null;
+		}
+	}
+	
+	/**
+	 * Logs into the WSO2 BPS
+	 * 
+	 * @throws RemoteException is thrown when connection failed
+	 * @throws AuthenticationAdminAuthenticationExceptionException is thrown
+	 *             when login was wrong
+	 * @throws UnknownHostException is thrown when no connection can be
+	 *             established
+	 */
+	private void login() throws RemoteException, AuthenticationAdminAuthenticationExceptionException, UnknownHostException {
+		BpsSession.LOG.debug("Logging in to BPS {} as {}", this.address, this.user);
+		Login login = new Login();
+		login.setUsername(this.user);
+		login.setPassword(this.password);
+		login.setRemoteAddress(InetAddress.getLocalHost().getHostAddress());
+		AuthenticationAdminStub stub = this.borrow(AuthenticationAdminStub.class);
+		try {
+			stub._getServiceClient().getOptions().setManageSession(true);
+			stub.login(login);
+			this.cookie = (String) stub._getServiceClient().getLastOperationContext().getProperty(HTTPConstants.COOKIE_STRING);
+		} finally {
+			this.release(stub);
+		}
+	}
+	
+	/**
+	 * Borrows an idle stub of the session or creates one if there is none.
+	 * The stub has to be returned by {@link #release(Stub)}.
+	 * 
+	 * @param type of the stub
+	 * @return a stub with added SSL Options
+	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
+	 */
+	<S extends Stub> S borrow(Class<S> type) throws AxisFault {
+		
+		Queue<Stub> idle = this.idleStubs.get(type);
+		Stub stub = idle != null ? idle.poll() : null;
+		
+		if (stub == null) {
+			stub = this.createStub(type);
+		}
+		return type.cast(stub);
+	}
+	
+	/**
+	 * Returns a stub after an invocation.
+	 * 
+	 * @param stub borrowed by {@link #borrow(Class)}
+	 */
+	void release(Stub stub) {
+		
+		try {
+			// frees the connection of the last invocation
+			stub._getServiceClient().cleanupTransport();
+		} catch (AxisFault e) {
+			BpsSession.LOG.debug("Cleaning up the transport of a stub failed. The stub is discarded.", e);
+			return;
+		}
+		
+		Queue<Stub> idle = this.idleStubs.get(stub.getClass());
+		
+		if (idle == null) {
+			idle = new ConcurrentLinkedQueue<Stub>();
+			Queue<Stub> existing = this.idleStubs.putIfAbsent(stub.getClass(), idle);
+			if (existing != null) {
+				idle = existing;
+			}
+		}
+		
+		if (idle.size() < BpsSession.MAX_IDLE_STUBS) {
+			idle.offer(stub);
+		}
+	}
+	
+	/**
+	 * Sets the cookie of the session for the next invocation of a stub
+	 * 
+	 * @param stub org.apache.axis2.client.Stub Object of the Axis2 library
+	 * @param cookie returned by {@link #getCookie()}
+	 */
+	void setCookie(Stub stub, String cookie) {
+		stub._getServiceClient().getOptions().setProperty(HTTPConstants.COOKIE_STRING, cookie);
+	}
+	
+	/**
+	 * Initializes a stub of the given type with added SSL Options
+	 * 
+	 * @throws AxisFault is thrown when initalizing the Axis2 stub fails
+	 */
+	private Stub createStub(Class<?> type) throws AxisFault {
+		
+		BpsSession.LOG.debug("Creating {} for BPS {}", type.getSimpleName(), this.address);
+		
+		Stub stub;
+		
+		if (type == ProcessManagementServiceStub.class) {
+			stub = new ProcessManagementServiceStub(this.address + "/services/ProcessManagementService");
+		} else if (type == BPELPackageManagementServiceStub.class) {
+			stub = new BPELPackageManagementServiceStub(this.address + "/services/BPELPackageManagementService");
+		} else if (type == BPELUploaderStub.class) {
+			stub = new BPELUploaderStub(this.address + "/services/BPELUploader");
+		} else if (type == AuthenticationAdminStub.class) {
+			stub = new AuthenticationAdminStub(this.address + "/services/AuthenticationAdmin");
+		} else {
+			throw new IllegalArgumentException("Unsupported stub type " + type.getName());
+		}
+		
+		Options options = stub._getServiceClient().getOptions();
+		
+		Protocol protocol = BpsSession.getHttpsProtocol();
+		if (protocol != null) {
+			options.setProperty(HTTPConstants.CUSTOM_PROTOCOL_HANDLER, protocol);
+		}
+		
+		options.setProperty(Constants.Configuration.ENABLE_MTOM, Constants.VALUE_TRUE);
+		options.setManageSession(true);
+		options.setTimeOutInMilliSeconds(60000000);
+		
+		return stub;
+	}
+	
+	/**
+	 * Returns the https protocol accepting all SSL certificates, shared by all
+	 * stubs
+	 * 
+	 * @return the protocol or <tt>null</tt> if it couldn't be created
+	 */
+	private static synchronized Protocol getHttpsProtocol() {
+		
+		if (BpsSession.httpsProtocol == null) {
+			
+			try {
+				// following excerpt is taken from here:
+				// http://axis.apache.org/axis2/java/core/api/org/apache/axis2/java/security/TrustAllTrustManager.html
+				SSLContext sslCtx = SSLContext.getInstance("SSL");
+				sslCtx.init(null, new TrustManager[] {new TrustAllTrustManager()}, null);
+				BpsSession.httpsProtocol = new Protocol("https", (ProtocolSocketFactory) new SSLProtocolSocketFactory(sslCtx), 443);
+				
+			} catch (NoSuchAlgorithmException e) {
+				BpsSession.LOG.warn("Couldn't load SSLContext", e);
+			} catch (KeyManagementException e) {
+				BpsSession.LOG.warn("Couldn't load TrustManager into SSLContext", e);
+			}
+		}
+		return BpsSession.httpsProtocol;
+	}
+}
@@ -5,9 +5,11 @@
  * </p>
  * 
  * <p>
- * The package consist only of one class
+ * The package consist of the class
  * {@link org.opentosca.bpsconnector.BpsConnector} which uses Axis2 generated
- * stubs for accessing web methods on an WSO2 BPS.
+ * stubs for accessing web methods on an WSO2 BPS, and the sessions reusing the
+ * login and the stubs between its operations and caching the results of
+ * management queries.
  * </p>
  */
 package org.opentosca.bpsconnector;
\ No newline at end of file
@@ -2,6 +2,7 @@ package org.opentosca.containerapi.resources.csar;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.Files;
 import java.util.List;
 
@@ -28,6 +29,7 @@ import org.opentosca.core.model.csar.CSARContent;
 import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.exceptions.SystemException;
 import org.opentosca.exceptions.UserException;
+import org.opentosca.opentoscacontrol.service.CSARDeletion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -167,25 +169,32 @@ public class CSARResource {
 		
 	}
 	
+	/**
+	 * Starts the deletion of the CSAR in the background. Its progress is
+	 * available at <tt>CSARs/Deletions/{csarID}</tt>.
+	 */
 	@DELETE
 	@Produces("text/plain")
-	public Response delete() {
+	public Response delete(@Context UriInfo uriInfo) {
 		
 		CSARID csarID = this.CSAR.getCSARID();
 		
 		CSARResource.LOG.info("Deleting CSAR \"{}\".", csarID);
-		List<String> errors = IOpenToscaControlServiceHandler.getOpenToscaControlService().deleteCSAR(csarID);
+		CSARDeletion deletion = IOpenToscaControlServiceHandler.getOpenToscaControlService().deleteCSARInBackground(csarID);
 		
 		// if (errors.contains("CSAR has instances.")) {
 		// return Response.notModified("CSAR has instances.").build();
 		// }
 		
-		if (errors.isEmpty()) {
-			return Response.ok("Deletion of CSAR " + "\"" + csarID + "\" was sucessful.").build();
-		} else {
+		if (deletion.isDone() && !deletion.getErrors().isEmpty()) {
 			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Deletion of CSAR \"" + csarID + "\" failed.").build();
 		}
 		
+		String deletions = Utilities.buildURI(uriInfo.getAbsolutePath().resolve(".").toString(), "Deletions");
+		URI progress = URI.create(Utilities.buildURI(deletions, csarID.toString()));
+		
+		return Response.status(Status.ACCEPTED).location(progress).entity("Deletion of CSAR " + "\"" + csarID + "\" was started.").build();
+		
 	}
 	
 }
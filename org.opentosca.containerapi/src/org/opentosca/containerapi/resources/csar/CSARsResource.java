@@ -42,6 +42,7 @@ import org.opentosca.core.model.csar.CSARContent;
 import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.exceptions.SystemException;
 import org.opentosca.exceptions.UserException;
+import org.opentosca.opentoscacontrol.service.CSARDeletion;
 import org.opentosca.opentoscacontrol.service.IOpenToscaControlService;
 import org.opentosca.planbuilder.export.Exporter;
 import org.opentosca.planbuilder.importer.Importer;
@@ -314,21 +315,40 @@ public class CSARsResource {
 		
 		List<String> notDeleted = new ArrayList<String>();
 		
+		// the deletions run in the background
 		for (CSARID csarID : this.fileHandler.getCSARIDs()) {
 			CSARsResource.LOG.info("Deleting CSAR \"{}\".", csarID);
-			if (!IOpenToscaControlServiceHandler.getOpenToscaControlService().deleteCSAR(csarID).isEmpty()) {
+			CSARDeletion deletion = IOpenToscaControlServiceHandler.getOpenToscaControlService().deleteCSARInBackground(csarID);
+			if (deletion.isDone() && !deletion.getErrors().isEmpty()) {
 				notDeleted.add(csarID.toString());
 			}
 			
 		}
 		
 		if (notDeleted.isEmpty()) {
-			return Response.ok("All CSARs were deleted.").build();
+			return Response.status(Status.ACCEPTED).entity("Deletion of all CSARs was started.").build();
 		} else {
 			return Response.serverError().build();
 		}
 	}
 	
+	/**
+	 * @param csarIDAsString ID of a CSAR.
+	 * @return the progress of the last deletion of the CSAR.
+	 */
+	@GET
+	@Path("Deletions/{csarID}")
+	@Produces("text/plain")
+	public Response getDeletion(@PathParam("csarID") String csarIDAsString) {
+		
+		CSARDeletion deletion = IOpenToscaControlServiceHandler.getOpenToscaControlService().getCSARDeletion(new CSARID(csarIDAsString));
+		
+		if (deletion == null) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		return Response.ok(deletion.toString()).build();
+	}
+	
 	/**
 	 * Checks whether the root tosca definitions file, contains servicetemplates
 	 * where no build plan is available. If there is no such plan available the
@@ -53,7 +53,9 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	/**
 	 * JPA EntityManager and Factory. These variables are global, as we do not
 	 * want to create a new EntityManager / Factory each time a method is
-	 * called.
+	 * called. The EntityManager is not thread-safe, thus the methods using it
+	 * are synchronized, as e.g. Plans and ImplementationArtifacts are deployed
+	 * and tracked concurrently.
 	 */
 	private EntityManagerFactory emf;
 	private EntityManager em;
@@ -90,7 +92,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public boolean storeDeploymentState(CSARID csarID, DeploymentProcessState deploymentState) {
+	public synchronized boolean storeDeploymentState(CSARID csarID, DeploymentProcessState deploymentState) {
 		this.init();
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Storing deployment state {} for CSAR \"{}\"...", deploymentState, csarID);
 		this.em.getTransaction().begin();
@@ -113,7 +115,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public DeploymentProcessState getDeploymentState(CSARID csarID) {
+	public synchronized DeploymentProcessState getDeploymentState(CSARID csarID) {
 		
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Retrieving deployment state for CSAR \"{}\"...", csarID);
 		this.init();
@@ -133,7 +135,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	}
 	
 	@Override
-	public void deleteDeploymentState(CSARID csarID) {
+	public synchronized void deleteDeploymentState(CSARID csarID) {
 		CoreInternalDeploymentTrackerServiceImpl.LOG.debug("Retrieving DeploymentProcessInfo for {}", csarID);
 		DeploymentProcessInfo info = this.getDeploymentProcessInfo(csarID);
 		if (info != null) {
@@ -180,7 +182,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public boolean storeIADeploymentInfo(IADeploymentInfo iaDeploymentInfo) {
+	public synchronized boolean storeIADeploymentInfo(IADeploymentInfo iaDeploymentInfo) {
 		
 		this.init();
 		
@@ -230,7 +232,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public IADeploymentInfo getIADeploymentInfo(CSARID csarID, String iaRelPath) {
+	public synchronized IADeploymentInfo getIADeploymentInfo(CSARID csarID, String iaRelPath) {
 		this.init();
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Retrieving IA deployment info for IA \"{}\" of CSAR \"{}\"...", iaRelPath, csarID);
 		Query getIADeploymentInfo = this.em.createNamedQuery(IADeploymentInfo.getIADeploymentInfoByCSARIDAndRelPath).setParameter("iaRelPath", iaRelPath).setParameter("csarID", csarID);
@@ -250,7 +252,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<IADeploymentInfo> getIADeploymentInfos(CSARID csarID) {
+	public synchronized List<IADeploymentInfo> getIADeploymentInfos(CSARID csarID) {
 		this.init();
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Retrieving all IA deployment infos of CSAR \"{}\"...", csarID);
 		ArrayList<IADeploymentInfo> results = new ArrayList<IADeploymentInfo>();
@@ -268,7 +270,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public boolean storePlanDeploymentInfo(PlanDeploymentInfo planDeploymentInfo) {
+	public synchronized boolean storePlanDeploymentInfo(PlanDeploymentInfo planDeploymentInfo) {
 		this.init();
 		
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Storing deployment state {} for Plan \"{}\" of CSAR \"{}\"...", new Object[] {planDeploymentInfo.getDeploymentState(), planDeploymentInfo.getRelPath(), planDeploymentInfo.getCSARID()});
@@ -316,7 +318,34 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public PlanDeploymentInfo getPlanDeploymentInfo(CSARID csarID, String planRelPath) {
+	public synchronized boolean storePlanFingerprint(CSARID csarID, String planRelPath, String fingerprint) {
+		this.init();
+		
+		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Storing fingerprint {} for Plan \"{}\" of CSAR \"{}\"...", new Object[] {fingerprint, planRelPath, csarID});
+		
+		PlanDeploymentInfo storedPlan = this.getPlanDeploymentInfo(csarID, planRelPath);
+		
+		if (storedPlan == null) {
+			CoreInternalDeploymentTrackerServiceImpl.LOG.warn("Fingerprint for Plan \"{}\" of CSAR \"{}\" can't be stored, as there is no deployment info for it.", planRelPath, csarID);
+			return false;
+		}
+		
+		// the deployment state and attempt counter are kept
+		this.em.getTransaction().begin();
+		storedPlan.setFingerprint(fingerprint);
+		this.em.persist(storedPlan);
+		this.em.getTransaction().commit();
+		
+		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Storing fingerprint for Plan \"{}\" of CSAR \"{}\" completed.", planRelPath, csarID);
+		
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized PlanDeploymentInfo getPlanDeploymentInfo(CSARID csarID, String planRelPath) {
 		this.init();
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Retrieving Plan deployment info for Plan \"{}\" of CSAR \"{}\"...", planRelPath, csarID);
 		Query getPlanDeploymentInfo = this.em.createNamedQuery(PlanDeploymentInfo.getPlanDeploymentInfoByCSARIDAndRelPath).setParameter("csarID", csarID).setParameter("planRelPath", planRelPath);
@@ -335,7 +364,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<PlanDeploymentInfo> getPlanDeploymentInfos(CSARID csarID) {
+	public synchronized List<PlanDeploymentInfo> getPlanDeploymentInfos(CSARID csarID) {
 		this.init();
 		CoreInternalDeploymentTrackerServiceImpl.LOG.info("Retrieving all Plan deployment infos of CSAR \"{}\"...", csarID);
 		ArrayList<PlanDeploymentInfo> results = new ArrayList<PlanDeploymentInfo>();
@@ -361,7 +390,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public boolean storeIADeploymentInfo(CSARID csarID, String iaRelPath, IADeploymentState iaDeploymentState) {
+	public synchronized boolean storeIADeploymentInfo(CSARID csarID, String iaRelPath, IADeploymentState iaDeploymentState) {
 		IADeploymentInfo iaDeploymentInfo = new IADeploymentInfo(csarID, iaRelPath, iaDeploymentState);
 		this.storeIADeploymentInfo(iaDeploymentInfo);
 		return true;
@@ -371,7 +400,7 @@ public class CoreInternalDeploymentTrackerServiceImpl implements ICoreInternalDe
 	 * {@inheritDoc}
 	 */
 	@Override
-	public boolean storePlanDeploymentInfo(CSARID csarID, String planRelPath, PlanDeploymentState planDeploymentState) {
+	public synchronized boolean storePlanDeploymentInfo(CSARID csarID, String planRelPath, PlanDeploymentState planDeploymentState) {
 		PlanDeploymentInfo planDeploymentInfo = new PlanDeploymentInfo(csarID, planRelPath, planDeploymentState);
 		this.storePlanDeploymentInfo(planDeploymentInfo);
 		return true;
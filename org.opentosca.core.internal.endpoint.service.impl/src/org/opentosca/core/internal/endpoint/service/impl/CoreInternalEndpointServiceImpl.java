@@ -9,7 +9,6 @@ import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
 import javax.persistence.Query;
 import javax.xml.namespace.QName;
@@ -55,6 +54,9 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * ORM EntityManager + Factory. These variables are global, as we do not
 	 * want to create a new EntityManager/Factory each time a method is called.
+	 * The EntityManager is not thread-safe, thus the methods using it are
+	 * synchronized, as e.g. the plug-ins deploying Plans store their endpoints
+	 * concurrently.
 	 */
 	private EntityManagerFactory emf;
 	private EntityManager em;
@@ -89,7 +91,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public List<WSDLEndpoint> getWSDLEndpoints(QName portType, CSARID csarId) {
+	public synchronized List<WSDLEndpoint> getWSDLEndpoints(QName portType, CSARID csarId) {
 		this.init();
 		ArrayList<WSDLEndpoint> results = new ArrayList<WSDLEndpoint>();
 		
@@ -133,7 +135,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public WSDLEndpoint getWSDLEndpoint(QName portType, CSARID csarId) {
+	public synchronized WSDLEndpoint getWSDLEndpoint(QName portType, CSARID csarId) {
 		this.init();
 		
 		/**
@@ -147,9 +149,9 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 		getWSDLEndpointQuery.setParameter("portType", portType);
 		getWSDLEndpointQuery.setParameter("csarId", csarId);
 		
-		// Return the retrieved WSDL-Endpoint. As WSDL-Endpoints are
-		// identified/unique by portType, addressType and thorID, the
-		// result can only be one WSDL-Endpoint.
+		// Return the retrieved WSDL-Endpoint. Only the replicas of an IA
+		// share a PortType, their endpoints are retrieved by
+		// getWSDLEndpointsForIa.
 		return (WSDLEndpoint) getWSDLEndpointQuery.getSingleResult();
 	}
 	
@@ -157,7 +159,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public void storeWSDLEndpoint(WSDLEndpoint endpoint) {
+	public synchronized void storeWSDLEndpoint(WSDLEndpoint endpoint) {
 		this.init();
 		CoreInternalEndpointServiceImpl.LOG.debug("Storing WSDL Endpoint with CSARID: \"" + endpoint.getCSARId() + "\", portType: \"" + endpoint.getPortType() + "\", IAName: \"" + endpoint.getIaName() + "\", NodeTypeImplementation: \"" + endpoint.getNodeTypeImplementation() + "\", URI: \"" + endpoint.getURI().toString() + "\"");
 		
@@ -182,6 +184,15 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	 */
 	private boolean existsWSDLEndpoint(WSDLEndpoint endpoint) {
 		this.init();
+		
+		// the replicas of an IA share the PortType, but not the URI
+		if (endpoint.getIaName() != null) {
+			Query replicaQuery = this.em.createNamedQuery(WSDLEndpoint.getWSDLEndpointByUri);
+			replicaQuery.setParameter("uri", endpoint.getURI());
+			replicaQuery.setParameter("csarId", endpoint.getCSARId());
+			return replicaQuery.getResultList().size() != 0;
+		}
+		
 		Query wsdlEndpointQuery = this.em.createNamedQuery(WSDLEndpoint.getWSDLEndpointByPortType);
 		
 		// Set parameters
@@ -198,7 +209,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public List<RESTEndpoint> getRestEndpoints(URI anyURI, CSARID csarId) {
+	public synchronized List<RESTEndpoint> getRestEndpoints(URI anyURI, CSARID csarId) {
 		this.init();
 		ArrayList<RESTEndpoint> results = new ArrayList<RESTEndpoint>();
 		
@@ -227,7 +238,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public RESTEndpoint getRestEndpoint(URI anyURI, restMethod method, CSARID csarId) {
+	public synchronized RESTEndpoint getRestEndpoint(URI anyURI, restMethod method, CSARID csarId) {
 		this.init();
 		
 		/**
@@ -251,7 +262,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public void storeRESTEndpoint(RESTEndpoint endpoint) {
+	public synchronized void storeRESTEndpoint(RESTEndpoint endpoint) {
 		this.init();
 		CoreInternalEndpointServiceImpl.LOG.debug("Storing REST Endpoint with Path : \"{}\", STID: \"{}\"", endpoint.getPath(), endpoint.getCSARId().getFileName());
 		this.em.getTransaction().begin();
@@ -263,7 +274,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	/**
 	 * {@Inheritdoc}
 	 */
-	public boolean endpointExists(URI uri, CSARID csarId) {
+	public synchronized boolean endpointExists(URI uri, CSARID csarId) {
 		this.init();
 		Query existsRestEndpointQuery = this.em.createNamedQuery(RESTEndpoint.getEndpointForUri);
 		existsRestEndpointQuery.setParameter("uri", uri);
@@ -371,7 +382,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	}
 	
 	@Override
-	public void removeEndpoints(CSARID csarId) {
+	public synchronized void removeEndpoints(CSARID csarId) {
 		this.init();
 		this.em.getTransaction().begin();
 		
@@ -404,7 +415,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	}
 	
 	@Override
-	public WSDLEndpoint getWSDLEndpointForPlanId(CSARID csarId, QName planId) {
+	public synchronized WSDLEndpoint getWSDLEndpointForPlanId(CSARID csarId, QName planId) {
 		this.init();
 		this.em.getTransaction().begin();
 		WSDLEndpoint endpoint = null;
@@ -418,7 +429,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	}
 	
 	@Override
-	public WSDLEndpoint getWSDLEndpointForIa(CSARID csarId, QName nodeTypeImpl, String iaName) {
+	public synchronized WSDLEndpoint getWSDLEndpointForIa(CSARID csarId, QName nodeTypeImpl, String iaName) {
 		this.init();
 		this.em.getTransaction().begin();
 		WSDLEndpoint endpoint = null;
@@ -427,10 +438,16 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 		queryWSDLEndpoint.setParameter("IaName", iaName);
 		queryWSDLEndpoint.setParameter("nodeTypeImpl", nodeTypeImpl);
 		try {
-			endpoint = (WSDLEndpoint) queryWSDLEndpoint.getSingleResult();
+			// an IA with several replicas has several endpoints
+			@SuppressWarnings("unchecked")
+			List<WSDLEndpoint> queryResults = queryWSDLEndpoint.getResultList();
+			
+			if (queryResults.isEmpty()) {
+				CoreInternalEndpointServiceImpl.LOG.info("No endpoint stored for requested IA.");
+			} else {
+				endpoint = queryResults.get(0);
+			}
 			
-		} catch (NoResultException e) {
-			CoreInternalEndpointServiceImpl.LOG.info("No endpoint stored for requested IA.");
 		} finally {
 			this.em.getTransaction().commit();
 		}
@@ -438,7 +455,27 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	}
 	
 	@Override
-	public List<WSDLEndpoint> getWSDLEndpointsForCSARID(CSARID csarId) {
+	public synchronized List<WSDLEndpoint> getWSDLEndpointsForIa(CSARID csarId, QName nodeTypeImpl, String iaName) {
+		this.init();
+		this.em.getTransaction().begin();
+		ArrayList<WSDLEndpoint> endpoints = new ArrayList<WSDLEndpoint>();
+		Query queryWSDLEndpoint = this.em.createQuery("SELECT e FROM WSDLEndpoint e where e.csarId= :csarId and e.IaName = :IaName and e.NodeTypeImplementation = :nodeTypeImpl");
+		queryWSDLEndpoint.setParameter("csarId", csarId);
+		queryWSDLEndpoint.setParameter("IaName", iaName);
+		queryWSDLEndpoint.setParameter("nodeTypeImpl", nodeTypeImpl);
+		
+		@SuppressWarnings("unchecked")
+		List<WSDLEndpoint> queryResults = queryWSDLEndpoint.getResultList();
+		for (WSDLEndpoint endpoint : queryResults) {
+			endpoints.add(endpoint);
+		}
+		
+		this.em.getTransaction().commit();
+		return endpoints;
+	}
+	
+	@Override
+	public synchronized List<WSDLEndpoint> getWSDLEndpointsForCSARID(CSARID csarId) {
 		this.init();
 		this.em.getTransaction().begin();
 		ArrayList<WSDLEndpoint> endpoints = new ArrayList<WSDLEndpoint>();
@@ -475,7 +512,7 @@ public class CoreInternalEndpointServiceImpl implements ICoreInternalEndpointSer
 	}
 	
 	@Override
-	public boolean removeWSDLEndpoint(CSARID csarId, WSDLEndpoint endpoint) {
+	public synchronized boolean removeWSDLEndpoint(CSARID csarId, WSDLEndpoint endpoint) {
 		this.init();
 		
 		// get all wsdlendpoints
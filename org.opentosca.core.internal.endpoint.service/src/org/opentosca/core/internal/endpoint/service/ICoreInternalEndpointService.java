@@ -104,10 +104,23 @@ public interface ICoreInternalEndpointService {
 	 * @param nodeTypeImpl an id of type QName
 	 * @param iaName an id of type String
 	 * @return a WSDLEndpoint representing the given IA if one was found else
-	 *         null
+	 *         null. If the IA has several replicas, one of them.
 	 */
 	public WSDLEndpoint getWSDLEndpointForIa(CSARID csarId, QName nodeTypeImpl, String iaName);
 	
+	/**
+	 * This method queries for all WSDLEndpoints identified by the given
+	 * CSARID, NodeTypeImplementationId and ImplementationArtifact Name, i.e.
+	 * the endpoints of all replicas of the ImplementationArtifact
+	 * 
+	 * @param csarId an id of type CSARID
+	 * @param nodeTypeImpl an id of type QName
+	 * @param iaName an id of type String
+	 * @return the WSDLEndpoints representing the given IA, empty if none was
+	 *         found
+	 */
+	public List<WSDLEndpoint> getWSDLEndpointsForIa(CSARID csarId, QName nodeTypeImpl, String iaName);
+	
 	/**
 	 * This method stores a given RESTEndpoint object.
 	 * 
@@ -10,5 +10,5 @@ package org.opentosca.core.model.deployment.ia;
  * 
  */
 public enum IADeploymentState {
-	IA_DEPLOYING, IA_DEPLOYED, IA_DEPLOYMENT_FAILED, IA_UNDEPLOYING, IA_UNDEPLOYED, IA_UNDEPLOYMENT_FAILED;
+	IA_DEPLOYING, IA_WARMING_UP, IA_DEPLOYED, IA_DEPLOYMENT_FAILED, IA_WARM_UP_FAILED, IA_UNDEPLOYING, IA_UNDEPLOYED, IA_UNDEPLOYMENT_FAILED;
 }
@@ -52,6 +52,13 @@ public class PlanDeploymentInfo extends AbstractFileDeploymentInfo {
 	@Column(name = "DeploymentState")
 	private PlanDeploymentState deploymentState;
 	
+	/**
+	 * Fingerprint of the deployed plan package, identical plans have the same
+	 * fingerprint.
+	 */
+	@Column(name = "Fingerprint")
+	private String fingerprint;
+	
 	
 	/**
 	 * Needed by JPA.
@@ -88,4 +95,21 @@ public class PlanDeploymentInfo extends AbstractFileDeploymentInfo {
 		this.deploymentState = deploymentState;
 	}
 	
+	/**
+	 * @return the fingerprint of the deployed plan package or
+	 *         <code>null</code> if it is unknown
+	 */
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+	
+	/**
+	 * Sets the fingerprint of the deployed plan package.
+	 * 
+	 * @param fingerprint to set
+	 */
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+	
 }
@@ -38,7 +38,9 @@ import org.opentosca.core.model.endpoint.GenericEndpoint;
 // WSDLEndpoint.getWSDLEndpointByPortTypeAndAddressTypeQuery),
 @NamedQuery(name = WSDLEndpoint.getWSDLEndpointByUri, query = WSDLEndpoint.getWSDLEndpointByUriQuery)})
 // @formatter:on
-@Table(name = WSDLEndpoint.tableName, uniqueConstraints = @UniqueConstraint(columnNames = {"portType", "addressType", "csarId"}))
+// the replicas of an IA share the PortType, thus the URI is part of the
+// constraint
+@Table(name = WSDLEndpoint.tableName, uniqueConstraints = @UniqueConstraint(columnNames = {"uri", "csarID", "PortType"}))
 public class WSDLEndpoint extends GenericEndpoint {
 	
 	// Table Name
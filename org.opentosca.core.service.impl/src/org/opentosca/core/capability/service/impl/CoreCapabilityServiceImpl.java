@@ -1,6 +1,9 @@
 package org.opentosca.core.capability.service.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +21,10 @@ import org.slf4j.LoggerFactory;
  * ICoreInternalCapabilityService. It can in future be used to modify the
  * incoming parameters to fit another backend interface/implementation.<br>
  * <br>
+ * The capabilities only change when the container starts or a plug-in is
+ * bound or unbound, thus they are read from an in-memory snapshot that is
+ * rebuilt whenever capabilities are stored or deleted.<br>
+ * <br>
  * Copyright 2012 IAAS University of Stuttgart <br>
  * <br>
  * 
@@ -40,6 +47,10 @@ public class CoreCapabilityServiceImpl implements ICoreCapabilityService {
 	
 	final private static Logger LOG = LoggerFactory.getLogger(CoreCapabilityServiceImpl.class);
 	
+	// Capabilities of all providers by provider type and provider name or
+	// null if they must be read from the CoreInternalCapabilityService.
+	private volatile Map<ProviderType, Map<String, List<String>>> snapshot = null;
+	
 	
 	@Override
 	/**
@@ -49,26 +60,48 @@ public class CoreCapabilityServiceImpl implements ICoreCapabilityService {
 	 */
 	public void storeCapabilities(List<String> capabilities, String providerName, ProviderType providerType) {
 		this.capabilityService.storeCapabilities(capabilities, providerName, providerType);
+		this.rebuildSnapshot();
 	}
 	
 	@Override
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * This currently acts as a proxy.
+	 * The capabilities are read from the snapshot.
 	 */
 	public Map<String, List<String>> getCapabilities(ProviderType providerType) {
-		return this.capabilityService.getCapabilities(providerType);
+		
+		Map<ProviderType, Map<String, List<String>>> snapshot = this.snapshot;
+		
+		if (snapshot == null) {
+			return this.capabilityService.getCapabilities(providerType);
+		}
+		
+		// callers get their own copy as before
+		Map<String, List<String>> capabilities = new HashMap<String, List<String>>();
+		
+		for (Map.Entry<String, List<String>> provider : snapshot.get(providerType).entrySet()) {
+			capabilities.put(provider.getKey(), new ArrayList<String>(provider.getValue()));
+		}
+		return capabilities;
 	}
 	
 	@Override
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * This currently acts as a proxy.
+	 * The capabilities are read from the snapshot.
 	 */
 	public List<String> getCapabilities(String providerName, ProviderType providerType) {
-		return this.capabilityService.getCapabilities(providerName, providerType);
+		
+		Map<ProviderType, Map<String, List<String>>> snapshot = this.snapshot;
+		
+		if (snapshot == null) {
+			return this.capabilityService.getCapabilities(providerName, providerType);
+		}
+		
+		List<String> capabilities = snapshot.get(providerType).get(providerName);
+		return capabilities != null ? new ArrayList<String>(capabilities) : new ArrayList<String>();
 	}
 	
 	@Override
@@ -79,6 +112,39 @@ public class CoreCapabilityServiceImpl implements ICoreCapabilityService {
 	 */
 	public void deleteCapabilities(String providerName) {
 		this.capabilityService.deleteCapabilities(providerName);
+		this.rebuildSnapshot();
+	}
+	
+	/**
+	 * Reads the capabilities of all providers from the
+	 * CoreInternalCapabilityService into a new snapshot. If they can't be
+	 * read, the snapshot is discarded and the capabilities are read from the
+	 * CoreInternalCapabilityService on each request.
+	 */
+	private synchronized void rebuildSnapshot() {
+		
+		Map<ProviderType, Map<String, List<String>>> snapshot = new EnumMap<ProviderType, Map<String, List<String>>>(ProviderType.class);
+		
+		for (ProviderType providerType : ProviderType.values()) {
+			
+			Map<String, List<String>> capabilities = this.capabilityService.getCapabilities(providerType);
+			
+			if (capabilities == null) {
+				CoreCapabilityServiceImpl.LOG.warn("Capabilities couldn't be read. No snapshot is used.");
+				this.snapshot = null;
+				return;
+			}
+			
+			Map<String, List<String>> providers = new HashMap<String, List<String>>();
+			
+			for (Map.Entry<String, List<String>> provider : capabilities.entrySet()) {
+				providers.put(provider.getKey(), Collections.unmodifiableList(new ArrayList<String>(provider.getValue())));
+			}
+			snapshot.put(providerType, Collections.unmodifiableMap(providers));
+		}
+		
+		this.snapshot = snapshot;
+		CoreCapabilityServiceImpl.LOG.debug("Capability snapshot rebuilt: {}", snapshot);
 	}
 	
 	/**
@@ -96,6 +162,7 @@ public class CoreCapabilityServiceImpl implements ICoreCapabilityService {
 			// Store Container Capabilities on start up
 			List<String> containerCaps = this.getCapabilities();
 			this.capabilityService.storeCapabilities(containerCaps, ProviderType.CONTAINER.name(), ProviderType.CONTAINER);
+			this.rebuildSnapshot();
 		}
 		
 	}
@@ -106,6 +173,7 @@ public class CoreCapabilityServiceImpl implements ICoreCapabilityService {
 	 * @param capService to unbind.
 	 */
 	public void unbind(ICoreInternalCapabilityService serv) {
+		this.snapshot = null;
 		this.capabilityService = null;
 		CoreCapabilityServiceImpl.LOG.debug("CoreInternalCapabilityService unbound.");
 	}
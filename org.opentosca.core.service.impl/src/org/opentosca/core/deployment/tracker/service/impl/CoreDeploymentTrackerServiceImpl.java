@@ -136,6 +136,16 @@ public class CoreDeploymentTrackerServiceImpl implements ICoreDeploymentTrackerS
 		return this.deploymentTrackerService.storePlanDeploymentInfo(csarID, planRelPath, planDeploymentState);
 	}
 	
+	@Override
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * This currently acts as a proxy.
+	 */
+	public boolean storePlanFingerprint(CSARID csarID, String planRelPath, String fingerprint) {
+		return this.deploymentTrackerService.storePlanFingerprint(csarID, planRelPath, fingerprint);
+	}
+	
 	@Override
 	public void deleteDeploymentState(CSARID csarId) {
 		this.deploymentTrackerService.deleteDeploymentState(csarId);
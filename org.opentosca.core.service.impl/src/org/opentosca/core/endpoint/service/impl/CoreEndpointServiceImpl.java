@@ -1,7 +1,10 @@
 package org.opentosca.core.endpoint.service.impl;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.xml.namespace.QName;
 
@@ -11,6 +14,9 @@ import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.core.model.endpoint.rest.RESTEndpoint;
 import org.opentosca.core.model.endpoint.rest.RESTEndpoint.restMethod;
 import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
+import org.opentosca.util.concurrent.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * {@inheritDoc}
@@ -19,6 +25,9 @@ import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
  * service. It can in future be used to modify the incoming parameters to fit
  * another backend interface/implementation
  * 
+ * Concurrent lookups of the endpoint of the same ImplementationArtifact are
+ * coalesced into one query of the Internal Endpoint service.
+ * 
  * @see ICoreInternalEndpointService
  * 
  * @author Matthias Fetzer - fetzerms@studi.informatik.uni-stuttgart.de
@@ -26,9 +35,16 @@ import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
  */
 public class CoreEndpointServiceImpl implements ICoreEndpointService {
 	
+	private final static Logger LOG = LoggerFactory.getLogger(CoreEndpointServiceImpl.class);
+	
 	// Internal Endpoint service.
 	private ICoreInternalEndpointService endpointService;
 	
+	// Lookups of IA endpoints in progress by CSARID, NodeTypeImplementation
+	// and IA name.
+	private final SingleFlight<List<Object>, WSDLEndpoint> iaEndpointLookups = new SingleFlight<List<Object>, WSDLEndpoint>("IA endpoint lookups");
+	private final SingleFlight<List<Object>, List<WSDLEndpoint>> iaReplicaLookups = new SingleFlight<List<Object>, List<WSDLEndpoint>>("IA replica endpoint lookups");
+	
 	
 	public void bind(ICoreInternalEndpointService serv) {
 		this.endpointService = serv;
@@ -120,8 +136,36 @@ public class CoreEndpointServiceImpl implements ICoreEndpointService {
 	}
 	
 	@Override
-	public WSDLEndpoint getWSDLEndpointForIa(CSARID csarId, QName nodeTypeImpl, String iaName) {
-		return this.endpointService.getWSDLEndpointForIa(csarId, nodeTypeImpl, iaName);
+	public WSDLEndpoint getWSDLEndpointForIa(final CSARID csarId, final QName nodeTypeImpl, final String iaName) {
+		
+		WSDLEndpoint endpoint = this.iaEndpointLookups.execute(Arrays.<Object> asList(csarId, nodeTypeImpl, iaName), new Callable<WSDLEndpoint>() {
+			
+			@Override
+			public WSDLEndpoint call() {
+				return CoreEndpointServiceImpl.this.endpointService.getWSDLEndpointForIa(csarId, nodeTypeImpl, iaName);
+			}
+		});
+		
+		CoreEndpointServiceImpl.LOG.debug("{}", this.iaEndpointLookups);
+		
+		return endpoint;
+	}
+	
+	@Override
+	public List<WSDLEndpoint> getWSDLEndpointsForIa(final CSARID csarId, final QName nodeTypeImpl, final String iaName) {
+		
+		List<WSDLEndpoint> endpoints = this.iaReplicaLookups.execute(Arrays.<Object> asList(csarId, nodeTypeImpl, iaName), new Callable<List<WSDLEndpoint>>() {
+			
+			@Override
+			public List<WSDLEndpoint> call() {
+				return CoreEndpointServiceImpl.this.endpointService.getWSDLEndpointsForIa(csarId, nodeTypeImpl, iaName);
+			}
+		});
+		
+		CoreEndpointServiceImpl.LOG.debug("{}", this.iaReplicaLookups);
+		
+		// the list may be shared with concurrent lookups
+		return new ArrayList<WSDLEndpoint>(endpoints);
 	}
 	
 	@Override
@@ -105,6 +105,20 @@ public interface ICoreDeploymentTrackerService {
 	 */
 	public boolean storePlanDeploymentInfo(CSARID csarID, String planRelPath, PlanDeploymentState planDeploymentState);
 	
+	/**
+	 * Stores the fingerprint of the deployed package of a Plan, which
+	 * identifies Plans with identical packages.
+	 * 
+	 * @param csarID that uniquely identifies a CSAR file
+	 * @param planRelPath - relative file path where the Plan is located inside
+	 *            the CSAR file
+	 * @param fingerprint of the deployed plan package
+	 * @return <code>true</code> if storing was successful, otherwise
+	 *         <code>false</code> (e.g. no deployment information is stored for
+	 *         the Plan)
+	 */
+	public boolean storePlanFingerprint(CSARID csarID, String planRelPath, String fingerprint);
+	
 	/**
 	 * @param csarID that uniquely identifies a CSAR file
 	 * @param planRelPath - relative file path where the Plan is located inside
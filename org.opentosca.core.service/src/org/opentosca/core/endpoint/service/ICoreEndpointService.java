@@ -57,6 +57,11 @@ public interface ICoreEndpointService {
 	 */
 	public WSDLEndpoint getWSDLEndpointForIa(CSARID csarId, QName nodeTypeImpl, String iaName);
 	
+	/**
+	 * @see ICoreInternalEndpointService#getWSDLEndpointsForIa
+	 */
+	public List<WSDLEndpoint> getWSDLEndpointsForIa(CSARID csarId, QName nodeTypeImpl, String iaName);
+	
 	/**
 	 * @see ICoreInternalEndpointService#getWSDLEndpointsForCSARID
 	 */
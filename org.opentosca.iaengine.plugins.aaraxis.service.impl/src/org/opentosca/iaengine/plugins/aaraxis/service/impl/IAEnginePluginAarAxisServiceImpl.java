@@ -3,8 +3,7 @@ package org.opentosca.iaengine.plugins.aaraxis.service.impl;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -15,6 +14,7 @@ import java.util.Set;
 
 import javax.xml.namespace.QName;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -25,6 +25,7 @@ import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.opentosca.core.model.artifact.AbstractArtifact;
 import org.opentosca.core.model.artifact.file.AbstractFile;
 import org.opentosca.core.model.csar.id.CSARID;
@@ -92,8 +93,15 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 	
 	static final private Logger LOG = LoggerFactory.getLogger(IAEnginePluginAarAxisServiceImpl.class);
 	
+	static final private String READINESS_TIMEOUT = Messages.AarAxisIAEnginePlugin_readinessTimeout;
+	static final private String READINESS_INITIAL_DELAY = Messages.AarAxisIAEnginePlugin_readinessInitialDelay;
+	static final private String READINESS_MAX_DELAY = Messages.AarAxisIAEnginePlugin_readinessMaxDelay;
+	
 	private IHTTPService httpService;
 	
+	// cookies of the session of the Axis2 administration
+	private List<Cookie> sessionCookies = null;
+	
 	
 	@Override
 	/**
@@ -159,17 +167,27 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 				
 				// Create POST request with needed cookies and AAR-File for
 				// deployment.
-				List<Cookie> cookies = this.getCookies();
 				MultipartEntity uploadEntity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
 				uploadEntity.addPart("filename", new FileBody(aarFile.toFile()));
 				String url = IAEnginePluginAarAxisServiceImpl.URL + "/axis2-admin/upload";
+				
+				List<Cookie> cookies = this.getCookies();
 				HttpResponse response = this.httpService.Post(url, uploadEntity, cookies);
+				String content = EntityUtils.toString(response.getEntity());
+				
+				// the session may have expired since the last deployment
+				if (this.isLoginPage(response, content)) {
+					IAEnginePluginAarAxisServiceImpl.LOG.debug("Axis2 session expired. Logging in again...");
+					this.invalidateSession(cookies);
+					response = this.httpService.Post(url, uploadEntity, this.getCookies());
+					EntityUtils.consume(response.getEntity());
+				}
 				
 				IAEnginePluginAarAxisServiceImpl.LOG.debug("Axis2 uploadresponse: " + response.getStatusLine().toString());
 				IAEnginePluginAarAxisServiceImpl.LOG.info("Deploying finished.");
 				IAEnginePluginAarAxisServiceImpl.LOG.info("Checking if {} was deployed successfully...", fileName);
 				
-				if (this.isDeployed(fileName)) {
+				if (this.waitUntilDeployed(fileName)) {
 					
 					IAEnginePluginAarAxisServiceImpl.LOG.info("{} was deployed successfully.", fileName);
 					
@@ -354,22 +372,28 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 	}
 	
 	/**
-	 * Handles the cookies needed for login to Axis2.
+	 * Returns the cookies of the session of the Axis2 administration. The
+	 * session is shared by all deployments and only created if there is none
+	 * yet.
 	 * 
 	 * @return cookies needed for accessing Axis2.
 	 */
-	private List<Cookie> getCookies() {
+	private synchronized List<Cookie> getCookies() {
+		
+		if (this.sessionCookies != null) {
+			return this.sessionCookies;
+		}
 		
 		List<NameValuePair> nvps = new ArrayList<NameValuePair>(2);
 		nvps.add(new BasicNameValuePair("userName", IAEnginePluginAarAxisServiceImpl.USERNAME));
 		nvps.add(new BasicNameValuePair("password", IAEnginePluginAarAxisServiceImpl.PASSWORD));
 		
-		List<Cookie> cookies = null;
-		
 		try {
 			HttpEntity loginEntity = new UrlEncodedFormEntity(nvps);
 			String url = IAEnginePluginAarAxisServiceImpl.URL + "/axis2-admin/login";
-			cookies = this.httpService.PostCookies(url, loginEntity);
+			this.sessionCookies = this.httpService.PostCookies(url, loginEntity);
+			
+			IAEnginePluginAarAxisServiceImpl.LOG.debug("Logged in to Axis2.");
 			
 		} catch (ClientProtocolException e) {
 			IAEnginePluginAarAxisServiceImpl.LOG.error("ClientProtocolException occured: ", e);
@@ -377,42 +401,123 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 			IAEnginePluginAarAxisServiceImpl.LOG.error("IOException occured: ", e);
 		}
 		
-		return cookies;
+		return this.sessionCookies;
 	}
 	
 	/**
-	 * Checks if a WebService with given name is deployed and running.
+	 * Discards the session, thus the next request logs in again.
+	 * 
+	 * @param cookies of the expired session.
+	 */
+	private synchronized void invalidateSession(List<Cookie> cookies) {
+		// another deployment may have created a new session already
+		if (this.sessionCookies == cookies) {
+			this.sessionCookies = null;
+		}
+	}
+	
+	/**
+	 * @return if Axis2 answered with its login page instead of the requested
+	 *         page, i.e. the session expired.
+	 */
+	private boolean isLoginPage(HttpResponse response, String content) {
+		
+		if ((response.getStatusLine().getStatusCode() / 100) == 3) {
+			Header location = response.getFirstHeader("Location");
+			return (location != null) && location.getValue().contains("login");
+		}
+		return (content != null) && content.contains("name=\"userName\"");
+	}
+	
+	/**
+	 * Waits until a WebService with given name is deployed and running. Axis2
+	 * deploys the uploaded AAR-File asynchronously, thus the WSDL of the
+	 * WebService and the service list of the Axis2 administration are polled
+	 * with exponentially growing delays until the WebService is active, Axis2
+	 * reports a fault or the configured deadline is reached.
 	 * 
 	 * @param fileName of WebService to check.
 	 * @return if WebService is deployed and running.
 	 * 
 	 */
-	private boolean isDeployed(String fileName) {
+	private boolean waitUntilDeployed(String fileName) {
 		
-		boolean isDeployed = false;
+		long deadline = System.currentTimeMillis() + Long.parseLong(IAEnginePluginAarAxisServiceImpl.READINESS_TIMEOUT);
+		long delay = Long.parseLong(IAEnginePluginAarAxisServiceImpl.READINESS_INITIAL_DELAY);
+		long maxDelay = Long.parseLong(IAEnginePluginAarAxisServiceImpl.READINESS_MAX_DELAY);
+		int attempts = 0;
 		
 		try {
-			// "Needed" for checking if WS was un/deployed successfully because
-			// Axis2 needs a moment to update WSs.
-			Thread.sleep(10000);
 			
+			while (true) {
+				
+				Thread.sleep(Math.max(0, Math.min(delay, deadline - System.currentTimeMillis())));
+				attempts++;
+				
+				Readiness readiness = this.getReadiness(fileName);
+				
+				if (readiness != Readiness.PENDING) {
+					IAEnginePluginAarAxisServiceImpl.LOG.debug("Readiness of WebService {} after {} checks: {}", fileName, attempts, readiness);
+					return readiness == Readiness.ACTIVE;
+				}
+				
+				if (System.currentTimeMillis() >= deadline) {
+					IAEnginePluginAarAxisServiceImpl.LOG.warn("WebService {} isn't active after {} checks. Giving up.", fileName, attempts);
+					return false;
+				}
+				
+				delay = Math.min(delay * 2, maxDelay);
+			}
+			
+		} catch (InterruptedException e) {
+			IAEnginePluginAarAxisServiceImpl.LOG.error("InterruptedException occured:", e);
+			Thread.currentThread().interrupt();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Checks once if a WebService with given name is deployed and running.
+	 * 
+	 * @param fileName of WebService to check.
+	 * @return the state of the WebService.
+	 */
+	private Readiness getReadiness(String fileName) {
+		
+		try {
+			
+			// the WSDL is available as soon as the WebService is active
+			HttpResponse response = this.httpService.Get(IAEnginePluginAarAxisServiceImpl.URL + "/services/" + fileName + "?wsdl");
+			String wsdl = EntityUtils.toString(response.getEntity());
+			
+			if ((response.getStatusLine().getStatusCode() == 200) && wsdl.contains("definitions")) {
+				return Readiness.ACTIVE;
+			}
+			
+			// otherwise the service list tells about deployment faults
 			List<Cookie> cookies = this.getCookies();
 			String url = IAEnginePluginAarAxisServiceImpl.URL + "/axis2-admin/ListSingleService?serviceName=" + fileName;
-			HttpResponse response = this.httpService.Get(url, cookies);
+			response = this.httpService.Get(url, cookies);
+			String page = EntityUtils.toString(response.getEntity());
+			
+			if (this.isLoginPage(response, page)) {
+				this.invalidateSession(cookies);
+				return Readiness.PENDING;
+			}
 			
-			HttpEntity entity = response.getEntity();
-			InputStream is = entity.getContent();
-			BufferedReader br = new BufferedReader(new InputStreamReader(is));
+			BufferedReader br = new BufferedReader(new StringReader(page));
 			
 			String str;
 			// Parse html if WebService is marked as "Active" to check if iit is
 			// running.
 			while ((str = br.readLine()) != null) {
 				if (str.contains("<i><font color=\"blue\">Service Status : Active</font></i><br>")) {
-					isDeployed = true;
+					return Readiness.ACTIVE;
 				}
 				if (str.contains("<font color=\"red\">") && !str.contains("No services found in this location")) {
 					IAEnginePluginAarAxisServiceImpl.LOG.warn("The WebService {} has deployment faults: {}", fileName, str);
+					return Readiness.FAULTY;
 				}
 			}
 			
@@ -420,11 +525,9 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 			IAEnginePluginAarAxisServiceImpl.LOG.error("ClientProtocolException occured:", e);
 		} catch (IOException e) {
 			IAEnginePluginAarAxisServiceImpl.LOG.error("IOException occured:", e);
-		} catch (InterruptedException e) {
-			IAEnginePluginAarAxisServiceImpl.LOG.error("InterruptedException occured:", e);
 		}
 		
-		return isDeployed;
+		return Readiness.PENDING;
 	}
 	
 	@Override
@@ -485,4 +588,11 @@ public class IAEnginePluginAarAxisServiceImpl implements IIAEnginePluginService
 		return false;
 	}
 	
+	
+	/**
+	 * State of a deployed WebService.
+	 */
+	private enum Readiness {
+		PENDING, ACTIVE, FAULTY
+	}
 }
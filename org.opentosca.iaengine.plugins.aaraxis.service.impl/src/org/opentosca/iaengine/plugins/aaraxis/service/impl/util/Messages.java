@@ -21,6 +21,9 @@ public class Messages extends NLS {
 	public static String AarAxisIAEnginePlugin_url;
 	public static String AarAxisIAEnginePlugin_types;
 	public static String AarAxisIAEnginePlugin_capabilities;
+	public static String AarAxisIAEnginePlugin_readinessTimeout;
+	public static String AarAxisIAEnginePlugin_readinessInitialDelay;
+	public static String AarAxisIAEnginePlugin_readinessMaxDelay;
 	
 	static {
 		// initialize resource bundle
@@ -0,0 +1,337 @@
+package org.opentosca.iaengine.plugins.osgi.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import javax.xml.namespace.QName;
+
+import org.opentosca.core.model.artifact.AbstractArtifact;
+import org.opentosca.core.model.artifact.file.AbstractFile;
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.exceptions.SystemException;
+import org.opentosca.iaengine.plugins.osgi.service.impl.util.Messages;
+import org.opentosca.iaengine.plugins.service.IIAEnginePluginService;
+import org.opentosca.model.tosca.TPropertyConstraint;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * IAEnginePlugin for ImplementationArtifacts packaged as OSGi bundles.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The bundle contained in the ImplementationArtifact is installed and started
+ * in the container itself. It has to register an
+ * <tt>org.opentosca.siengine.plugins.osgi.service.IOsgiImplementationArtifact</tt>
+ * service, which is then invoked in-memory by the OSGi-SIEngine-Plug-in. The
+ * returned endpoint has the form <tt>osgi:&lt;symbolic name&gt;</tt>.<br>
+ * <br>
+ * 
+ * A bundle with the same symbolic name and version that is already installed
+ * is reused, also if it was installed for another CSAR. Therefore the CSARs
+ * deploying a bundle are counted. On undeployment the reference of the CSAR is
+ * released and the bundle is only uninstalled if no other CSAR references it
+ * anymore. Bundles that weren't installed by this plug-in are never
+ * uninstalled.
+ * 
+ * 
+ */
+public class IAEnginePluginOsgiServiceImpl implements IIAEnginePluginService {
+	
+	// In messages.properties defined plugin-type and capabilities .
+	static final private String TYPES = Messages.OsgiIAEnginePlugin_types;
+	static final private String CAPABILITIES = Messages.OsgiIAEnginePlugin_capabilities;
+	
+	static final private String ENDPOINT_SCHEME = "osgi";
+	static final private String LOCATION_PREFIX = "opentosca:ia:";
+	
+	static final private Logger LOG = LoggerFactory.getLogger(IAEnginePluginOsgiServiceImpl.class);
+	
+	// CSARs referencing the installed bundles, by bundle id. A CSAR is listed
+	// once per deployed IA.
+	private final Map<Long, List<CSARID>> references = new HashMap<Long, List<CSARID>>();
+	
+	
+	@Override
+	public synchronized URI deployImplementationArtifact(CSARID csarID, QName artifactType, Document artifactContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures) {
+		
+		BundleContext context = Activator.getContext();
+		
+		if (context == null) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The OSGi-IAEngine-Plug-in isn't started.");
+			return null;
+		}
+		
+		AbstractFile jar = this.getJar(artifacts);
+		
+		if (jar == null) {
+			IAEnginePluginOsgiServiceImpl.LOG.warn("No deployable bundle found.");
+			return null;
+		}
+		
+		try {
+			
+			Manifest manifest = this.getManifest(jar);
+			String symbolicName = manifest != null ? manifest.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME) : null;
+			
+			if (symbolicName == null) {
+				IAEnginePluginOsgiServiceImpl.LOG.warn("The file {} is no OSGi bundle.", jar.getName());
+				return null;
+			}
+			
+			// strip directives like singleton
+			symbolicName = symbolicName.split(";")[0].trim();
+			Version version = Version.parseVersion(manifest.getMainAttributes().getValue(Constants.BUNDLE_VERSION));
+			
+			Bundle bundle = this.getInstalledBundle(context, symbolicName, version);
+			
+			if (bundle == null) {
+				
+				String location = IAEnginePluginOsgiServiceImpl.getLocation(csarID, jar.getName());
+				
+				IAEnginePluginOsgiServiceImpl.LOG.info("Installing bundle {} {} from {} ...", symbolicName, version, location);
+				
+				InputStream in = jar.getFileAsInputStream();
+				try {
+					bundle = context.installBundle(location, in);
+				} finally {
+					in.close();
+				}
+			} else {
+				IAEnginePluginOsgiServiceImpl.LOG.info("Bundle {} {} is already installed.", symbolicName, version);
+			}
+			
+			if (bundle.getState() != Bundle.ACTIVE) {
+				bundle.start();
+			}
+			
+			URI endpoint = new URI(IAEnginePluginOsgiServiceImpl.ENDPOINT_SCHEME, symbolicName, null);
+			
+			List<CSARID> csarIDs = this.references.get(bundle.getBundleId());
+			if (csarIDs == null) {
+				csarIDs = new ArrayList<CSARID>();
+				this.references.put(bundle.getBundleId(), csarIDs);
+				
+				// a bundle installed before the container was restarted is
+				// still referenced by the CSAR it was installed for
+				CSARID owner = IAEnginePluginOsgiServiceImpl.getOwner(bundle);
+				if ((owner != null) && !owner.equals(csarID)) {
+					csarIDs.add(owner);
+				}
+			}
+			csarIDs.add(csarID);
+			IAEnginePluginOsgiServiceImpl.LOG.debug("Bundle {} is referenced by {}.", symbolicName, csarIDs);
+			
+			return endpoint;
+			
+		} catch (SystemException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The bundle {} can't be read.", jar.getName(), e);
+		} catch (IOException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The bundle {} can't be read.", jar.getName(), e);
+		} catch (BundleException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The bundle {} can't be installed or started.", jar.getName(), e);
+		} catch (IllegalArgumentException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The bundle {} has an invalid version.", jar.getName(), e);
+		} catch (URISyntaxException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The endpoint of bundle {} is invalid.", jar.getName(), e);
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public synchronized boolean undeployImplementationArtifact(String iaName, QName nodeTypeImpl, CSARID csarID, URI path) {
+		
+		BundleContext context = Activator.getContext();
+		
+		if ((context == null) || (path == null) || !IAEnginePluginOsgiServiceImpl.ENDPOINT_SCHEME.equals(path.getScheme())) {
+			return false;
+		}
+		
+		String symbolicName = path.getSchemeSpecificPart();
+		String locationPrefix = IAEnginePluginOsgiServiceImpl.getLocation(csarID, "");
+		
+		// forget bundles that were uninstalled in the meantime
+		this.references.keySet().retainAll(this.getInstalledBundleIds(context));
+		
+		for (Bundle bundle : context.getBundles()) {
+			
+			if (!symbolicName.equals(bundle.getSymbolicName())) {
+				continue;
+			}
+			
+			List<CSARID> csarIDs = this.references.get(bundle.getBundleId());
+			
+			if ((csarIDs != null) && csarIDs.remove(csarID)) {
+				
+				if (!csarIDs.isEmpty()) {
+					IAEnginePluginOsgiServiceImpl.LOG.info("Bundle {} of IA {} is still referenced by {}, thus it isn't uninstalled.", symbolicName, iaName, csarIDs);
+					return true;
+				}
+				
+				if (this.uninstall(bundle, iaName)) {
+					this.references.remove(bundle.getBundleId());
+					return true;
+				}
+				
+				// keep the reference, thus the undeployment can be retried
+				csarIDs.add(csarID);
+				return false;
+			}
+			
+			// references are unknown, e.g. after a restart of the container
+			if ((csarIDs == null) && bundle.getLocation().startsWith(locationPrefix)) {
+				return this.uninstall(bundle, iaName);
+			}
+		}
+		
+		// nothing (left) to uninstall for this CSAR
+		IAEnginePluginOsgiServiceImpl.LOG.info("No bundle {} of IA {} is installed for CSAR {}.", symbolicName, iaName, csarID);
+		return true;
+	}
+	
+	@Override
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<String> getSupportedTypes() {
+		IAEnginePluginOsgiServiceImpl.LOG.debug("Getting Types: {}.", IAEnginePluginOsgiServiceImpl.TYPES);
+		List<String> types = new ArrayList<String>();
+		
+		for (String type : IAEnginePluginOsgiServiceImpl.TYPES.split("[,;]")) {
+			types.add(type.trim());
+		}
+		return types;
+	}
+	
+	@Override
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<String> getCapabilties() {
+		IAEnginePluginOsgiServiceImpl.LOG.debug("Getting Plugin-Capabilities: {}.", IAEnginePluginOsgiServiceImpl.CAPABILITIES);
+		List<String> capabilities = new ArrayList<String>();
+		
+		for (String capability : IAEnginePluginOsgiServiceImpl.CAPABILITIES.split("[,;]")) {
+			capabilities.add(capability.trim());
+		}
+		return capabilities;
+	}
+	
+	/**
+	 * Checks if the artifacts contain a JAR-File and returns it if so.
+	 * 
+	 * @param artifacts to check.
+	 * @return JAR-File if available. Otherwise <tt>null</tt>.
+	 */
+	private AbstractFile getJar(List<AbstractArtifact> artifacts) {
+		
+		if (artifacts != null) {
+			for (AbstractArtifact artifact : artifacts) {
+				for (AbstractFile file : artifact.getFilesRecursively()) {
+					if (file.getName().toLowerCase().endsWith(".jar")) {
+						IAEnginePluginOsgiServiceImpl.LOG.info("Deployable bundle with name {} found.", file.getName());
+						return file;
+					}
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the manifest of the JAR-File or <tt>null</tt> if it has none.
+	 */
+	private Manifest getManifest(AbstractFile jar) throws SystemException, IOException {
+		
+		JarInputStream in = new JarInputStream(jar.getFileAsInputStream());
+		try {
+			return in.getManifest();
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * @return the installed bundle with the given symbolic name and version or
+	 *         <tt>null</tt> if there is none.
+	 */
+	private Bundle getInstalledBundle(BundleContext context, String symbolicName, Version version) {
+		
+		for (Bundle bundle : context.getBundles()) {
+			if (symbolicName.equals(bundle.getSymbolicName()) && version.equals(bundle.getVersion())) {
+				return bundle;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Uninstalls the bundle, unless it wasn't installed by this plug-in.
+	 * 
+	 * @return <tt>true</tt> if the bundle is uninstalled or is kept as it
+	 *         doesn't belong to this plug-in. Otherwise <tt>false</tt>.
+	 */
+	private boolean uninstall(Bundle bundle, String iaName) {
+		
+		if (!bundle.getLocation().startsWith(IAEnginePluginOsgiServiceImpl.LOCATION_PREFIX)) {
+			IAEnginePluginOsgiServiceImpl.LOG.info("Bundle {} wasn't installed for an IA, thus it isn't uninstalled.", bundle.getSymbolicName());
+			return true;
+		}
+		
+		try {
+			bundle.uninstall();
+			IAEnginePluginOsgiServiceImpl.LOG.info("Bundle {} of IA {} uninstalled.", bundle.getSymbolicName(), iaName);
+			return true;
+		} catch (BundleException e) {
+			IAEnginePluginOsgiServiceImpl.LOG.error("The bundle {} can't be uninstalled.", bundle.getSymbolicName(), e);
+			return false;
+		}
+	}
+	
+	private List<Long> getInstalledBundleIds(BundleContext context) {
+		
+		List<Long> ids = new ArrayList<Long>();
+		
+		for (Bundle bundle : context.getBundles()) {
+			ids.add(bundle.getBundleId());
+		}
+		return ids;
+	}
+	
+	private static String getLocation(CSARID csarID, String fileName) {
+		return IAEnginePluginOsgiServiceImpl.LOCATION_PREFIX + csarID + ":" + fileName;
+	}
+	
+	/**
+	 * @return the CSAR the bundle was installed for or <tt>null</tt> if it
+	 *         wasn't installed by this plug-in.
+	 */
+	private static CSARID getOwner(Bundle bundle) {
+		
+		String location = bundle.getLocation();
+		int end = location.lastIndexOf(':');
+		
+		if (!location.startsWith(IAEnginePluginOsgiServiceImpl.LOCATION_PREFIX) || (end < IAEnginePluginOsgiServiceImpl.LOCATION_PREFIX.length())) {
+			return null;
+		}
+		return new CSARID(location.substring(IAEnginePluginOsgiServiceImpl.LOCATION_PREFIX.length(), end));
+	}
+	
+}
@@ -0,0 +1,9 @@
+/**
+ * This package contains a implementation of the IIAEnginePluginService whose
+ * task it is to install ImplementationArtifacts packaged as OSGi bundles into
+ * the container.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.iaengine.plugins.osgi.service.impl;
@@ -0,0 +1,46 @@
+package org.opentosca.iaengine.plugins.service;
+
+import java.net.URI;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.opentosca.core.model.artifact.AbstractArtifact;
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.model.tosca.TPropertyConstraint;
+import org.w3c.dom.Document;
+
+/**
+ * Interface for IAEnginePlugins that can deploy several replicas of an
+ * ImplementationArtifact.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each replica has its own endpoint and is undeployed separately with
+ * {@link #undeployImplementationArtifact(String, QName, CSARID, URI)}.
+ * 
+ * 
+ */
+public interface IReplicatingIAEnginePluginService extends IIAEnginePluginService {
+	
+	/**
+	 * Deploys replicas of an ImplementationArtifact.
+	 * 
+	 * @param csarID
+	 * @param artifactType
+	 * @param artifactContent
+	 * @param properties
+	 * @param propertyConstraints
+	 * @param artifacts
+	 * @param requiredFeatures
+	 * @param replicas number of replicas to deploy.
+	 * 
+	 * @return endpoints of the deployed replicas. May contain less than
+	 *         <tt>replicas</tt> endpoints if not all of them could be
+	 *         deployed, empty if deployment failed.
+	 */
+	public List<URI> deployImplementationArtifactReplicas(CSARID csarID, QName artifactType, Document artifactContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures, int replicas);
+	
+}
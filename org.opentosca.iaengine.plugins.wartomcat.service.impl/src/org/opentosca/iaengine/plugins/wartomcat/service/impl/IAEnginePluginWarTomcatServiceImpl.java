@@ -2,30 +2,26 @@ package org.opentosca.iaengine.plugins.wartomcat.service.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.FileBody;
 import org.opentosca.core.model.artifact.AbstractArtifact;
 import org.opentosca.core.model.artifact.file.AbstractFile;
 import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.exceptions.SystemException;
-import org.opentosca.iaengine.plugins.service.IIAEnginePluginService;
+import org.opentosca.iaengine.plugins.service.IReplicatingIAEnginePluginService;
+import org.opentosca.iaengine.plugins.wartomcat.service.impl.manager.ManagerClient;
+import org.opentosca.iaengine.plugins.wartomcat.service.impl.manager.ManagerResponse;
 import org.opentosca.iaengine.plugins.wartomcat.service.impl.util.Messages;
 import org.opentosca.model.tosca.TImplementationArtifact;
 import org.opentosca.model.tosca.TPropertyConstraint;
-import org.opentosca.util.http.service.IHTTPService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -44,23 +40,33 @@ import org.w3c.dom.NodeList;
  * <tt>{@literal <}namespace:Path{@literal >}...
  * {@literal <}/namespace:Path{@literal >}</tt>, that identifies the WAR-File
  * that should be deployed, gets the file from the CoreFileService and tries to
- * deploy it via a Tomcat-manager HTTP request. In case of
+ * deploy it via a Tomcat-manager HTTP request. The WAR-File is streamed to the
+ * manager over a pool of persistent connections, thus several WAR-Files can be
+ * deployed concurrently. In case of
  * ImplementationArtifacts with an any-element like
  * <tt>{@literal <}namespace:ServiceEndpoint{@literal >}...
  * {@literal <}/namespace:ServiceEndpoint{@literal >}</tt> (particularly used
  * with WSDL IAs) the plugin also adds the content of the any-element to the
  * previously generated endpoint.<br>
  * <br>
+ * Replicas of a WAR-File are deployed on the Tomcats configured as replica
+ * URLs in addition to the local one, at most one replica per Tomcat.<br>
+ * <br>
+ * A context path is never used by two deployments at the same time. A
+ * deployment shared by several CSARs stays at the path of the CSAR that
+ * deployed it, also if that CSAR is deleted and uploaded again. Thus the new
+ * deployment gets a numbered path instead of replacing the shared one.<br>
+ * <br>
  * The undeployment process works similar.
  * 
  * 
- * @see IHTTPService
+ * @see ManagerClient
  * 
  * @author Michael Zimmermann - zimmerml@studi.informatik.uni-stuttgart.de
  * 
  * 
  */
-public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginService {
+public class IAEnginePluginWarTomcatServiceImpl implements IReplicatingIAEnginePluginService {
 	
 	// Hardcoded location of Tomcat, username & password. Defined in
 	// messages.properties.
@@ -70,11 +76,37 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 	static final private String URL = Messages.TomcatIAEnginePlugin_url;
 	static final private String TYPES = Messages.TomcatIAEnginePlugin_types;
 	static final private String CAPABILITIES = Messages.TomcatIAEnginePlugin_capabilities;
+	static final private String MAX_CONNECTIONS = Messages.TomcatIAEnginePlugin_maxConnections;
+	static final private String REPLICA_URLS = Messages.TomcatIAEnginePlugin_replicaUrls;
 	
 	static final private Logger LOG = LoggerFactory.getLogger(IAEnginePluginWarTomcatServiceImpl.class);
 	
-	private IHTTPService httpService;
+	// URLs of the Tomcats, the first one is the local Tomcat
+	private final List<String> urls = new ArrayList<String>();
+	
+	// pooled connections to the managers of the Tomcats, shared by concurrent
+	// deployments
+	private final List<ManagerClient> managers = new ArrayList<ManagerClient>();
 	
+	// Tomcat URL and context path of the deployed WAR-Files
+	private final Set<String> deployedPaths = new HashSet<String>();
+	
+	
+	public IAEnginePluginWarTomcatServiceImpl() {
+		
+		this.urls.add(IAEnginePluginWarTomcatServiceImpl.URL);
+		
+		for (String url : IAEnginePluginWarTomcatServiceImpl.REPLICA_URLS.split(";")) {
+			url = url.trim();
+			if (!url.isEmpty() && !this.urls.contains(url)) {
+				this.urls.add(url);
+			}
+		}
+		
+		for (String url : this.urls) {
+			this.managers.add(new ManagerClient(url, IAEnginePluginWarTomcatServiceImpl.USERNAME, IAEnginePluginWarTomcatServiceImpl.PASSWORD, Integer.parseInt(IAEnginePluginWarTomcatServiceImpl.MAX_CONNECTIONS)));
+		}
+	}
 	
 	@Override
 	/**
@@ -83,7 +115,6 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 	public URI deployImplementationArtifact(CSARID csarID, QName artifactType, Document artifactContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures) {
 		
 		String endpoint = null;
-		String endpointSuffix = null;
 		AbstractFile warFile = null;
 		
 		IAEnginePluginWarTomcatServiceImpl.LOG.info("Searching for a deployable WAR-File...");
@@ -92,18 +123,7 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 		
 		// Check if a WAR-File was found.
 		if (warFile != null) {
-			endpoint = this.deploy(csarID, warFile);
-			
-			// Checks if a endpoint was set.
-			if (endpoint != null) {
-				
-				endpointSuffix = this.getEndpointSuffix(properties);
-				
-				// Create final endpoint.
-				endpoint = endpoint.concat(endpointSuffix);
-				IAEnginePluginWarTomcatServiceImpl.LOG.info("Complete endpoint of IA {}: {}", warFile.getName(), endpoint);
-			}
-			
+			endpoint = this.deploy(0, csarID, warFile, properties);
 		} else {
 			IAEnginePluginWarTomcatServiceImpl.LOG.warn("No deployable WAR-File found.");
 		}
@@ -111,88 +131,172 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 		return this.getURI(endpoint);
 	}
 	
+	@Override
 	/**
-	 * Deploys a WAR-File on Tomcat. As path on Tomcat the CSAR-ID with removed
-	 * special characters (except '-') and the name of the WAR-File (without
-	 * ".war") is used: <tt>[CSAR-ID]/[File-Name]</tt>
+	 * {@inheritDoc}
+	 */
+	public List<URI> deployImplementationArtifactReplicas(CSARID csarID, QName artifactType, Document artifactContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures, int replicas) {
+		
+		List<URI> endpoints = new ArrayList<URI>();
+		
+		IAEnginePluginWarTomcatServiceImpl.LOG.info("Searching for a deployable WAR-File...");
+		
+		AbstractFile warFile = this.getWar(artifacts);
+		
+		if (warFile == null) {
+			IAEnginePluginWarTomcatServiceImpl.LOG.warn("No deployable WAR-File found.");
+			return endpoints;
+		}
+		
+		if (replicas > this.urls.size()) {
+			IAEnginePluginWarTomcatServiceImpl.LOG.warn("{} replicas of {} requested, but only {} Tomcats are configured.", new Object[] {replicas, warFile.getName(), this.urls.size()});
+		}
+		
+		for (int server = 0; (server < this.urls.size()) && (endpoints.size() < replicas); server++) {
+			
+			URI endpoint = this.getURI(this.deploy(server, csarID, warFile, properties));
+			
+			if (endpoint != null) {
+				endpoints.add(endpoint);
+			}
+		}
+		
+		IAEnginePluginWarTomcatServiceImpl.LOG.info("{} of {} replicas of {} deployed.", new Object[] {endpoints.size(), replicas, warFile.getName()});
+		
+		return endpoints;
+	}
+	
+	/**
+	 * Deploys a WAR-File on a Tomcat. As path on Tomcat the CSAR-ID with
+	 * removed special characters (except '-') and the name of the WAR-File
+	 * (without ".war") is used: <tt>[CSAR-ID]/[File-Name]</tt>. If another
+	 * deployment still uses this path, a number is appended to the name:
+	 * <tt>[CSAR-ID]/[File-Name]-2</tt>
 	 * 
-	 * @param warFile WAR-File that should be deployed.
+	 * @param server index of the Tomcat to deploy on.
 	 * @param csarID for identifying the CSAR-File.
+	 * @param warFile WAR-File that should be deployed.
+	 * @param properties of the ImplementationArtifact, may contain an endpoint
+	 *            suffix.
 	 * @return if deploying was successful. If <tt>null</tt> is returned,
-	 *         deploying wasn't successful. Otherwise the endpoint will be
-	 *         returned.
+	 *         deploying wasn't successful. Otherwise the complete endpoint
+	 *         will be returned.
 	 * 
 	 */
-	private String deploy(CSARID csarID, AbstractFile warFile) {
+	private String deploy(int server, CSARID csarID, AbstractFile warFile, Document properties) {
 		
 		String endpoint = null;
 		String convertedQname = null;
 		String filePath = warFile.getPath();
 		String fileName = warFile.getName().replace(".war", "");
+		String url = this.urls.get(server);
+		String deployPath = null;
 		
-		if (this.isRunning()) {
+		if (this.isRunning(server)) {
 			
 			IAEnginePluginWarTomcatServiceImpl.LOG.debug("URI of file {}.war: {}", fileName, filePath);
 			
+			InputStream war = null;
+			
 			try {
 				// Needed, cause some characters are not correctly converted
 				// in URIs/URLs
 				convertedQname = this.getConvertedcsarID(csarID);
-				String deployPath = "/" + convertedQname + "/" + fileName;
-				
-				String uri = IAEnginePluginWarTomcatServiceImpl.URL + "/manager/text/deploy?update=true&path=" + deployPath;
+				deployPath = this.reservePath(url, "/" + convertedQname + "/" + fileName);
 				
-				IAEnginePluginWarTomcatServiceImpl.LOG.info("Tomcat command to deploy IA {}: {}", fileName, uri);
+				IAEnginePluginWarTomcatServiceImpl.LOG.info("Deploying {} at context path {} ...", fileName, deployPath);
 				
-				MultipartEntity uploadEntity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
-				uploadEntity.addPart(fileName, new FileBody(warFile.getFile().toFile()));
-				
-				IAEnginePluginWarTomcatServiceImpl.LOG.info("Deploying {} ...", fileName);
-				
-				HttpResponse httpResponse = this.httpService.Put(uri, uploadEntity, IAEnginePluginWarTomcatServiceImpl.USERNAME, IAEnginePluginWarTomcatServiceImpl.PASSWORD);
-				InputStream inputStream = httpResponse.getEntity().getContent();
-				String response = this.convertStreamToString(inputStream);
+				// streamed from the storage provider to Tomcat
+				war = warFile.getFileAsInputStream();
+				ManagerResponse response = this.managers.get(server).deploy(deployPath, war);
 				
 				IAEnginePluginWarTomcatServiceImpl.LOG.info("Tomcat response: {} ", response);
 				
 				// Check if WAR-File was deployed successfully.
-				if (response.contains("OK - Deployed application at context path " + deployPath)) {
+				if (response.isOK()) {
 					IAEnginePluginWarTomcatServiceImpl.LOG.info("{} was deployed successfully.", fileName);
 					
-					endpoint = IAEnginePluginWarTomcatServiceImpl.URL + deployPath;
+					endpoint = url + deployPath;
 					
 					IAEnginePluginWarTomcatServiceImpl.LOG.debug("Endpoint of {} : {}", fileName, endpoint);
 					
+					// Create final endpoint.
+					endpoint = endpoint.concat(this.getEndpointSuffix(properties));
+					IAEnginePluginWarTomcatServiceImpl.LOG.info("Complete endpoint of IA {}: {}", warFile.getName(), endpoint);
+					
 				} else {
-					IAEnginePluginWarTomcatServiceImpl.LOG.error("{} wasn't deployed successfully.", fileName);
+					IAEnginePluginWarTomcatServiceImpl.LOG.error("{} wasn't deployed successfully: {}", fileName, response.getMessage());
 				}
 				
-			} catch (UnsupportedEncodingException e) {
-				IAEnginePluginWarTomcatServiceImpl.LOG.error("UnsupportedEncodingException occured while deploying the WAR-File: {}!", fileName, e);
-			} catch (ClientProtocolException e) {
-				IAEnginePluginWarTomcatServiceImpl.LOG.error("ClientProtocolException occured while deploying the WAR-File: {}!", fileName, e);
 			} catch (IOException e) {
 				IAEnginePluginWarTomcatServiceImpl.LOG.error("IOException occured while deploying the WAR-File: {}!", fileName, e);
 			} catch (SystemException e) {
 				IAEnginePluginWarTomcatServiceImpl.LOG.error("SystemException occured while deploying the WAR-File: {}!", fileName, e);
+			} finally {
+				IOUtils.closeQuietly(war);
+				
+				if ((endpoint == null) && (deployPath != null)) {
+					this.releasePath(url, deployPath);
+				}
 			}
 			
 		} else {
-			IAEnginePluginWarTomcatServiceImpl.LOG.error("Tomcat isn't running or can't be accessed! Can't deploy {}!", fileName);
+			IAEnginePluginWarTomcatServiceImpl.LOG.error("Tomcat {} isn't running or can't be accessed! Can't deploy {}!", url, fileName);
 		}
 		
 		return endpoint;
 	}
 	
+	/**
+	 * Reserves the context path for a deployment. If the path is used by
+	 * another deployment, a number is appended to it.
+	 * 
+	 * @param url of the Tomcat.
+	 * @param path the preferred context path.
+	 * @return the reserved context path.
+	 */
+	private String reservePath(String url, String path) {
+		
+		synchronized (this.deployedPaths) {
+			
+			String reserved = path;
+			
+			for (int i = 2; !this.deployedPaths.add(url + reserved); i++) {
+				reserved = path + "-" + i;
+			}
+			
+			if (!reserved.equals(path)) {
+				IAEnginePluginWarTomcatServiceImpl.LOG.info("Context path {} is still used by another deployment, thus {} is used.", path, reserved);
+			}
+			return reserved;
+		}
+	}
+	
+	private void releasePath(String url, String path) {
+		
+		synchronized (this.deployedPaths) {
+			this.deployedPaths.remove(url + path);
+		}
+	}
+	
 	@Override
 	/**
 	 * {@inheritDoc}
 	 */
 	public boolean undeployImplementationArtifact(String iaName, QName nodeTypeImpl, CSARID csarID, URI path) {
 		
-		if (this.isRunning()) {
+		// the Tomcat the IA or replica was deployed on
+		int server = 0;
+		
+		for (int i = 0; i < this.urls.size(); i++) {
+			if (path.toString().startsWith(this.urls.get(i) + "/")) {
+				server = i;
+				break;
+			}
+		}
+		
+		if (this.isRunning(server)) {
 			
-			String command = null;
 			String convertedQname = null;
 			String pathString;
 			String tempPath;
@@ -203,7 +307,7 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 			// in URIs/URLs
 			convertedQname = this.getConvertedcsarID(csarID);
 			pathString = path.toString();
-			tempPath = pathString.replace(IAEnginePluginWarTomcatServiceImpl.URL + "/" + convertedQname + "/", "");
+			tempPath = pathString.replace(this.urls.get(server) + "/" + convertedQname + "/", "");
 			fileName = tempPath.substring(0, tempPath.indexOf("/"));
 			deployPath = "/" + convertedQname + "/" + fileName;
 			
@@ -212,27 +316,23 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 			IAEnginePluginWarTomcatServiceImpl.LOG.debug("Path without Tomcat url and converted CsarID: {}", tempPath);
 			IAEnginePluginWarTomcatServiceImpl.LOG.debug("Name of IA to undeploy: {}", fileName);
 			
-			// Tomcat command to undeploy a WAR-File.
-			command = IAEnginePluginWarTomcatServiceImpl.URL + "/manager/text/undeploy?path=" + deployPath;
-			
-			IAEnginePluginWarTomcatServiceImpl.LOG.debug("Tomcat command: {}", command);
 			IAEnginePluginWarTomcatServiceImpl.LOG.info("Undeploying {} ...", fileName);
 			
 			try {
 				
-				HttpResponse httpResponse = this.httpService.Get(command, IAEnginePluginWarTomcatServiceImpl.USERNAME, IAEnginePluginWarTomcatServiceImpl.PASSWORD);
-				String response = this.convertStreamToString(httpResponse.getEntity().getContent());
+				ManagerResponse response = this.managers.get(server).undeploy(deployPath);
 				
-				IAEnginePluginWarTomcatServiceImpl.LOG.info(response);
+				IAEnginePluginWarTomcatServiceImpl.LOG.info("Tomcat response: {} ", response);
 				
-				// Check if WAR-File was deployed successfully.
-				if (response.contains("OK - Undeployed application at context path " + deployPath)) {
+				// Check if WAR-File was undeployed successfully.
+				if (response.isOK()) {
 					IAEnginePluginWarTomcatServiceImpl.LOG.info("{} was undeployed successfully.", iaName);
 					
+					this.releasePath(this.urls.get(server), deployPath);
 					return true;
 					
 				} else {
-					IAEnginePluginWarTomcatServiceImpl.LOG.error("{} wasn't undeployed successfully", iaName);
+					IAEnginePluginWarTomcatServiceImpl.LOG.error("{} wasn't undeployed successfully: {}", iaName, response.getMessage());
 				}
 				
 			} catch (IOException e) {
@@ -387,61 +487,35 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 	
 	/**
 	 * 
+	 * @param server index of the Tomcat to check.
 	 * @return If Tomcat is running and can be accessed.
 	 */
-	private boolean isRunning() {
+	private boolean isRunning(int server) {
 		
 		boolean isRunning = false;
 		
-		// URL to get serverinfo from Tomcat.
-		String url = IAEnginePluginWarTomcatServiceImpl.URL + "/manager/text/serverinfo";
-		
-		IAEnginePluginWarTomcatServiceImpl.LOG.info("Checking if Tomcat is running on '" + IAEnginePluginWarTomcatServiceImpl.URL + "' and can be accessed...");
-		
-		// Execute the Tomcat command and get response message back. If no
-		// exception occurs, Tomcat is running.
-		HttpResponse httpResponse;
+		IAEnginePluginWarTomcatServiceImpl.LOG.info("Checking if Tomcat is running on '" + this.urls.get(server) + "' and can be accessed...");
 		
+		// Get the serverinfo from Tomcat. If it is returned, Tomcat is
+		// running.
 		try {
-			httpResponse = this.httpService.Get(url, IAEnginePluginWarTomcatServiceImpl.USERNAME, IAEnginePluginWarTomcatServiceImpl.PASSWORD);
 			
-			String response = this.convertStreamToString(httpResponse.getEntity().getContent());
+			ManagerResponse response = this.managers.get(server).getServerInfo();
 			
-			IAEnginePluginWarTomcatServiceImpl.LOG.debug(response);
+			IAEnginePluginWarTomcatServiceImpl.LOG.debug("{}", response);
 			
-			if (response.contains("OK - Server info")) {
+			if (response.isOK()) {
 				IAEnginePluginWarTomcatServiceImpl.LOG.info("Tomcat is running and can be accessed!");
 				isRunning = true;
 			}
 			
-		} catch (ClientProtocolException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			IAEnginePluginWarTomcatServiceImpl.LOG.warn("Tomcat can't be accessed.", e);
 		}
 		
 		return isRunning;
 	}
 	
-	/**
-	 * Converts incoming InputStream from TOmcat into a String.
-	 * 
-	 * @param inputStream
-	 * @return converted String
-	 */
-	private String convertStreamToString(InputStream inputStream) {
-		String theString = "";
-		try {
-			theString = IOUtils.toString(inputStream, "UTF-8");
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return theString;
-	}
-	
 	@Override
 	/**
 	 * {@inheritDoc}
@@ -471,26 +545,12 @@ public class IAEnginePluginWarTomcatServiceImpl implements IIAEnginePluginServic
 	}
 	
 	/**
-	 * Register IHTTPService.
-	 * 
-	 * @param service - A IHTTPService to register.
+	 * Closes the connections to Tomcat when the component is deactivated.
 	 */
-	public void bindHTTPService(IHTTPService httpService) {
-		if (httpService != null) {
-			this.httpService = httpService;
-			IAEnginePluginWarTomcatServiceImpl.LOG.debug("Register IHTTPService: {} registered.", httpService.toString());
-		} else {
-			IAEnginePluginWarTomcatServiceImpl.LOG.error("Register IHTTPService: Supplied parameter is null!");
+	protected void deactivate() {
+		for (ManagerClient manager : this.managers) {
+			manager.shutdown();
 		}
-	}
-	
-	/**
-	 * Unregister IHTTPService.
-	 * 
-	 * @param service - A IHTTPService to unregister.
-	 */
-	public void unbindHTTPService(IHTTPService httpService) {
-		this.httpService = null;
-		IAEnginePluginWarTomcatServiceImpl.LOG.debug("Unregister IHTTPService: {} unregistered.", httpService.toString());
+		IAEnginePluginWarTomcatServiceImpl.LOG.debug("Connections to Tomcat closed.");
 	}
 }
@@ -0,0 +1,153 @@
+package org.opentosca.iaengine.plugins.wartomcat.service.impl.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client of the text interface of a Tomcat manager.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The client keeps a pool of persistent connections to the manager, thus
+ * several WAR-Files can be deployed concurrently without opening a new
+ * connection for each command. WAR-Files are streamed to the manager while
+ * they are read, so they are never held in memory completely. As a streamed
+ * request can't be repeated, the credentials are sent preemptively instead of
+ * waiting for the authentication challenge of the manager.
+ * 
+ * 
+ */
+public class ManagerClient {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(ManagerClient.class);
+	
+	private final String url;
+	private final HttpHost host;
+	private final PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+	private final DefaultHttpClient client;
+	
+	
+	/**
+	 * @param url of the Tomcat, e.g. <tt>http://localhost:8080</tt>.
+	 * @param username of a user with the role <tt>manager-script</tt>.
+	 * @param password of the user.
+	 * @param maxConnections maximum number of concurrent connections to the
+	 *            manager.
+	 */
+	public ManagerClient(String url, String username, String password, int maxConnections) {
+		
+		this.url = url;
+		
+		URI uri = URI.create(url);
+		this.host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+		
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+		
+		this.client = new DefaultHttpClient(this.connectionManager);
+		this.client.getCredentialsProvider().setCredentials(new AuthScope(this.host.getHostName(), this.host.getPort()), new UsernamePasswordCredentials(username, password));
+		
+		// the manager rejects unauthorized uploads before they are sent
+		HttpProtocolParams.setUseExpectContinue(this.client.getParams(), true);
+	}
+	
+	/**
+	 * Deploys a WAR-File. An application already deployed at the path is
+	 * replaced.
+	 * 
+	 * @param path context path of the application.
+	 * @param war content of the WAR-File. It is not closed.
+	 * @return the response of the manager.
+	 * @throws IOException if the communication with the manager failed.
+	 */
+	public ManagerResponse deploy(String path, InputStream war) throws IOException {
+		
+		HttpPut put = new HttpPut(this.url + "/manager/text/deploy?update=true&path=" + URLEncoder.encode(path, "UTF-8"));
+		
+		// unknown length, thus the WAR-File is sent chunked
+		InputStreamEntity entity = new InputStreamEntity(war, -1, ContentType.APPLICATION_OCTET_STREAM);
+		entity.setChunked(true);
+		put.setEntity(entity);
+		
+		return this.execute(put);
+	}
+	
+	/**
+	 * Undeploys an application.
+	 * 
+	 * @param path context path of the application.
+	 * @return the response of the manager.
+	 * @throws IOException if the communication with the manager failed.
+	 */
+	public ManagerResponse undeploy(String path) throws IOException {
+		return this.execute(new HttpGet(this.url + "/manager/text/undeploy?path=" + URLEncoder.encode(path, "UTF-8")));
+	}
+	
+	/**
+	 * @return the server info of the Tomcat.
+	 * @throws IOException if the communication with the manager failed.
+	 */
+	public ManagerResponse getServerInfo() throws IOException {
+		return this.execute(new HttpGet(this.url + "/manager/text/serverinfo"));
+	}
+	
+	private ManagerResponse execute(HttpUriRequest request) throws IOException {
+		
+		AuthCache authCache = new BasicAuthCache();
+		authCache.put(this.host, new BasicScheme());
+		
+		HttpContext context = new BasicHttpContext();
+		context.setAttribute(ClientContext.AUTH_CACHE, authCache);
+		
+		ManagerClient.LOG.debug("Executing Tomcat manager command: {} {}", request.getMethod(), request.getURI());
+		
+		try {
+			
+			HttpResponse response = this.client.execute(this.host, request, context);
+			ManagerResponse managerResponse = ManagerResponse.parse(response);
+			
+			ManagerClient.LOG.debug("Tomcat manager response: {}", managerResponse);
+			
+			return managerResponse;
+			
+		} catch (IOException e) {
+			request.abort();
+			throw e;
+		} catch (RuntimeException e) {
+			request.abort();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Closes all connections to the manager.
+	 */
+	public void shutdown() {
+		this.connectionManager.shutdown();
+	}
+}
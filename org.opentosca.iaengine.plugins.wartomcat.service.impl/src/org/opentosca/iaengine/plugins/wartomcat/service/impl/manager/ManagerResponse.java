@@ -0,0 +1,135 @@
+package org.opentosca.iaengine.plugins.wartomcat.service.impl.manager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+
+/**
+ * Response of a command of the text interface of the Tomcat manager.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The first line of a response has the form <tt>OK - message</tt> or
+ * <tt>FAIL - message</tt>, further lines contain the output of the command
+ * (e.g. the server info).
+ * 
+ * 
+ */
+public class ManagerResponse {
+	
+	private static final String OK = "OK";
+	private static final String SEPARATOR = " - ";
+	
+	private final int statusCode;
+	private final String status;
+	private final String message;
+	private final List<String> output;
+	
+	
+	private ManagerResponse(int statusCode, String status, String message, List<String> output) {
+		this.statusCode = statusCode;
+		this.status = status;
+		this.message = message;
+		this.output = output;
+	}
+	
+	/**
+	 * Reads and parses a response. Its content is consumed completely, thus
+	 * the connection can be reused afterwards.
+	 * 
+	 * @param response of the Tomcat manager.
+	 * @return the parsed response.
+	 * @throws IOException if the response couldn't be read.
+	 */
+	public static ManagerResponse parse(HttpResponse response) throws IOException {
+		
+		int statusCode = response.getStatusLine().getStatusCode();
+		String status = null;
+		String message = response.getStatusLine().getReasonPhrase();
+		List<String> output = new ArrayList<String>();
+		
+		HttpEntity entity = response.getEntity();
+		
+		if (entity != null) {
+			
+			BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
+			
+			try {
+				
+				String line = reader.readLine();
+				
+				if (line != null) {
+					
+					int separator = line.indexOf(ManagerResponse.SEPARATOR);
+					
+					if (separator > 0) {
+						status = line.substring(0, separator).trim();
+						message = line.substring(separator + ManagerResponse.SEPARATOR.length()).trim();
+					} else {
+						message = line.trim();
+					}
+				}
+				
+				while ((line = reader.readLine()) != null) {
+					output.add(line);
+				}
+				
+			} finally {
+				reader.close();
+			}
+		}
+		
+		return new ManagerResponse(statusCode, status, message, Collections.unmodifiableList(output));
+	}
+	
+	/**
+	 * @return if the HTTP request succeeded and the manager reported
+	 *         <tt>OK</tt>.
+	 */
+	public boolean isOK() {
+		return (this.statusCode >= 200) && (this.statusCode < 300) && ManagerResponse.OK.equals(this.status);
+	}
+	
+	/**
+	 * @return the HTTP status code of the response.
+	 */
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+	
+	/**
+	 * @return the status reported by the manager (<tt>OK</tt> or
+	 *         <tt>FAIL</tt>) or <tt>null</tt> if the response has none.
+	 */
+	public String getStatus() {
+		return this.status;
+	}
+	
+	/**
+	 * @return the message of the first line of the response or the reason
+	 *         phrase of the HTTP status if the response is empty.
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+	
+	/**
+	 * @return the further lines of the response.
+	 */
+	public List<String> getOutput() {
+		return this.output;
+	}
+	
+	@Override
+	public String toString() {
+		return "[HTTP " + this.statusCode + "] " + (this.status != null ? this.status + ManagerResponse.SEPARATOR : "") + this.message;
+	}
+}
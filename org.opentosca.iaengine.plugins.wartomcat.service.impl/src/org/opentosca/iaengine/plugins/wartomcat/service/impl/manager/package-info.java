@@ -0,0 +1,8 @@
+/**
+ * This package contains the client of the text interface of the Tomcat
+ * manager used by this plugin.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.iaengine.plugins.wartomcat.service.impl.manager;
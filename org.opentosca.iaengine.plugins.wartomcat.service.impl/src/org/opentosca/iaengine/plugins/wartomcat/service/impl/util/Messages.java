@@ -21,6 +21,8 @@ public class Messages extends NLS {
 	public static String TomcatIAEnginePlugin_url;
 	public static String TomcatIAEnginePlugin_types;
 	public static String TomcatIAEnginePlugin_capabilities;
+	public static String TomcatIAEnginePlugin_maxConnections;
+	public static String TomcatIAEnginePlugin_replicaUrls;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(Messages.BUNDLE_NAME, Messages.class);
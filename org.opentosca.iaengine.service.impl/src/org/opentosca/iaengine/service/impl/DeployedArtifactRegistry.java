@@ -0,0 +1,338 @@
+package org.opentosca.iaengine.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.opentosca.core.model.artifact.AbstractArtifact;
+import org.opentosca.core.model.artifact.file.AbstractFile;
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.exceptions.SystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Registry of the deployed ImplementationArtifacts by the hash of their
+ * content.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * An ImplementationArtifact with the same type, files, properties and
+ * artifact specific content as an already deployed one is not deployed again,
+ * instead the endpoint of the deployed one is reused. The registry counts the
+ * ImplementationArtifacts of all CSARs using a deployment, thus it is only
+ * undeployed when the last of them is undeployed. As a plug-in identifies a
+ * deployment by the CSAR that deployed it, the undeployment is always done
+ * with the ImplementationArtifact that deployed it first.<br>
+ * <br>
+ * 
+ * The registry is kept in memory. Deployments made before a restart of the
+ * container are not known and thus are neither reused nor shared.
+ * 
+ * 
+ */
+public class DeployedArtifactRegistry {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(DeployedArtifactRegistry.class);
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final Map<String, DeployedArtifact> byHash = new HashMap<String, DeployedArtifact>();
+	private final Map<URI, DeployedArtifact> byEndpoint = new HashMap<URI, DeployedArtifact>();
+	
+	
+	/**
+	 * Computes the hash identifying the content of an ImplementationArtifact.
+	 * The files are identified by their names and contents, not by their
+	 * location, thus the same files in different CSARs have the same hash.
+	 * 
+	 * @return the hash or <tt>null</tt> if a file couldn't be read.
+	 */
+	public static String hash(QName artifactType, Document artifactSpecificContent, Document properties, List<AbstractArtifact> artifacts) {
+		
+		try {
+			
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			
+			DeployedArtifactRegistry.update(digest, artifactType.toString());
+			DeployedArtifactRegistry.update(digest, DeployedArtifactRegistry.toString(artifactSpecificContent));
+			DeployedArtifactRegistry.update(digest, DeployedArtifactRegistry.toString(properties));
+			
+			List<AbstractFile> files = new ArrayList<AbstractFile>();
+			
+			if (artifacts != null) {
+				for (AbstractArtifact artifact : artifacts) {
+					files.addAll(artifact.getFilesRecursively());
+				}
+			}
+			
+			// independent of the order the files are returned in
+			Collections.sort(files, new Comparator<AbstractFile>() {
+				
+				@Override
+				public int compare(AbstractFile file1, AbstractFile file2) {
+					return file1.getName().compareTo(file2.getName());
+				}
+			});
+			
+			byte[] buffer = new byte[8192];
+			
+			for (AbstractFile file : files) {
+				
+				DeployedArtifactRegistry.update(digest, file.getName());
+				
+				InputStream in = file.getFileAsInputStream();
+				
+				try {
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						digest.update(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			
+			StringBuilder hash = new StringBuilder();
+			
+			for (byte b : digest.digest()) {
+				hash.append(String.format("%02x", b));
+			}
+			return hash.toString();
+			
+		} catch (NoSuchAlgorithmException e) {
+			DeployedArtifactRegistry.LOG.error("SHA-256 is not available!", e);
+		} catch (SystemException e) {
+			DeployedArtifactRegistry.LOG.warn("Hash of ImplementationArtifact couldn't be computed.", e);
+		} catch (IOException e) {
+			DeployedArtifactRegistry.LOG.warn("Hash of ImplementationArtifact couldn't be computed.", e);
+		} catch (TransformerException e) {
+			DeployedArtifactRegistry.LOG.warn("Hash of ImplementationArtifact couldn't be computed.", e);
+		}
+		return null;
+	}
+	
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = value.getBytes(DeployedArtifactRegistry.UTF8);
+		// length prefix, so consecutive values can't be confused
+		digest.update((bytes.length + ":").getBytes(DeployedArtifactRegistry.UTF8));
+		digest.update(bytes);
+	}
+	
+	private static String toString(Document document) throws TransformerException {
+		
+		if (document == null) {
+			return "";
+		}
+		
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(document), new StreamResult(writer));
+		return writer.toString();
+	}
+	
+	/**
+	 * Adds an ImplementationArtifact to a registered deployment with the same
+	 * content. Both happen under the same lock, thus the deployment can't be
+	 * released in between.
+	 * 
+	 * @param hash of the content of the ImplementationArtifact.
+	 * @param reference the ImplementationArtifact.
+	 * @return the endpoint of the deployment with this content or
+	 *         <tt>null</tt> if there is none or it is being undeployed.
+	 */
+	public synchronized URI acquireExisting(String hash, Reference reference) {
+		
+		DeployedArtifact deployed = this.byHash.get(hash);
+		
+		if (deployed == null) {
+			return null;
+		}
+		
+		if (deployed.references.add(reference)) {
+			DeployedArtifactRegistry.LOG.debug("Deployment {} is used by {} ImplementationArtifacts.", deployed.endpoint, deployed.references.size());
+		}
+		return deployed.endpoint;
+	}
+	
+	/**
+	 * Registers a new deployment.
+	 * 
+	 * @param hash of the content of the deployed ImplementationArtifact.
+	 * @param endpoint of the deployment.
+	 * @param owner the ImplementationArtifact that was deployed.
+	 */
+	public synchronized void register(String hash, URI endpoint, Reference owner) {
+		
+		DeployedArtifact deployed = new DeployedArtifact(hash, endpoint, owner);
+		
+		this.byHash.put(hash, deployed);
+		this.byEndpoint.put(endpoint, deployed);
+	}
+	
+	/**
+	 * Removes an ImplementationArtifact that is undeployed. If it was the last
+	 * one using the deployment, the deployment isn't reused anymore, but stays
+	 * registered until {@link #release(URI)} or
+	 * {@link #cancelRelease(URI, Reference)} is called after the undeployment.
+	 * 
+	 * @param endpoint of the ImplementationArtifact.
+	 * @param reference the ImplementationArtifact.
+	 * @return the ImplementationArtifact to undeploy the deployment with or
+	 *         <tt>null</tt> if the deployment is still used. If the deployment
+	 *         is not registered, <tt>reference</tt> is returned.
+	 */
+	public synchronized Reference beginRelease(URI endpoint, Reference reference) {
+		
+		DeployedArtifact deployed = this.byEndpoint.get(endpoint);
+		
+		if (deployed == null) {
+			return reference;
+		}
+		
+		deployed.references.remove(reference);
+		
+		if (!deployed.references.isEmpty()) {
+			DeployedArtifactRegistry.LOG.debug("Deployment {} is still used by {} ImplementationArtifacts.", endpoint, deployed.references.size());
+			return null;
+		}
+		
+		if (this.byHash.get(deployed.hash) == deployed) {
+			this.byHash.remove(deployed.hash);
+		}
+		
+		return deployed.owner;
+	}
+	
+	/**
+	 * Removes a deployment that was undeployed successfully.
+	 * 
+	 * @param endpoint of the deployment.
+	 */
+	public synchronized void release(URI endpoint) {
+		
+		DeployedArtifact deployed = this.byEndpoint.get(endpoint);
+		
+		if ((deployed != null) && deployed.references.isEmpty()) {
+			this.byEndpoint.remove(endpoint);
+		}
+	}
+	
+	/**
+	 * Adds an ImplementationArtifact again whose deployment couldn't be
+	 * undeployed, thus the deployment is still known and can be reused.
+	 * 
+	 * @param endpoint of the deployment.
+	 * @param reference the ImplementationArtifact.
+	 */
+	public synchronized void cancelRelease(URI endpoint, Reference reference) {
+		
+		DeployedArtifact deployed = this.byEndpoint.get(endpoint);
+		
+		if (deployed == null) {
+			return;
+		}
+		
+		deployed.references.add(reference);
+		
+		// unless the same content was deployed again in the meantime
+		if (!this.byHash.containsKey(deployed.hash)) {
+			this.byHash.put(deployed.hash, deployed);
+		}
+	}
+	
+	
+	/**
+	 * ImplementationArtifact of a CSAR using a deployment.
+	 */
+	public static class Reference {
+		
+		private final CSARID csarID;
+		private final QName nodeTypeImplementationID;
+		private final String implementationArtifactName;
+		
+		
+		public Reference(CSARID csarID, QName nodeTypeImplementationID, String implementationArtifactName) {
+			this.csarID = csarID;
+			this.nodeTypeImplementationID = nodeTypeImplementationID;
+			this.implementationArtifactName = implementationArtifactName;
+		}
+		
+		public CSARID getCSARID() {
+			return this.csarID;
+		}
+		
+		public QName getNodeTypeImplementationID() {
+			return this.nodeTypeImplementationID;
+		}
+		
+		public String getImplementationArtifactName() {
+			return this.implementationArtifactName;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			
+			if (!(obj instanceof Reference)) {
+				return false;
+			}
+			
+			Reference other = (Reference) obj;
+			return this.csarID.equals(other.csarID) && this.nodeTypeImplementationID.equals(other.nodeTypeImplementationID) && this.implementationArtifactName.equals(other.implementationArtifactName);
+		}
+		
+		@Override
+		public int hashCode() {
+			return (31 * ((31 * this.csarID.hashCode()) + this.nodeTypeImplementationID.hashCode())) + this.implementationArtifactName.hashCode();
+		}
+		
+		@Override
+		public String toString() {
+			return this.csarID + "/" + this.nodeTypeImplementationID + "/" + this.implementationArtifactName;
+		}
+	}
+	
+	/**
+	 * Deployment of an ImplementationArtifact.
+	 */
+	private static class DeployedArtifact {
+		
+		private final String hash;
+		private final URI endpoint;
+		private final Reference owner;
+		private final Set<Reference> references = new HashSet<Reference>();
+		
+		
+		DeployedArtifact(String hash, URI endpoint, Reference owner) {
+			this.hash = hash;
+			this.endpoint = endpoint;
+			this.owner = owner;
+			this.references.add(owner);
+		}
+	}
+}
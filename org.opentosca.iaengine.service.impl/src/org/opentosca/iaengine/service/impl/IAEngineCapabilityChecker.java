@@ -1,9 +1,10 @@
 package org.opentosca.iaengine.service.impl;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.opentosca.core.capability.service.ICoreCapabilityService;
 import org.opentosca.core.model.capability.provider.ProviderType;
@@ -22,10 +23,11 @@ import org.slf4j.LoggerFactory;
  * </p>
  * <p>
  * There are two main private methods that check if any capabilites are met by
- * the container and respectively by any bound plug-in. The supplied list of all
- * Implementation Artifacts is modified accordingly. Meaning that any
- * Implementation Artifact that is not deployable, is removed from this list and
- * is added to the list of failed Implementation Artifacts.
+ * the container and respectively by any bound plug-in. The supplied lists are
+ * not modified, as they may be shared by concurrent deployments. The
+ * capabilities of the container and the plan plug-ins are read from the
+ * snapshot of the CoreCapabilityService, thus a check doesn't query the
+ * database.
  * </p>
  * 
  * 
@@ -48,23 +50,24 @@ public class IAEngineCapabilityChecker {
 	 * 
 	 * @param capabilityService
 	 * @param requiredCapabilities
-	 * @return left Capabilities.
+	 * @return left Capabilities as a new list.
 	 */
 	public static List<String> removeConAndPlanCaps(ICoreCapabilityService capabilityService, List<String> requiredCapabilities) {
 		
+		List<String> leftCapabilities = new ArrayList<String>();
+		
 		if (!requiredCapabilities.isEmpty()) {
 			
-			List<String> conAndPlanCaps = IAEngineCapabilityChecker.getConAndPlanCaps(capabilityService);
+			Set<String> conAndPlanCaps = IAEngineCapabilityChecker.getConAndPlanCaps(capabilityService);
 			
-			for (Iterator<String> itReqCaps = requiredCapabilities.iterator(); itReqCaps.hasNext();) {
-				String reqCap = itReqCaps.next();
-				if (conAndPlanCaps.contains(reqCap)) {
-					itReqCaps.remove();
+			for (String reqCap : requiredCapabilities) {
+				if (!conAndPlanCaps.contains(reqCap)) {
+					leftCapabilities.add(reqCap);
 				}
 			}
 		}
 		
-		return requiredCapabilities;
+		return leftCapabilities;
 	}
 	
 	/**
@@ -78,17 +81,9 @@ public class IAEngineCapabilityChecker {
 		
 		if (!requiredCapabilities.isEmpty()) {
 			
-			List<String> requiredCaps = requiredCapabilities;
-			List<String> providedCaps = plugin.getCapabilties();
-			
-			for (Iterator<String> itrequiredCaps = requiredCaps.iterator(); itrequiredCaps.hasNext();) {
-				String reqCap = itrequiredCaps.next();
-				if (providedCaps.contains(reqCap)) {
-					itrequiredCaps.remove();
-				}
-			}
+			Set<String> providedCaps = new HashSet<String>(plugin.getCapabilties());
 			
-			return requiredCaps.isEmpty();
+			return providedCaps.containsAll(requiredCapabilities);
 		}
 		
 		return true;
@@ -98,11 +93,11 @@ public class IAEngineCapabilityChecker {
 	 * Gets Container and PlanCapabilities from the CoreCapabilitiyService.
 	 * 
 	 * @param capabilityService
-	 * @return Container and PlanCapabilities in one merged list.
+	 * @return Container and PlanCapabilities in one merged set.
 	 */
-	private static List<String> getConAndPlanCaps(ICoreCapabilityService capabilityService) {
+	private static Set<String> getConAndPlanCaps(ICoreCapabilityService capabilityService) {
 		
-		List<String> conAndPlanCaps = new ArrayList<String>();
+		Set<String> conAndPlanCaps = new HashSet<String>();
 		
 		IAEngineCapabilityChecker.LOG.debug("Trying to get ContainerCapabilities and PlanCapabilities from CoreCapabilityService.");
 		
@@ -2,23 +2,42 @@ package org.opentosca.iaengine.service.impl;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
 import org.opentosca.core.capability.service.ICoreCapabilityService;
+import org.opentosca.core.deployment.tracker.service.ICoreDeploymentTrackerService;
 import org.opentosca.core.endpoint.service.ICoreEndpointService;
 import org.opentosca.core.model.artifact.AbstractArtifact;
 import org.opentosca.core.model.capability.provider.ProviderType;
 import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.core.model.deployment.ia.IADeploymentState;
 import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
 import org.opentosca.iaengine.plugins.service.IIAEnginePluginService;
+import org.opentosca.iaengine.plugins.service.IReplicatingIAEnginePluginService;
 import org.opentosca.iaengine.service.IIAEngineService;
 import org.opentosca.model.tosca.TPropertyConstraint;
+import org.opentosca.settings.Settings;
 import org.opentosca.toscaengine.service.IToscaEngineService;
+import org.opentosca.util.concurrent.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -43,6 +62,31 @@ import org.w3c.dom.NodeList;
  * endpoint is stored with new operation information. Otherwise, if no entry in
  * the DB is present, the current Implementation Artifact needs to be deployed. @
  * </p>
+ * <p>
+ * The Implementation Artifacts of a ServiceTemplate are deployed concurrently
+ * by a bounded pool, whereby the number of concurrent deployments of each
+ * plug-in is limited as well. Implementation Artifacts of the types configured
+ * by <tt>iaengineDeduplicatedTypes</tt> are deployed only once for the same
+ * content and shared between CSARs. The undeployments of a CSAR run
+ * concurrently as well.
+ * </p>
+ * <p>
+ * If <tt>iaengineLazyDeployment</tt> is enabled, the Implementation Artifacts
+ * of a ServiceTemplate are only registered and each of them is deployed by
+ * {@link #deployImplementationArtifact(CSARID, QName, String)} when it is
+ * invoked the first time.
+ * </p>
+ * <p>
+ * If warm-up probes are configured by <tt>iaengineWarmUpProbes</tt>, a
+ * deployed Implementation Artifact is probed before it is tracked as deployed
+ * by the Deployment Tracker.
+ * </p>
+ * <p>
+ * Implementation Artifacts of the types configured by
+ * <tt>iaengineReplicas</tt> are deployed several times by plug-ins supporting
+ * replicas, whereby the endpoint of each replica is stored. Replicated
+ * Implementation Artifacts are not deduplicated.
+ * </p>
  * Copyright 2012 IAAS University of Stuttgart <br>
  * <br>
  * 
@@ -62,12 +106,36 @@ public class IAEngineServiceImpl implements IIAEngineService {
 	// HashMap that stores available plug-ins. First parameter of type String is
 	// used as key value.
 	private final Map<String, IIAEnginePluginService> pluginServices = Collections.synchronizedMap(new HashMap<String, IIAEnginePluginService>());
-	private final List<String> failedIAList = new ArrayList<String>();
 	private final List<IIAEnginePluginService> cachedPluginsList = new ArrayList<IIAEnginePluginService>();
 	
 	private final static Logger LOG = LoggerFactory.getLogger(IAEngineServiceImpl.class);
 	
+	// Lookups of ImplementationArtifacts in progress by CSARID,
+	// NodeTypeImplementation and IA name.
+	private final SingleFlight<List<Object>, ImplementationArtifactDescription> descriptionLookups = new SingleFlight<List<Object>, ImplementationArtifactDescription>("IA description lookups");
+	
+	// Deploys the ImplementationArtifacts concurrently. Each plug-in is
+	// limited to a number of concurrent deployments by its permits.
+	private ExecutorService deploymentExecutor = null;
+	private final Map<IIAEnginePluginService, Semaphore> pluginPermits = new HashMap<IIAEnginePluginService, Semaphore>();
+	
+	// Deployed ImplementationArtifacts by content hash and deployments in
+	// progress by content hash.
+	private final DeployedArtifactRegistry deployedArtifacts = new DeployedArtifactRegistry();
+	private final SingleFlight<String, URI> artifactDeployments = new SingleFlight<String, URI>("IA deployments");
+	
+	// ImplementationArtifacts registered for lazy deployment by CSARID,
+	// NodeTypeImplementation and IA name and lazy deployments in progress.
+	private final Set<List<Object>> lazyArtifacts = Collections.synchronizedSet(new HashSet<List<Object>>());
+	private final SingleFlight<List<Object>, Boolean> lazyDeployments = new SingleFlight<List<Object>, Boolean>("lazy IA deployments");
+	
+	// The endpoint service is not meant to be used concurrently.
+	private final Object endpointStoreLock = new Object();
+	
+	private WarmUp warmUp = null;
+	
 	private ICoreEndpointService endpointService, oldEndpointService;
+	private volatile ICoreDeploymentTrackerService deploymentTrackerService;
 	private ICoreCapabilityService capabilityService, oldCapabilityService;
 	private IToscaEngineService toscaEngineService, oldToscaEngineService;
 	
@@ -79,16 +147,120 @@ public class IAEngineServiceImpl implements IIAEngineService {
 	 */
 	public List<String> deployImplementationArtifacts(CSARID csarID, QName serviceTemplateID) {
 		
-		this.failedIAList.clear();
-		this.deployServiceTemplate(csarID, serviceTemplateID);
-		return this.failedIAList;
+		if (Boolean.parseBoolean(Settings.getSetting("iaengineLazyDeployment"))) {
+			this.registerServiceTemplate(csarID, serviceTemplateID);
+			return new ArrayList<String>();
+		}
+		
+		long start = System.currentTimeMillis();
+		Deployment deployment = new Deployment();
+		
+		this.deployServiceTemplate(csarID, serviceTemplateID, deployment);
+		
+		// the endpoints are stored one after another by this thread, as the
+		// endpoint service is not meant to be used concurrently
+		for (Future<List<WSDLEndpoint>> result : deployment.results) {
+			
+			List<WSDLEndpoint> endpoints = IAEngineServiceImpl.getUninterruptibly(result);
+			
+			if (endpoints != null) {
+				synchronized (this.endpointStoreLock) {
+					for (WSDLEndpoint endpoint : endpoints) {
+						this.endpointService.storeWSDLEndpoint(endpoint);
+					}
+				}
+			}
+		}
+		
+		IAEngineServiceImpl.LOG.info("Deployment of {} ImplementationArtifacts of CSAR: " + csarID.getFileName() + " took {} ms. Deployment time per ImplementationArtifact in ms: {}", deployment.results.size(), System.currentTimeMillis() - start, deployment.timings);
+		
+		return deployment.failedIAList;
+	}
+	
+	/**
+	 * Registers the ImplementationArtifacts of a ServiceTemplate for their
+	 * lazy deployment without deploying them.
+	 * 
+	 * @param csarID
+	 * @param serviceTemplateID
+	 */
+	private void registerServiceTemplate(CSARID csarID, QName serviceTemplateID) {
+		
+		int count = 0;
+		
+		for (QName nodeTypeID : this.toscaEngineService.getReferencedNodeTypesOfAServiceTemplate(csarID, serviceTemplateID)) {
+			for (QName nodeTypeImplementationID : this.toscaEngineService.getNodeTypeImplementationsOfNodeType(csarID, nodeTypeID)) {
+				for (String implementationArtifactName : this.toscaEngineService.getImplementationArtifactNamesOfNodeTypeImplementation(csarID, nodeTypeImplementationID)) {
+					this.lazyArtifacts.add(Arrays.<Object> asList(csarID, nodeTypeImplementationID, implementationArtifactName));
+					count++;
+				}
+			}
+		}
+		
+		IAEngineServiceImpl.LOG.info("{} ImplementationArtifacts of ServiceTemplate: {} of CSAR: " + csarID.getFileName() + " are registered and will be deployed at their first invocation.", count, serviceTemplateID);
+	}
+	
+	@Override
+	/**
+	 *  {@inheritDoc}
+	 *
+	 */
+	public boolean deployImplementationArtifact(final CSARID csarID, final QName nodeTypeImplementationID, final String implementationArtifactName) {
+		
+		final List<Object> key = Arrays.<Object> asList(csarID, nodeTypeImplementationID, implementationArtifactName);
+		
+		if (!this.lazyArtifacts.contains(key)) {
+			// not registered for lazy deployment, thus deployed already or
+			// never
+			return this.endpointService.getWSDLEndpointForIa(csarID, nodeTypeImplementationID, implementationArtifactName) != null;
+		}
+		
+		Boolean deployed = this.lazyDeployments.execute(key, new Callable<Boolean>() {
+			
+			@Override
+			public Boolean call() {
+				
+				// a deployment that just finished is not repeated
+				if (!IAEngineServiceImpl.this.lazyArtifacts.contains(key)) {
+					return true;
+				}
+				
+				long start = System.currentTimeMillis();
+				
+				List<String> features = IAEngineServiceImpl.this.toscaEngineService.getRequiredContainerFeaturesOfANodeTypeImplementation(csarID, nodeTypeImplementationID);
+				List<String> requiredFeatures = IAEngineCapabilityChecker.removeConAndPlanCaps(IAEngineServiceImpl.this.capabilityService, features);
+				
+				List<WSDLEndpoint> endpoints = IAEngineServiceImpl.this.deployImplementationArtifact(csarID, nodeTypeImplementationID, implementationArtifactName, requiredFeatures);
+				
+				if (endpoints.isEmpty()) {
+					// stays registered, thus the next invocation tries again
+					return false;
+				}
+				
+				synchronized (IAEngineServiceImpl.this.endpointStoreLock) {
+					for (WSDLEndpoint endpoint : endpoints) {
+						IAEngineServiceImpl.this.endpointService.storeWSDLEndpoint(endpoint);
+					}
+				}
+				IAEngineServiceImpl.this.lazyArtifacts.remove(key);
+				
+				IAEngineServiceImpl.LOG.info("Lazy deployment of ImplementationArtifact: {} took {} ms.", implementationArtifactName, System.currentTimeMillis() - start);
+				return true;
+			}
+		});
+		
+		IAEngineServiceImpl.LOG.debug("{}", this.lazyDeployments);
+		
+		return Boolean.TRUE.equals(deployed);
 	}
 	
 	/**
 	 * @param csarID
 	 * @param serviceTemplateID
+	 * @param deployment collecting the deployments of the
+	 *            ImplementationArtifacts.
 	 */
-	private void deployServiceTemplate(CSARID csarID, QName serviceTemplateID) {
+	private void deployServiceTemplate(CSARID csarID, QName serviceTemplateID, Deployment deployment) {
 		
 		IAEngineServiceImpl.LOG.debug("Deploying ServiceTemplate: {} of CSAR: {} ...", serviceTemplateID, csarID.getFileName());
 		
@@ -96,7 +268,7 @@ public class IAEngineServiceImpl implements IIAEngineService {
 		
 		for (QName nodeTypeID : nodeTypeIDs) {
 			
-			this.deployNodeType(csarID, nodeTypeID);
+			this.deployNodeType(csarID, nodeTypeID, deployment);
 			
 		}
 		
@@ -105,8 +277,10 @@ public class IAEngineServiceImpl implements IIAEngineService {
 	/**
 	 * @param csarID
 	 * @param nodeTypeID
+	 * @param deployment collecting the deployments of the
+	 *            ImplementationArtifacts.
 	 */
-	private void deployNodeType(CSARID csarID, QName nodeTypeID) {
+	private void deployNodeType(CSARID csarID, QName nodeTypeID, Deployment deployment) {
 		
 		IAEngineServiceImpl.LOG.debug("Deploying NodeType: {} of CSAR: {} ...", nodeTypeID, csarID.getFileName());
 		
@@ -114,28 +288,55 @@ public class IAEngineServiceImpl implements IIAEngineService {
 		
 		for (QName nodeTypeImplementationID : nodeTypeImplementationIDs) {
 			
-			this.deployNodeTypeImplementation(csarID, nodeTypeImplementationID);
+			this.deployNodeTypeImplementation(csarID, nodeTypeImplementationID, deployment);
 			
 		}
 		
 	}
 	
 	/**
+	 * Starts the deployments of all ImplementationArtifacts of a
+	 * NodeTypeImplementation without waiting for them.
+	 * 
 	 * @param csarID
 	 * @param nodeTypeImplementationID
+	 * @param deployment collecting the deployments of the
+	 *            ImplementationArtifacts.
 	 */
-	private void deployNodeTypeImplementation(CSARID csarID, QName nodeTypeImplementationID) {
+	private void deployNodeTypeImplementation(final CSARID csarID, final QName nodeTypeImplementationID, final Deployment deployment) {
 		
 		IAEngineServiceImpl.LOG.debug("Deploying NodeTypeImplementation: {} of CSAR: {} ...", nodeTypeImplementationID, csarID.getFileName());
 		
-		List<String> requiredFeatures = this.toscaEngineService.getRequiredContainerFeaturesOfANodeTypeImplementation(csarID, nodeTypeImplementationID);
+		List<String> features = this.toscaEngineService.getRequiredContainerFeaturesOfANodeTypeImplementation(csarID, nodeTypeImplementationID);
 		
-		requiredFeatures = IAEngineCapabilityChecker.removeConAndPlanCaps(this.capabilityService, requiredFeatures);
+		final List<String> requiredFeatures = IAEngineCapabilityChecker.removeConAndPlanCaps(this.capabilityService, features);
 		
 		List<String> implementationArtifactNames = this.toscaEngineService.getImplementationArtifactNamesOfNodeTypeImplementation(csarID, nodeTypeImplementationID);
 		
-		for (String implementationArtifactName : implementationArtifactNames) {
-			this.deployImplementationArtifact(csarID, nodeTypeImplementationID, implementationArtifactName, requiredFeatures);
+		for (final String implementationArtifactName : implementationArtifactNames) {
+			
+			deployment.results.add(this.getDeploymentExecutor().submit(new Callable<List<WSDLEndpoint>>() {
+				
+				@Override
+				public List<WSDLEndpoint> call() {
+					
+					long start = System.currentTimeMillis();
+					List<WSDLEndpoint> endpoints = new ArrayList<WSDLEndpoint>();
+					
+					try {
+						endpoints = IAEngineServiceImpl.this.deployImplementationArtifact(csarID, nodeTypeImplementationID, implementationArtifactName, requiredFeatures);
+					} catch (RuntimeException e) {
+						IAEngineServiceImpl.LOG.error("Deployment of ImplementationArtifact " + implementationArtifactName + " failed!", e);
+					}
+					
+					if (endpoints.isEmpty()) {
+						deployment.failedIAList.add(implementationArtifactName);
+					}
+					deployment.timings.put(nodeTypeImplementationID.getLocalPart() + "/" + implementationArtifactName, System.currentTimeMillis() - start);
+					
+					return endpoints;
+				}
+			}));
 		}
 		
 	}
@@ -145,44 +346,350 @@ public class IAEngineServiceImpl implements IIAEngineService {
 	 * @param nodeTypeImplementationID
 	 * @param implementationArtifactName
 	 * @param requiredFeatures
+	 * @return the endpoints of the deployed ImplementationArtifact or of its
+	 *         replicas to store, empty if the deployment failed.
 	 */
-	private void deployImplementationArtifact(CSARID csarID, QName nodeTypeImplementationID, String implementationArtifactName, List<String> requiredFeatures) {
+	private List<WSDLEndpoint> deployImplementationArtifact(CSARID csarID, QName nodeTypeImplementationID, String implementationArtifactName, List<String> requiredFeatures) {
 		
 		IAEngineServiceImpl.LOG.debug("Deploying ImplementationArtifact: {} of NodeTypeImplementation: {} of CSAR: " + csarID.getFileName() + " ...", implementationArtifactName, nodeTypeImplementationID);
 		
-		Document properties = null;
-		List<TPropertyConstraint> propertyConstraints = null;
-		List<AbstractArtifact> artifacts = null;
+		String trackedName = nodeTypeImplementationID + "/" + implementationArtifactName;
+		this.track(csarID, trackedName, IADeploymentState.IA_DEPLOYING);
+		
+		ImplementationArtifactDescription description = this.describeImplementationArtifact(csarID, nodeTypeImplementationID, implementationArtifactName);
 		
-		QName artifactType = this.toscaEngineService.getArtifactTypeOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
-		QName artifactRef = this.toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
-		Document artifactSpecificContent = this.toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+		// the description may be shared with concurrent deployments, thus
+		// each of them gets its own copies
+		QName artifactType = description.artifactType;
+		Document artifactSpecificContent = IAEngineServiceImpl.copy(description.artifactSpecificContent);
+		Document properties = IAEngineServiceImpl.copy(description.properties);
+		List<TPropertyConstraint> propertyConstraints = description.propertyConstraints != null ? new ArrayList<TPropertyConstraint>(description.propertyConstraints) : null;
+		List<AbstractArtifact> artifacts = description.artifacts != null ? new ArrayList<AbstractArtifact>(description.artifacts) : null;
 		
-		if (artifactRef != null) {
-			properties = this.toscaEngineService.getPropertiesOfAArtifactTemplate(csarID, artifactRef);
-			propertyConstraints = this.toscaEngineService.getPropertyConstraintsOfAArtifactTemplate(csarID, artifactRef);
+		List<URI> serviceURIs = new ArrayList<URI>();
+		int replicas = this.getReplicas(artifactType);
+		
+		if (replicas > 1) {
+			serviceURIs = this.deployReplicasThroughPlugin(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures, replicas);
+		} else {
+			
+			URI serviceURI;
 			
-			artifacts = this.toscaEngineService.getArtifactsOfAArtifactTemplate(csarID, artifactRef);
+			if (this.isDeduplicated(artifactType)) {
+				serviceURI = this.deployOnce(csarID, nodeTypeImplementationID, implementationArtifactName, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+			} else {
+				serviceURI = this.deployThroughPlugin(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+			}
 			
+			if (serviceURI != null) {
+				serviceURIs.add(serviceURI);
+			}
 		}
 		
-		URI serviceURI = this.deployThroughPlugin(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+		List<WSDLEndpoint> endpoints = new ArrayList<WSDLEndpoint>();
 		
-		if (serviceURI != null) {
+		if (!serviceURIs.isEmpty()) {
 			
 			QName portType;
 			// Maybe should be located somewhere else.
 			portType = this.getPortType(properties);
 			
-			WSDLEndpoint endpoint = new WSDLEndpoint(serviceURI, portType, csarID, null, nodeTypeImplementationID, implementationArtifactName);
-			this.endpointService.storeWSDLEndpoint(endpoint);
 			IAEngineServiceImpl.LOG.info("ImplementationArtifact: {} of NodeTypeImplementation: {} of CSAR: " + csarID.getFileName() + " successfully deployed!", implementationArtifactName, nodeTypeImplementationID);
 			
+			WarmUp warmUp = this.getWarmUp();
+			
+			if (warmUp.isEnabled()) {
+				
+				this.track(csarID, trackedName, IADeploymentState.IA_WARMING_UP);
+				
+				boolean warmedUp = true;
+				
+				for (URI serviceURI : serviceURIs) {
+					warmedUp &= warmUp.warmUp(serviceURI);
+				}
+				
+				// the endpoints are usable anyway, the failure is only tracked
+				this.track(csarID, trackedName, warmedUp ? IADeploymentState.IA_DEPLOYED : IADeploymentState.IA_WARM_UP_FAILED);
+			} else {
+				this.track(csarID, trackedName, IADeploymentState.IA_DEPLOYED);
+			}
+			
+			for (URI serviceURI : serviceURIs) {
+				endpoints.add(new WSDLEndpoint(serviceURI, portType, csarID, null, nodeTypeImplementationID, implementationArtifactName));
+			}
+			
 		} else {
-			this.failedIAList.add(implementationArtifactName);
 			IAEngineServiceImpl.LOG.warn("Deployment of ImplementationArtifact {} failed!", implementationArtifactName);
+			this.track(csarID, trackedName, IADeploymentState.IA_DEPLOYMENT_FAILED);
 		}
 		
+		return endpoints;
+		
+	}
+	
+	/**
+	 * Deploys an ImplementationArtifact unless an ImplementationArtifact with
+	 * the same content is already deployed, whose endpoint is reused then.
+	 * Concurrent deployments of the same content share one deployment.
+	 * 
+	 * @return Endpoint of the deployed ImplementationArtifact or <tt>null</tt>
+	 *         if deployment failed.
+	 */
+	private URI deployOnce(final CSARID csarID, final QName nodeTypeImplementationID, final String implementationArtifactName, final QName artifactType, final Document artifactSpecificContent, final Document properties, final List<TPropertyConstraint> propertyConstraints, final List<AbstractArtifact> artifacts, final List<String> requiredFeatures) {
+		
+		final String hash = DeployedArtifactRegistry.hash(artifactType, artifactSpecificContent, properties, artifacts);
+		
+		if (hash == null) {
+			return this.deployThroughPlugin(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+		}
+		
+		final DeployedArtifactRegistry.Reference reference = new DeployedArtifactRegistry.Reference(csarID, nodeTypeImplementationID, implementationArtifactName);
+		
+		URI serviceURI = this.deployedArtifacts.acquireExisting(hash, reference);
+		
+		if (serviceURI != null) {
+			IAEngineServiceImpl.LOG.info("ImplementationArtifact: {} is already deployed at {}. The deployment is reused.", implementationArtifactName, serviceURI);
+			return serviceURI;
+		}
+		
+		while (serviceURI == null) {
+			
+			URI deployedURI = this.artifactDeployments.execute(hash, new Callable<URI>() {
+				
+				@Override
+				public URI call() {
+					
+					URI serviceURI = IAEngineServiceImpl.this.deployedArtifacts.acquireExisting(hash, reference);
+					
+					if (serviceURI != null) {
+						return serviceURI;
+					}
+					
+					serviceURI = IAEngineServiceImpl.this.deployThroughPlugin(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+					
+					if (serviceURI != null) {
+						IAEngineServiceImpl.this.deployedArtifacts.register(hash, serviceURI, reference);
+					}
+					return serviceURI;
+				}
+			});
+			
+			if (deployedURI == null) {
+				return null;
+			}
+			
+			// a shared deployment may have been undeployed again before it is
+			// acquired, then it is deployed anew
+			serviceURI = this.deployedArtifacts.acquireExisting(hash, reference);
+		}
+		return serviceURI;
+	}
+	
+	/**
+	 * @return if ImplementationArtifacts of the type are deployed only once
+	 *         for the same content.
+	 */
+	private boolean isDeduplicated(QName artifactType) {
+		
+		for (String type : Settings.getSetting("iaengineDeduplicatedTypes").split(";")) {
+			if (type.trim().equals(artifactType.toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the number of replicas deployed of ImplementationArtifacts of
+	 *         the type, at least 1.
+	 */
+	private int getReplicas(QName artifactType) {
+		
+		for (String entry : Settings.getSetting("iaengineReplicas").split(";")) {
+			
+			int separator = entry.lastIndexOf('=');
+			
+			if ((separator > 0) && entry.substring(0, separator).trim().equals(artifactType.toString())) {
+				try {
+					return Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim()));
+				} catch (NumberFormatException e) {
+					IAEngineServiceImpl.LOG.warn("Number of replicas of type {} is not a number: {}", artifactType, entry);
+				}
+			}
+		}
+		return 1;
+	}
+	
+	/**
+	 * Stops the executor deploying the ImplementationArtifacts when the
+	 * component is deactivated. Already submitted deployments and
+	 * undeployments are still executed.
+	 */
+	protected synchronized void deactivate() {
+		
+		if (this.deploymentExecutor != null) {
+			this.deploymentExecutor.shutdown();
+			this.deploymentExecutor = null;
+		}
+		IAEngineServiceImpl.LOG.debug("IA-Engine deactivated.");
+	}
+	
+	/**
+	 * @return the executor deploying the ImplementationArtifacts.
+	 */
+	private synchronized ExecutorService getDeploymentExecutor() {
+		
+		if (this.deploymentExecutor == null) {
+			
+			int threads = Integer.parseInt(Settings.getSetting("iaengineDeploymentThreads"));
+			
+			this.deploymentExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "IAEngine-Deployment-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.deploymentExecutor;
+	}
+	
+	/**
+	 * @return the warm-up of deployed ImplementationArtifacts.
+	 */
+	private synchronized WarmUp getWarmUp() {
+		
+		if (this.warmUp == null) {
+			this.warmUp = new WarmUp(Settings.getSetting("iaengineWarmUpProbes"), Integer.parseInt(Settings.getSetting("iaengineWarmUpRepetitions")), Integer.parseInt(Settings.getSetting("iaengineWarmUpConcurrency")), Integer.parseInt(Settings.getSetting("iaengineWarmUpTimeout")));
+		}
+		return this.warmUp;
+	}
+	
+	/**
+	 * Stores the deployment state of an ImplementationArtifact in the
+	 * Deployment Tracker if it is available.
+	 * 
+	 * @param csarID
+	 * @param trackedName NodeTypeImplementation and name of the
+	 *            ImplementationArtifact.
+	 * @param state
+	 */
+	private void track(CSARID csarID, String trackedName, IADeploymentState state) {
+		
+		ICoreDeploymentTrackerService deploymentTrackerService = this.deploymentTrackerService;
+		
+		if (deploymentTrackerService != null) {
+			deploymentTrackerService.storeIADeploymentInfo(csarID, trackedName, state);
+		}
+	}
+	
+	/**
+	 * @return the permits limiting the concurrent deployments of a plug-in.
+	 */
+	private Semaphore getPermits(IIAEnginePluginService plugin) {
+		
+		synchronized (this.pluginPermits) {
+			
+			Semaphore permits = this.pluginPermits.get(plugin);
+			
+			if (permits == null) {
+				permits = new Semaphore(Integer.parseInt(Settings.getSetting("iaengineDeploymentsPerPlugin")), true);
+				this.pluginPermits.put(plugin, permits);
+			}
+			return permits;
+		}
+	}
+	
+	/**
+	 * Waits for the result of a deployment or undeployment even if the thread
+	 * is interrupted.
+	 * 
+	 * @return the result or <tt>null</tt> if it failed or was cancelled.
+	 */
+	private static <T> T getUninterruptibly(Future<T> future) {
+		
+		boolean interrupted = false;
+		
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					IAEngineServiceImpl.LOG.error("Deployment or undeployment of an ImplementationArtifact failed!", e.getCause());
+					return null;
+				} catch (CancellationException e) {
+					return null;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Gets all information about an ImplementationArtifact needed for its
+	 * deployment from the ToscaEngine. Concurrent requests of the same
+	 * ImplementationArtifact share one lookup.
+	 * 
+	 * @param csarID
+	 * @param nodeTypeImplementationID
+	 * @param implementationArtifactName
+	 * @return the description of the ImplementationArtifact. It must not be
+	 *         modified.
+	 */
+	private ImplementationArtifactDescription describeImplementationArtifact(final CSARID csarID, final QName nodeTypeImplementationID, final String implementationArtifactName) {
+		
+		ImplementationArtifactDescription description = this.descriptionLookups.execute(Arrays.<Object> asList(csarID, nodeTypeImplementationID, implementationArtifactName), new Callable<ImplementationArtifactDescription>() {
+			
+			@Override
+			public ImplementationArtifactDescription call() {
+				
+				IToscaEngineService toscaEngineService = IAEngineServiceImpl.this.toscaEngineService;
+				ImplementationArtifactDescription description = new ImplementationArtifactDescription();
+				
+				description.artifactType = toscaEngineService.getArtifactTypeOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+				QName artifactRef = toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+				description.artifactSpecificContent = toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+				
+				if (artifactRef != null) {
+					description.properties = toscaEngineService.getPropertiesOfAArtifactTemplate(csarID, artifactRef);
+					description.propertyConstraints = toscaEngineService.getPropertyConstraintsOfAArtifactTemplate(csarID, artifactRef);
+					
+					description.artifacts = toscaEngineService.getArtifactsOfAArtifactTemplate(csarID, artifactRef);
+					
+				}
+				return description;
+			}
+		});
+		
+		IAEngineServiceImpl.LOG.debug("{}", this.descriptionLookups);
+		
+		return description;
+	}
+	
+	/**
+	 * @return a deep copy of the document or <tt>null</tt> if it is
+	 *         <tt>null</tt>. The DOM isn't thread-safe even for reads, thus
+	 *         copies of a shared document are made one after another.
+	 */
+	private static Document copy(Document document) {
+		
+		if (document == null) {
+			return null;
+		}
+		
+		synchronized (document) {
+			return (Document) document.cloneNode(true);
+		}
 	}
 	
 	/**
@@ -199,6 +706,81 @@ public class IAEngineServiceImpl implements IIAEngineService {
 	 */
 	private URI deployThroughPlugin(CSARID csarID, QName artifactType, Document artifactSpecificContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures) {
 		URI serviceEndpoint = null;
+		IIAEnginePluginService plugin = this.getPlugin(artifactType, requiredFeatures);
+		
+		if (plugin != null) {
+			// URI potentialEndpoint = plugin.getPotentialEndpoint(ia,
+			// this.csarID);
+			// // Check if this endpoint already exists in the DB and
+			// act
+			// // accordingly
+			// if
+			// (!this.endpointService.endpointExists(potentialEndpoint,
+			// this.csarID)) {
+			Semaphore permits = this.getPermits(plugin);
+			permits.acquireUninterruptibly();
+			
+			try {
+				serviceEndpoint = plugin.deployImplementationArtifact(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+			} finally {
+				permits.release();
+			}
+			
+			// } else {
+			// return potentialEndpoint;
+			// }
+		}
+		
+		return serviceEndpoint;
+	}
+	
+	/**
+	 * Calls a registered plug-in to deploy replicas of a
+	 * ImplementationArtifact. If the plug-in doesn't support replicas, the
+	 * ImplementationArtifact is deployed once.
+	 * 
+	 * @param replicas number of replicas to deploy.
+	 * @return Endpoints of the deployed replicas, empty if deployment failed.
+	 */
+	private List<URI> deployReplicasThroughPlugin(CSARID csarID, QName artifactType, Document artifactSpecificContent, Document properties, List<TPropertyConstraint> propertyConstraints, List<AbstractArtifact> artifacts, List<String> requiredFeatures, int replicas) {
+		List<URI> serviceEndpoints = new ArrayList<URI>();
+		IIAEnginePluginService plugin = this.getPlugin(artifactType, requiredFeatures);
+		
+		if (plugin != null) {
+			
+			Semaphore permits = this.getPermits(plugin);
+			permits.acquireUninterruptibly();
+			
+			try {
+				
+				if (plugin instanceof IReplicatingIAEnginePluginService) {
+					serviceEndpoints.addAll(((IReplicatingIAEnginePluginService) plugin).deployImplementationArtifactReplicas(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures, replicas));
+				} else {
+					
+					IAEngineServiceImpl.LOG.warn("Plugin {} doesn't support replicas. ImplementationArtifact of type {} is deployed once.", plugin.toString(), artifactType.toString());
+					
+					URI serviceEndpoint = plugin.deployImplementationArtifact(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
+					
+					if (serviceEndpoint != null) {
+						serviceEndpoints.add(serviceEndpoint);
+					}
+				}
+				
+			} finally {
+				permits.release();
+			}
+			
+			IAEngineServiceImpl.LOG.info("{} of {} replicas of ImplementationArtifact of type {} deployed.", new Object[] {serviceEndpoints.size(), replicas, artifactType.toString()});
+		}
+		
+		return serviceEndpoints;
+	}
+	
+	/**
+	 * @return the registered plug-in supporting the artifact type and the
+	 *         required features or <tt>null</tt> if there is none.
+	 */
+	private IIAEnginePluginService getPlugin(QName artifactType, List<String> requiredFeatures) {
 		IIAEnginePluginService plugin;
 		
 		IAEngineServiceImpl.LOG.info("Searching for plugin supporting artifactType: {} ...", artifactType.toString());
@@ -212,29 +794,15 @@ public class IAEngineServiceImpl implements IIAEngineService {
 			IAEngineServiceImpl.LOG.info("Plugin for artifactType: {} found: {}.", artifactType.toString(), plugin.toString());
 			
 			if (IAEngineCapabilityChecker.capabilitiesAreMet(requiredFeatures, plugin)) {
-				// URI potentialEndpoint = plugin.getPotentialEndpoint(ia,
-				// this.csarID);
-				// // Check if this endpoint already exists in the DB and
-				// act
-				// // accordingly
-				// if
-				// (!this.endpointService.endpointExists(potentialEndpoint,
-				// this.csarID)) {
-				serviceEndpoint = plugin.deployImplementationArtifact(csarID, artifactType, artifactSpecificContent, properties, propertyConstraints, artifacts, requiredFeatures);
-				
-				// } else {
-				// return potentialEndpoint;
-				// }
-				
-			} else {
-				IAEngineServiceImpl.LOG.warn("Required Features are not met! Deployment aborted.");
+				return plugin;
 			}
+			IAEngineServiceImpl.LOG.warn("Required Features are not met! Deployment aborted.");
 			
 		} else {
 			IAEngineServiceImpl.LOG.warn("No matching Plug-in for type {} could be found! Deployment aborted.", artifactType.toString());
 		}
 		
-		return serviceEndpoint;
+		return null;
 	}
 	
 	@Override
@@ -249,13 +817,26 @@ public class IAEngineServiceImpl implements IIAEngineService {
 		IIAEnginePluginService plugin;
 		boolean allUndeployed = true;
 		
+		// ImplementationArtifacts that were never invoked aren't deployed
+		synchronized (this.lazyArtifacts) {
+			Iterator<List<Object>> iterator = this.lazyArtifacts.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().get(0).equals(csarID)) {
+					iterator.remove();
+				}
+			}
+		}
+		
 		IAEngineServiceImpl.LOG.debug("Getting all stored endpoints of CSAR: {} ...", csarID.getFileName());
 		List<WSDLEndpoint> endpoints = this.endpointService.getWSDLEndpointsForCSARID(csarID);
 		
+		long start = System.currentTimeMillis();
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		
 		for (WSDLEndpoint endpoint : endpoints) {
 			String iaName = endpoint.getIaName();
 			QName nodeTypeImpl = endpoint.getNodeTypeImplementation();
-			URI path = endpoint.getURI();
+			final URI path = endpoint.getURI();
 			
 			if (iaName != null) {
 				
@@ -265,20 +846,67 @@ public class IAEngineServiceImpl implements IIAEngineService {
 					plugin = this.pluginServices.get(artifactType.toString());
 				}
 				
+				// the deployment may still be used by other CSARs; otherwise it
+				// is undeployed as the ImplementationArtifact that deployed it
+				final DeployedArtifactRegistry.Reference reference = new DeployedArtifactRegistry.Reference(csarID, nodeTypeImpl, iaName);
+				final DeployedArtifactRegistry.Reference owner = this.deployedArtifacts.beginRelease(path, reference);
+				
+				if (owner == null) {
+					IAEngineServiceImpl.LOG.info("ImplementationArtifact: {} is still used by other CSARs and is not undeployed.", iaName);
+					continue;
+				}
+				
 				if (plugin != null) {
 					
-					boolean wasUndeployed = plugin.undeployImplementationArtifact(iaName, nodeTypeImpl, csarID, path);
+					final IIAEnginePluginService undeployingPlugin = plugin;
 					
-					if (!wasUndeployed) {
-						allUndeployed = false;
-					}
+					// the undeployments run concurrently, limited by the
+					// permits of each plug-in like the deployments
+					results.add(this.getDeploymentExecutor().submit(new Callable<Boolean>() {
+						
+						@Override
+						public Boolean call() {
+							
+							Semaphore permits = IAEngineServiceImpl.this.getPermits(undeployingPlugin);
+							permits.acquireUninterruptibly();
+							
+							boolean wasUndeployed = false;
+							
+							try {
+								wasUndeployed = undeployingPlugin.undeployImplementationArtifact(owner.getImplementationArtifactName(), owner.getNodeTypeImplementationID(), owner.getCSARID(), path);
+								return wasUndeployed;
+							} finally {
+								permits.release();
+								
+								// the deployment is only removed once it is
+								// really undeployed
+								if (wasUndeployed) {
+									IAEngineServiceImpl.this.deployedArtifacts.release(path);
+								} else {
+									IAEngineServiceImpl.this.deployedArtifacts.cancelRelease(path, reference);
+								}
+							}
+						}
+					}));
 					
 				} else {
+					this.deployedArtifacts.cancelRelease(path, reference);
 					allUndeployed = false;
 				}
 			}
 		}
 		
+		for (Future<Boolean> result : results) {
+			
+			Boolean wasUndeployed = IAEngineServiceImpl.getUninterruptibly(result);
+			
+			if (!Boolean.TRUE.equals(wasUndeployed)) {
+				allUndeployed = false;
+			}
+		}
+		
+		IAEngineServiceImpl.LOG.info("Undeployment of {} ImplementationArtifacts of CSAR: " + csarID.getFileName() + " took {} ms.", results.size(), System.currentTimeMillis() - start);
+		
 		return allUndeployed;
 	}
 	
@@ -472,6 +1100,33 @@ public class IAEngineServiceImpl implements IIAEngineService {
 		IAEngineServiceImpl.LOG.debug("Unbind CapabilityService unbound.");
 	}
 	
+	/**
+	 * Bind DeploymentTrackerService.
+	 * 
+	 * @param deploymentTrackerService
+	 */
+	public void bindDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (deploymentTrackerService != null) {
+			this.deploymentTrackerService = deploymentTrackerService;
+			IAEngineServiceImpl.LOG.debug("Bind DeploymentTrackerService: {} bound.", deploymentTrackerService.toString());
+		} else {
+			IAEngineServiceImpl.LOG.error("Bind DeploymentTrackerService: Supplied parameter is null!");
+		}
+	}
+	
+	/**
+	 * Unbind DeploymentTrackerService.
+	 * 
+	 * @param deploymentTrackerService
+	 */
+	public void unbindDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (this.deploymentTrackerService == deploymentTrackerService) {
+			this.deploymentTrackerService = null;
+		}
+		
+		IAEngineServiceImpl.LOG.debug("Unbind DeploymentTrackerService unbound.");
+	}
+	
 	/**
 	 * Bind ToscaService
 	 * 
@@ -507,4 +1162,27 @@ public class IAEngineServiceImpl implements IIAEngineService {
 		IAEngineServiceImpl.LOG.debug("Unbind ToscaService unbound.");
 	}
 	
-}
\ No newline at end of file
+	
+	/**
+	 * Deployments of the ImplementationArtifacts of a ServiceTemplate in
+	 * progress.
+	 */
+	private static class Deployment {
+		
+		private final List<Future<List<WSDLEndpoint>>> results = new ArrayList<Future<List<WSDLEndpoint>>>();
+		private final List<String> failedIAList = Collections.synchronizedList(new ArrayList<String>());
+		private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+	}
+	
+	/**
+	 * Information about an ImplementationArtifact needed for its deployment.
+	 */
+	private static class ImplementationArtifactDescription {
+		
+		private QName artifactType;
+		private Document artifactSpecificContent;
+		private Document properties;
+		private List<TPropertyConstraint> propertyConstraints;
+		private List<AbstractArtifact> artifacts;
+	}
+}
@@ -0,0 +1,163 @@
+package org.opentosca.iaengine.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up deployed ImplementationArtifacts by probe calls.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The first invocation of a freshly deployed ImplementationArtifact pays for
+ * class loading and lazy initialization on the application server. The probes
+ * trigger this right after the deployment instead. Supported probes are:
+ * <ul>
+ * <li><tt>wsdl</tt>: GET of the WSDL of the endpoint, which must succeed.</li>
+ * <li><tt>head</tt>: HEAD of the endpoint, which must not fail with a server
+ * error.</li>
+ * <li><tt>get</tt>: GET of the endpoint, which must not fail with a server
+ * error.</li>
+ * </ul>
+ * Endpoints that are not HTTP endpoints are not probed.
+ * 
+ * 
+ */
+public class WarmUp {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+	
+	private static final List<String> SUPPORTED_PROBES = Arrays.asList("wsdl", "head", "get");
+	
+	private final List<String> probes = new ArrayList<String>();
+	private final int repetitions;
+	private final int timeout;
+	private final Semaphore permits;
+	
+	
+	/**
+	 * @param probes names of the probes separated by character ";".
+	 * @param repetitions how often the probes are run.
+	 * @param concurrency maximum number of ImplementationArtifacts warmed up
+	 *            at the same time.
+	 * @param timeout of each probe in milliseconds.
+	 */
+	public WarmUp(String probes, int repetitions, int concurrency, int timeout) {
+		
+		for (String probe : probes.split(";")) {
+			
+			probe = probe.trim().toLowerCase();
+			
+			if (WarmUp.SUPPORTED_PROBES.contains(probe)) {
+				this.probes.add(probe);
+			} else if (!probe.isEmpty()) {
+				WarmUp.LOG.warn("Warm-up probe \"{}\" is not supported and is ignored.", probe);
+			}
+		}
+		
+		this.repetitions = repetitions;
+		this.timeout = timeout;
+		this.permits = new Semaphore(concurrency, true);
+	}
+	
+	/**
+	 * @return if any probes are configured.
+	 */
+	public boolean isEnabled() {
+		return !this.probes.isEmpty();
+	}
+	
+	/**
+	 * Runs the probes against a deployed ImplementationArtifact.
+	 * 
+	 * @param endpoint of the ImplementationArtifact.
+	 * @return <tt>true</tt> if all probes succeeded.
+	 */
+	public boolean warmUp(URI endpoint) {
+		
+		String scheme = endpoint.getScheme();
+		
+		if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+			WarmUp.LOG.debug("Endpoint {} is not probed.", endpoint);
+			return true;
+		}
+		
+		this.permits.acquireUninterruptibly();
+		
+		try {
+			
+			long start = System.currentTimeMillis();
+			
+			for (int i = 0; i < this.repetitions; i++) {
+				for (String probe : this.probes) {
+					if (!this.probe(endpoint, probe)) {
+						WarmUp.LOG.warn("Warm-up probe \"{}\" of endpoint {} failed.", probe, endpoint);
+						return false;
+					}
+				}
+			}
+			
+			WarmUp.LOG.info("Endpoint {} warmed up in {} ms.", endpoint, System.currentTimeMillis() - start);
+			return true;
+			
+		} finally {
+			this.permits.release();
+		}
+	}
+	
+	/**
+	 * @return if the probe succeeded.
+	 */
+	private boolean probe(URI endpoint, String probe) {
+		
+		try {
+			
+			URL url = endpoint.toURL();
+			
+			if (probe.equals("wsdl")) {
+				url = new URL(endpoint.toString() + (endpoint.getQuery() == null ? "?wsdl" : "&wsdl"));
+			}
+			
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(this.timeout);
+			connection.setReadTimeout(this.timeout);
+			connection.setRequestMethod(probe.equals("head") ? "HEAD" : "GET");
+			
+			int status = connection.getResponseCode();
+			
+			// the response is read completely, thus the connection can be
+			// reused
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			
+			if (in != null) {
+				try {
+					byte[] buffer = new byte[4096];
+					while (in.read(buffer) != -1) {
+						// discard
+					}
+				} finally {
+					in.close();
+				}
+			}
+			
+			WarmUp.LOG.debug("Warm-up probe \"{}\" of endpoint {} returned HTTP status {}.", new Object[] {probe, endpoint, status});
+			
+			return probe.equals("wsdl") ? status == HttpURLConnection.HTTP_OK : status < HttpURLConnection.HTTP_INTERNAL_ERROR;
+			
+		} catch (IOException e) {
+			WarmUp.LOG.debug("Warm-up probe \"" + probe + "\" of endpoint " + endpoint + " failed.", e);
+			return false;
+		}
+	}
+}
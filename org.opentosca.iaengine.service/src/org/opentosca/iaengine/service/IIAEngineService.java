@@ -59,6 +59,25 @@ public interface IIAEngineService {
 	 */
 	public List<String> deployImplementationArtifacts(CSARID csarID, QName serviceTemplateID);
 	
+	/**
+	 * Deploy a single Implementation Artifact on demand.<br>
+	 * <br>
+	 * 
+	 * If lazy deployment is enabled, {@link #deployImplementationArtifacts}
+	 * only registers the Implementation Artifacts and this method should be
+	 * called before the first invocation of one of them. Concurrent calls for
+	 * the same Implementation Artifact wait for one deployment.
+	 * 
+	 * @param csarID - ID of the CSAR file containing the Implementation
+	 *            Artifact.
+	 * @param nodeTypeImplementationID - ID of the NodeTypeImplementation
+	 *            containing the Implementation Artifact.
+	 * @param implementationArtifactName - name of the Implementation Artifact.
+	 * @return <code>true</code> if the Implementation Artifact is deployed and
+	 *         its endpoint is stored. Otherwise <code>false</code>.
+	 */
+	public boolean deployImplementationArtifact(CSARID csarID, QName nodeTypeImplementationID, String implementationArtifactName);
+	
 	/**
 	 * Undeploy Implementation Artifacts.<br>
 	 * <br>
@@ -268,6 +268,19 @@ public class InstanceDataServiceImpl implements IInstanceDataService {
 		return resultingProperties;
 	}
 	
+	@Override
+	@WebMethod(exclude = true)
+	public Document getNodeInstanceProperties(URI serviceInstanceID, QName nodeTemplateID) {
+		NodeInstance nodeInstance = this.niDAO.getLatestNodeInstance(serviceInstanceID, nodeTemplateID);
+		
+		if (nodeInstance == null) {
+			LOG.debug(String.format("No NodeInstance of NodeTemplate: '%s' found in ServiceInstance: '%s'",
+					nodeTemplateID, serviceInstanceID));
+			return null;
+		}
+		return nodeInstance.getProperties();
+	}
+	
 	/**
 	 * Creates an empty DOM document.
 	 * 
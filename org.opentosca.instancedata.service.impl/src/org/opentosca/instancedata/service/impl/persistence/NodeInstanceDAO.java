@@ -103,4 +103,35 @@ public class NodeInstanceDAO extends AbstractDAO {
 		return queryResults;
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * returns the latest NodeInstance of a NodeTemplate inside a ServiceInstance using a single indexed query
+	 * 
+	 * @param serviceInstanceID
+	 * @param nodeTemplateID
+	 * @return the latest nodeInstance or <code>null</code> if there is none
+	 */
+	public NodeInstance getLatestNodeInstance(URI serviceInstanceID, QName nodeTemplateID) {
+		this.init();
+		
+		/**
+		 * Create Query to retrieve the latest NodeInstance
+		 * 
+		 * @see NodeInstance#getLatestNodeInstance
+		 */
+		Query getLatestNodeInstanceQuery = this.em.createNamedQuery(NodeInstance.getLatestNodeInstance);
+		
+		// Set Parameters for the Query
+		getLatestNodeInstanceQuery.setParameter("internalServiceInstanceID",
+				IdConverter.serviceInstanceUriToID(serviceInstanceID));
+		getLatestNodeInstanceQuery.setParameter("nodeTemplateID", nodeTemplateID.toString());
+		getLatestNodeInstanceQuery.setMaxResults(1);
+		@SuppressWarnings("unchecked")
+		List<NodeInstance> queryResults = getLatestNodeInstanceQuery.getResultList();
+		
+		if (queryResults.isEmpty()) {
+			return null;
+		}
+		return queryResults.get(0);
+	}
+	
+}
@@ -164,5 +164,15 @@ public interface IInstanceDataService {
 	 */
 	public Document getProperties(URI nodeInstanceID, List<QName> propertiesList) throws ReferenceNotFoundException;
 	
+	/**
+	 * returns the properties of the latest NodeInstance of the given NodeTemplate inside the given ServiceInstance. In
+	 * contrast to {@link #getNodeInstances(URI, QName, String, URI)} only this single NodeInstance is loaded.
+	 * 
+	 * @param serviceInstanceID
+	 * @param nodeTemplateID
+	 * @return DOM or <code>null</code> if there is no such NodeInstance or it has no properties
+	 */
+	public Document getNodeInstanceProperties(URI serviceInstanceID, QName nodeTemplateID);
+	
 	public void setProperties(URI nodeInstanceID, Document properties) throws ReferenceNotFoundException;
 }
@@ -23,6 +23,7 @@ import javax.xml.namespace.QName;
 import org.eclipse.persistence.annotations.Convert;
 import org.eclipse.persistence.annotations.Converter;
 import org.eclipse.persistence.annotations.Converters;
+import org.eclipse.persistence.annotations.Index;
 import org.opentosca.settings.Settings;
 import org.w3c.dom.Document;
 
@@ -36,7 +37,10 @@ import org.w3c.dom.Document;
 @Entity
 @Converters({ @Converter(name = "QNameConverter", converterClass = org.opentosca.util.jpa.converters.QNameConverter.class), @Converter(name = "DOMDocumentConverter", converterClass = org.opentosca.util.jpa.converters.DOMDocumentConverter.class) })
 @NamedQueries({
-	@NamedQuery(name = NodeInstance.getNodeInstances, query = NodeInstance.getNodeInstancesQuery) })
+	@NamedQuery(name = NodeInstance.getNodeInstances, query = NodeInstance.getNodeInstancesQuery),
+	@NamedQuery(name = NodeInstance.getLatestNodeInstance, query = NodeInstance.getLatestNodeInstanceQuery) })
+// backs the lookup of the NodeInstance of a NodeTemplate inside a ServiceInstance
+@Index(name = "NODEINSTANCE_SI_NT_IDX", columnNames = { "SERVICEINSTANCE", "NODETEMPLATEID" })
 public class NodeInstance {
 
 	// Query to retrieve NodeInstances identified by some parameters
@@ -47,6 +51,13 @@ public class NodeInstance {
 			+ " n.serviceInstance.id = COALESCE(:internalServiceInstanceID, n.serviceInstance.id) AND"
 			+ " n.nodeTemplateID = COALESCE(:nodeTemplateID, n.nodeTemplateID)";
 
+	// Query to retrieve the NodeInstances of a NodeTemplate inside a ServiceInstance, latest first
+	public final static String getLatestNodeInstance = "NodeInstance.getLatestNodeInstanceQuery";
+	protected final static String getLatestNodeInstanceQuery = "select n from NodeInstance n where"
+			+ " n.serviceInstance.id = :internalServiceInstanceID AND"
+			+ " n.nodeTemplateID = :nodeTemplateID"
+			+ " ORDER BY n.created DESC, n.id DESC";
+
 	// the internal ID (Database) of the NodeInstance
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
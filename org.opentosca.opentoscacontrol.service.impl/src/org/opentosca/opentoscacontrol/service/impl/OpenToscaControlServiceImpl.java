@@ -2,8 +2,17 @@ package org.opentosca.opentoscacontrol.service.impl;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
@@ -23,6 +32,7 @@ import org.opentosca.model.csarinstancemanagement.CSARInstanceID;
 import org.opentosca.model.tosca.TPlan;
 import org.opentosca.model.tosca.TPlans;
 import org.opentosca.model.tosca.TServiceTemplate;
+import org.opentosca.opentoscacontrol.service.CSARDeletion;
 import org.opentosca.opentoscacontrol.service.IOpenToscaControlService;
 import org.opentosca.planengine.service.IPlanEngineService;
 import org.opentosca.planinvocationengine.service.IPlanInvocationEngine;
@@ -39,6 +49,9 @@ import org.slf4j.LoggerFactory;
  * to read and set the current state of a certain CSAR and provides a HashSet
  * with the possible process invocations for a certain CSAR.
  * 
+ * CSARs are deleted in the background, whereby the ImplementationArtifacts and
+ * Plans are undeployed in parallel before the contents are deleted.
+ * 
  * @author Christian Endres - endrescn@studi.informatik.uni-stuttgart.de
  * 
  */
@@ -56,6 +69,23 @@ public class OpenToscaControlServiceImpl implements IOpenToscaControlService {
 	protected static IPlanInvocationEngine planInvocationEngine = null;
 	protected static ICSARInstanceManagementService instanceManagement = null;
 	
+	// running and unread completed deletions of each CSAR, at most
+	// MAX_COMPLETED_DELETIONS completed ones are kept, the oldest are forgotten
+	private static final int MAX_COMPLETED_DELETIONS = 100;
+	private static final Map<CSARID, CSARDeletion> deletions = new LinkedHashMap<CSARID, CSARDeletion>();
+	private static final ExecutorService deletionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		
+		private final AtomicInteger count = new AtomicInteger();
+		
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "CSAR-Deletion-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
 	private final Logger LOG = LoggerFactory.getLogger(OpenToscaControlServiceImpl.class);
 	
 	
@@ -219,43 +249,240 @@ public class OpenToscaControlServiceImpl implements IOpenToscaControlService {
 	@Override
 	public List<String> deleteCSAR(CSARID csarID) {
 		
-		List<String> errors = new ArrayList<String>();
+		CSARDeletion deletion = this.deleteCSARInBackground(csarID);
+		List<String> errors = deletion.await();
+		
+		// the result is returned, thus the deletion needn't be kept
+		synchronized (OpenToscaControlServiceImpl.deletions) {
+			if (OpenToscaControlServiceImpl.deletions.get(csarID) == deletion) {
+				OpenToscaControlServiceImpl.deletions.remove(csarID);
+			}
+		}
+		return errors;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CSARDeletion deleteCSARInBackground(CSARID csarID) {
+		
+		final CSARDeletion deletion;
+		
+		synchronized (OpenToscaControlServiceImpl.deletions) {
+			
+			CSARDeletion running = OpenToscaControlServiceImpl.deletions.get(csarID);
+			
+			if ((running != null) && !running.isDone()) {
+				this.LOG.info("CSAR \"{}\" is already being deleted.", csarID);
+				return running;
+			}
+			
+			deletion = new CSARDeletion(csarID);
+			OpenToscaControlServiceImpl.deletions.put(csarID, deletion);
+			
+			this.forgetCompletedDeletions();
+		}
 		
 		if (!OpenToscaControlServiceImpl.instanceManagement.getInstancesOfCSAR(csarID).isEmpty()) {
 			// There are instances, thus deletion is not legal.
 			this.LOG.error("CSAR \"{}\" has instances.", csarID);
-			errors.add("CSAR has instances.");
-			return errors;
+			deletion.addError("CSAR has instances.");
+			deletion.complete();
+			return deletion;
 		}
 		
-		if (!OpenToscaControlServiceImpl.iAEngine.undeployImplementationArtifacts(csarID)) {
-			this.LOG.error("It was not possible to delete all ImplementationArtifacts of the CSAR \"" + csarID + ".");
-			errors.add("Could not undeploy all ImplementationArtifacts.");
+		OpenToscaControlServiceImpl.deletionExecutor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				OpenToscaControlServiceImpl.this.delete(deletion);
+			}
+		});
+		
+		return deletion;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CSARDeletion getCSARDeletion(CSARID csarID) {
+		synchronized (OpenToscaControlServiceImpl.deletions) {
+			
+			CSARDeletion deletion = OpenToscaControlServiceImpl.deletions.get(csarID);
+			
+			// a completed deletion is read only once
+			if ((deletion != null) && deletion.isDone()) {
+				OpenToscaControlServiceImpl.deletions.remove(csarID);
+			}
+			return deletion;
 		}
+	}
+	
+	/**
+	 * Forgets completed deletions whose results were never read if there are
+	 * more than {@link #MAX_COMPLETED_DELETIONS}. The caller must hold the
+	 * lock of the deletions.
+	 */
+	private void forgetCompletedDeletions() {
+		
+		int completed = 0;
+		
+		for (CSARDeletion deletion : OpenToscaControlServiceImpl.deletions.values()) {
+			if (deletion.isDone()) {
+				completed++;
+			}
+		}
+		
+		Iterator<CSARDeletion> iterator = OpenToscaControlServiceImpl.deletions.values().iterator();
 		
-		// Delete operation is legal, thus continue.
-		if (!OpenToscaControlServiceImpl.toscaEngine.clearCSARContent(csarID)) {
-			this.LOG.error("It was not possible to delete all content of the CSAR \"" + csarID + "\" inside the ToscaEngine.");
-			errors.add("Could not delete TOSCA data.");
+		while ((completed > OpenToscaControlServiceImpl.MAX_COMPLETED_DELETIONS) && iterator.hasNext()) {
+			if (iterator.next().isDone()) {
+				iterator.remove();
+				completed--;
+			}
 		}
+	}
+	
+	/**
+	 * Undeploys the ImplementationArtifacts and Plans of a CSAR in parallel
+	 * and deletes its contents if all of them were undeployed.
+	 * 
+	 * @param deletion progress of the deletion.
+	 */
+	private void delete(final CSARDeletion deletion) {
 		
-		OpenToscaControlServiceImpl.coreDeploymentTracker.deleteDeploymentState(csarID);
-		OpenToscaControlServiceImpl.endpointService.removeEndpoints(csarID);
+		CSARID csarID = deletion.getCSARID();
 		
 		try {
-			OpenToscaControlServiceImpl.fileService.deleteCSAR(csarID);
-		} catch (SystemException | UserException e) {
-			// e.printStackTrace();
-			this.LOG.error("The file service could not delete all data of the CSAR \"{}\". ", csarID, e);
-			errors.add("Could not delete CSAR files.");
+			
+			Future<?> planUndeployment = OpenToscaControlServiceImpl.deletionExecutor.submit(new Runnable() {
+				
+				@Override
+				public void run() {
+					OpenToscaControlServiceImpl.this.undeployPlans(deletion);
+				}
+			});
+			
+			this.undeployImplementationArtifacts(deletion);
+			
+			boolean interrupted = false;
+			
+			while (!planUndeployment.isDone()) {
+				try {
+					planUndeployment.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					this.LOG.error("Undeployment of the Plans of the CSAR \"{}\" failed.", csarID, e.getCause());
+					deletion.addError("Could not undeploy all Plans.");
+				}
+			}
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			
+			if (!deletion.getErrors().isEmpty()) {
+				// the content is kept, thus the deletion can be started again
+				this.LOG.error("The contents of the CSAR \"{}\" are not deleted as not all of its ImplementationArtifacts and Plans were undeployed.", csarID);
+				return;
+			}
+			
+			deletion.setState(CSARDeletion.State.DELETING);
+			
+			// Delete operation is legal, thus continue.
+			if (!OpenToscaControlServiceImpl.toscaEngine.clearCSARContent(csarID)) {
+				this.LOG.error("It was not possible to delete all content of the CSAR \"" + csarID + "\" inside the ToscaEngine.");
+				deletion.addError("Could not delete TOSCA data.");
+			}
+			
+			OpenToscaControlServiceImpl.coreDeploymentTracker.deleteDeploymentState(csarID);
+			OpenToscaControlServiceImpl.endpointService.removeEndpoints(csarID);
+			
+			try {
+				OpenToscaControlServiceImpl.fileService.deleteCSAR(csarID);
+			} catch (SystemException | UserException e) {
+				this.LOG.error("The file service could not delete all data of the CSAR \"{}\". ", csarID, e);
+				deletion.addError("Could not delete CSAR files.");
+			}
+			
+			if (deletion.getErrors().isEmpty()) {
+				this.LOG.info("Contents of CSAR \"" + csarID + "\" deleted.");
+			}
+			
+		} catch (RuntimeException e) {
+			this.LOG.error("Deletion of the CSAR \"{}\" failed.", csarID, e);
+			deletion.addError("Deletion failed: " + e.getMessage());
+		} finally {
+			deletion.complete();
+		}
+	}
+	
+	/**
+	 * Undeploys the ImplementationArtifacts of a CSAR.
+	 * 
+	 * @param deletion progress of the deletion.
+	 */
+	private void undeployImplementationArtifacts(CSARDeletion deletion) {
+		
+		CSARID csarID = deletion.getCSARID();
+		IIAEngineService iAEngine = OpenToscaControlServiceImpl.iAEngine;
+		
+		if (iAEngine == null) {
+			this.LOG.error("IAEngine is not alive!");
+			deletion.addError("Could not undeploy all ImplementationArtifacts.");
+			
+		} else if (!iAEngine.undeployImplementationArtifacts(csarID)) {
+			this.LOG.error("It was not possible to delete all ImplementationArtifacts of the CSAR \"" + csarID + ".");
+			deletion.addError("Could not undeploy all ImplementationArtifacts.");
+			
+		} else {
+			deletion.addStep("ImplementationArtifacts undeployed.");
 		}
+	}
+	
+	/**
+	 * Undeploys the Plans of all ServiceTemplates of a CSAR if they were
+	 * deployed.
+	 * 
+	 * @param deletion progress of the deletion.
+	 */
+	private void undeployPlans(CSARDeletion deletion) {
+		
+		CSARID csarID = deletion.getCSARID();
 		
-		if (errors.isEmpty()) {
-			this.LOG.info("Contents of CSAR \"" + csarID + "\" deleted.");
+		if (OpenToscaControlServiceImpl.coreDeploymentTracker.getDeploymentState(csarID) != DeploymentProcessState.PLANS_DEPLOYED) {
+			deletion.addStep("Plans are not deployed.");
+			return;
 		}
 		
-		return errors;
+		IPlanEngineService planEngine = OpenToscaControlServiceImpl.planEngine;
+		
+		if (planEngine == null) {
+			this.LOG.error("PlanEngine is not alive!");
+			deletion.addError("Could not undeploy all Plans.");
+			return;
+		}
 		
+		for (QName serviceTemplateID : OpenToscaControlServiceImpl.toscaEngine.getToscaReferenceMapper().getServiceTemplateIDsContainedInCSAR(csarID)) {
+			
+			TServiceTemplate serviceTemplate = (TServiceTemplate) OpenToscaControlServiceImpl.toscaEngine.getToscaReferenceMapper().getJAXBReference(csarID, serviceTemplateID);
+			
+			if ((serviceTemplate == null) || (serviceTemplate.getPlans() == null)) {
+				continue;
+			}
+			
+			List<TPlan> undeployedPlans = planEngine.undeployPlans(serviceTemplate.getPlans(), serviceTemplateID.getNamespaceURI(), csarID);
+			
+			for (TPlan plan : undeployedPlans) {
+				this.LOG.error("The Plan \"" + plan.getId() + "\" was not undeployed.");
+				deletion.addError("Could not undeploy Plan \"" + plan.getId() + "\".");
+			}
+			
+			deletion.addStep((serviceTemplate.getPlans().getPlan().size() - undeployedPlans.size()) + " Plans of the ServiceTemplate \"" + serviceTemplateID + "\" undeployed.");
+		}
 	}
 	
 	/**
@@ -0,0 +1,146 @@
+package org.opentosca.opentoscacontrol.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.opentosca.core.model.csar.id.CSARID;
+
+/**
+ * Progress of the deletion of a CSAR running in the background.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The ImplementationArtifacts and Plans of the CSAR are undeployed first. The
+ * content of the CSAR is only deleted if all of them were undeployed,
+ * otherwise the deletion fails and can be started again.
+ * 
+ * 
+ */
+public class CSARDeletion {
+	
+	/**
+	 * States of a deletion.
+	 */
+	public enum State {
+		UNDEPLOYING, DELETING, FINISHED, FAILED
+	}
+	
+	
+	private final CSARID csarID;
+	private final long started = System.currentTimeMillis();
+	private volatile long finished = -1;
+	private volatile State state = State.UNDEPLOYING;
+	private final List<String> steps = new ArrayList<String>();
+	private final List<String> errors = new ArrayList<String>();
+	private final CountDownLatch done = new CountDownLatch(1);
+	
+	
+	/**
+	 * @param csarID of the CSAR to delete.
+	 */
+	public CSARDeletion(CSARID csarID) {
+		this.csarID = csarID;
+	}
+	
+	public CSARID getCSARID() {
+		return this.csarID;
+	}
+	
+	public State getState() {
+		return this.state;
+	}
+	
+	/**
+	 * @param state the deletion entered.
+	 */
+	public void setState(State state) {
+		this.state = state;
+		this.addStep("Entered state " + state + ".");
+	}
+	
+	/**
+	 * @param step that is completed.
+	 */
+	public synchronized void addStep(String step) {
+		this.steps.add((System.currentTimeMillis() - this.started) + " ms: " + step);
+	}
+	
+	/**
+	 * @return the completed steps.
+	 */
+	public synchronized List<String> getSteps() {
+		return new ArrayList<String>(this.steps);
+	}
+	
+	/**
+	 * @param error that occurred.
+	 */
+	public synchronized void addError(String error) {
+		this.errors.add(error);
+		this.steps.add((System.currentTimeMillis() - this.started) + " ms: " + error);
+	}
+	
+	/**
+	 * @return the errors that occurred, empty if there was none.
+	 */
+	public synchronized List<String> getErrors() {
+		return new ArrayList<String>(this.errors);
+	}
+	
+	/**
+	 * Completes the deletion with state {@link State#FINISHED} if there were
+	 * no errors, otherwise {@link State#FAILED}.
+	 */
+	public void complete() {
+		this.finished = System.currentTimeMillis();
+		this.setState(this.getErrors().isEmpty() ? State.FINISHED : State.FAILED);
+		this.done.countDown();
+	}
+	
+	/**
+	 * @return if the deletion is finished or failed.
+	 */
+	public boolean isDone() {
+		return this.done.getCount() == 0;
+	}
+	
+	/**
+	 * Waits until the deletion is finished or failed.
+	 * 
+	 * @return the errors that occurred, empty if there was none.
+	 */
+	public List<String> await() {
+		
+		boolean interrupted = false;
+		
+		while (!this.isDone()) {
+			try {
+				this.done.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return this.getErrors();
+	}
+	
+	@Override
+	public String toString() {
+		
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("Deletion of CSAR \"").append(this.csarID).append("\": ").append(this.state);
+		builder.append(" (").append((this.finished < 0 ? System.currentTimeMillis() : this.finished) - this.started).append(" ms)\n");
+		
+		for (String step : this.getSteps()) {
+			builder.append("\t").append(step).append("\n");
+		}
+		return builder.toString();
+	}
+}
@@ -75,6 +75,30 @@ public interface IOpenToscaControlService {
 	 */
 	public List<String> deleteCSAR(CSARID csarID);
 
+	/**
+	 * This method starts the deletion of a certain CSAR in the background and
+	 * returns immediately. The ImplementationArtifacts and Plans are
+	 * undeployed first, the stored contents are only deleted if all of them
+	 * were undeployed.
+	 * 
+	 * @param csarID
+	 *            the ID of the CSAR which shall be deleted.
+	 * @return the progress of the deletion. If the CSAR is already being
+	 *         deleted, the progress of this deletion.
+	 */
+	public CSARDeletion deleteCSARInBackground(CSARID csarID);
+
+	/**
+	 * Returns the progress of the last deletion of a certain CSAR. A completed
+	 * deletion is returned only once, afterwards it is forgotten.
+	 * 
+	 * @param csarID
+	 *            the ID of the CSAR.
+	 * @return the progress or null if the CSAR isn't being deleted and the
+	 *         result of its last deletion was already returned.
+	 */
+	public CSARDeletion getCSARDeletion(CSARID csarID);
+
 	/**
 	 * This method returns a list of the QNames contained in a specific CSAR.
 	 * 
@@ -0,0 +1,177 @@
+package org.opentosca.planengine.plugin.bpelembedded.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.opentosca.planengine.plugin.bpelembedded.runtime.BpelRuntime;
+
+/**
+ * Tests the constructs of WS-BPEL 2.0 the embedded runtime supports by
+ * executing plans against the {@link PartnerStub}.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each plan receives an initiate message with a CorrelationID and a value,
+ * executes the tested constructs and sends its result to the ReplyTo address
+ * of the initiate message.
+ * 
+ * 
+ */
+public class BpelRuntimeTest extends TestCase {
+	
+	private static final String ADDRESS = "http://localhost:19764/plans";
+	private static final int PARTNER_PORT = 19765;
+	private static final String CSAR = "Test.csar";
+	
+	private static final Pattern CORRELATION_ID = Pattern.compile("CorrelationID>([^<]*)<");
+	private static final Pattern VALUE = Pattern.compile("value>([^<]*)<");
+	private static final Pattern RELATES_TO = Pattern.compile("RelatesTo[^>]*>([^<]*)<");
+	
+	private BpelRuntime runtime;
+	private PartnerStub partner;
+	
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.partner = new PartnerStub(BpelRuntimeTest.PARTNER_PORT);
+		this.runtime = new BpelRuntime(BpelRuntimeTest.ADDRESS, 5000, 5000);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		this.runtime.shutdown();
+		this.partner.stop();
+	}
+	
+	public void testSequenceAndAssign() throws Exception {
+		String endpoint = this.deploy("Sequence");
+		
+		this.initiate(endpoint, "1", "hello");
+		String result = this.partner.awaitResult();
+		
+		assertNotNull(result);
+		assertEquals("1", PartnerStub.find(BpelRuntimeTest.CORRELATION_ID, result));
+		assertEquals("echo:hello", PartnerStub.find(BpelRuntimeTest.VALUE, result));
+		assertEquals("the result relates to the initiate message", "initiate-1", PartnerStub.find(BpelRuntimeTest.RELATES_TO, result));
+	}
+	
+	public void testFlowWithLinks() throws Exception {
+		String endpoint = this.deploy("Flow");
+		
+		this.initiate(endpoint, "1", "x");
+		String result = this.partner.awaitResult();
+		assertNotNull(result);
+		assertEquals("B runs after A, C is skipped", "AB", PartnerStub.find(BpelRuntimeTest.VALUE, result));
+		
+		this.initiate(endpoint, "2", "C");
+		result = this.partner.awaitResult();
+		assertNotNull(result);
+		assertEquals("C runs after A while B waits", "ACB", PartnerStub.find(BpelRuntimeTest.VALUE, result));
+	}
+	
+	public void testCorrelatedCallbacks() throws Exception {
+		String endpoint = this.deploy("Callback");
+		
+		// the callback of the first instance arrives after the one of the
+		// second instance
+		this.initiate(endpoint, "1", "slow");
+		this.initiate(endpoint, "2", "fast");
+		
+		Map<String, String> values = new HashMap<String, String>();
+		for (int i = 0; i < 2; i++) {
+			String result = this.partner.awaitResult();
+			assertNotNull(result);
+			values.put(PartnerStub.find(BpelRuntimeTest.CORRELATION_ID, result), PartnerStub.find(BpelRuntimeTest.VALUE, result));
+		}
+		
+		assertEquals("slow-done", values.get("1"));
+		assertEquals("fast-done", values.get("2"));
+	}
+	
+	public void testScopeFaultHandler() throws Exception {
+		String endpoint = this.deploy("FaultHandler");
+		
+		this.initiate(endpoint, "1", "fault");
+		String result = this.partner.awaitResult();
+		
+		assertNotNull(result);
+		assertEquals("caught", PartnerStub.find(BpelRuntimeTest.VALUE, result));
+	}
+	
+	public void testRestLight() throws Exception {
+		String endpoint = this.deploy("RestLight");
+		
+		this.initiate(endpoint, "1", "node");
+		String result = this.partner.awaitResult();
+		
+		assertNotNull(result);
+		assertEquals("rest:node", PartnerStub.find(BpelRuntimeTest.VALUE, result));
+	}
+	
+	public void testUnsupportedConstructIsRejected() throws Exception {
+		assertNull(this.runtime.deploy(BpelRuntimeTest.CSAR, "Unsupported", this.readPlan("Unsupported")));
+		assertFalse(this.runtime.isDeployed(BpelRuntimeTest.CSAR, "Unsupported"));
+	}
+	
+	public void testEndpointRegistration() throws Exception {
+		String endpoint = this.deploy("Sequence");
+		
+		assertEquals(BpelRuntimeTest.ADDRESS + "/" + BpelRuntimeTest.CSAR + "/Sequence/PlanService", endpoint);
+		assertTrue(this.runtime.isDeployed(BpelRuntimeTest.CSAR, "Sequence"));
+		
+		HttpURLConnection connection = (HttpURLConnection) new URL(endpoint + "?wsdl").openConnection();
+		assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+		assertTrue("the WSDL contains the endpoint", PartnerStub.read(connection.getInputStream()).contains("location=\"" + endpoint + "\""));
+		
+		assertTrue(this.runtime.undeploy(BpelRuntimeTest.CSAR, "Sequence"));
+		assertFalse(this.runtime.isDeployed(BpelRuntimeTest.CSAR, "Sequence"));
+		assertFalse(this.runtime.undeploy(BpelRuntimeTest.CSAR, "Sequence"));
+	}
+	
+	/**
+	 * Deploys a plan of the <tt>plans</tt> directory.
+	 * 
+	 * @return the endpoint of the plan.
+	 */
+	private String deploy(String plan) throws IOException {
+		String endpoint = this.runtime.deploy(BpelRuntimeTest.CSAR, plan, this.readPlan(plan));
+		assertNotNull("the plan " + plan + " is deployed", endpoint);
+		return endpoint;
+	}
+	
+	/**
+	 * @return the files of a plan, consisting of the common deploy.xml and
+	 *         WSDL and the .bpel file of the plan.
+	 */
+	private Map<String, byte[]> readPlan(String plan) throws IOException {
+		Map<String, byte[]> files = new HashMap<String, byte[]>();
+		files.put("deploy.xml", BpelRuntimeTest.readResource("deploy.xml"));
+		files.put("plan.wsdl", BpelRuntimeTest.readResource("plan.wsdl"));
+		files.put("Plan.bpel", BpelRuntimeTest.readResource(plan + ".bpel"));
+		return files;
+	}
+	
+	private static byte[] readResource(String name) throws IOException {
+		InputStream in = BpelRuntimeTest.class.getResourceAsStream("plans/" + name);
+		assertNotNull("the resource " + name + " exists", in);
+		return PartnerStub.read(in).getBytes("UTF-8");
+	}
+	
+	/**
+	 * Sends an initiate message with the ReplyTo address of the container,
+	 * i.e. as text.
+	 */
+	private void initiate(String endpoint, String correlationId, String value) throws IOException {
+		String envelope = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header>" + "<ReplyTo xmlns=\"http://www.w3.org/2005/08/addressing\">http://localhost:" + BpelRuntimeTest.PARTNER_PORT + "/client</ReplyTo>" + "<MessageID xmlns=\"http://www.w3.org/2005/08/addressing\">initiate-" + correlationId + "</MessageID>" + "</soapenv:Header><soapenv:Body><t:planInput xmlns:t=\"urn:t\"><t:CorrelationID>" + correlationId + "</t:CorrelationID><t:Value>" + value + "</t:Value></t:planInput></soapenv:Body></soapenv:Envelope>";
+		assertEquals(HttpURLConnection.HTTP_ACCEPTED, PartnerStub.post(endpoint, "urn:t/initiate", envelope));
+	}
+}
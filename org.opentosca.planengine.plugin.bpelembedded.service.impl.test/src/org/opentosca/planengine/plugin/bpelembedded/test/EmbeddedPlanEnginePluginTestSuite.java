@@ -0,0 +1,22 @@
+package org.opentosca.planengine.plugin.bpelembedded.test;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of the openTOSCA PlanEngine embedded WS-BPEL 2.0 Plugin.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * 
+ */
+public class EmbeddedPlanEnginePluginTestSuite {
+	
+	public static Test suite() {
+		TestSuite suite = new TestSuite("openTOSCA PlanEngine embedded WS-BPEL 2.0 Plugin");
+		suite.addTestSuite(BpelRuntimeTest.class);
+		return suite;
+	}
+}
@@ -0,0 +1,175 @@
+package org.opentosca.planengine.plugin.bpelembedded.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Partners of the test plans, running on an embedded Jetty server.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The stub provides:
+ * <ul>
+ * <li><tt>/client</tt> receiving the results of the plans,</li>
+ * <li><tt>/invoker</tt> accepting an invocation and sending its callback
+ * afterwards to the ReplyTo address of the invocation. The callback of the
+ * invocation with the value <tt>slow</tt> is delayed, thus the callbacks of
+ * concurrent instances arrive in reverse order,</li>
+ * <li><tt>/fault</tt> answering each message with a SOAP fault,</li>
+ * <li><tt>/rest/{resource}</tt> answering a GET with
+ * <tt>rest:{resource}</tt>.</li>
+ * </ul>
+ * 
+ * 
+ */
+public class PartnerStub {
+	
+	private static final Pattern MESSAGE_ID = Pattern.compile("MessageID>([^<]*)<");
+	private static final Pattern REPLY_TO = Pattern.compile("ReplyTo>([^<]*)<");
+	private static final Pattern VALUE = Pattern.compile("value>([^<]*)<");
+	
+	private final BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+	private final Server server;
+	
+	
+	public PartnerStub(int port) throws Exception {
+		this.server = new Server(port);
+		this.server.setHandler(new AbstractHandler() {
+			
+			@Override
+			public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+				baseRequest.setHandled(true);
+				String body = PartnerStub.read(request.getInputStream());
+				
+				if (target.equals("/client")) {
+					PartnerStub.this.results.add(body);
+					response.setStatus(HttpServletResponse.SC_ACCEPTED);
+					
+				} else if (target.equals("/invoker")) {
+					PartnerStub.this.sendCallback(body);
+					response.setStatus(HttpServletResponse.SC_ACCEPTED);
+					
+				} else if (target.equals("/fault")) {
+					PartnerStub.write(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "text/xml; charset=UTF-8", "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><soapenv:Fault><faultcode>soapenv:Server</faultcode><faultstring>failed</faultstring></soapenv:Fault></soapenv:Body></soapenv:Envelope>");
+					
+				} else if (target.startsWith("/rest/") && request.getMethod().equals("GET")) {
+					PartnerStub.write(response, HttpServletResponse.SC_OK, "text/plain; charset=UTF-8", "rest:" + target.substring("/rest/".length()));
+					
+				} else {
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				}
+			}
+		});
+		this.server.start();
+	}
+	
+	/**
+	 * Waits for the next result sent to <tt>/client</tt>.
+	 * 
+	 * @return the envelope of the result or <tt>null</tt> if there was none
+	 *         within ten seconds.
+	 */
+	public String awaitResult() throws InterruptedException {
+		return this.results.poll(10, TimeUnit.SECONDS);
+	}
+	
+	public void stop() throws Exception {
+		this.server.stop();
+	}
+	
+	private void sendCallback(String invocation) {
+		final String messageId = PartnerStub.find(MESSAGE_ID, invocation);
+		final String replyTo = PartnerStub.find(REPLY_TO, invocation);
+		final String value = PartnerStub.find(VALUE, invocation);
+		
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					Thread.sleep("slow".equals(value) ? 500 : 50);
+					PartnerStub.post(replyTo, "urn:t/callback", "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><t:callback xmlns:t=\"urn:t\"><t:MessageID>" + messageId + "</t:MessageID><t:value>" + value + "-done</t:value></t:callback></soapenv:Body></soapenv:Envelope>");
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Posts a SOAP message.
+	 * 
+	 * @return the HTTP status of the response.
+	 */
+	public static int post(String address, String soapAction, String envelope) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(address).openConnection();
+		try {
+			connection.setDoOutput(true);
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+			connection.setRequestProperty("SOAPAction", soapAction);
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(envelope.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * @return the first group of the first match or <tt>null</tt>.
+	 */
+	public static String find(Pattern pattern, String text) {
+		Matcher matcher = pattern.matcher(text);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+	
+	public static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				out.write(buffer, 0, read);
+			}
+			return new String(out.toByteArray(), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static void write(HttpServletResponse response, int status, String contentType, String content) throws IOException {
+		response.setStatus(status);
+		response.setContentType(contentType);
+		OutputStream out = response.getOutputStream();
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
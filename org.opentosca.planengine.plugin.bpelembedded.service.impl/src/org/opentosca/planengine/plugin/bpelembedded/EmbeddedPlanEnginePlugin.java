@@ -0,0 +1,456 @@
+package org.opentosca.planengine.plugin.bpelembedded;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.wsdl.WSDLException;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerConfigurationException;
+
+import org.opentosca.core.endpoint.service.ICoreEndpointService;
+import org.opentosca.core.file.service.ICoreFileService;
+import org.opentosca.core.model.artifact.AbstractArtifact;
+import org.opentosca.core.model.artifact.file.AbstractFile;
+import org.opentosca.core.model.csar.CSARContent;
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
+import org.opentosca.exceptions.SystemException;
+import org.opentosca.exceptions.UserException;
+import org.opentosca.model.tosca.TPlan.PlanModelReference;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.BpelRuntime;
+import org.opentosca.planengine.plugin.bpelembedded.util.Messages;
+import org.opentosca.planengine.plugin.bpelwso2.util.BPELRESTLightUpdater;
+import org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater;
+import org.opentosca.planengine.plugin.bpelwso2.util.PlanArchive;
+import org.opentosca.planengine.plugin.service.IPlanEnginePlanRefPluginService;
+import org.opentosca.toscaengine.service.IToscaEngineService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>
+ * This class implements the deployment of WS-BPEL 2.0 Processes trough the
+ * {@link org.opentosca.planengine.plugin.service.IPlanEnginePlanRefPluginService}
+ * unto an embedded BPEL runtime, which runs inside the container. Thus plans
+ * can be executed without a WSO2 Business Process Server.
+ * </p>
+ * <p>
+ * The plans are prepared like by the WSO2 BPS plugin: the endpoints inside
+ * the WSDL Descriptions and the BPEL4RESTLight extension activities are
+ * updated by the
+ * {@link org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater}
+ * and the
+ * {@link org.opentosca.planengine.plugin.bpelwso2.util.BPELRESTLightUpdater}.
+ * The updated files of the plan are deployed unto the
+ * {@link org.opentosca.planengine.plugin.bpelembedded.runtime.BpelRuntime},
+ * whose address is declared in the
+ * {@link org.opentosca.planengine.plugin.bpelembedded.util.Messages} class.
+ * The endpoint of the deployed plan is stored trough the
+ * {@link org.opentosca.core.endpoint.service.ICoreEndpointService}.
+ * </p>
+ * <p>
+ * The runtime only executes the constructs the plan builder generates, other
+ * plans aren't deployed. If both plugins are installed, the plugin used for
+ * BPEL plans is selected with the <tt>planenginePreferredPlugins</tt>
+ * setting.
+ * </p>
+ * 
+ * @see org.opentosca.planengine.plugin.bpelembedded.runtime.BpelRuntime
+ * 
+ *      <br>
+ *      Copyright 2013 IAAS University of Stuttgart <br>
+ * 
+ */
+public class EmbeddedPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(EmbeddedPlanEnginePlugin.class);
+	
+	private ICoreFileService fileService = null;
+	private ICoreFileService oldFileService = null;
+	
+	private ICoreEndpointService endpointService;
+	private ICoreEndpointService oldEndpointService;
+	
+	private IToscaEngineService toscaEngine;
+	
+	private final BpelRuntime runtime = new BpelRuntime(Messages.EmbeddedPlanEnginePlugin_address, Integer.parseInt(Messages.EmbeddedPlanEnginePlugin_connectTimeout.trim()), Integer.parseInt(Messages.EmbeddedPlanEnginePlugin_readTimeout.trim()));
+	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLanguageUsed() {
+		return Messages.EmbeddedPlanEnginePlugin_language;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<String> getCapabilties() {
+		List<String> capabilities = new ArrayList<String>();
+		
+		for (String capability : Messages.EmbeddedPlanEnginePlugin_capabilities.split("[,;]")) {
+			capabilities.add(capability.trim());
+		}
+		return capabilities;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean deployPlanReference(QName planId, PlanModelReference planRef, CSARID csarId) {
+		Path fetchedPlan = this.fetchPlan(planId, planRef, csarId);
+		if (fetchedPlan == null) {
+			return false;
+		}
+		
+		PlanArchive planArchive;
+		try {
+			EmbeddedPlanEnginePlugin.LOG.debug("Opening Plan '{}'.", fetchedPlan.getFileName().toString());
+			planArchive = new PlanArchive(fetchedPlan.toFile());
+		} catch (IOException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("Can't read plan " + planRef.getReference(), e);
+			return false;
+		}
+		
+		QName portType;
+		String endpoint;
+		try {
+			portType = this.updatePlan(planArchive, planRef, csarId);
+			
+			// the runtime reads the updated files of the plan from memory
+			Map<String, byte[]> files = new HashMap<String, byte[]>();
+			for (String entry : planArchive.getEntryNames()) {
+				files.put(entry, EmbeddedPlanEnginePlugin.read(planArchive, entry));
+			}
+			
+			EmbeddedPlanEnginePlugin.LOG.info("Deploying Plan: {}", fetchedPlan.getFileName().toString());
+			endpoint = this.runtime.deploy(csarId.toString(), planId.getLocalPart(), files);
+		} catch (IOException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("Can't deploy plan " + planRef.getReference(), e);
+			return false;
+		} finally {
+			try {
+				planArchive.close();
+			} catch (IOException e) {
+				EmbeddedPlanEnginePlugin.LOG.debug("Couldn't close plan " + planRef.getReference(), e);
+			}
+		}
+		
+		if (endpoint == null) {
+			EmbeddedPlanEnginePlugin.LOG.error("Plan {} can't be executed by the embedded BPEL runtime", planRef.getReference());
+			return false;
+		}
+		
+		if (portType == null) {
+			EmbeddedPlanEnginePlugin.LOG.error("PortType of process is null");
+			this.runtime.undeploy(csarId.toString(), planId.getLocalPart());
+			return false;
+		}
+		
+		if (!this.storeEndpoint(URI.create(endpoint), portType, csarId, planId, planRef)) {
+			this.runtime.undeploy(csarId.toString(), planId.getLocalPart());
+			return false;
+		}
+		
+		EmbeddedPlanEnginePlugin.LOG.info("Deployment of Plan was successfull: {}", fetchedPlan.getFileName().toString());
+		return true;
+	}
+	
+	/**
+	 * Fetches the zip file of a plan from the CSAR
+	 * 
+	 * @param planId the id of the plan
+	 * @param planRef the reference of the plan
+	 * @param csarId the CSAR the plan belongs to
+	 * @return the path of the plan, null if the plan couldn't be fetched
+	 */
+	private Path fetchPlan(QName planId, PlanModelReference planRef, CSARID csarId) {
+		if (this.fileService == null) {
+			EmbeddedPlanEnginePlugin.LOG.error("Can't fetch relevant files from FileService: FileService not available");
+			return null;
+		}
+		
+		CSARContent csar = null;
+		
+		try {
+			csar = this.fileService.getCSAR(csarId);
+		} catch (UserException exc) {
+			EmbeddedPlanEnginePlugin.LOG.error("An User Exception occured.", exc);
+			return null;
+		}
+		
+		AbstractArtifact planReference = this.toscaEngine.getPlanModelReferenceAbstractArtifact(csar, planId);
+		
+		if (planReference == null) {
+			EmbeddedPlanEnginePlugin.LOG.error("Plan reference '{}' resulted in a null ArtifactReference.", planRef.getReference());
+			return null;
+		}
+		
+		if (!planReference.isFileArtifact()) {
+			EmbeddedPlanEnginePlugin.LOG.warn("Only plan references pointing to a file are supported!");
+			return null;
+		}
+		
+		AbstractFile plan = planReference.getFile("");
+		
+		if (plan == null) {
+			EmbeddedPlanEnginePlugin.LOG.error("ArtifactReference resulted in null AbstractFile.");
+			return null;
+		}
+		
+		if (!plan.getName().substring(plan.getName().lastIndexOf('.') + 1).equals("zip")) {
+			EmbeddedPlanEnginePlugin.LOG.debug("Plan reference is not a ZIP file. It was '{}'.", plan.getName());
+			return null;
+		}
+		
+		try {
+			return plan.getFile();
+		} catch (SystemException exc) {
+			EmbeddedPlanEnginePlugin.LOG.error("An System Exception occured. File could not be fetched.", exc);
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads a file of the plan, if it was updated the updated content is
+	 * returned
+	 */
+	private static byte[] read(PlanArchive planArchive, String entry) throws IOException {
+		InputStream in = planArchive.getInputStream(entry);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Stores the endpoint of a deployed plan
+	 * 
+	 * @param endpoint the endpoint the container can use to instantiate the
+	 *            BPEL Process
+	 * @param portType the portType of the process
+	 * @param csarId the CSAR the plan belongs to
+	 * @param planId the id of the plan
+	 * @param planRef the reference of the plan
+	 * @return true if the endpoint was stored, else false
+	 */
+	private boolean storeEndpoint(URI endpoint, QName portType, CSARID csarId, QName planId, PlanModelReference planRef) {
+		WSDLEndpoint wsdlEndpoint = new WSDLEndpoint(endpoint, portType, csarId, planId, null, null);
+		
+		if (this.endpointService != null) {
+			EmbeddedPlanEnginePlugin.LOG.debug("Store new endpoint!");
+			this.endpointService.storeWSDLEndpoint(wsdlEndpoint);
+			return true;
+		} else {
+			EmbeddedPlanEnginePlugin.LOG.warn("Couldn't store endpoint {} for plan {}, cause endpoint service is not available", endpoint.toString(), planRef.getReference());
+			return false;
+		}
+	}
+	
+	/**
+	 * Updates the endpoints inside the WSDL files and the BPEL4RESTLight
+	 * elements of the given plan. The changed files are replaced inside the
+	 * plan.
+	 * 
+	 * @param planArchive the plan to update
+	 * @param planRef the reference of the plan
+	 * @param csarId the CSAR the plan belongs to
+	 * @return the portType of the process, null if it couldn't be determined
+	 */
+	private QName updatePlan(PlanArchive planArchive, PlanModelReference planRef, CSARID csarId) {
+		QName portType = null;
+		
+		// changing endpoints in WSDLs
+		ODEEndpointUpdater odeUpdater;
+		try {
+			odeUpdater = new ODEEndpointUpdater();
+			portType = odeUpdater.getPortType(planArchive);
+			if (!odeUpdater.changeEndpoints(planArchive, csarId)) {
+				EmbeddedPlanEnginePlugin.LOG.error("Not all endpoints used by the plan {} have been changed", planRef.getReference());
+			}
+		} catch (WSDLException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("Couldn't load ODEEndpointUpdater", e);
+		}
+		
+		// update the bpel4restlight elements (ex.: GET, PUT,..)
+		BPELRESTLightUpdater bpelRestUpdater;
+		try {
+			bpelRestUpdater = new BPELRESTLightUpdater();
+			if (!bpelRestUpdater.changeEndpoints(planArchive, csarId)) {
+				// we don't abort deployment here
+				EmbeddedPlanEnginePlugin.LOG.warn("Could'nt change all endpoints inside BPEL4RESTLight Elements in the given process {}", planRef.getReference());
+			}
+		} catch (TransformerConfigurationException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
+		} catch (ParserConfigurationException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
+		} catch (SAXException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("ParseError: Couldn't parse .bpel file", e);
+		} catch (IOException e) {
+			EmbeddedPlanEnginePlugin.LOG.error("IOError: Couldn't access .bpel file", e);
+		}
+		
+		return portType;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean undeployPlanReference(QName planId, PlanModelReference planRef, CSARID csarId) {
+		boolean wasUndeployed = this.runtime.undeploy(csarId.toString(), planId.getLocalPart());
+		
+		// remove endpoint from core
+		if (this.endpointService != null) {
+			EmbeddedPlanEnginePlugin.LOG.debug("Starting to remove endpoint!");
+			WSDLEndpoint endpoint = this.endpointService.getWSDLEndpointForPlanId(csarId, planId);
+			
+			if (endpoint == null) {
+				EmbeddedPlanEnginePlugin.LOG.warn("Couldn't remove endpoint for plan {}, because endpoint service didn't find any endpoint associated with the plan to remove", planRef.getReference());
+			} else if (this.endpointService.removeWSDLEndpoint(csarId, endpoint)) {
+				EmbeddedPlanEnginePlugin.LOG.debug("Removed endpoint {} for plan {}", endpoint.toString(), planRef.getReference());
+			}
+		} else {
+			EmbeddedPlanEnginePlugin.LOG.warn("Couldn't remove endpoint for plan {}, cause endpoint service is not available", planRef.getReference());
+		}
+		
+		if (wasUndeployed) {
+			EmbeddedPlanEnginePlugin.LOG.info("Undeployment of Plan " + planRef.getReference() + " was successful");
+		} else {
+			EmbeddedPlanEnginePlugin.LOG.warn("Plan {} wasn't deployed by this plugin", planRef.getReference());
+		}
+		return wasUndeployed;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The runtime doesn't keep the deployed plans across restarts of the
+	 * container, thus such plans are reported as not deployed.
+	 */
+	@Override
+	public boolean isPlanReferenceDeployed(QName planId, PlanModelReference planRef, CSARID csarId) {
+		return this.runtime.isDeployed(csarId.toString(), planId.getLocalPart());
+	}
+	
+	/**
+	 * Bind method for IFileServices
+	 * 
+	 * @param fileService the file service to bind
+	 */
+	public void registerFileService(ICoreFileService fileService) {
+		if (fileService != null) {
+			EmbeddedPlanEnginePlugin.LOG.debug("Registering FileService {}", fileService.toString());
+			if (this.fileService == null) {
+				this.fileService = fileService;
+			} else {
+				this.oldFileService = fileService;
+				this.fileService = fileService;
+			}
+			EmbeddedPlanEnginePlugin.LOG.debug("Registered FileService {}", fileService.toString());
+		}
+	}
+	
+	/**
+	 * Unbind method for IFileServices
+	 * 
+	 * @param fileService the file service to unbind
+	 */
+	protected void unregisterFileService(ICoreFileService fileService) {
+		EmbeddedPlanEnginePlugin.LOG.debug("Unregistering FileService {}", fileService.toString());
+		if (this.oldFileService == null) {
+			this.fileService = null;
+		} else {
+			this.oldFileService = null;
+		}
+		EmbeddedPlanEnginePlugin.LOG.debug("Unregistered FileService {}", fileService.toString());
+	}
+	
+	/**
+	 * Bind method for ICoreEndpointServices
+	 * 
+	 * @param endpointService the endpointService to bind
+	 */
+	public void registerEndpointService(ICoreEndpointService endpointService) {
+		if (endpointService != null) {
+			EmbeddedPlanEnginePlugin.LOG.debug("Registering EndpointService {}", endpointService.toString());
+			if (this.endpointService == null) {
+				this.endpointService = endpointService;
+			} else {
+				this.oldEndpointService = endpointService;
+				this.endpointService = endpointService;
+			}
+			EmbeddedPlanEnginePlugin.LOG.debug("Registered EndpointService {}", endpointService.toString());
+		}
+	}
+	
+	/**
+	 * Unbind method for ICoreEndpointServices
+	 * 
+	 * @param endpointService the endpointService to unbind
+	 */
+	protected void unregisterEndpointService(ICoreEndpointService endpointService) {
+		EmbeddedPlanEnginePlugin.LOG.debug("Unregistering EndpointService {}", endpointService.toString());
+		if (this.oldEndpointService == null) {
+			this.endpointService = null;
+		} else {
+			this.oldEndpointService = null;
+		}
+		EmbeddedPlanEnginePlugin.LOG.debug("Unregistered EndpointService {}", endpointService.toString());
+	}
+	
+	/**
+	 * Bind method for IToscaEngineService
+	 * 
+	 * @param service the IToscaEngineService to bind
+	 */
+	public void registerToscaEngine(IToscaEngineService service) {
+		if (service != null) {
+			this.toscaEngine = service;
+			EmbeddedPlanEnginePlugin.LOG.debug("Registered IToscaEngineService {}", service.toString());
+		}
+	}
+	
+	/**
+	 * Unbind method for IToscaEngineService
+	 * 
+	 * @param service the IToscaEngineService to unbind
+	 */
+	protected void unregisterToscaEngine(IToscaEngineService service) {
+		this.toscaEngine = null;
+		EmbeddedPlanEnginePlugin.LOG.debug("Unregistered IToscaEngineService {}", service.toString());
+	}
+	
+	/**
+	 * Stops the embedded BPEL runtime when the component is deactivated. The
+	 * plans deployed on it are lost.
+	 */
+	protected void deactivate() {
+		this.runtime.shutdown();
+		EmbeddedPlanEnginePlugin.LOG.debug("Embedded BPEL runtime stopped.");
+	}
+	
+	@Override
+	public String toString() {
+		return Messages.EmbeddedPlanEnginePlugin_description;
+	}
+}
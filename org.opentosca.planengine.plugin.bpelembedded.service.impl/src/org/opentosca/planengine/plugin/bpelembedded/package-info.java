@@ -0,0 +1,15 @@
+/**
+ * <p>
+ * This package contains the main access point to the bundle/PlanEnginePlugin
+ * openTOSCA PlanEngine embedded WS-BPEL 2.0
+ * </p>
+ * <p>
+ * The package contains the class
+ * {@link org.opentosca.planengine.plugin.bpelembedded.EmbeddedPlanEnginePlugin}
+ * which implements the {@link IPlanEnginePlanRefPluginService} interface. The
+ * plans are updated with the utilities of the
+ * {@link org.opentosca.planengine.plugin.bpelwso2.util} package, thus the
+ * bundle of the WSO2 BPS plugin has to be started too.
+ * </p>
+ */
+package org.opentosca.planengine.plugin.bpelembedded;
@@ -0,0 +1,55 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Fault thrown by an activity of a process instance.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Besides the standard faults of WS-BPEL 2.0 the runtime throws
+ * <tt>invocationFailure</tt> if a partner service couldn't be invoked and
+ * <tt>terminated</tt> if the instance was terminated, e.g. because its
+ * process was undeployed.
+ * 
+ * 
+ */
+class BpelFault extends Exception {
+	
+	private static final long serialVersionUID = 6326409012452640587L;
+	
+	private static final String RUNTIME_NS = "http://opentosca.org/planengine/bpelembedded";
+	
+	static final QName SELECTION_FAILURE = new QName(Xml.BPEL_NS, "selectionFailure");
+	static final QName JOIN_FAILURE = new QName(Xml.BPEL_NS, "joinFailure");
+	static final QName MISMATCHED_ASSIGNMENT = new QName(Xml.BPEL_NS, "mismatchedAssignmentFailure");
+	static final QName CORRELATION_VIOLATION = new QName(Xml.BPEL_NS, "correlationViolation");
+	static final QName UNINITIALIZED_VARIABLE = new QName(Xml.BPEL_NS, "uninitializedVariable");
+	static final QName SUB_LANGUAGE_FAULT = new QName(Xml.BPEL_NS, "subLanguageExecutionFault");
+	static final QName INVOCATION_FAILURE = new QName(BpelFault.RUNTIME_NS, "invocationFailure");
+	static final QName TERMINATED = new QName(BpelFault.RUNTIME_NS, "terminated");
+	
+	private final QName faultName;
+	
+	
+	BpelFault(QName faultName, String message) {
+		super(message);
+		this.faultName = faultName;
+	}
+	
+	BpelFault(QName faultName, String message, Throwable cause) {
+		super(message, cause);
+		this.faultName = faultName;
+	}
+	
+	QName getFaultName() {
+		return this.faultName;
+	}
+	
+	@Override
+	public String getMessage() {
+		return this.faultName.getLocalPart() + ": " + super.getMessage();
+	}
+}
@@ -0,0 +1,330 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Embedded, in-process WS-BPEL 2.0 runtime executing the plans of the plan
+ * builder.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A deployed plan provides its services at
+ * <tt>{address}/{CSARID}/{plan}/{service}</tt>, their WSDL is available by
+ * appending <tt>?wsdl</tt>. The runtime starts an embedded Jetty server at
+ * the port of the address when the first plan is deployed and stops it when
+ * the last plan is undeployed. Instances and the branches of their flows run
+ * in a pool of daemon threads.<br>
+ * <br>
+ * 
+ * The runtime only executes the subset of WS-BPEL 2.0 the plan builder
+ * generates, see {@link ProcessInstance}. Plans containing other activities
+ * are rejected when they are deployed.
+ * 
+ * 
+ */
+public class BpelRuntime {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(BpelRuntime.class);
+	
+	private final String address;
+	private final URI uri;
+	private final int connectTimeout;
+	private final int readTimeout;
+	
+	private final Map<String, Deployment> deployments = new HashMap<String, Deployment>();
+	private final ExecutorService executor;
+	
+	private Server server = null;
+	
+	
+	/**
+	 * Creates the runtime, the server is started with the first deployment.
+	 * 
+	 * @param address the base address of the services of deployed plans, e.g.
+	 *            <tt>http://localhost:9764/plans</tt>.
+	 * @param connectTimeout for invoking partners in milliseconds.
+	 * @param readTimeout for invoking partners in milliseconds.
+	 * @throws IllegalArgumentException if the address isn't an absolute http
+	 *             URI.
+	 */
+	public BpelRuntime(String address, int connectTimeout, int readTimeout) {
+		this.address = address.endsWith("/") ? address.substring(0, address.length() - 1) : address;
+		this.uri = URI.create(this.address);
+		if (!"http".equals(this.uri.getScheme()) || (this.uri.getHost() == null)) {
+			throw new IllegalArgumentException("The address " + address + " of the BPEL runtime isn't an absolute http URI.");
+		}
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		
+		final AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "bpelembedded-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Deploys a plan. An already deployed plan with the same CSARID and name
+	 * is replaced.
+	 * 
+	 * @param csarId of the CSAR containing the plan.
+	 * @param planName the local name of the plan.
+	 * @param files the files of the Apache ODE process package by their entry
+	 *            names.
+	 * @return the endpoint receiving the messages that create instances of
+	 *         the plan or <tt>null</tt> if the plan can't be executed by the
+	 *         runtime.
+	 * @throws IOException if the package couldn't be read or the server
+	 *             couldn't be started.
+	 */
+	public synchronized String deploy(String csarId, String planName, Map<String, byte[]> files) throws IOException {
+		String id = BpelRuntime.getDeploymentId(csarId, planName);
+		
+		ProcessDefinition definition = new ProcessDefinition(files);
+		
+		Set<String> unsupported = definition.getUnsupportedActivities();
+		if (!unsupported.isEmpty()) {
+			BpelRuntime.LOG.error("The process {} uses the unsupported constructs {}.", definition.getName(), unsupported);
+			return null;
+		}
+		
+		Deployment deployment = new Deployment(this, definition, this.address + "/" + id);
+		String endpoint = deployment.getStartEndpoint();
+		if (endpoint == null) {
+			BpelRuntime.LOG.error("The process {} provides no service receiving the messages that create its instances.", definition.getName());
+			return null;
+		}
+		
+		this.undeploy(csarId, planName);
+		if (this.server == null) {
+			this.start();
+		}
+		
+		this.deployments.put(id, deployment);
+		definition.log();
+		BpelRuntime.LOG.info("Deployed the process {} at {}", definition.getName(), endpoint);
+		return endpoint;
+	}
+	
+	/**
+	 * Undeploys a plan and terminates its running instances.
+	 * 
+	 * @return <tt>true</tt> if the plan was deployed.
+	 */
+	public synchronized boolean undeploy(String csarId, String planName) {
+		Deployment deployment = this.deployments.remove(BpelRuntime.getDeploymentId(csarId, planName));
+		if (deployment == null) {
+			return false;
+		}
+		
+		deployment.terminate();
+		BpelRuntime.LOG.info("Undeployed the process {}", deployment.getDefinition().getName());
+		
+		if (this.deployments.isEmpty()) {
+			this.stop();
+		}
+		return true;
+	}
+	
+	/**
+	 * Undeploys all plans, stops the server and the threads of the runtime.
+	 * The runtime can't be used afterwards.
+	 */
+	public synchronized void shutdown() {
+		for (Deployment deployment : this.deployments.values()) {
+			deployment.terminate();
+		}
+		this.deployments.clear();
+		this.stop();
+		this.executor.shutdownNow();
+		BpelRuntime.LOG.debug("Shut down the BPEL runtime at {}", this.address);
+	}
+	
+	public synchronized boolean isDeployed(String csarId, String planName) {
+		return this.deployments.containsKey(BpelRuntime.getDeploymentId(csarId, planName));
+	}
+	
+	private synchronized Deployment getDeployment(String id) {
+		return this.deployments.get(id);
+	}
+	
+	ExecutorService getExecutor() {
+		return this.executor;
+	}
+	
+	int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+	
+	int getReadTimeout() {
+		return this.readTimeout;
+	}
+	
+	private void start() throws IOException {
+		SelectChannelConnector connector = new SelectChannelConnector();
+		connector.setHost(this.uri.getHost());
+		connector.setPort(this.uri.getPort() < 0 ? 80 : this.uri.getPort());
+		
+		QueuedThreadPool threadPool = new QueuedThreadPool();
+		threadPool.setName("bpelembedded-http");
+		threadPool.setDaemon(true);
+		
+		Server server = new Server();
+		server.setThreadPool(threadPool);
+		server.addConnector(connector);
+		server.setHandler(new RequestHandler());
+		
+		try {
+			server.start();
+		} catch (Exception e) {
+			try {
+				server.stop();
+			} catch (Exception stopException) {
+				BpelRuntime.LOG.debug("Couldn't stop the partly started server.", stopException);
+			}
+			throw new IOException("Couldn't start the server of the BPEL runtime at " + this.address + ": " + e.getMessage(), e);
+		}
+		this.server = server;
+		BpelRuntime.LOG.info("Started the BPEL runtime at {}", this.address);
+	}
+	
+	private void stop() {
+		if (this.server == null) {
+			return;
+		}
+		try {
+			this.server.stop();
+			BpelRuntime.LOG.info("Stopped the BPEL runtime at {}", this.address);
+		} catch (Exception e) {
+			BpelRuntime.LOG.warn("Couldn't stop the server of the BPEL runtime.", e);
+		}
+		this.server = null;
+	}
+	
+	private static String getDeploymentId(String csarId, String planName) {
+		return BpelRuntime.encode(csarId) + "/" + BpelRuntime.encode(planName);
+	}
+	
+	/**
+	 * Encodes a segment of a path.
+	 */
+	static String encode(String segment) {
+		try {
+			return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 isn't supported.", e);
+		}
+	}
+	
+	private static String decode(String segment) {
+		try {
+			return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 isn't supported.", e);
+		}
+	}
+	
+	
+	/**
+	 * Handles the requests for the services of the deployed plans.
+	 */
+	private class RequestHandler extends AbstractHandler {
+		
+		@Override
+		public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+			baseRequest.setHandled(true);
+			
+			String base = BpelRuntime.this.uri.getRawPath() + "/";
+			String path = request.getRequestURI();
+			String[] segments = path.startsWith(base) ? path.substring(base.length()).split("/", 3) : new String[0];
+			if (segments.length < 3) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			
+			Deployment deployment = BpelRuntime.this.getDeployment(BpelRuntime.getDeploymentId(BpelRuntime.decode(segments[0]), BpelRuntime.decode(segments[1])));
+			if (deployment == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			String resource = BpelRuntime.decode(segments[2]);
+			
+			if (request.getMethod().equals("GET")) {
+				byte[] content = "wsdl".equalsIgnoreCase(request.getQueryString()) ? deployment.getWSDL(resource) : deployment.getFile(resource);
+				if (content == null) {
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				} else {
+					this.write(response, HttpServletResponse.SC_OK, content);
+				}
+				
+			} else if (request.getMethod().equals("POST")) {
+				Soap.Envelope envelope;
+				try {
+					envelope = Soap.parse(request.getInputStream());
+				} catch (IOException e) {
+					BpelRuntime.LOG.warn("Couldn't read a message for {}: {}", path, e.getMessage());
+					this.write(response, HttpServletResponse.SC_BAD_REQUEST, Soap.newFault("Client", e.getMessage()));
+					return;
+				}
+				
+				Document reply = deployment.receive(resource, request.getHeader("SOAPAction"), envelope);
+				if (reply == null) {
+					response.setStatus(HttpServletResponse.SC_ACCEPTED);
+				} else {
+					this.write(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, reply);
+				}
+				
+			} else {
+				response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			}
+		}
+		
+		private void write(HttpServletResponse response, int status, Document document) throws IOException {
+			this.write(response, status, Xml.toString(document).getBytes(Soap.UTF8));
+		}
+		
+		private void write(HttpServletResponse response, int status, byte[] content) throws IOException {
+			response.setStatus(status);
+			response.setContentType(Soap.CONTENT_TYPE);
+			response.setContentLength(content.length);
+			OutputStream out = response.getOutputStream();
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Binding;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Operation;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Part;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.PropertyAlias;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Deployed process with its endpoints and running instances.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each service the process provides, i.e. each provide of the deploy.xml, is
+ * an endpoint below the address of the deployment. A message for a service
+ * is routed:
+ * <ol>
+ * <li>to a new instance, if its operation is received with
+ * <tt>createInstance="yes"</tt>,</li>
+ * <li>to the instance that initiated a correlationSet with the values of the
+ * properties of the message, e.g. the MessageID of a callback of the service
+ * invoker,</li>
+ * <li>to the instance that sent the request with the MessageID of the
+ * RelatesTo header of the message,</li>
+ * <li>to the only running instance.</li>
+ * </ol>
+ * 
+ * 
+ */
+class Deployment {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(Deployment.class);
+	
+	// propertyAliases are evaluated without variables
+	private static final Expressions.Variables NO_VARIABLES = new Expressions.Variables() {
+		
+		@Override
+		public Object resolve(String name) throws BpelFault {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "A propertyAlias can't reference the variable " + name + ".");
+		}
+	};
+	
+	private final BpelRuntime runtime;
+	private final ProcessDefinition definition;
+	private final String address;
+	
+	private final List<ProcessInstance> instances = new ArrayList<ProcessInstance>();
+	private final AtomicLong instanceCounter = new AtomicLong();
+	
+	
+	/**
+	 * @param runtime running the process.
+	 * @param definition of the process.
+	 * @param address of the deployment, the services are below it.
+	 */
+	Deployment(BpelRuntime runtime, ProcessDefinition definition, String address) {
+		this.runtime = runtime;
+		this.definition = definition;
+		this.address = address;
+	}
+	
+	ProcessDefinition getDefinition() {
+		return this.definition;
+	}
+	
+	ExecutorService getExecutor() {
+		return this.runtime.getExecutor();
+	}
+	
+	int getConnectTimeout() {
+		return this.runtime.getConnectTimeout();
+	}
+	
+	int getReadTimeout() {
+		return this.runtime.getReadTimeout();
+	}
+	
+	/**
+	 * @return the endpoint of the service provided for a partnerLink, i.e.
+	 *         its myRole endpoint reference, or <tt>null</tt>.
+	 */
+	String getEndpoint(String partnerLink) {
+		Service service = this.definition.getProvidedService(partnerLink);
+		return service == null ? null : this.getEndpoint(service);
+	}
+	
+	private String getEndpoint(Service service) {
+		return this.address + "/" + BpelRuntime.encode(service.path);
+	}
+	
+	/**
+	 * @return the endpoint of the service receiving the messages that create
+	 *         instances, <tt>null</tt> if there is none.
+	 */
+	String getStartEndpoint() {
+		for (String operation : this.definition.getStartOperations()) {
+			String endpoint = this.getEndpoint(operation.substring(0, operation.indexOf('#')));
+			if (endpoint != null) {
+				return endpoint;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Computes the values of the properties of a message with the
+	 * propertyAliases of its message type.
+	 * 
+	 * @return the values by property, a property whose query selects nothing
+	 *         is missing.
+	 */
+	Map<QName, String> getProperties(QName messageType, Message message) {
+		Map<QName, String> properties = new HashMap<QName, String>();
+		
+		for (PropertyAlias alias : this.definition.getPropertyAliases(messageType)) {
+			Element part = alias.part == null ? null : message.getPart(alias.part);
+			if (part == null) {
+				continue;
+			}
+			try {
+				Object value = alias.query == null ? part.getTextContent() : Expressions.query(alias.query.getTextContent(), alias.query, part, Deployment.NO_VARIABLES);
+				String text = Expressions.stringValue(value).trim();
+				if (!text.isEmpty()) {
+					properties.put(alias.property, text);
+				}
+			} catch (BpelFault fault) {
+				Deployment.LOG.warn("The property {} of a {} message couldn't be read: {}", alias.property, messageType, fault.getMessage());
+			}
+		}
+		return properties;
+	}
+	
+	/**
+	 * Routes a message received by a service of the process.
+	 * 
+	 * @param path of the service.
+	 * @param soapAction of the request, may be <tt>null</tt>.
+	 * @param envelope the received envelope.
+	 * @return the response envelope, <tt>null</tt> if the message was
+	 *         accepted and there is no response.
+	 */
+	Document receive(String path, String soapAction, Soap.Envelope envelope) {
+		Service service = this.definition.getProvidedServices().get(path);
+		if (service == null) {
+			return Soap.newFault("Client", "The process " + this.definition.getName() + " provides no service " + path + ".");
+		}
+		
+		Binding binding = this.definition.getBinding(service.port.binding);
+		Operation operation = binding == null ? null : this.getOperation(binding, soapAction, envelope);
+		if (operation == null) {
+			return Soap.newFault("Client", "The message matches no operation of the service " + path + ".");
+		}
+		if (operation.output != null) {
+			return Soap.newFault("Server", "The request-response operation " + operation.name + " isn't supported, only one-way operations can be provided.");
+		}
+		
+		Message message = Soap.toMessage(envelope, this.definition.getParts(operation.input));
+		
+		// the container sends its ReplyTo address as text, the processes
+		// read it from an Address child as in WS-Addressing
+		Element replyTo = message.getHeader("ReplyTo");
+		if ((replyTo != null) && Xml.children(replyTo).isEmpty()) {
+			Element address = replyTo.getOwnerDocument().createElementNS(Xml.WSA_NS, "wsa:Address");
+			address.setTextContent(replyTo.getTextContent().trim());
+			replyTo.setTextContent(null);
+			replyTo.appendChild(address);
+		}
+		
+		ProcessInstance.Incoming incoming = new ProcessInstance.Incoming(service.partnerLinks, operation.name, message, this.getProperties(operation.input, message));
+		
+		synchronized (this) {
+			for (String partnerLink : service.partnerLinks) {
+				if (this.definition.getStartOperations().contains(partnerLink + "#" + operation.name)) {
+					this.start(incoming);
+					return null;
+				}
+			}
+			
+			ProcessInstance instance = this.route(incoming, message);
+			if (instance == null) {
+				Deployment.LOG.warn("The message for {} of the service {} matches no instance of the process {}.", operation.name, path, this.definition.getName());
+				return Soap.newFault("Client", "The message for " + operation.name + " matches no instance of the process " + this.definition.getName() + ".");
+			}
+			
+			Deployment.LOG.debug("Routed {} of the service {} to the instance {}", operation.name, path, instance.getId());
+			instance.deliver(incoming);
+			return null;
+		}
+	}
+	
+	private ProcessInstance route(ProcessInstance.Incoming incoming, Message message) {
+		if (!incoming.properties.isEmpty()) {
+			for (ProcessInstance instance : this.instances) {
+				if (instance.correlates(incoming.properties)) {
+					return instance;
+				}
+			}
+		}
+		
+		Element relatesTo = message.getHeader("RelatesTo");
+		if (relatesTo != null) {
+			for (ProcessInstance instance : this.instances) {
+				if (instance.hasSent(relatesTo.getTextContent().trim())) {
+					return instance;
+				}
+			}
+		}
+		
+		return this.instances.size() == 1 ? this.instances.get(0) : null;
+	}
+	
+	/**
+	 * Determines the operation of a message by its SOAPAction or otherwise
+	 * by the element of its body.
+	 */
+	private Operation getOperation(Binding binding, String soapAction, Soap.Envelope envelope) {
+		String action = soapAction == null ? "" : soapAction.replace("\"", "").trim();
+		if (!action.isEmpty()) {
+			for (Entry<String, String> operation : binding.soapActions.entrySet()) {
+				if (action.equals(operation.getValue())) {
+					return this.definition.getOperation(binding.portType, operation.getKey());
+				}
+			}
+		}
+		
+		Map<String, Operation> operations = this.definition.getOperations(binding.portType);
+		if (!envelope.body.isEmpty()) {
+			Element body = envelope.body.get(0);
+			QName element = new QName(body.getNamespaceURI() == null ? "" : body.getNamespaceURI(), body.getLocalName());
+			for (Operation operation : operations.values()) {
+				List<Part> parts = this.definition.getParts(operation.input);
+				if (!parts.isEmpty() && element.equals(parts.get(0).element)) {
+					return operation;
+				}
+			}
+		}
+		return operations.size() == 1 ? operations.values().iterator().next() : null;
+	}
+	
+	private void start(ProcessInstance.Incoming incoming) {
+		String id = this.definition.getName().getLocalPart() + "-" + this.instanceCounter.incrementAndGet();
+		ProcessInstance instance = new ProcessInstance(this, id, incoming);
+		this.instances.add(instance);
+		this.getExecutor().execute(instance);
+	}
+	
+	/**
+	 * Called by an instance when it completed, faulted or was terminated.
+	 */
+	synchronized void finished(ProcessInstance instance) {
+		this.instances.remove(instance);
+	}
+	
+	/**
+	 * Terminates the running instances.
+	 */
+	synchronized void terminate() {
+		for (ProcessInstance instance : this.instances) {
+			instance.terminate();
+		}
+		if (!this.instances.isEmpty()) {
+			Deployment.LOG.info("Terminated {} running instances of the process {}.", this.instances.size(), this.definition.getName());
+		}
+	}
+	
+	/**
+	 * Returns the WSDL of a provided service with the addresses of its ports
+	 * set to the endpoints of the deployment.
+	 * 
+	 * @return the WSDL or <tt>null</tt> if there is no such service.
+	 */
+	byte[] getWSDL(String path) throws IOException {
+		Service service = this.definition.getProvidedServices().get(path);
+		if (service == null) {
+			return null;
+		}
+		
+		Document wsdl = Xml.parse(new ByteArrayInputStream(this.definition.getFile(service.port.entry)));
+		NodeList services = wsdl.getElementsByTagNameNS(Xml.WSDL_NS, "service");
+		for (int i = 0; i < services.getLength(); i++) {
+			Service provided = this.definition.getProvidedServices().get(((Element) services.item(i)).getAttribute("name"));
+			if (provided == null) {
+				continue;
+			}
+			for (Element port : Xml.children((Element) services.item(i), Xml.WSDL_NS, "port")) {
+				Element address = Xml.child(port, Xml.WSDL_SOAP_NS, "address");
+				if (address != null) {
+					address.setAttribute("location", this.getEndpoint(provided));
+				}
+			}
+		}
+		return Xml.toString(wsdl).getBytes(Soap.UTF8);
+	}
+	
+	/**
+	 * Returns a file of the package relative to the WSDL files of the
+	 * provided services, e.g. an imported XML Schema.
+	 * 
+	 * @return the file or <tt>null</tt> if there is no such file.
+	 */
+	byte[] getFile(String path) {
+		for (Service service : this.definition.getProvidedServices().values()) {
+			int slash = service.port.entry.lastIndexOf('/');
+			String directory = slash < 0 ? "" : service.port.entry.substring(0, slash + 1);
+			byte[] file = this.definition.getFile(directory + path);
+			if ((file != null) && !path.contains("..")) {
+				return file;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,286 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Evaluation of the expressions and queries of a process.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Expressions and queries are evaluated with the XPath 1.0 implementation of
+ * the JDK. The namespace prefixes are resolved with the declarations in scope
+ * of the element containing the expression. BPEL variables are referenced as
+ * <tt>$variable</tt> or <tt>$variable.part</tt> and the status of links in
+ * join conditions as <tt>$link</tt>. Of XPath 2.0 the string functions the
+ * plan builder uses are provided: <tt>replace</tt>, <tt>matches</tt>,
+ * <tt>upper-case</tt>, <tt>lower-case</tt> and <tt>ends-with</tt>.<br>
+ * <br>
+ * 
+ * A query is evaluated on the element of a variable, part or header. As in
+ * Apache ODE an absolute location path of a query starts at this element,
+ * e.g. <tt>/ns:MessageID</tt> selects a child of the part.
+ * 
+ * 
+ */
+final class Expressions {
+	
+	private static final String XPATH20_NS = "http://www.w3.org/2005/xpath-functions";
+	private static final String XPATH20_PREFIX = "xpath20fn";
+	
+	private static final Pattern XPATH20_FUNCTIONS = Pattern.compile("(?<![\\w.:$-])(replace|matches|upper-case|lower-case|ends-with)\\s*\\(");
+	private static final Pattern ABSOLUTE_PATH = Pattern.compile("(^|[(,|]\\s*)/(?!/)");
+	
+	private static final XPathFactory FACTORY = XPathFactory.newInstance();
+	
+	// context of expressions, the XPath implementation of the JDK can't
+	// evaluate a path starting at a variable without one
+	private static final Document EMPTY_CONTEXT = Xml.newDocument();
+	
+	
+	/**
+	 * Resolves the variables and links an expression references.
+	 */
+	interface Variables {
+		
+		/**
+		 * @param name of the variable, <tt>variable.part</tt> or link.
+		 * @return the element holding the value of a variable or part, or the
+		 *         Boolean status of a link.
+		 * @throws BpelFault if there is no such variable or link.
+		 */
+		Object resolve(String name) throws BpelFault;
+	}
+	
+	
+	private Expressions() {
+	}
+	
+	/**
+	 * Evaluates an expression.
+	 * 
+	 * @param expression the XPath expression.
+	 * @param declaration the element containing the expression.
+	 * @param context the context node or <tt>null</tt>.
+	 * @param variables resolving the referenced variables.
+	 * @return the selected nodes, or a String, Double or Boolean if the
+	 *         expression doesn't return a node-set.
+	 * @throws BpelFault if the expression couldn't be evaluated.
+	 */
+	static Object evaluate(String expression, Element declaration, Node context, Variables variables) throws BpelFault {
+		try {
+			return Expressions.evaluate(expression, declaration, context, variables, XPathConstants.NODESET);
+		} catch (BpelFault fault) {
+			// no node-set, thus the result is a string, number or boolean
+			return Expressions.evaluate(expression, declaration, context, variables, XPathConstants.STRING);
+		}
+	}
+	
+	/**
+	 * Evaluates a boolean expression, e.g. a join condition.
+	 */
+	static boolean evaluateBoolean(String expression, Element declaration, Variables variables) throws BpelFault {
+		return (Boolean) Expressions.evaluate(expression, declaration, null, variables, XPathConstants.BOOLEAN);
+	}
+	
+	/**
+	 * Evaluates an expression to a string, e.g. a duration.
+	 */
+	static String evaluateString(String expression, Element declaration, Variables variables) throws BpelFault {
+		return (String) Expressions.evaluate(expression, declaration, null, variables, XPathConstants.STRING);
+	}
+	
+	/**
+	 * Evaluates a query on the element of a variable, part or header.
+	 * 
+	 * @param query the XPath query.
+	 * @param declaration the element containing the query.
+	 * @param context the element the query is evaluated on.
+	 * @param variables resolving the referenced variables.
+	 * @return the selected nodes, or a String, Double or Boolean if the query
+	 *         doesn't return a node-set.
+	 * @throws BpelFault if the query couldn't be evaluated.
+	 */
+	static Object query(String query, Element declaration, Element context, Variables variables) throws BpelFault {
+		return Expressions.evaluate(Expressions.ABSOLUTE_PATH.matcher(query.trim()).replaceAll("$1"), declaration, context, variables);
+	}
+	
+	/**
+	 * @return the nodes of a result, empty for a String, Double or Boolean.
+	 */
+	static List<Node> nodes(Object result) {
+		List<Node> nodes = new ArrayList<Node>();
+		if (result instanceof NodeList) {
+			NodeList list = (NodeList) result;
+			for (int i = 0; i < list.getLength(); i++) {
+				nodes.add(list.item(i));
+			}
+		}
+		return nodes;
+	}
+	
+	/**
+	 * @return the string value of a result.
+	 */
+	static String stringValue(Object result) {
+		if (result instanceof NodeList) {
+			NodeList list = (NodeList) result;
+			return list.getLength() == 0 ? "" : list.item(0).getTextContent();
+		}
+		if ((result instanceof Double) && (((Double) result) == Math.rint((Double) result)) && !((Double) result).isInfinite()) {
+			return String.valueOf(((Double) result).longValue());
+		}
+		return String.valueOf(result);
+	}
+	
+	private static Object evaluate(String expression, final Element declaration, Node context, final Variables variables, QName returnType) throws BpelFault {
+		XPath xpath;
+		synchronized (Expressions.FACTORY) {
+			xpath = Expressions.FACTORY.newXPath();
+		}
+		
+		xpath.setNamespaceContext(new NamespaceContext() {
+			
+			@Override
+			public String getNamespaceURI(String prefix) {
+				if (Expressions.XPATH20_PREFIX.equals(prefix)) {
+					return Expressions.XPATH20_NS;
+				}
+				String namespace = declaration.lookupNamespaceURI(prefix.isEmpty() ? null : prefix);
+				return namespace == null ? XMLConstants.NULL_NS_URI : namespace;
+			}
+			
+			@Override
+			public String getPrefix(String namespaceURI) {
+				return declaration.lookupPrefix(namespaceURI);
+			}
+			
+			@Override
+			public Iterator<String> getPrefixes(String namespaceURI) {
+				List<String> prefixes = new ArrayList<String>();
+				String prefix = this.getPrefix(namespaceURI);
+				if (prefix != null) {
+					prefixes.add(prefix);
+				}
+				return prefixes.iterator();
+			}
+		});
+		
+		xpath.setXPathVariableResolver(new XPathVariableResolver() {
+			
+			@Override
+			public Object resolveVariable(QName name) {
+				try {
+					return variables.resolve(name.getLocalPart());
+				} catch (BpelFault fault) {
+					throw new UnresolvedVariable(fault);
+				}
+			}
+		});
+		
+		xpath.setXPathFunctionResolver(new XPathFunctionResolver() {
+			
+			@Override
+			public XPathFunction resolveFunction(QName name, int arity) {
+				return Expressions.XPATH20_NS.equals(name.getNamespaceURI()) ? new XPath20Function(name.getLocalPart()) : null;
+			}
+		});
+		
+		String prepared = Expressions.XPATH20_FUNCTIONS.matcher(expression.trim()).replaceAll(Expressions.XPATH20_PREFIX + ":$1(");
+		
+		try {
+			return xpath.evaluate(prepared, context == null ? Expressions.EMPTY_CONTEXT : context, returnType);
+		} catch (XPathExpressionException e) {
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof UnresolvedVariable) {
+					throw ((UnresolvedVariable) cause).fault;
+				}
+			}
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "Couldn't evaluate " + expression.trim(), e);
+		} catch (UnresolvedVariable e) {
+			throw e.fault;
+		}
+	}
+	
+	
+	/**
+	 * Carries a fault of the variable resolution through the XPath
+	 * implementation.
+	 */
+	private static class UnresolvedVariable extends RuntimeException {
+		
+		private static final long serialVersionUID = -2474290871353716532L;
+		
+		private final BpelFault fault;
+		
+		
+		UnresolvedVariable(BpelFault fault) {
+			super(fault.getMessage());
+			this.fault = fault;
+		}
+	}
+	
+	/**
+	 * String function of XPath 2.0.
+	 */
+	private static class XPath20Function implements XPathFunction {
+		
+		private final String name;
+		
+		
+		XPath20Function(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Object evaluate(List args) throws XPathFunctionException {
+			List<String> values = new ArrayList<String>();
+			for (Object arg : args) {
+				values.add(Expressions.stringValue(arg));
+			}
+			
+			try {
+				if (this.name.equals("replace") && (values.size() == 3)) {
+					// the replacement is inserted literally, i.e. it may
+					// contain $ and \, e.g. in passwords
+					return Pattern.compile(values.get(1)).matcher(values.get(0)).replaceAll(Matcher.quoteReplacement(values.get(2)));
+				} else if (this.name.equals("matches") && (values.size() == 2)) {
+					return Pattern.compile(values.get(1)).matcher(values.get(0)).find();
+				} else if (this.name.equals("upper-case") && (values.size() == 1)) {
+					return values.get(0).toUpperCase(Locale.ENGLISH);
+				} else if (this.name.equals("lower-case") && (values.size() == 1)) {
+					return values.get(0).toLowerCase(Locale.ENGLISH);
+				} else if (this.name.equals("ends-with") && (values.size() == 2)) {
+					return values.get(0).endsWith(values.get(1));
+				}
+			} catch (RuntimeException e) {
+				throw new XPathFunctionException(e);
+			}
+			throw new XPathFunctionException("Unsupported function " + this.name + " with " + values.size() + " arguments");
+		}
+	}
+}
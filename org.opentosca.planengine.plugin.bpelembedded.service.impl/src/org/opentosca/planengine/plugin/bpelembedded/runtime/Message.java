@@ -0,0 +1,73 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.w3c.dom.Element;
+
+/**
+ * WSDL message with its SOAP headers, i.e. the value of a message variable or
+ * a message received or sent by an instance.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each part and header is an element that is the document element of its own
+ * document, thus queries starting with <tt>//</tt> stay inside the part.
+ * Headers are stored by their local name, as BPEL addresses them with the
+ * <tt>header</tt> attribute of a copy.
+ * 
+ * 
+ */
+class Message {
+	
+	private final Map<String, Element> parts = new LinkedHashMap<String, Element>();
+	private final Map<String, Element> headers = new LinkedHashMap<String, Element>();
+	
+	
+	/**
+	 * @return the part or <tt>null</tt> if it isn't initialized.
+	 */
+	Element getPart(String name) {
+		return this.parts.get(name);
+	}
+	
+	void setPart(String name, Element value) {
+		this.parts.put(name, value);
+	}
+	
+	Map<String, Element> getParts() {
+		return this.parts;
+	}
+	
+	/**
+	 * @return the header or <tt>null</tt> if it isn't set.
+	 */
+	Element getHeader(String localName) {
+		return this.headers.get(localName);
+	}
+	
+	void setHeader(String localName, Element value) {
+		this.headers.put(localName, value);
+	}
+	
+	Map<String, Element> getHeaders() {
+		return this.headers;
+	}
+	
+	/**
+	 * @return a deep copy of the message.
+	 */
+	Message copy() {
+		Message copy = new Message();
+		for (Entry<String, Element> part : this.parts.entrySet()) {
+			copy.parts.put(part.getKey(), Xml.copy(part.getValue()));
+		}
+		for (Entry<String, Element> header : this.headers.entrySet()) {
+			copy.headers.put(header.getKey(), Xml.copy(header.getValue()));
+		}
+		return copy;
+	}
+}
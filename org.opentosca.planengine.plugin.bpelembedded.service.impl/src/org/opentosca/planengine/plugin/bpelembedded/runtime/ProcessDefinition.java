@@ -0,0 +1,538 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Parsed WS-BPEL 2.0 process of a plan.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Reads the files of an Apache ODE process package: the deploy.xml, the
+ * .bpel file of the process declared in it and all WSDL files. The WSDL
+ * files are read as they are, without resolving their imports, as all of
+ * them are part of the package. Only the parts of the WSDL descriptions the
+ * runtime needs are kept: messages, operations, SOAP bindings, the addresses
+ * of the ports, partnerLinkTypes and propertyAliases.<br>
+ * <br>
+ * 
+ * The definition is immutable after it was read and shared by all instances
+ * of the process.
+ * 
+ * 
+ */
+class ProcessDefinition {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(ProcessDefinition.class);
+	
+	// activities the runtime can execute
+	private static final Set<String> ACTIVITIES = new HashSet<String>(Arrays.asList("sequence", "flow", "scope", "assign", "invoke", "receive", "empty", "wait", "exit", "extensionActivity"));
+	
+	// elements of a scope or process that aren't its activity
+	static final Set<String> DECLARATIONS = new HashSet<String>(Arrays.asList("targets", "sources", "extensions", "import", "partnerLinks", "messageExchanges", "variables", "correlationSets", "faultHandlers", "eventHandlers", "compensationHandler", "terminationHandler", "documentation"));
+	
+	private final Map<String, byte[]> files;
+	
+	private QName name;
+	private Element process;
+	
+	private final Map<QName, List<Part>> messages = new HashMap<QName, List<Part>>();
+	private final Map<QName, Map<String, Operation>> portTypes = new HashMap<QName, Map<String, Operation>>();
+	private final Map<QName, Binding> bindings = new HashMap<QName, Binding>();
+	private final Map<QName, Map<String, Port>> services = new HashMap<QName, Map<String, Port>>();
+	private final Map<QName, Map<String, QName>> partnerLinkTypes = new HashMap<QName, Map<String, QName>>();
+	private final List<PropertyAlias> propertyAliases = new ArrayList<PropertyAlias>();
+	
+	private final Map<String, PartnerLink> partnerLinks = new HashMap<String, PartnerLink>();
+	
+	// services provided by the process by their partnerLinks and by the local
+	// name of the service, which is the last segment of its endpoint
+	private final Map<String, Port> provides = new HashMap<String, Port>();
+	private final Map<String, Port> invokes = new HashMap<String, Port>();
+	private final Map<String, Service> providedServices = new LinkedHashMap<String, Service>();
+	
+	// partnerLink#operation of the receives creating an instance
+	private final Set<String> startOperations = new HashSet<String>();
+	
+	
+	/**
+	 * Reads a process package.
+	 * 
+	 * @param files the files of the package by their entry names.
+	 * @throws IOException if a file couldn't be parsed or the package doesn't
+	 *             contain a deploy.xml and the .bpel file of its process.
+	 */
+	ProcessDefinition(Map<String, byte[]> files) throws IOException {
+		this.files = files;
+		
+		Element deploy = null;
+		List<Element> processes = new ArrayList<Element>();
+		
+		for (Entry<String, byte[]> file : files.entrySet()) {
+			String entry = file.getKey();
+			if (entry.equals("deploy.xml") || entry.endsWith("/deploy.xml")) {
+				deploy = this.parse(entry);
+			} else if (entry.endsWith(".bpel")) {
+				processes.add(this.parse(entry));
+			} else if (entry.endsWith(".wsdl")) {
+				this.readWSDL(entry, this.parse(entry));
+			}
+		}
+		
+		if (deploy == null) {
+			throw new IOException("The plan contains no deploy.xml.");
+		}
+		
+		Element deployedProcess = Xml.child(deploy, Xml.DEPLOY_NS, "process");
+		if (deployedProcess == null) {
+			throw new IOException("The deploy.xml declares no process.");
+		}
+		this.name = Xml.resolve(deployedProcess, deployedProcess.getAttribute("name"));
+		
+		for (Element process : processes) {
+			if (this.name.equals(new QName(process.getAttribute("targetNamespace"), process.getAttribute("name")))) {
+				this.process = process;
+			}
+		}
+		if (this.process == null) {
+			throw new IOException("The plan contains no .bpel file of the process " + this.name + ".");
+		}
+		
+		this.readPartnerLinks();
+		this.readEndpoints(deployedProcess, "provide", this.provides);
+		this.readEndpoints(deployedProcess, "invoke", this.invokes);
+		
+		for (Entry<String, Port> provide : this.provides.entrySet()) {
+			String path = provide.getValue().service.getLocalPart();
+			Service service = this.providedServices.get(path);
+			if (service == null) {
+				service = new Service(path, provide.getValue());
+				this.providedServices.put(path, service);
+			}
+			service.partnerLinks.add(provide.getKey());
+		}
+		
+		NodeList receives = this.process.getElementsByTagNameNS(Xml.BPEL_NS, "receive");
+		for (int i = 0; i < receives.getLength(); i++) {
+			Element receive = (Element) receives.item(i);
+			if ("yes".equals(receive.getAttribute("createInstance"))) {
+				this.startOperations.add(receive.getAttribute("partnerLink") + "#" + receive.getAttribute("operation"));
+			}
+		}
+	}
+	
+	private Element parse(String entry) throws IOException {
+		try {
+			return Xml.parse(new ByteArrayInputStream(this.files.get(entry))).getDocumentElement();
+		} catch (IOException e) {
+			throw new IOException("Couldn't read " + entry + ": " + e.getMessage(), e);
+		}
+	}
+	
+	private void readWSDL(String entry, Element definitions) {
+		String tns = definitions.getAttribute("targetNamespace");
+		
+		for (Element child : Xml.children(definitions)) {
+			
+			String name = child.getAttribute("name");
+			
+			if (Xml.is(child, Xml.WSDL_NS, "message")) {
+				List<Part> parts = new ArrayList<Part>();
+				for (Element part : Xml.children(child, Xml.WSDL_NS, "part")) {
+					parts.add(new Part(part.getAttribute("name"), Xml.resolve(part, Xml.attribute(part, "element"))));
+				}
+				this.messages.put(new QName(tns, name), parts);
+				
+			} else if (Xml.is(child, Xml.WSDL_NS, "portType")) {
+				Map<String, Operation> operations = new HashMap<String, Operation>();
+				for (Element operation : Xml.children(child, Xml.WSDL_NS, "operation")) {
+					Element input = Xml.child(operation, Xml.WSDL_NS, "input");
+					Element output = Xml.child(operation, Xml.WSDL_NS, "output");
+					QName inputMessage = input == null ? null : Xml.resolve(input, input.getAttribute("message"));
+					QName outputMessage = output == null ? null : Xml.resolve(output, output.getAttribute("message"));
+					operations.put(operation.getAttribute("name"), new Operation(operation.getAttribute("name"), inputMessage, outputMessage));
+				}
+				this.portTypes.put(new QName(tns, name), operations);
+				
+			} else if (Xml.is(child, Xml.WSDL_NS, "binding")) {
+				Binding binding = new Binding(Xml.resolve(child, child.getAttribute("type")));
+				for (Element operation : Xml.children(child, Xml.WSDL_NS, "operation")) {
+					Element soapOperation = Xml.child(operation, Xml.WSDL_SOAP_NS, "operation");
+					binding.soapActions.put(operation.getAttribute("name"), soapOperation == null ? "" : soapOperation.getAttribute("soapAction"));
+				}
+				this.bindings.put(new QName(tns, name), binding);
+				
+			} else if (Xml.is(child, Xml.WSDL_NS, "service")) {
+				Map<String, Port> ports = new HashMap<String, Port>();
+				for (Element port : Xml.children(child, Xml.WSDL_NS, "port")) {
+					Element address = Xml.child(port, Xml.WSDL_SOAP_NS, "address");
+					ports.put(port.getAttribute("name"), new Port(new QName(tns, name), port.getAttribute("name"), Xml.resolve(port, port.getAttribute("binding")), address == null ? null : address.getAttribute("location"), entry));
+				}
+				this.services.put(new QName(tns, name), ports);
+				
+			} else if (Xml.is(child, Xml.PLNK_NS, "partnerLinkType")) {
+				Map<String, QName> roles = new HashMap<String, QName>();
+				for (Element role : Xml.children(child, Xml.PLNK_NS, "role")) {
+					roles.put(role.getAttribute("name"), Xml.resolve(role, role.getAttribute("portType")));
+				}
+				this.partnerLinkTypes.put(new QName(tns, name), roles);
+				
+			} else if (Xml.is(child, Xml.VPROP_NS, "propertyAlias")) {
+				Element query = Xml.child(child, Xml.VPROP_NS, "query");
+				this.propertyAliases.add(new PropertyAlias(Xml.resolve(child, child.getAttribute("propertyName")), Xml.resolve(child, Xml.attribute(child, "messageType")), Xml.attribute(child, "part"), query));
+			}
+		}
+	}
+	
+	private void readPartnerLinks() throws IOException {
+		NodeList declarations = this.process.getElementsByTagNameNS(Xml.BPEL_NS, "partnerLink");
+		
+		for (int i = 0; i < declarations.getLength(); i++) {
+			Element declaration = (Element) declarations.item(i);
+			if (!Xml.is(declaration.getParentNode(), Xml.BPEL_NS, "partnerLinks")) {
+				continue;
+			}
+			
+			QName type = Xml.resolve(declaration, declaration.getAttribute("partnerLinkType"));
+			Map<String, QName> roles = this.partnerLinkTypes.get(type);
+			if (roles == null) {
+				throw new IOException("The partnerLinkType " + type + " of the partnerLink " + declaration.getAttribute("name") + " isn't defined.");
+			}
+			
+			String myRole = Xml.attribute(declaration, "myRole");
+			String partnerRole = Xml.attribute(declaration, "partnerRole");
+			this.partnerLinks.put(declaration.getAttribute("name"), new PartnerLink(declaration.getAttribute("name"), myRole == null ? null : roles.get(myRole), partnerRole == null ? null : roles.get(partnerRole)));
+		}
+	}
+	
+	private void readEndpoints(Element deployedProcess, String kind, Map<String, Port> endpoints) throws IOException {
+		for (Element endpoint : Xml.children(deployedProcess, Xml.DEPLOY_NS, kind)) {
+			Element service = Xml.child(endpoint, Xml.DEPLOY_NS, "service");
+			if (service == null) {
+				continue;
+			}
+			
+			QName serviceName = Xml.resolve(service, service.getAttribute("name"));
+			Map<String, Port> ports = this.services.get(serviceName);
+			Port port = ports == null ? null : ports.get(service.getAttribute("port"));
+			
+			if (port == null) {
+				throw new IOException("The port " + service.getAttribute("port") + " of the service " + serviceName + " used by the partnerLink " + endpoint.getAttribute("partnerLink") + " isn't defined.");
+			}
+			endpoints.put(endpoint.getAttribute("partnerLink"), port);
+		}
+	}
+	
+	/**
+	 * Checks whether the runtime supports all activities of the process.
+	 * 
+	 * @return the names of the activities that aren't supported, empty if the
+	 *         process can be executed.
+	 */
+	Set<String> getUnsupportedActivities() {
+		Set<String> unsupported = new HashSet<String>();
+		this.collectUnsupported(this.getActivity(this.process), unsupported);
+		return unsupported;
+	}
+	
+	private void collectUnsupported(Element activity, Set<String> unsupported) {
+		if (activity == null) {
+			unsupported.add("missing activity");
+			return;
+		}
+		
+		String name = activity.getLocalName();
+		
+		if (!Xml.BPEL_NS.equals(activity.getNamespaceURI()) || !ProcessDefinition.ACTIVITIES.contains(name)) {
+			unsupported.add(name);
+			
+		} else if (name.equals("extensionActivity")) {
+			List<Element> extensions = Xml.children(activity);
+			if (extensions.isEmpty() || !(Xml.is(extensions.get(0), Xml.WAIT_NS, "WAIT") || Xml.REST_NS.equals(extensions.get(0).getNamespaceURI()))) {
+				unsupported.add("extensionActivity " + (extensions.isEmpty() ? "" : extensions.get(0).getNodeName()));
+			}
+			
+		} else if (name.equals("sequence") || name.equals("flow")) {
+			for (Element child : Xml.children(activity)) {
+				if (!ProcessDefinition.DECLARATIONS.contains(child.getLocalName()) && !child.getLocalName().equals("links")) {
+					this.collectUnsupported(child, unsupported);
+				}
+			}
+			
+		} else if (name.equals("scope")) {
+			this.collectUnsupported(this.getActivity(activity), unsupported);
+			
+			Element faultHandlers = Xml.child(activity, Xml.BPEL_NS, "faultHandlers");
+			if (faultHandlers != null) {
+				for (Element handler : Xml.children(faultHandlers)) {
+					this.collectUnsupported(this.getActivity(handler), unsupported);
+				}
+			}
+			for (String handler : new String[] {"eventHandlers", "compensationHandler", "terminationHandler"}) {
+				if (Xml.child(activity, Xml.BPEL_NS, handler) != null) {
+					unsupported.add(handler);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the activity of a process, scope or fault handler.
+	 * 
+	 * @return the activity or <tt>null</tt> if there is none.
+	 */
+	Element getActivity(Element container) {
+		for (Element child : Xml.children(container)) {
+			if (!ProcessDefinition.DECLARATIONS.contains(child.getLocalName())) {
+				return child;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the operations of the partnerLinks that create an instance when
+	 * a message for them arrives.
+	 * 
+	 * @return a set of <tt>partnerLink#operation</tt> strings.
+	 */
+	Set<String> getStartOperations() {
+		return this.startOperations;
+	}
+	
+	QName getName() {
+		return this.name;
+	}
+	
+	Element getProcess() {
+		return this.process;
+	}
+	
+	/**
+	 * @return the content of a file of the package or <tt>null</tt>.
+	 */
+	byte[] getFile(String entry) {
+		return this.files.get(entry);
+	}
+	
+	PartnerLink getPartnerLink(String name) {
+		return this.partnerLinks.get(name);
+	}
+	
+	/**
+	 * @return the port a partnerLink uses to invoke its partner as declared in
+	 *         the deploy.xml, <tt>null</tt> if there is none.
+	 */
+	Port getInvokedPort(String partnerLink) {
+		return this.invokes.get(partnerLink);
+	}
+	
+	/**
+	 * @return the services provided by the process by their path.
+	 */
+	Map<String, Service> getProvidedServices() {
+		return this.providedServices;
+	}
+	
+	/**
+	 * @return the service provided for a partnerLink or <tt>null</tt>.
+	 */
+	Service getProvidedService(String partnerLink) {
+		Port port = this.provides.get(partnerLink);
+		return port == null ? null : this.providedServices.get(port.service.getLocalPart());
+	}
+	
+	Operation getOperation(QName portType, String operation) {
+		Map<String, Operation> operations = this.portTypes.get(portType);
+		return operations == null ? null : operations.get(operation);
+	}
+	
+	Map<String, Operation> getOperations(QName portType) {
+		Map<String, Operation> operations = this.portTypes.get(portType);
+		return operations == null ? new HashMap<String, Operation>() : operations;
+	}
+	
+	/**
+	 * @return the parts of a message in their order, empty if the message
+	 *         isn't defined.
+	 */
+	List<Part> getParts(QName message) {
+		List<Part> parts = this.messages.get(message);
+		return parts == null ? new ArrayList<Part>() : parts;
+	}
+	
+	Binding getBinding(QName binding) {
+		return this.bindings.get(binding);
+	}
+	
+	/**
+	 * @return the propertyAliases defining the property for the given message
+	 *         type.
+	 */
+	List<PropertyAlias> getPropertyAliases(QName messageType) {
+		List<PropertyAlias> aliases = new ArrayList<PropertyAlias>();
+		for (PropertyAlias alias : this.propertyAliases) {
+			if ((messageType != null) && messageType.equals(alias.messageType)) {
+				aliases.add(alias);
+			}
+		}
+		return aliases;
+	}
+	
+	/**
+	 * Logs the partnerLinks and endpoints of the process.
+	 */
+	void log() {
+		for (Entry<String, Port> invoke : this.invokes.entrySet()) {
+			ProcessDefinition.LOG.debug("Process {} invokes {} at {}", this.name, invoke.getKey(), invoke.getValue().address);
+		}
+		for (Service service : this.providedServices.values()) {
+			ProcessDefinition.LOG.debug("Process {} provides {} for the partnerLinks {}", this.name, service.port.service, service.partnerLinks);
+		}
+	}
+	
+	
+	/**
+	 * Part of a WSDL message.
+	 */
+	static class Part {
+		
+		final String name;
+		// null if the part has a type instead
+		final QName element;
+		
+		
+		Part(String name, QName element) {
+			this.name = name;
+			this.element = element;
+		}
+	}
+	
+	/**
+	 * Operation of a WSDL portType.
+	 */
+	static class Operation {
+		
+		final String name;
+		final QName input;
+		// null for one-way operations
+		final QName output;
+		
+		
+		Operation(String name, QName input, QName output) {
+			this.name = name;
+			this.input = input;
+			this.output = output;
+		}
+	}
+	
+	/**
+	 * SOAP binding of a WSDL portType.
+	 */
+	static class Binding {
+		
+		final QName portType;
+		final Map<String, String> soapActions = new HashMap<String, String>();
+		
+		
+		Binding(QName portType) {
+			this.portType = portType;
+		}
+	}
+	
+	/**
+	 * Port of a WSDL service.
+	 */
+	static class Port {
+		
+		final QName service;
+		final String name;
+		final QName binding;
+		final String address;
+		// the WSDL file defining the service
+		final String entry;
+		
+		
+		Port(QName service, String name, QName binding, String address, String entry) {
+			this.service = service;
+			this.name = name;
+			this.binding = binding;
+			this.address = address;
+			this.entry = entry;
+		}
+	}
+	
+	/**
+	 * PartnerLink declared in the process with the portTypes of its roles.
+	 */
+	static class PartnerLink {
+		
+		final String name;
+		// null if the role isn't declared
+		final QName myPortType;
+		final QName partnerPortType;
+		
+		
+		PartnerLink(String name, QName myPortType, QName partnerPortType) {
+			this.name = name;
+			this.myPortType = myPortType;
+			this.partnerPortType = partnerPortType;
+		}
+	}
+	
+	/**
+	 * Query of a property inside a part of a message.
+	 */
+	static class PropertyAlias {
+		
+		final QName property;
+		final QName messageType;
+		final String part;
+		// null if the whole part is the value
+		final Element query;
+		
+		
+		PropertyAlias(QName property, QName messageType, String part, Element query) {
+			this.property = property;
+			this.messageType = messageType;
+			this.part = part;
+			this.query = query;
+		}
+	}
+	
+	/**
+	 * Service provided by the process, i.e. an endpoint of the runtime. The
+	 * partnerLinks of several scopes may share a service, e.g. for the
+	 * callbacks of the service invoker.
+	 */
+	static class Service {
+		
+		final String path;
+		final Port port;
+		final Set<String> partnerLinks = new HashSet<String>();
+		
+		
+		Service(String path, Port port) {
+			this.path = path;
+			this.port = port;
+		}
+	}
+}
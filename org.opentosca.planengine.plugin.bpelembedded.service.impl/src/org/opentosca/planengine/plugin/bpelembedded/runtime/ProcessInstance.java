@@ -0,0 +1,1145 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.namespace.QName;
+
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Binding;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Operation;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Part;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.PartnerLink;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Port;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.Scope.CorrelationSet;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.Scope.PartnerLinkState;
+import org.opentosca.planengine.plugin.bpelembedded.runtime.Scope.Variable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+
+/**
+ * Running instance of a process.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The instance interprets the activities of the process definition directly.
+ * Supported are the activities the plan builder generates: sequence, flow
+ * with links and join conditions, scope with fault handlers, assign, invoke,
+ * receive, empty, wait, exit and the extension activities of BPEL4RESTLight
+ * and the OpenTOSCA wait extension.<br>
+ * <br>
+ * 
+ * Each branch of a flow runs in its own thread. The state of the instance,
+ * i.e. its variables, links and received messages, is guarded by the lock of
+ * the instance, which is only released while an activity waits for a
+ * message, a link or the time of a wait, or while it invokes a partner.<br>
+ * <br>
+ * 
+ * Messages for the instance are put into its mailbox, thus a callback that
+ * arrives before the receive waiting for it has started isn't lost.
+ * 
+ * 
+ */
+class ProcessInstance implements Runnable {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(ProcessInstance.class);
+	
+	private static final Pattern BPELVAR = Pattern.compile("\\$bpelvar\\[([^\\]]+)\\]");
+	
+	private final Deployment deployment;
+	private final ProcessDefinition definition;
+	private final String id;
+	
+	private final List<Incoming> mailbox = new LinkedList<Incoming>();
+	private final Set<String> sentMessageIds = new HashSet<String>();
+	private final List<CorrelationSet> initiated = new ArrayList<CorrelationSet>();
+	
+	private boolean terminated = false;
+	private boolean completed = false;
+	
+	
+	/**
+	 * Creates an instance, which is started by running it.
+	 * 
+	 * @param deployment of the process.
+	 * @param id of the instance.
+	 * @param start the message that creates the instance.
+	 */
+	ProcessInstance(Deployment deployment, String id, Incoming start) {
+		this.deployment = deployment;
+		this.definition = deployment.getDefinition();
+		this.id = id;
+		this.mailbox.add(start);
+	}
+	
+	String getId() {
+		return this.id;
+	}
+	
+	@Override
+	public void run() {
+		long start = System.currentTimeMillis();
+		ProcessInstance.LOG.info("Instance {} of process {} started.", this.id, this.definition.getName());
+		
+		try {
+			Element process = this.definition.getProcess();
+			this.execute(this.definition.getActivity(process), new Scope(null, process), null);
+			ProcessInstance.LOG.info("Instance {} of process {} completed in {} ms.", this.id, this.definition.getName(), System.currentTimeMillis() - start);
+			
+		} catch (BpelFault fault) {
+			if (BpelFault.TERMINATED.equals(fault.getFaultName())) {
+				ProcessInstance.LOG.info("Instance {} of process {} terminated after {} ms: {}", this.id, this.definition.getName(), System.currentTimeMillis() - start, fault.getMessage());
+			} else {
+				ProcessInstance.LOG.error("Instance {} of process {} faulted after {} ms: {}", this.id, this.definition.getName(), System.currentTimeMillis() - start, fault.getMessage(), fault);
+			}
+		} catch (RuntimeException e) {
+			ProcessInstance.LOG.error("Instance {} of process {} failed after {} ms.", this.id, this.definition.getName(), System.currentTimeMillis() - start, e);
+			
+		} finally {
+			synchronized (this) {
+				this.completed = true;
+				this.notifyAll();
+			}
+			this.deployment.finished(this);
+		}
+	}
+	
+	/**
+	 * Terminates the instance. Activities waiting for a message, a link or
+	 * the time of a wait stop, running invokes complete first.
+	 */
+	synchronized void terminate() {
+		this.terminated = true;
+		this.notifyAll();
+	}
+	
+	synchronized boolean isCompleted() {
+		return this.completed;
+	}
+	
+	/**
+	 * Puts a message into the mailbox of the instance.
+	 */
+	synchronized void deliver(Incoming message) {
+		this.mailbox.add(message);
+		this.notifyAll();
+	}
+	
+	/**
+	 * Checks whether a message belongs to the instance because of the values
+	 * of its properties.
+	 * 
+	 * @param properties of the message.
+	 * @return <tt>true</tt> if a correlationSet the instance initiated has the
+	 *         same values.
+	 */
+	synchronized boolean correlates(Map<QName, String> properties) {
+		for (CorrelationSet set : this.initiated) {
+			if (!set.properties.isEmpty() && ProcessInstance.matches(set, properties)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return <tt>true</tt> if the instance sent a request with the given
+	 *         MessageID, i.e. the message relating to it is a reply.
+	 */
+	synchronized boolean hasSent(String messageId) {
+		return this.sentMessageIds.contains(messageId);
+	}
+	
+	private static boolean matches(CorrelationSet set, Map<QName, String> properties) {
+		if (set.values == null) {
+			return false;
+		}
+		for (QName property : set.properties) {
+			if (!set.values.get(property).equals(properties.get(property))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void execute(Element activity, Scope scope, Links links) throws BpelFault {
+		Element targets = Xml.child(activity, Xml.BPEL_NS, "targets");
+		if ((targets != null) && !this.join(activity, targets, scope, links)) {
+			this.eliminateDeadPaths(activity, links);
+			return;
+		}
+		
+		synchronized (this) {
+			this.checkActive(links);
+		}
+		
+		String name = activity.getLocalName();
+		
+		if (name.equals("sequence")) {
+			for (Element child : Xml.children(activity)) {
+				if (!ProcessDefinition.DECLARATIONS.contains(child.getLocalName())) {
+					this.execute(child, scope, links);
+				}
+			}
+		} else if (name.equals("flow")) {
+			this.flow(activity, scope, links);
+		} else if (name.equals("scope")) {
+			this.scope(activity, scope, links);
+		} else if (name.equals("assign")) {
+			this.assign(activity, scope, links);
+		} else if (name.equals("invoke")) {
+			this.invoke(activity, scope, links);
+		} else if (name.equals("receive")) {
+			this.receive(activity, scope, links);
+		} else if (name.equals("wait")) {
+			this.waitFor(activity, scope, links);
+		} else if (name.equals("extensionActivity")) {
+			this.extension(Xml.children(activity).get(0), scope, links);
+		} else if (name.equals("exit")) {
+			this.terminate();
+			throw new BpelFault(BpelFault.TERMINATED, "The process exited.");
+		} else if (!name.equals("empty")) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The activity " + name + " isn't supported.");
+		}
+		
+		Element sources = Xml.child(activity, Xml.BPEL_NS, "sources");
+		if (sources != null) {
+			synchronized (this) {
+				for (Element source : Xml.children(sources, Xml.BPEL_NS, "source")) {
+					Element condition = Xml.child(source, Xml.BPEL_NS, "transitionCondition");
+					boolean status = (condition == null) || Expressions.evaluateBoolean(condition.getTextContent(), condition, this.variables(scope, links));
+					this.setLink(links, source.getAttribute("linkName"), status);
+				}
+				this.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the target links of an activity and evaluates its join
+	 * condition, by default the disjunction of the links.
+	 * 
+	 * @return whether the activity is executed.
+	 * @throws BpelFault <tt>joinFailure</tt> if the condition is false and
+	 *             join failures aren't suppressed.
+	 */
+	private synchronized boolean join(Element activity, Element targets, Scope scope, Links links) throws BpelFault {
+		List<String> names = new ArrayList<String>();
+		for (Element target : Xml.children(targets, Xml.BPEL_NS, "target")) {
+			names.add(target.getAttribute("linkName"));
+		}
+		
+		boolean determined = false;
+		while (!determined) {
+			this.checkActive(links);
+			determined = true;
+			for (String name : names) {
+				Links owner = Links.find(links, name);
+				if (owner == null) {
+					throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The link " + name + " isn't declared.");
+				}
+				determined &= owner.status.get(name) != null;
+			}
+			if (!determined) {
+				this.await(0);
+			}
+		}
+		
+		boolean join = false;
+		Element condition = Xml.child(targets, Xml.BPEL_NS, "joinCondition");
+		if (condition == null) {
+			for (String name : names) {
+				join |= Links.find(links, name).status.get(name);
+			}
+		} else {
+			join = Expressions.evaluateBoolean(condition.getTextContent(), condition, this.variables(scope, links));
+		}
+		
+		if (!join && !ProcessInstance.suppressesJoinFailure(activity)) {
+			throw new BpelFault(BpelFault.JOIN_FAILURE, "The join condition of " + ProcessInstance.describe(activity) + " is false.");
+		}
+		return join;
+	}
+	
+	private static boolean suppressesJoinFailure(Element activity) {
+		for (Node node = activity; node instanceof Element; node = node.getParentNode()) {
+			if (((Element) node).hasAttribute("suppressJoinFailure")) {
+				return "yes".equals(((Element) node).getAttribute("suppressJoinFailure"));
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the links leaving an activity or its descendants, that won't be
+	 * executed, to false.
+	 */
+	private synchronized void eliminateDeadPaths(Element activity, Links links) {
+		NodeList sources = activity.getElementsByTagNameNS(Xml.BPEL_NS, "source");
+		for (int i = 0; i < sources.getLength(); i++) {
+			String name = ((Element) sources.item(i)).getAttribute("linkName");
+			Links owner = Links.find(links, name);
+			if ((owner != null) && (owner.status.get(name) == null)) {
+				owner.status.put(name, false);
+			}
+		}
+		this.notifyAll();
+	}
+	
+	private void setLink(Links links, String name, boolean status) throws BpelFault {
+		Links owner = Links.find(links, name);
+		if (owner == null) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The link " + name + " isn't declared.");
+		}
+		owner.status.put(name, status);
+	}
+	
+	/**
+	 * Throws a fault if the instance was terminated or a parallel branch of
+	 * an enclosing flow faulted. The caller holds the lock of the instance.
+	 */
+	private void checkActive(Links links) throws BpelFault {
+		if (this.terminated) {
+			throw new BpelFault(BpelFault.TERMINATED, "The instance was terminated.");
+		}
+		for (Links flow = links; flow != null; flow = flow.parent) {
+			if (flow.fault != null) {
+				throw new BpelFault(BpelFault.TERMINATED, "A parallel branch faulted.");
+			}
+		}
+	}
+	
+	/**
+	 * Waits for a notification. The caller holds the lock of the instance.
+	 * 
+	 * @param timeout in milliseconds, 0 to wait without timeout.
+	 */
+	private void await(long timeout) throws BpelFault {
+		try {
+			this.wait(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BpelFault(BpelFault.TERMINATED, "The instance was interrupted.", e);
+		}
+	}
+	
+	private void flow(Element flow, final Scope scope, Links parent) throws BpelFault {
+		final Links links = new Links(parent);
+		Element declarations = Xml.child(flow, Xml.BPEL_NS, "links");
+		if (declarations != null) {
+			for (Element link : Xml.children(declarations, Xml.BPEL_NS, "link")) {
+				links.status.put(link.getAttribute("name"), null);
+			}
+		}
+		
+		List<Future<Void>> branches = new ArrayList<Future<Void>>();
+		for (final Element child : Xml.children(flow)) {
+			if (ProcessDefinition.DECLARATIONS.contains(child.getLocalName()) || child.getLocalName().equals("links")) {
+				continue;
+			}
+			branches.add(this.deployment.getExecutor().submit(new Callable<Void>() {
+				
+				@Override
+				public Void call() {
+					try {
+						ProcessInstance.this.execute(child, scope, links);
+					} catch (BpelFault fault) {
+						ProcessInstance.this.fail(links, fault);
+					} catch (RuntimeException e) {
+						ProcessInstance.this.fail(links, new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The activity " + ProcessInstance.describe(child) + " failed: " + e, e));
+					}
+					return null;
+				}
+			}));
+		}
+		
+		for (Future<Void> branch : branches) {
+			try {
+				branch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.terminate();
+				throw new BpelFault(BpelFault.TERMINATED, "The instance was interrupted.", e);
+			} catch (ExecutionException e) {
+				this.fail(links, new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "A branch of the flow failed.", e.getCause()));
+			}
+		}
+		
+		synchronized (this) {
+			if (links.fault != null) {
+				throw links.fault;
+			}
+		}
+	}
+	
+	/**
+	 * Records the first fault of a branch of a flow and stops the branches
+	 * waiting for a link.
+	 */
+	private synchronized void fail(Links links, BpelFault fault) {
+		if (links.fault == null) {
+			links.fault = fault;
+		}
+		this.notifyAll();
+	}
+	
+	private void scope(Element activity, Scope parent, Links links) throws BpelFault {
+		Scope scope = new Scope(parent, activity);
+		Element main = this.definition.getActivity(activity);
+		
+		try {
+			this.execute(main, scope, links);
+		} catch (BpelFault fault) {
+			if (BpelFault.TERMINATED.equals(fault.getFaultName())) {
+				throw fault;
+			}
+			
+			Element handler = this.getFaultHandler(activity, fault);
+			if (handler == null) {
+				throw fault;
+			}
+			ProcessInstance.LOG.warn("Instance {}: {} handles the fault {}", this.id, ProcessInstance.describe(activity), fault.getMessage());
+			
+			this.eliminateDeadPaths(main, links);
+			this.execute(this.definition.getActivity(handler), scope, links);
+		}
+	}
+	
+	private Element getFaultHandler(Element scope, BpelFault fault) {
+		Element faultHandlers = Xml.child(scope, Xml.BPEL_NS, "faultHandlers");
+		if (faultHandlers == null) {
+			return null;
+		}
+		for (Element handler : Xml.children(faultHandlers, Xml.BPEL_NS, "catch")) {
+			if (!handler.hasAttribute("faultName") || fault.getFaultName().equals(Xml.resolve(handler, handler.getAttribute("faultName")))) {
+				return handler;
+			}
+		}
+		return Xml.child(faultHandlers, Xml.BPEL_NS, "catchAll");
+	}
+	
+	private synchronized void assign(Element assign, Scope scope, Links links) throws BpelFault {
+		for (Element copy : Xml.children(assign, Xml.BPEL_NS, "copy")) {
+			this.copy(copy, scope, links);
+		}
+	}
+	
+	private void copy(Element copy, Scope scope, Links links) throws BpelFault {
+		Element from = Xml.child(copy, Xml.BPEL_NS, "from");
+		Element to = Xml.child(copy, Xml.BPEL_NS, "to");
+		if ((from == null) || (to == null)) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "A copy of " + ProcessInstance.describe((Element) copy.getParentNode()) + " has no from or to.");
+		}
+		
+		// copy of a whole message variable, including its headers
+		if (ProcessInstance.isWholeVariable(from) && ProcessInstance.isWholeVariable(to)) {
+			Variable source = scope.getVariable(from.getAttribute("variable"));
+			Variable target = scope.getVariable(to.getAttribute("variable"));
+			if ((source.message != null) && (target.message != null)) {
+				ProcessInstance.setMessage(target, source.message.copy());
+				return;
+			}
+		}
+		
+		Expressions.Variables variables = this.variables(scope, links);
+		Object value = this.from(from, scope, variables);
+		
+		if (to.hasAttribute("partnerLink")) {
+			PartnerLinkState partnerLink = scope.getPartnerLink(to.getAttribute("partnerLink"));
+			partnerLink.address = ProcessInstance.stringValue(value).trim();
+			partnerLink.relatesTo = this.getMessageId(from, scope);
+			return;
+		}
+		
+		if (to.hasAttribute("variable")) {
+			Element query = Xml.child(to, Xml.BPEL_NS, "query");
+			if (query == null) {
+				this.replace(scope.getVariable(to.getAttribute("variable")), Xml.attribute(to, "part"), Xml.attribute(to, "header"), value);
+			} else {
+				Element base = this.select(to, scope);
+				this.set(ProcessInstance.single(Expressions.query(query.getTextContent(), query, base, variables), query.getTextContent()), value);
+			}
+			return;
+		}
+		
+		// the target is an expression, e.g. $variable
+		Object target = ProcessInstance.single(Expressions.evaluate(to.getTextContent(), to, null, variables), to.getTextContent());
+		this.set(target, value);
+	}
+	
+	private static boolean isWholeVariable(Element spec) {
+		return spec.hasAttribute("variable") && !spec.hasAttribute("part") && !spec.hasAttribute("header") && (Xml.child(spec, Xml.BPEL_NS, "query") == null);
+	}
+	
+	/**
+	 * Evaluates the from-spec of a copy.
+	 * 
+	 * @return an element, attribute or text node or a String.
+	 */
+	private Object from(Element from, Scope scope, Expressions.Variables variables) throws BpelFault {
+		Element literal = Xml.child(from, Xml.BPEL_NS, "literal");
+		if (literal != null) {
+			List<Element> children = Xml.children(literal);
+			return children.isEmpty() ? literal.getTextContent() : Xml.copy(children.get(0));
+		}
+		
+		if (from.hasAttribute("partnerLink")) {
+			String partnerLink = from.getAttribute("partnerLink");
+			if ("myRole".equals(from.getAttribute("endpointReference"))) {
+				String endpoint = this.deployment.getEndpoint(partnerLink);
+				if (endpoint == null) {
+					throw new BpelFault(BpelFault.SELECTION_FAILURE, "The process provides no service for the partnerLink " + partnerLink + ".");
+				}
+				return endpoint;
+			}
+			return this.getPartnerAddress(partnerLink, scope);
+		}
+		
+		if (from.hasAttribute("variable")) {
+			Element base = this.select(from, scope);
+			Element query = Xml.child(from, Xml.BPEL_NS, "query");
+			return query == null ? base : ProcessInstance.single(Expressions.query(query.getTextContent(), query, base, variables), query.getTextContent());
+		}
+		
+		String expression = from.getTextContent();
+		if (expression.trim().isEmpty()) {
+			throw new BpelFault(BpelFault.SELECTION_FAILURE, "A copy of the instance " + this.id + " has an empty from.");
+		}
+		return ProcessInstance.single(Expressions.evaluate(expression, from, null, variables), expression);
+	}
+	
+	/**
+	 * Returns the single node or the value of a result.
+	 * 
+	 * @throws BpelFault <tt>selectionFailure</tt> if the result doesn't
+	 *             contain exactly one node.
+	 */
+	private static Object single(Object result, String expression) throws BpelFault {
+		if (!(result instanceof NodeList)) {
+			return Expressions.stringValue(result);
+		}
+		List<Node> nodes = Expressions.nodes(result);
+		if (nodes.size() != 1) {
+			throw new BpelFault(BpelFault.SELECTION_FAILURE, "The expression " + expression.trim() + " selects " + nodes.size() + " nodes instead of one.");
+		}
+		return nodes.get(0);
+	}
+	
+	private static String stringValue(Object value) {
+		return value instanceof Node ? ((Node) value).getTextContent() : String.valueOf(value);
+	}
+	
+	/**
+	 * Returns the element a from-spec or to-spec with a variable refers to,
+	 * i.e. the value of the variable or one of its parts or headers.
+	 */
+	private Element select(Element spec, Scope scope) throws BpelFault {
+		Variable variable = scope.getVariable(spec.getAttribute("variable"));
+		String part = Xml.attribute(spec, "part");
+		String header = Xml.attribute(spec, "header");
+		
+		Element value;
+		if ((part != null) || (header != null)) {
+			if (variable.message == null) {
+				throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The variable " + variable.name + " has no message type.");
+			}
+			value = header != null ? variable.message.getHeader(header) : variable.message.getPart(part);
+		} else if (variable.message != null) {
+			value = variable.message.getPart(this.getSinglePart(variable));
+		} else {
+			value = variable.value;
+		}
+		
+		if (value == null) {
+			throw new BpelFault(BpelFault.UNINITIALIZED_VARIABLE, "The variable " + variable.name + (part == null ? "" : "." + part) + (header == null ? "" : " has no header " + header + " and") + " isn't initialized.");
+		}
+		return value;
+	}
+	
+	private String getSinglePart(Variable variable) throws BpelFault {
+		List<Part> parts = this.definition.getParts(variable.messageType);
+		if (parts.size() != 1) {
+			throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The message of the variable " + variable.name + " has " + parts.size() + " parts, a part has to be given.");
+		}
+		return parts.get(0).name;
+	}
+	
+	/**
+	 * Replaces the value of a variable or of one of its parts or headers.
+	 */
+	private void replace(Variable variable, String part, String header, Object value) throws BpelFault {
+		if ((part != null) || (header != null) || (variable.message != null)) {
+			if (variable.message == null) {
+				throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The variable " + variable.name + " has no message type.");
+			}
+			if (header != null) {
+				variable.message.setHeader(header, ProcessInstance.toElement(header, value));
+			} else {
+				String name = part != null ? part : this.getSinglePart(variable);
+				variable.message.setPart(name, ProcessInstance.toElement(name, value));
+			}
+			
+		} else if (variable.simpleType) {
+			Element wrapper = Xml.newValue(variable.name, "");
+			if ((value instanceof Element) && !Xml.children((Element) value).isEmpty()) {
+				wrapper.appendChild(wrapper.getOwnerDocument().importNode((Element) value, true));
+			} else {
+				wrapper.setTextContent(ProcessInstance.stringValue(value));
+			}
+			variable.value = wrapper;
+			
+		} else {
+			if (!(value instanceof Element)) {
+				throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The element variable " + variable.name + " can't be assigned a text.");
+			}
+			variable.value = Xml.copy((Element) value);
+		}
+	}
+	
+	private static Element toElement(String name, Object value) {
+		return value instanceof Element ? Xml.copy((Element) value) : Xml.newValue(name, ProcessInstance.stringValue(value));
+	}
+	
+	/**
+	 * Sets a node selected by a query or expression to a value. An element
+	 * keeps its name and gets the attributes and content of an element
+	 * value.
+	 */
+	private void set(Object target, Object value) throws BpelFault {
+		if (target instanceof Element) {
+			Element element = (Element) target;
+			if (value instanceof Element) {
+				Document document = element.getOwnerDocument();
+				while (element.getFirstChild() != null) {
+					element.removeChild(element.getFirstChild());
+				}
+				NamedNodeMap attributes = element.getAttributes();
+				for (int i = attributes.getLength() - 1; i >= 0; i--) {
+					if (!Xml.XMLNS_NS.equals(attributes.item(i).getNamespaceURI())) {
+						element.removeAttributeNode((Attr) attributes.item(i));
+					}
+				}
+				NamedNodeMap sourceAttributes = ((Element) value).getAttributes();
+				for (int i = 0; i < sourceAttributes.getLength(); i++) {
+					element.setAttributeNodeNS((Attr) document.importNode(sourceAttributes.item(i), true));
+				}
+				for (Node child = ((Element) value).getFirstChild(); child != null; child = child.getNextSibling()) {
+					element.appendChild(document.importNode(child, true));
+				}
+			} else {
+				element.setTextContent(ProcessInstance.stringValue(value));
+			}
+		} else if (target instanceof Attr) {
+			((Attr) target).setValue(ProcessInstance.stringValue(value));
+		} else if (target instanceof Text) {
+			((Text) target).setData(ProcessInstance.stringValue(value));
+		} else {
+			throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "A copy of the instance " + this.id + " selects no node as target.");
+		}
+	}
+	
+	private static void setMessage(Variable variable, Message message) {
+		variable.message.getParts().clear();
+		variable.message.getParts().putAll(message.getParts());
+		variable.message.getHeaders().clear();
+		variable.message.getHeaders().putAll(message.getHeaders());
+	}
+	
+	/**
+	 * @return the MessageID header of the variable a from-spec refers to or
+	 *         <tt>null</tt>.
+	 */
+	private String getMessageId(Element from, Scope scope) throws BpelFault {
+		if (!from.hasAttribute("variable")) {
+			return null;
+		}
+		Variable variable = scope.getVariable(from.getAttribute("variable"));
+		Element messageId = variable.message == null ? null : variable.message.getHeader("MessageID");
+		return messageId == null ? null : messageId.getTextContent().trim();
+	}
+	
+	private String getPartnerAddress(String partnerLink, Scope scope) throws BpelFault {
+		String address = scope.getPartnerLink(partnerLink).address;
+		if (address == null) {
+			Port port = this.definition.getInvokedPort(partnerLink);
+			address = port == null ? null : port.address;
+		}
+		if (address == null) {
+			throw new BpelFault(BpelFault.SELECTION_FAILURE, "The partnerLink " + partnerLink + " has no partner endpoint.");
+		}
+		return address;
+	}
+	
+	/**
+	 * Resolves the variables and links expressions of an activity reference.
+	 */
+	private Expressions.Variables variables(final Scope scope, final Links links) {
+		return new Expressions.Variables() {
+			
+			@Override
+			public Object resolve(String name) throws BpelFault {
+				Links owner = Links.find(links, name);
+				if (owner != null) {
+					Boolean status = owner.status.get(name);
+					return status == null ? Boolean.FALSE : status;
+				}
+				
+				Variable variable;
+				String part = null;
+				try {
+					variable = scope.getVariable(name);
+				} catch (BpelFault fault) {
+					int dot = name.lastIndexOf('.');
+					if (dot < 0) {
+						throw fault;
+					}
+					variable = scope.getVariable(name.substring(0, dot));
+					part = name.substring(dot + 1);
+				}
+				
+				Element value;
+				if (variable.message != null) {
+					value = variable.message.getPart(part != null ? part : ProcessInstance.this.getSinglePart(variable));
+				} else {
+					value = variable.value;
+				}
+				if (value == null) {
+					throw new BpelFault(BpelFault.UNINITIALIZED_VARIABLE, "The variable " + name + " isn't initialized.");
+				}
+				return value;
+			}
+		};
+	}
+	
+	private void invoke(Element invoke, Scope scope, Links links) throws BpelFault {
+		String partnerLinkName = invoke.getAttribute("partnerLink");
+		String operationName = invoke.getAttribute("operation");
+		
+		PartnerLink partnerLink = this.definition.getPartnerLink(partnerLinkName);
+		Operation operation = partnerLink == null ? null : this.definition.getOperation(partnerLink.partnerPortType, operationName);
+		if (operation == null) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The partnerLink " + partnerLinkName + " has no partner operation " + operationName + ".");
+		}
+		Port port = this.definition.getInvokedPort(partnerLinkName);
+		
+		String address;
+		String soapAction = null;
+		Document request;
+		
+		synchronized (this) {
+			this.checkActive(links);
+			PartnerLinkState state = scope.getPartnerLink(partnerLinkName);
+			address = this.getPartnerAddress(partnerLinkName, scope);
+			
+			Binding binding = port == null ? null : this.definition.getBinding(port.binding);
+			if (binding != null) {
+				soapAction = binding.soapActions.get(operationName);
+			}
+			
+			Message message = new Message();
+			if (invoke.hasAttribute("inputVariable")) {
+				Variable input = scope.getVariable(invoke.getAttribute("inputVariable"));
+				if (input.message == null) {
+					throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The input variable " + input.name + " has no message type.");
+				}
+				message = input.message;
+			}
+			
+			// the MessageID identifies the request in a reply to its
+			// ReplyTo, the RelatesTo relates the request to the message of
+			// the partner containing its ReplyTo
+			List<Element> headers = new ArrayList<Element>();
+			Element messageId = message.getHeader("MessageID");
+			if (messageId != null) {
+				this.sentMessageIds.add(messageId.getTextContent().trim());
+			} else if (message.getHeader("ReplyTo") != null) {
+				String generated = "uuid:" + UUID.randomUUID();
+				headers.add(ProcessInstance.newAddressingHeader("MessageID", generated));
+				this.sentMessageIds.add(generated);
+			}
+			if ((state.relatesTo != null) && (message.getHeader("RelatesTo") == null)) {
+				headers.add(ProcessInstance.newAddressingHeader("RelatesTo", state.relatesTo));
+			}
+			
+			// the set is initiated before sending, as the reply may arrive
+			// before the invoke returns
+			this.initiate(invoke, scope, this.deployment.getProperties(operation.input, message), "", "request", "request-response");
+			
+			request = Soap.newEnvelope(message, this.definition.getParts(operation.input), headers);
+		}
+		
+		ProcessInstance.LOG.debug("Instance {} invokes {} of the partnerLink {} at {}", this.id, operationName, partnerLinkName, address);
+		
+		Soap.Envelope response;
+		try {
+			response = Soap.call(address, soapAction, request, this.deployment.getConnectTimeout(), this.deployment.getReadTimeout());
+		} catch (IOException e) {
+			throw new BpelFault(BpelFault.INVOCATION_FAILURE, "Couldn't invoke " + operationName + " at " + address + ": " + e.getMessage(), e);
+		}
+		
+		if ((response != null) && (response.fault != null)) {
+			throw new BpelFault(BpelFault.INVOCATION_FAILURE, operationName + " at " + address + " returned the fault " + response.fault);
+		}
+		
+		if (operation.output != null) {
+			if (response == null) {
+				throw new BpelFault(BpelFault.INVOCATION_FAILURE, operationName + " at " + address + " returned no response.");
+			}
+			synchronized (this) {
+				Message output = Soap.toMessage(response, this.definition.getParts(operation.output));
+				if (invoke.hasAttribute("outputVariable")) {
+					Variable variable = scope.getVariable(invoke.getAttribute("outputVariable"));
+					if (variable.message == null) {
+						throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The output variable " + variable.name + " has no message type.");
+					}
+					ProcessInstance.setMessage(variable, output);
+				}
+				this.initiate(invoke, scope, this.deployment.getProperties(operation.output, output), "response");
+			}
+		}
+	}
+	
+	private static Element newAddressingHeader(String localName, String text) {
+		Document document = Xml.newDocument();
+		Element header = document.createElementNS(Xml.WSA_NS, "wsa:" + localName);
+		header.setTextContent(text);
+		document.appendChild(header);
+		return header;
+	}
+	
+	/**
+	 * Initiates the correlationSets of an activity with the properties of a
+	 * message. The caller holds the lock of the instance.
+	 * 
+	 * @param patterns of the correlations that apply to the message, the
+	 *            empty string for correlations without pattern.
+	 */
+	private void initiate(Element activity, Scope scope, Map<QName, String> properties, String... patterns) throws BpelFault {
+		Element correlations = Xml.child(activity, Xml.BPEL_NS, "correlations");
+		if (correlations == null) {
+			return;
+		}
+		
+		for (Element correlation : Xml.children(correlations, Xml.BPEL_NS, "correlation")) {
+			if (!Arrays.asList(patterns).contains(correlation.getAttribute("pattern"))) {
+				continue;
+			}
+			
+			CorrelationSet set = scope.getCorrelationSet(correlation.getAttribute("set"));
+			String initiate = correlation.getAttribute("initiate");
+			
+			if (initiate.equals("yes") || (initiate.equals("join") && (set.values == null))) {
+				Map<QName, String> values = new HashMap<QName, String>();
+				for (QName property : set.properties) {
+					String value = properties.get(property);
+					if (value == null) {
+						throw new BpelFault(BpelFault.CORRELATION_VIOLATION, "The message doesn't contain the property " + property + " of the correlationSet " + set.name + ".");
+					}
+					values.put(property, value);
+				}
+				set.values = values;
+				this.initiated.add(set);
+				ProcessInstance.LOG.debug("Instance {} initiated the correlationSet {} with {}", this.id, set.name, values);
+			}
+		}
+	}
+	
+	private void receive(Element receive, Scope scope, Links links) throws BpelFault {
+		String partnerLink = receive.getAttribute("partnerLink");
+		String operation = receive.getAttribute("operation");
+		
+		synchronized (this) {
+			Incoming message = null;
+			while (message == null) {
+				this.checkActive(links);
+				message = this.take(receive, scope, partnerLink, operation);
+				if (message == null) {
+					this.await(0);
+				}
+			}
+			
+			if (receive.hasAttribute("variable")) {
+				Variable variable = scope.getVariable(receive.getAttribute("variable"));
+				if (variable.message != null) {
+					ProcessInstance.setMessage(variable, message.message);
+				} else if (message.message.getParts().size() == 1) {
+					variable.value = message.message.getParts().values().iterator().next();
+				} else {
+					throw new BpelFault(BpelFault.MISMATCHED_ASSIGNMENT, "The variable " + variable.name + " can't hold the message of " + operation + ".");
+				}
+			}
+			this.initiate(receive, scope, message.properties, "");
+		}
+		ProcessInstance.LOG.debug("Instance {} received {} of the partnerLink {}", this.id, operation, partnerLink);
+	}
+	
+	/**
+	 * Removes the first message for a receive from the mailbox. The caller
+	 * holds the lock of the instance.
+	 * 
+	 * @return the message or <tt>null</tt> if there is none yet.
+	 */
+	private Incoming take(Element receive, Scope scope, String partnerLink, String operation) throws BpelFault {
+		List<CorrelationSet> sets = new ArrayList<CorrelationSet>();
+		Element correlations = Xml.child(receive, Xml.BPEL_NS, "correlations");
+		if (correlations != null) {
+			for (Element correlation : Xml.children(correlations, Xml.BPEL_NS, "correlation")) {
+				CorrelationSet set = scope.getCorrelationSet(correlation.getAttribute("set"));
+				if (!correlation.getAttribute("initiate").equals("yes") && (set.values != null)) {
+					sets.add(set);
+				}
+			}
+		}
+		
+		for (Iterator<Incoming> iterator = this.mailbox.iterator(); iterator.hasNext();) {
+			Incoming message = iterator.next();
+			if (!message.operation.equals(operation) || !message.partnerLinks.contains(partnerLink)) {
+				continue;
+			}
+			boolean correlated = true;
+			for (CorrelationSet set : sets) {
+				correlated &= ProcessInstance.matches(set, message.properties);
+			}
+			if (correlated) {
+				iterator.remove();
+				return message;
+			}
+		}
+		return null;
+	}
+	
+	private void waitFor(Element wait, Scope scope, Links links) throws BpelFault {
+		Element forExpression = Xml.child(wait, Xml.BPEL_NS, "for");
+		Element untilExpression = Xml.child(wait, Xml.BPEL_NS, "until");
+		
+		long millis;
+		try {
+			DatatypeFactory factory = DatatypeFactory.newInstance();
+			synchronized (this) {
+				if (forExpression != null) {
+					String duration = Expressions.evaluateString(forExpression.getTextContent(), forExpression, this.variables(scope, links)).trim();
+					millis = factory.newDuration(duration).getTimeInMillis(new Date());
+				} else if (untilExpression != null) {
+					String deadline = Expressions.evaluateString(untilExpression.getTextContent(), untilExpression, this.variables(scope, links)).trim();
+					millis = factory.newXMLGregorianCalendar(deadline).toGregorianCalendar().getTimeInMillis() - System.currentTimeMillis();
+				} else {
+					throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, ProcessInstance.describe(wait) + " has neither for nor until.");
+				}
+			}
+		} catch (DatatypeConfigurationException e) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "No XML Schema datatypes available.", e);
+		} catch (IllegalArgumentException e) {
+			throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, ProcessInstance.describe(wait) + " has no valid duration or deadline.", e);
+		}
+		
+		this.sleep(millis, links);
+	}
+	
+	private synchronized void sleep(long millis, Links links) throws BpelFault {
+		long end = System.currentTimeMillis() + millis;
+		for (long remaining = millis; remaining > 0; remaining = end - System.currentTimeMillis()) {
+			this.checkActive(links);
+			this.await(remaining);
+		}
+		this.checkActive(links);
+	}
+	
+	private void extension(Element extension, Scope scope, Links links) throws BpelFault {
+		if (Xml.is(extension, Xml.WAIT_NS, "WAIT")) {
+			long minutes = 0;
+			long seconds = 0;
+			try {
+				minutes = extension.getAttribute("minutes").trim().isEmpty() ? 0 : Long.parseLong(extension.getAttribute("minutes").trim());
+				seconds = extension.getAttribute("seconds").trim().isEmpty() ? 0 : Long.parseLong(extension.getAttribute("seconds").trim());
+			} catch (NumberFormatException e) {
+				throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The wait extension has no valid minutes or seconds.", e);
+			}
+			this.sleep(((minutes * 60) + seconds) * 1000, links);
+		} else {
+			this.rest(extension, scope, links);
+		}
+	}
+	
+	/**
+	 * Executes a BPEL4RESTLight activity, i.e. a GET, POST, PUT or DELETE.
+	 */
+	private void rest(Element activity, Scope scope, Links links) throws BpelFault {
+		String method = activity.getLocalName();
+		String uri;
+		String body = null;
+		
+		synchronized (this) {
+			this.checkActive(links);
+			StringBuffer resolved = new StringBuffer();
+			Matcher matcher = ProcessInstance.BPELVAR.matcher(activity.getAttribute("uri"));
+			while (matcher.find()) {
+				Variable variable = scope.getVariable(matcher.group(1));
+				matcher.appendReplacement(resolved, Matcher.quoteReplacement(this.serialize(variable).trim()));
+			}
+			matcher.appendTail(resolved);
+			uri = resolved.toString();
+			
+			if (activity.hasAttribute("request")) {
+				body = this.serialize(scope.getVariable(activity.getAttribute("request")));
+			}
+		}
+		
+		ProcessInstance.LOG.debug("Instance {} sends {} {}", this.id, method, uri);
+		
+		byte[] response;
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+			try {
+				connection.setConnectTimeout(this.deployment.getConnectTimeout());
+				connection.setReadTimeout(this.deployment.getReadTimeout());
+				connection.setRequestMethod(method);
+				if (!activity.getAttribute("accept").isEmpty()) {
+					connection.setRequestProperty("Accept", activity.getAttribute("accept"));
+				}
+				if (body != null) {
+					byte[] content = body.getBytes(Soap.UTF8);
+					connection.setDoOutput(true);
+					connection.setRequestProperty("Content-Type", activity.getAttribute("accept").isEmpty() ? "application/xml" : activity.getAttribute("accept"));
+					connection.setFixedLengthStreamingMode(content.length);
+					OutputStream out = connection.getOutputStream();
+					try {
+						out.write(content);
+					} finally {
+						out.close();
+					}
+				}
+				
+				int status = connection.getResponseCode();
+				if (status >= 400) {
+					Soap.read(connection.getErrorStream());
+					throw new BpelFault(BpelFault.INVOCATION_FAILURE, method + " " + uri + " returned HTTP status " + status + ".");
+				}
+				response = Soap.read(connection.getInputStream());
+			} finally {
+				connection.disconnect();
+			}
+		} catch (IOException e) {
+			throw new BpelFault(BpelFault.INVOCATION_FAILURE, "Couldn't send " + method + " " + uri + ": " + e.getMessage(), e);
+		}
+		
+		if (activity.hasAttribute("response")) {
+			synchronized (this) {
+				Variable variable = scope.getVariable(activity.getAttribute("response"));
+				this.replace(variable, null, null, ProcessInstance.parseResponse(response));
+			}
+		}
+	}
+	
+	/**
+	 * @return the document element of a xml response, otherwise the response
+	 *         as text.
+	 */
+	private static Object parseResponse(byte[] response) {
+		InputStream in = new ByteArrayInputStream(response);
+		try {
+			return Xml.parse(in).getDocumentElement();
+		} catch (IOException e) {
+			return new String(response, Soap.UTF8);
+		}
+	}
+	
+	/**
+	 * @return the value of a variable as text or xml string.
+	 */
+	private String serialize(Variable variable) throws BpelFault {
+		Element value = variable.message != null ? variable.message.getPart(this.getSinglePart(variable)) : variable.value;
+		if (value == null) {
+			throw new BpelFault(BpelFault.UNINITIALIZED_VARIABLE, "The variable " + variable.name + " isn't initialized.");
+		}
+		if (variable.simpleType) {
+			List<Element> children = Xml.children(value);
+			return children.isEmpty() ? value.getTextContent() : Xml.toString(children.get(0));
+		}
+		return Xml.toString(value);
+	}
+	
+	private static String describe(Element activity) {
+		return activity.getLocalName() + (activity.hasAttribute("name") ? " " + activity.getAttribute("name") : "");
+	}
+	
+	
+	/**
+	 * Message for the instance with the values of its properties.
+	 */
+	static class Incoming {
+		
+		// the partnerLinks of the service the message arrived at
+		final Set<String> partnerLinks;
+		final String operation;
+		final Message message;
+		final Map<QName, String> properties;
+		
+		
+		Incoming(Set<String> partnerLinks, String operation, Message message, Map<QName, String> properties) {
+			this.partnerLinks = partnerLinks;
+			this.operation = operation;
+			this.message = message;
+			this.properties = properties;
+		}
+	}
+	
+	/**
+	 * Status of the links of a flow, <tt>null</tt> while a link isn't
+	 * determined.
+	 */
+	private static class Links {
+		
+		final Links parent;
+		final Map<String, Boolean> status = new HashMap<String, Boolean>();
+		// first fault of a branch of the flow
+		BpelFault fault;
+		
+		
+		Links(Links parent) {
+			this.parent = parent;
+		}
+		
+		/**
+		 * @return the links of the innermost flow declaring the link or
+		 *         <tt>null</tt>.
+		 */
+		static Links find(Links links, String name) {
+			for (Links flow = links; flow != null; flow = flow.parent) {
+				if (flow.status.containsKey(name)) {
+					return flow;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.w3c.dom.Element;
+
+/**
+ * Variables, partnerLinks and correlationSets of a running process or scope.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A name is resolved in the scope declaring it or, if it isn't declared
+ * there, in the enclosing scopes. The state is accessed by the activities of
+ * an instance while they hold the lock of the instance.
+ * 
+ * 
+ */
+class Scope {
+	
+	private final Scope parent;
+	
+	private final Map<String, Variable> variables = new HashMap<String, Variable>();
+	private final Map<String, PartnerLinkState> partnerLinks = new HashMap<String, PartnerLinkState>();
+	private final Map<String, CorrelationSet> correlationSets = new HashMap<String, CorrelationSet>();
+	
+	
+	/**
+	 * Creates the scope of a process or scope element and initializes its
+	 * declarations.
+	 * 
+	 * @param parent the enclosing scope or <tt>null</tt> for the process.
+	 * @param declaration the process or scope element.
+	 */
+	Scope(Scope parent, Element declaration) {
+		this.parent = parent;
+		
+		Element variables = Xml.child(declaration, Xml.BPEL_NS, "variables");
+		if (variables != null) {
+			for (Element variable : Xml.children(variables, Xml.BPEL_NS, "variable")) {
+				this.variables.put(variable.getAttribute("name"), new Variable(variable));
+			}
+		}
+		
+		Element partnerLinks = Xml.child(declaration, Xml.BPEL_NS, "partnerLinks");
+		if (partnerLinks != null) {
+			for (Element partnerLink : Xml.children(partnerLinks, Xml.BPEL_NS, "partnerLink")) {
+				this.partnerLinks.put(partnerLink.getAttribute("name"), new PartnerLinkState());
+			}
+		}
+		
+		Element correlationSets = Xml.child(declaration, Xml.BPEL_NS, "correlationSets");
+		if (correlationSets != null) {
+			for (Element correlationSet : Xml.children(correlationSets, Xml.BPEL_NS, "correlationSet")) {
+				List<QName> properties = new ArrayList<QName>();
+				for (String property : correlationSet.getAttribute("properties").trim().split("\\s+")) {
+					if (!property.isEmpty()) {
+						properties.add(Xml.resolve(correlationSet, property));
+					}
+				}
+				this.correlationSets.put(correlationSet.getAttribute("name"), new CorrelationSet(correlationSet.getAttribute("name"), properties));
+			}
+		}
+	}
+	
+	Variable getVariable(String name) throws BpelFault {
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			Variable variable = scope.variables.get(name);
+			if (variable != null) {
+				return variable;
+			}
+		}
+		throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The variable " + name + " isn't declared.");
+	}
+	
+	PartnerLinkState getPartnerLink(String name) throws BpelFault {
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			PartnerLinkState partnerLink = scope.partnerLinks.get(name);
+			if (partnerLink != null) {
+				return partnerLink;
+			}
+		}
+		throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The partnerLink " + name + " isn't declared.");
+	}
+	
+	CorrelationSet getCorrelationSet(String name) throws BpelFault {
+		for (Scope scope = this; scope != null; scope = scope.parent) {
+			CorrelationSet correlationSet = scope.correlationSets.get(name);
+			if (correlationSet != null) {
+				return correlationSet;
+			}
+		}
+		throw new BpelFault(BpelFault.SUB_LANGUAGE_FAULT, "The correlationSet " + name + " isn't declared.");
+	}
+	
+	
+	/**
+	 * Variable with a WSDL message type, an element or a XML Schema type.
+	 */
+	static class Variable {
+		
+		final String name;
+		// null if the variable has an element or type
+		final QName messageType;
+		final boolean simpleType;
+		
+		// value of a message variable
+		final Message message;
+		// value of an element or type variable, null if uninitialized
+		Element value;
+		
+		
+		Variable(Element declaration) {
+			this.name = declaration.getAttribute("name");
+			this.messageType = Xml.resolve(declaration, Xml.attribute(declaration, "messageType"));
+			this.simpleType = declaration.hasAttribute("type");
+			this.message = this.messageType == null ? null : new Message();
+			
+			// variables of a simple type, e.g. xsd:string, are assigned with
+			// copies to their text, thus they get an empty value first
+			if (this.simpleType) {
+				this.value = Xml.newValue(this.name, "");
+			}
+		}
+	}
+	
+	/**
+	 * Endpoint state of a partnerLink.
+	 */
+	static class PartnerLinkState {
+		
+		// address of the partner set by an assign, null for the address of
+		// the deploy.xml
+		String address;
+		// MessageID of the request the partner answers with the next invoke
+		String relatesTo;
+	}
+	
+	/**
+	 * CorrelationSet with the values of its properties.
+	 */
+	static class CorrelationSet {
+		
+		final String name;
+		final List<QName> properties;
+		// null until the set is initiated
+		Map<QName, String> values;
+		
+		
+		CorrelationSet(String name, List<QName> properties) {
+			this.name = name;
+			this.properties = properties;
+		}
+	}
+}
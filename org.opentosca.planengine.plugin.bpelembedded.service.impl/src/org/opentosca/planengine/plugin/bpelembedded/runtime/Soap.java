@@ -0,0 +1,255 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.opentosca.planengine.plugin.bpelembedded.runtime.ProcessDefinition.Part;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * SOAP 1.1 envelopes and their transport via HTTP.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The processes of the plan builder use document/literal bindings, i.e. the
+ * parts of a message are the children of the SOAP body in the order of the
+ * parts in the message definition. Envelopes of SOAP 1.2 are read as well.
+ * 
+ * 
+ */
+final class Soap {
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+	
+	
+	private Soap() {
+	}
+	
+	/**
+	 * Creates the envelope of a message.
+	 * 
+	 * @param message with the headers and parts.
+	 * @param parts of the message definition, in their order.
+	 * @param extraHeaders added after the headers of the message.
+	 * @return the envelope.
+	 */
+	static Document newEnvelope(Message message, List<Part> parts, Collection<Element> extraHeaders) {
+		List<Element> body = new ArrayList<Element>();
+		for (Part part : parts) {
+			Element value = message.getPart(part.name);
+			if (value != null) {
+				body.add(value);
+			}
+		}
+		
+		List<Element> headers = new ArrayList<Element>(message.getHeaders().values());
+		headers.addAll(extraHeaders);
+		
+		return Soap.newEnvelope(headers, body);
+	}
+	
+	/**
+	 * Creates an envelope with the given headers and body elements.
+	 */
+	static Document newEnvelope(Collection<Element> headers, Collection<Element> body) {
+		Document document = Xml.newDocument();
+		Element envelope = document.createElementNS(Xml.SOAP_ENV_NS, "soapenv:Envelope");
+		document.appendChild(envelope);
+		
+		if (!headers.isEmpty()) {
+			Element header = document.createElementNS(Xml.SOAP_ENV_NS, "soapenv:Header");
+			envelope.appendChild(header);
+			for (Element element : headers) {
+				header.appendChild(document.importNode(element, true));
+			}
+		}
+		
+		Element bodyElement = document.createElementNS(Xml.SOAP_ENV_NS, "soapenv:Body");
+		envelope.appendChild(bodyElement);
+		for (Element element : body) {
+			bodyElement.appendChild(document.importNode(element, true));
+		}
+		return document;
+	}
+	
+	/**
+	 * Creates an envelope containing a SOAP fault.
+	 */
+	static Document newFault(String faultCode, String faultString) {
+		Document document = Soap.newEnvelope(new ArrayList<Element>(), new ArrayList<Element>());
+		Element body = Xml.child(document.getDocumentElement(), Xml.SOAP_ENV_NS, "Body");
+		
+		Element fault = document.createElementNS(Xml.SOAP_ENV_NS, "soapenv:Fault");
+		body.appendChild(fault);
+		Element code = document.createElementNS(null, "faultcode");
+		code.setTextContent("soapenv:" + faultCode);
+		fault.appendChild(code);
+		Element string = document.createElementNS(null, "faultstring");
+		string.setTextContent(faultString);
+		fault.appendChild(string);
+		return document;
+	}
+	
+	/**
+	 * Reads an envelope.
+	 * 
+	 * @param in the stream to read.
+	 * @return the envelope.
+	 * @throws IOException if the stream couldn't be read or doesn't contain a
+	 *             SOAP envelope.
+	 */
+	static Envelope parse(InputStream in) throws IOException {
+		Element envelope = Xml.parse(in).getDocumentElement();
+		String soapNamespace = envelope.getNamespaceURI();
+		
+		if (!Xml.is(envelope, Xml.SOAP_ENV_NS, "Envelope") && !Xml.is(envelope, Xml.SOAP12_ENV_NS, "Envelope")) {
+			throw new IOException("The message isn't a SOAP envelope but " + envelope.getNodeName() + ".");
+		}
+		
+		Envelope result = new Envelope();
+		Element header = Xml.child(envelope, soapNamespace, "Header");
+		if (header != null) {
+			for (Element element : Xml.children(header)) {
+				result.headers.add(Xml.copy(element));
+			}
+		}
+		Element body = Xml.child(envelope, soapNamespace, "Body");
+		if (body != null) {
+			for (Element element : Xml.children(body)) {
+				if (Xml.is(element, soapNamespace, "Fault")) {
+					result.fault = element.getTextContent().trim().replaceAll("\\s+", " ");
+				} else {
+					result.body.add(Xml.copy(element));
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Converts a received envelope to a message.
+	 * 
+	 * @param envelope the received envelope.
+	 * @param parts of the message definition, in their order.
+	 * @return the message.
+	 */
+	static Message toMessage(Envelope envelope, List<Part> parts) {
+		Message message = new Message();
+		for (int i = 0; (i < parts.size()) && (i < envelope.body.size()); i++) {
+			message.setPart(parts.get(i).name, envelope.body.get(i));
+		}
+		for (Element header : envelope.headers) {
+			message.setHeader(header.getLocalName(), header);
+		}
+		return message;
+	}
+	
+	/**
+	 * Sends a request and reads the response.
+	 * 
+	 * @param address the endpoint.
+	 * @param soapAction of the operation, may be empty.
+	 * @param request the envelope to send.
+	 * @param connectTimeout in milliseconds.
+	 * @param readTimeout in milliseconds.
+	 * @return the response envelope, <tt>null</tt> if the response is empty,
+	 *         e.g. for a one-way operation.
+	 * @throws IOException if the request couldn't be sent or the response
+	 *             isn't a SOAP envelope.
+	 */
+	static Envelope call(String address, String soapAction, Document request, int connectTimeout, int readTimeout) throws IOException {
+		byte[] content = Xml.toString(request).getBytes(Soap.UTF8);
+		
+		HttpURLConnection connection = (HttpURLConnection) new URL(address).openConnection();
+		try {
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setDoOutput(true);
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", Soap.CONTENT_TYPE);
+			connection.setRequestProperty("SOAPAction", "\"" + (soapAction == null ? "" : soapAction) + "\"");
+			connection.setFixedLengthStreamingMode(content.length);
+			
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+			
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			byte[] response = Soap.read(in);
+			
+			if (response.length == 0) {
+				if (status >= 400) {
+					throw new IOException("The endpoint " + address + " returned HTTP status " + status + ".");
+				}
+				return null;
+			}
+			return Soap.parse(new ByteArrayInputStream(response));
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Reads a stream completely and closes it.
+	 * 
+	 * @param in the stream, may be <tt>null</tt>.
+	 * @return the content, empty if the stream is <tt>null</tt>.
+	 */
+	static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (in == null) {
+			return out.toByteArray();
+		}
+		try {
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @return the headers of a message for logging.
+	 */
+	static String toString(Message message) {
+		StringBuilder builder = new StringBuilder();
+		for (Entry<String, Element> header : message.getHeaders().entrySet()) {
+			builder.append(header.getKey()).append('=').append(header.getValue().getTextContent().trim()).append(' ');
+		}
+		return builder.toString().trim();
+	}
+	
+	
+	/**
+	 * Received SOAP envelope.
+	 */
+	static class Envelope {
+		
+		final List<Element> headers = new ArrayList<Element>();
+		final List<Element> body = new ArrayList<Element>();
+		// content of the SOAP fault, null if the body contains none
+		String fault;
+	}
+}
@@ -0,0 +1,253 @@
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Namespaces and DOM helpers of the embedded BPEL runtime.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The documents are parsed without deferred node expansion and the children
+ * of an element are read by traversing its siblings. Thus reading a DOM
+ * doesn't modify it and the process definitions can be read by several
+ * instances concurrently.
+ * 
+ * 
+ */
+final class Xml {
+	
+	static final String BPEL_NS = "http://docs.oasis-open.org/wsbpel/2.0/process/executable";
+	static final String PLNK_NS = "http://docs.oasis-open.org/wsbpel/2.0/plnktype";
+	static final String VPROP_NS = "http://docs.oasis-open.org/wsbpel/2.0/varprop";
+	static final String WSDL_NS = "http://schemas.xmlsoap.org/wsdl/";
+	static final String WSDL_SOAP_NS = "http://schemas.xmlsoap.org/wsdl/soap/";
+	static final String DEPLOY_NS = "http://www.apache.org/ode/schemas/dd/2007/03";
+	static final String SOAP_ENV_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	static final String SOAP12_ENV_NS = "http://www.w3.org/2003/05/soap-envelope";
+	static final String WSA_NS = "http://www.w3.org/2005/08/addressing";
+	static final String XMLNS_NS = "http://www.w3.org/2000/xmlns/";
+	static final String REST_NS = "http://iaas.uni-stuttgart.de/bpel/extensions/bpel4restlight";
+	static final String WAIT_NS = "http://www.opentosca.org/bpel/extension/wait";
+	
+	private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+	
+	// reports errors by exceptions only, the default handler prints them
+	private static final ErrorHandler ERROR_HANDLER = new ErrorHandler() {
+		
+		@Override
+		public void warning(SAXParseException exception) {
+		}
+		
+		@Override
+		public void error(SAXParseException exception) throws SAXException {
+			throw exception;
+		}
+		
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			throw exception;
+		}
+	};
+	
+	static {
+		Xml.FACTORY.setNamespaceAware(true);
+		try {
+			Xml.FACTORY.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+		} catch (ParserConfigurationException e) {
+			// not a Xerces based parser, whose nodes are expanded anyway
+		}
+	}
+	
+	
+	private Xml() {
+	}
+	
+	/**
+	 * Parses a namespace aware document.
+	 * 
+	 * @param in the stream to parse, it isn't closed.
+	 * @return the parsed document.
+	 * @throws IOException if the stream couldn't be read or isn't well-formed
+	 *             xml.
+	 */
+	static Document parse(InputStream in) throws IOException {
+		try {
+			return Xml.newBuilder().parse(in);
+		} catch (SAXException e) {
+			throw new IOException("Couldn't parse xml: " + e.getMessage(), e);
+		}
+	}
+	
+	static Document newDocument() {
+		return Xml.newBuilder().newDocument();
+	}
+	
+	private static DocumentBuilder newBuilder() {
+		try {
+			DocumentBuilder builder;
+			synchronized (Xml.FACTORY) {
+				builder = Xml.FACTORY.newDocumentBuilder();
+			}
+			builder.setErrorHandler(Xml.ERROR_HANDLER);
+			return builder;
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("No namespace aware xml parser available.", e);
+		}
+	}
+	
+	/**
+	 * Copies an element into a new document, where it is the document element.
+	 * 
+	 * @param element to copy.
+	 * @return the copy.
+	 */
+	static Element copy(Element element) {
+		Document document = Xml.newDocument();
+		Element copy = (Element) document.importNode(element, true);
+		document.appendChild(copy);
+		
+		// prefixes declared above the element are needed to resolve its QName
+		// valued content, e.g. tns:CorrelationID in a literal
+		for (Node node = element.getParentNode(); node instanceof Element; node = node.getParentNode()) {
+			for (int i = 0; i < node.getAttributes().getLength(); i++) {
+				Node attribute = node.getAttributes().item(i);
+				if (Xml.XMLNS_NS.equals(attribute.getNamespaceURI()) && !"xmlns".equals(attribute.getNodeName()) && !copy.hasAttributeNS(Xml.XMLNS_NS, attribute.getLocalName())) {
+					copy.setAttributeNS(Xml.XMLNS_NS, attribute.getNodeName(), attribute.getNodeValue());
+				}
+			}
+		}
+		return copy;
+	}
+	
+	/**
+	 * Creates an element that holds a simple value, e.g. of a variable with a
+	 * XML Schema simple type.
+	 * 
+	 * @param name of the element.
+	 * @param text content of the element.
+	 * @return the element, which is the document element of a new document.
+	 */
+	static Element newValue(String name, String text) {
+		Document document = Xml.newDocument();
+		Element element = document.createElementNS(null, name);
+		element.setTextContent(text);
+		document.appendChild(element);
+		return element;
+	}
+	
+	/**
+	 * @return the element children of the given element in their order.
+	 */
+	static List<Element> children(Element element) {
+		List<Element> children = new ArrayList<Element>();
+		// the siblings are traversed directly, as the NodeList of Xerces
+		// caches its position and can't be read concurrently
+		for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				children.add((Element) node);
+			}
+		}
+		return children;
+	}
+	
+	/**
+	 * @return the element children with the given name.
+	 */
+	static List<Element> children(Element element, String namespace, String localName) {
+		List<Element> children = new ArrayList<Element>();
+		for (Element child : Xml.children(element)) {
+			if (Xml.is(child, namespace, localName)) {
+				children.add(child);
+			}
+		}
+		return children;
+	}
+	
+	/**
+	 * @return the first element child with the given name or <tt>null</tt>.
+	 */
+	static Element child(Element element, String namespace, String localName) {
+		List<Element> children = Xml.children(element, namespace, localName);
+		return children.isEmpty() ? null : children.get(0);
+	}
+	
+	static boolean is(Node node, String namespace, String localName) {
+		return (node instanceof Element) && localName.equals(node.getLocalName()) && (namespace == null ? node.getNamespaceURI() == null : namespace.equals(node.getNamespaceURI()));
+	}
+	
+	/**
+	 * Returns an attribute of an element.
+	 * 
+	 * @return the value or <tt>null</tt> if the attribute isn't set.
+	 */
+	static String attribute(Element element, String name) {
+		return element.hasAttribute(name) ? element.getAttribute(name) : null;
+	}
+	
+	/**
+	 * Resolves a prefixed name, e.g. the value of a portType attribute, with
+	 * the namespaces declared in the scope of the element.
+	 * 
+	 * @param context the element containing the name.
+	 * @param prefixedName the name, may be <tt>null</tt>.
+	 * @return the QName or <tt>null</tt> if the name is <tt>null</tt>.
+	 */
+	static QName resolve(Element context, String prefixedName) {
+		if (prefixedName == null) {
+			return null;
+		}
+		
+		String name = prefixedName.trim();
+		int colon = name.indexOf(':');
+		String prefix = colon < 0 ? null : name.substring(0, colon);
+		String namespace = context.lookupNamespaceURI(prefix);
+		
+		return new QName(namespace == null ? "" : namespace, name.substring(colon + 1));
+	}
+	
+	/**
+	 * Serializes a node without xml declaration.
+	 * 
+	 * @param node to serialize.
+	 * @return the xml string.
+	 */
+	static String toString(Node node) {
+		try {
+			Transformer transformer;
+			synchronized (Xml.TRANSFORMER_FACTORY) {
+				transformer = Xml.TRANSFORMER_FACTORY.newTransformer();
+			}
+			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			StringWriter out = new StringWriter();
+			transformer.transform(new DOMSource(node), new StreamResult(out));
+			return out.toString();
+		} catch (TransformerException e) {
+			throw new IllegalStateException("Couldn't serialize xml.", e);
+		}
+	}
+}
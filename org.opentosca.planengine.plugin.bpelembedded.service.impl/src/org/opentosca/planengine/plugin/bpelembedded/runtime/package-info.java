@@ -0,0 +1,19 @@
+/**
+ * <p>
+ * This package contains the embedded WS-BPEL 2.0 runtime, which executes the
+ * plans inside the container.
+ * </p>
+ * <p>
+ * The {@link org.opentosca.planengine.plugin.bpelembedded.runtime.BpelRuntime}
+ * deploys the Apache ODE process packages of the plans and provides their
+ * services. It supports the subset of WS-BPEL 2.0 the plan builder generates:
+ * <ul>
+ * <li>sequence, flow with links, scope with fault handlers, empty, exit and
+ * wait</li>
+ * <li>assign, invoke and receive with correlationSets, e.g. for the callbacks
+ * of the service invoker</li>
+ * <li>the BPEL4RESTLight and wait extension activities</li>
+ * </ul>
+ * </p>
+ */
+package org.opentosca.planengine.plugin.bpelembedded.runtime;
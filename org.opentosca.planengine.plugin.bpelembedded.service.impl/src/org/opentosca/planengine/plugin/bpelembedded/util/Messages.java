@@ -0,0 +1,22 @@
+package org.opentosca.planengine.plugin.bpelembedded.util;
+
+import org.eclipse.osgi.util.NLS;
+
+public class Messages extends NLS {
+	
+	private static final String BUNDLE_NAME = "org.opentosca.planengine.plugin.bpelembedded.util.messages";
+	public static String EmbeddedPlanEnginePlugin_description;
+	public static String EmbeddedPlanEnginePlugin_address;
+	public static String EmbeddedPlanEnginePlugin_connectTimeout;
+	public static String EmbeddedPlanEnginePlugin_readTimeout;
+	public static String EmbeddedPlanEnginePlugin_language;
+	public static String EmbeddedPlanEnginePlugin_capabilities;
+	static {
+		// initialize resource bundle
+		NLS.initializeMessages(Messages.BUNDLE_NAME, Messages.class);
+	}
+	
+	
+	private Messages() {
+	}
+}
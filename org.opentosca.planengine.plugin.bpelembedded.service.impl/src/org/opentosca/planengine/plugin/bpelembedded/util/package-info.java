@@ -0,0 +1,12 @@
+/**
+ * <p>
+ * This package contains the utility classes used by
+ * {@link org.opentosca.planengine.plugin.bpelembedded.EmbeddedPlanEnginePlugin}
+ * </p>
+ * <p>
+ * The {@link org.opentosca.planengine.plugin.bpelembedded.util.Messages}
+ * class declares the address the embedded BPEL runtime provides the deployed
+ * plans at and the timeouts for invoking the partners of the plans.
+ * </p>
+ */
+package org.opentosca.planengine.plugin.bpelembedded.util;
@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.wsdl.WSDLException;
 import javax.xml.namespace.QName;
@@ -14,6 +15,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerConfigurationException;
 
 import org.opentosca.bpsconnector.BpsConnector;
+import org.opentosca.core.deployment.tracker.service.ICoreDeploymentTrackerService;
 import org.opentosca.core.endpoint.service.ICoreEndpointService;
 import org.opentosca.core.file.service.ICoreFileService;
 import org.opentosca.core.model.artifact.AbstractArtifact;
@@ -27,8 +29,10 @@ import org.opentosca.model.tosca.TPlan.PlanModelReference;
 import org.opentosca.planengine.plugin.bpelwso2.util.BPELRESTLightUpdater;
 import org.opentosca.planengine.plugin.bpelwso2.util.Messages;
 import org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater;
+import org.opentosca.planengine.plugin.bpelwso2.util.PlanArchive;
 import org.opentosca.planengine.plugin.service.IPlanEnginePlanRefPluginService;
 import org.opentosca.toscaengine.service.IToscaEngineService;
+import org.opentosca.util.concurrent.SingleFlight;
 import org.opentosca.util.fileaccess.service.IFileAccessService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,7 +53,13 @@ import org.xml.sax.SAXException;
  * extension activities with up-to-date endpoints. The plugin also uses
  * {@link org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater} to
  * update the bindings inside the used WSDL Descriptions referenced in the BPEL
- * process. <br>
+ * process. Both update the files of the plan in memory, the updated plan is
+ * written in one pass over the original zip file by
+ * {@link org.opentosca.planengine.plugin.bpelwso2.util.PlanArchive}, thus the
+ * plan isn't unpacked. A plan whose updated package is identical to an
+ * already deployed one reuses its process, see
+ * {@link org.opentosca.planengine.plugin.bpelwso2.DeployedPlanRegistry}, and
+ * concurrent deployments of the same package share one upload.<br>
  * The endpoints for the update are retrieved trough a service that implements
  * the {@link org.opentosca.core.endpoint.service.ICoreEndpointService}
  * interface.
@@ -88,6 +98,13 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 	
 	private IToscaEngineService toscaEngine;
 	
+	private volatile ICoreDeploymentTrackerService deploymentTrackerService;
+	
+	// processes deployed by this plugin, shared by identical plans, and
+	// deployments in progress by fingerprint
+	private final DeployedPlanRegistry deployedPlans = new DeployedPlanRegistry();
+	private final SingleFlight<String, Boolean> deployments = new SingleFlight<String, Boolean>("plan deployments");
+	
 	
 	/**
 	 * {@inheritDoc}
@@ -115,7 +132,7 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 	 */
 	@Override
 	public boolean deployPlanReference(QName planId, PlanModelReference planRef, CSARID csarId) {
-		List<File> planContents;
+		Path fetchedPlan;
 		File tempDir;
 		File tempPlan;
 		
@@ -171,8 +188,6 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 				return false;
 			}
 			
-			Path fetchedPlan;
-			
 			try {
 				fetchedPlan = plan.getFile();
 			} catch (SystemException exc) {
@@ -181,11 +196,9 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 			}
 			
 			if (this.fileAccessService != null) {
-				// creating temporary dir for update
+				// creating temporary dir for the updated plan
 				tempDir = this.fileAccessService.getTemp();
 				tempPlan = new File(tempDir, fetchedPlan.getFileName().toString());
-				BpsPlanEnginePlugin.LOG.debug("Unzipping Plan '{}' to '{}'.", fetchedPlan.getFileName().toString(), tempDir.getAbsolutePath());
-				planContents = this.fileAccessService.unzip(fetchedPlan.toFile(), tempDir);
 			} else {
 				BpsPlanEnginePlugin.LOG.error("FileAccessService is not available, can't create needed temporary space on disk");
 				return false;
@@ -196,57 +209,140 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 			return false;
 		}
 		
-		// changing endpoints in WSDLs
-		ODEEndpointUpdater odeUpdater;
+		PlanArchive planArchive;
 		try {
-			odeUpdater = new ODEEndpointUpdater();
-			portType = odeUpdater.getPortType(planContents);
-			if (!odeUpdater.changeEndpoints(planContents, csarId)) {
-				BpsPlanEnginePlugin.LOG.error("Not all endpoints used by the plan {} have been changed", planRef.getReference());
-			}
-		} catch (WSDLException e) {
-			BpsPlanEnginePlugin.LOG.error("Couldn't load ODEEndpointUpdater", e);
+			BpsPlanEnginePlugin.LOG.debug("Opening Plan '{}'.", fetchedPlan.getFileName().toString());
+			planArchive = new PlanArchive(fetchedPlan.toFile());
+		} catch (IOException e) {
+			BpsPlanEnginePlugin.LOG.error("Can't read plan " + planRef.getReference(), e);
+			BpsPlanEnginePlugin.deleteTemp(tempPlan, tempDir);
+			return false;
 		}
 		
-		// update the bpel and bpel4restlight elements (ex.: GET, PUT,..)
-		BPELRESTLightUpdater bpelRestUpdater;
+		DeployedPlanRegistry.Reference reference = new DeployedPlanRegistry.Reference(csarId, planId);
+		DeployedPlanRegistry.DeployedPlan deployedPlan = null;
+		String fingerprint;
+		
 		try {
-			bpelRestUpdater = new BPELRESTLightUpdater();
-			if (!bpelRestUpdater.changeEndpoints(planContents, csarId)) {
-				// we don't abort deployment here
-				BpsPlanEnginePlugin.LOG.warn("Could'nt change all endpoints inside BPEL4RESTLight Elements in the given process {}", planRef.getReference());
+			portType = this.updatePlan(planArchive, planRef, csarId);
+			
+			// the package name is the name of the zip file
+			fingerprint = planArchive.getFingerprint(tempPlan.getName());
+			
+			if (fingerprint == null) {
+				deployedPlan = this.deploy(planArchive, tempPlan, portType, null, planRef);
+			} else {
+				deployedPlan = this.deployedPlans.addReference(fingerprint, reference);
+				
+				if (deployedPlan != null) {
+					// an identical package is already deployed
+					BpsPlanEnginePlugin.LOG.info("Plan {} is identical to the deployed process {}, the process is reused", planRef.getReference(), deployedPlan.getProcessId());
+				} else {
+					deployedPlan = this.deployShared(planArchive, tempPlan, portType, fingerprint, reference, planRef);
+				}
 			}
-		} catch (TransformerConfigurationException e) {
-			BpsPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
-		} catch (ParserConfigurationException e) {
-			BpsPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
-		} catch (SAXException e) {
-			BpsPlanEnginePlugin.LOG.error("ParseError: Couldn't parse .bpel file", e);
 		} catch (IOException e) {
-			BpsPlanEnginePlugin.LOG.error("IOError: Couldn't access .bpel file", e);
+			BpsPlanEnginePlugin.LOG.error("Can't package temporary plan for deployment", e);
+			return false;
+		} finally {
+			try {
+				planArchive.close();
+			} catch (IOException e) {
+				BpsPlanEnginePlugin.LOG.debug("Couldn't close plan " + planRef.getReference(), e);
+			}
+			BpsPlanEnginePlugin.deleteTemp(tempPlan, tempDir);
 		}
 		
-		// package process
-		BpsPlanEnginePlugin.LOG.info("Prepare deployment of PlanModelReference");
-		BpsConnector connector = new BpsConnector();
+		if (deployedPlan == null) {
+			return false;
+		}
 		
-		if (this.fileAccessService != null) {
-			try {
-				if (tempPlan.createNewFile()) {
-					// package the updated files
-					BpsPlanEnginePlugin.LOG.debug("Packaging plan to {} ", tempPlan.getAbsolutePath());
-					tempPlan = this.fileAccessService.zip(tempDir, tempPlan);
-				} else {
-					BpsPlanEnginePlugin.LOG.error("Can't package temporary plan for deployment");
-					return false;
+		if (!this.storeEndpoint(deployedPlan.getEndpoint(), deployedPlan.getPortType(), csarId, planId, planRef)) {
+			if (fingerprint != null) {
+				this.deployedPlans.release(reference);
+			}
+			return false;
+		}
+		
+		if (fingerprint != null) {
+			this.trackFingerprint(csarId, planRef, fingerprint);
+		}
+		return true;
+	}
+	
+	/**
+	 * Deploys a plan unless a process with the same fingerprint is already
+	 * deployed. Concurrent deployments of the same package wait for the first
+	 * of them, thus the package is uploaded to the BPS only once.
+	 * 
+	 * @param planArchive the updated plan
+	 * @param tempPlan the temporary file to package the plan to
+	 * @param portType the portType of the process
+	 * @param fingerprint the fingerprint of the updated package
+	 * @param reference the plan
+	 * @param planRef the reference of the plan
+	 * @return the process used by the plan, null if deployment failed
+	 */
+	private DeployedPlanRegistry.DeployedPlan deployShared(final PlanArchive planArchive, final File tempPlan, final QName portType, final String fingerprint, final DeployedPlanRegistry.Reference reference, final PlanModelReference planRef) {
+		DeployedPlanRegistry.DeployedPlan deployedPlan = null;
+		
+		while (deployedPlan == null) {
+			
+			Boolean isDeployed = this.deployments.execute(fingerprint, new Callable<Boolean>() {
+				
+				@Override
+				public Boolean call() {
+					// a deployment may have been completed in the meantime
+					if (BpsPlanEnginePlugin.this.deployedPlans.addReference(fingerprint, reference) != null) {
+						return true;
+					}
+					
+					DeployedPlanRegistry.DeployedPlan deployed = BpsPlanEnginePlugin.this.deploy(planArchive, tempPlan, portType, fingerprint, planRef);
+					
+					if (deployed == null) {
+						return false;
+					}
+					
+					BpsPlanEnginePlugin.this.deployedPlans.register(fingerprint, deployed.getProcessId(), deployed.getEndpoint(), deployed.getPortType(), reference);
+					return true;
 				}
-			} catch (IOException e) {
-				BpsPlanEnginePlugin.LOG.error("Can't package temporary plan for deployment", e);
-				return false;
+			});
+			
+			if (!isDeployed) {
+				return null;
 			}
+			
+			// the process may have been undeployed again before the plan is
+			// added to it, then it is deployed anew
+			deployedPlan = this.deployedPlans.addReference(fingerprint, reference);
+		}
+		return deployedPlan;
+	}
+	
+	/**
+	 * Packages the updated plan and deploys it on the BPS
+	 * 
+	 * @param planArchive the updated plan
+	 * @param tempPlan the temporary file to package the plan to
+	 * @param portType the portType of the process
+	 * @param fingerprint the fingerprint of the updated package, may be null
+	 * @param planRef the reference of the plan
+	 * @return the deployed process, null if deployment failed
+	 */
+	private DeployedPlanRegistry.DeployedPlan deploy(PlanArchive planArchive, File tempPlan, QName portType, String fingerprint, PlanModelReference planRef) {
+		
+		// package process
+		try {
+			BpsPlanEnginePlugin.LOG.info("Prepare deployment of PlanModelReference");
+			BpsPlanEnginePlugin.LOG.debug("Packaging plan to {} ", tempPlan.getAbsolutePath());
+			planArchive.writeTo(tempPlan);
+		} catch (IOException e) {
+			BpsPlanEnginePlugin.LOG.error("Can't package temporary plan for deployment", e);
+			return null;
 		}
 		
 		// deploy process
+		BpsConnector connector = new BpsConnector();
 		BpsPlanEnginePlugin.LOG.info("Deploying Plan: {}", tempPlan.getName());
 		String processId = connector.deploy(tempPlan, Messages.BpsPlanEnginePlugin_bpsAddress, Messages.BpsPlanEnginePlugin_bpsLoginName, Messages.BpsPlanEnginePlugin_bpsLoginPw);
 		Map<String, URI> endpoints = connector.getEndpointsForPID(processId, Messages.BpsPlanEnginePlugin_bpsAddress, Messages.BpsPlanEnginePlugin_bpsLoginName, Messages.BpsPlanEnginePlugin_bpsLoginPw);
@@ -266,23 +362,14 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 		
 		if (endpoint == null) {
 			BpsPlanEnginePlugin.LOG.warn("No endpoint for Plan {} could be determined, container won't be able to instantiate it", planRef.getReference());
-			return false;
+			return null;
 		}
 		
 		if ((processId != null) && (endpoint != null) && (portType != null)) {
 			BpsPlanEnginePlugin.LOG.debug("Endpoint for ProcessID \"" + processId + "\" is \"" + endpoints + "\".");
 			BpsPlanEnginePlugin.LOG.info("Deployment of Plan was successfull: {}", tempPlan.getName());
 			
-			// save endpoint
-			WSDLEndpoint wsdlEndpoint = new WSDLEndpoint(endpoint, portType, csarId, planId, null, null);
-			
-			if (this.endpointService != null) {
-				BpsPlanEnginePlugin.LOG.debug("Store new endpoint!");
-				this.endpointService.storeWSDLEndpoint(wsdlEndpoint);
-			} else {
-				BpsPlanEnginePlugin.LOG.warn("Couldn't store endpoint {} for plan {}, cause endpoint service is not available", endpoint.toString(), planRef.getReference());
-				return false;
-			}
+			return new DeployedPlanRegistry.DeployedPlan(fingerprint, processId, endpoint, portType);
 		} else {
 			BpsPlanEnginePlugin.LOG.error("Error while processing plan");
 			if (processId == null) {
@@ -294,9 +381,110 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 			if (portType == null) {
 				BpsPlanEnginePlugin.LOG.error("PortType of process is null");
 			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores the endpoint of a deployed plan
+	 * 
+	 * @param endpoint the endpoint the container can use to instantiate the
+	 *            BPEL Process
+	 * @param portType the portType of the process
+	 * @param csarId the CSAR the plan belongs to
+	 * @param planId the id of the plan
+	 * @param planRef the reference of the plan
+	 * @return true if the endpoint was stored, else false
+	 */
+	private boolean storeEndpoint(URI endpoint, QName portType, CSARID csarId, QName planId, PlanModelReference planRef) {
+		// save endpoint
+		WSDLEndpoint wsdlEndpoint = new WSDLEndpoint(endpoint, portType, csarId, planId, null, null);
+		
+		if (this.endpointService != null) {
+			BpsPlanEnginePlugin.LOG.debug("Store new endpoint!");
+			this.endpointService.storeWSDLEndpoint(wsdlEndpoint);
+			return true;
+		} else {
+			BpsPlanEnginePlugin.LOG.warn("Couldn't store endpoint {} for plan {}, cause endpoint service is not available", endpoint.toString(), planRef.getReference());
 			return false;
 		}
-		return true;
+	}
+	
+	/**
+	 * Stores the fingerprint of a deployed plan in the Deployment Tracker if it
+	 * is available
+	 * 
+	 * @param csarId the CSAR the plan belongs to
+	 * @param planRef the reference of the plan
+	 * @param fingerprint the fingerprint of the deployed package
+	 */
+	private void trackFingerprint(CSARID csarId, PlanModelReference planRef, String fingerprint) {
+		ICoreDeploymentTrackerService deploymentTrackerService = this.deploymentTrackerService;
+		
+		if (deploymentTrackerService != null) {
+			deploymentTrackerService.storePlanFingerprint(csarId, planRef.getReference(), fingerprint);
+		}
+	}
+	
+	/**
+	 * Updates the endpoints inside the WSDL files and the BPEL4RESTLight
+	 * elements of the given plan. The changed files are replaced inside the
+	 * plan.
+	 * 
+	 * @param planArchive the plan to update
+	 * @param planRef the reference of the plan
+	 * @param csarId the CSAR the plan belongs to
+	 * @return the portType of the process, null if it couldn't be determined
+	 */
+	private QName updatePlan(PlanArchive planArchive, PlanModelReference planRef, CSARID csarId) {
+		QName portType = null;
+		
+		// changing endpoints in WSDLs
+		ODEEndpointUpdater odeUpdater;
+		try {
+			odeUpdater = new ODEEndpointUpdater();
+			portType = odeUpdater.getPortType(planArchive);
+			if (!odeUpdater.changeEndpoints(planArchive, csarId)) {
+				BpsPlanEnginePlugin.LOG.error("Not all endpoints used by the plan {} have been changed", planRef.getReference());
+			}
+		} catch (WSDLException e) {
+			BpsPlanEnginePlugin.LOG.error("Couldn't load ODEEndpointUpdater", e);
+		}
+		
+		// update the bpel and bpel4restlight elements (ex.: GET, PUT,..)
+		BPELRESTLightUpdater bpelRestUpdater;
+		try {
+			bpelRestUpdater = new BPELRESTLightUpdater();
+			if (!bpelRestUpdater.changeEndpoints(planArchive, csarId)) {
+				// we don't abort deployment here
+				BpsPlanEnginePlugin.LOG.warn("Could'nt change all endpoints inside BPEL4RESTLight Elements in the given process {}", planRef.getReference());
+			}
+		} catch (TransformerConfigurationException e) {
+			BpsPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
+		} catch (ParserConfigurationException e) {
+			BpsPlanEnginePlugin.LOG.error("Couldn't load BPELRESTLightUpdater", e);
+		} catch (SAXException e) {
+			BpsPlanEnginePlugin.LOG.error("ParseError: Couldn't parse .bpel file", e);
+		} catch (IOException e) {
+			BpsPlanEnginePlugin.LOG.error("IOError: Couldn't access .bpel file", e);
+		}
+		
+		return portType;
+	}
+	
+	/**
+	 * Deletes the temporary copy of a plan and its directory
+	 * 
+	 * @param tempPlan the temporary copy of the plan
+	 * @param tempDir the directory containing it
+	 */
+	private static void deleteTemp(File tempPlan, File tempDir) {
+		if (tempPlan.exists() && !tempPlan.delete()) {
+			BpsPlanEnginePlugin.LOG.warn("Couldn't delete temporary plan {}", tempPlan.getAbsolutePath());
+		}
+		if (!tempDir.delete()) {
+			BpsPlanEnginePlugin.LOG.warn("Couldn't delete temporary directory {}", tempDir.getAbsolutePath());
+		}
 	}
 	
 	/**
@@ -350,9 +538,17 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 				BpsPlanEnginePlugin.LOG.error("An System Exception occured. File could not be fetched.", exc);
 				return false;
 			}
-			BpsConnector connector = new BpsConnector();
+			boolean wasUndeployed;
 			
-			boolean wasUndeployed = connector.undeploy(fetchedPlan.toFile(), Messages.BpsPlanEnginePlugin_bpsAddress, Messages.BpsPlanEnginePlugin_bpsLoginName, Messages.BpsPlanEnginePlugin_bpsLoginPw);
+			if (this.deployedPlans.release(new DeployedPlanRegistry.Reference(csarId, planId))) {
+				BpsConnector connector = new BpsConnector();
+				
+				wasUndeployed = connector.undeploy(fetchedPlan.toFile(), Messages.BpsPlanEnginePlugin_bpsAddress, Messages.BpsPlanEnginePlugin_bpsLoginName, Messages.BpsPlanEnginePlugin_bpsLoginPw);
+			} else {
+				// the process is still used by identical plans of other CSARs
+				BpsPlanEnginePlugin.LOG.info("Process of Plan {} is still used, thus it isn't undeployed", planRef.getReference());
+				wasUndeployed = true;
+			}
 			
 			// remove endpoint from core
 			WSDLEndpoint endpoint = null;
@@ -386,6 +582,28 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The state of the process is queried at the BPS, whose answers are
+	 * cached shortly by the {@link org.opentosca.bpsconnector.BpsConnector}.
+	 * Plans deployed before a restart of the container are not known and thus
+	 * reported as not deployed.
+	 */
+	@Override
+	public boolean isPlanReferenceDeployed(QName planId, PlanModelReference planRef, CSARID csarId) {
+		DeployedPlanRegistry.DeployedPlan deployedPlan = this.deployedPlans.get(new DeployedPlanRegistry.Reference(csarId, planId));
+		
+		if (deployedPlan == null) {
+			BpsPlanEnginePlugin.LOG.debug("Plan {} wasn't deployed by this plugin", planRef.getReference());
+			return false;
+		}
+		
+		String state = new BpsConnector().getProcessState(deployedPlan.getProcessId(), Messages.BpsPlanEnginePlugin_bpsAddress, Messages.BpsPlanEnginePlugin_bpsLoginName, Messages.BpsPlanEnginePlugin_bpsLoginPw);
+		
+		return "ACTIVE".equals(state);
+	}
+	
 	/**
 	 * Bind method for IFileServices
 	 * 
@@ -507,6 +725,32 @@ public class BpsPlanEnginePlugin implements IPlanEnginePlanRefPluginService {
 		BpsPlanEnginePlugin.LOG.debug("Unregistered IToscaEngineService {}", endpointService.toString());
 	}
 	
+	/**
+	 * Bind method for ICoreDeploymentTrackerService
+	 * 
+	 * @param deploymentTrackerService the ICoreDeploymentTrackerService to
+	 *            bind
+	 */
+	public void registerDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (deploymentTrackerService != null) {
+			this.deploymentTrackerService = deploymentTrackerService;
+			BpsPlanEnginePlugin.LOG.debug("Registered DeploymentTrackerService {}", deploymentTrackerService.toString());
+		}
+	}
+	
+	/**
+	 * Unbind method for ICoreDeploymentTrackerService
+	 * 
+	 * @param deploymentTrackerService the ICoreDeploymentTrackerService to
+	 *            unbind
+	 */
+	protected void unregisterDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (this.deploymentTrackerService == deploymentTrackerService) {
+			this.deploymentTrackerService = null;
+		}
+		BpsPlanEnginePlugin.LOG.debug("Unregistered DeploymentTrackerService {}", deploymentTrackerService.toString());
+	}
+	
 	@Override
 	public String toString() {
 		return Messages.BpsPlanEnginePlugin_description;
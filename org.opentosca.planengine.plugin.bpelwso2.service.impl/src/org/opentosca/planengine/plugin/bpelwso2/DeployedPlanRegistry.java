@@ -0,0 +1,195 @@
+package org.opentosca.planengine.plugin.bpelwso2;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.opentosca.core.model.csar.id.CSARID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the processes deployed on the WSO2 BPS by the fingerprint of
+ * their packages.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A plan whose updated package is identical to the package of an already
+ * deployed process, e.g. the same plan of a CSAR that is uploaded again, is
+ * not deployed again. Instead the process and its endpoint are reused. The
+ * registry counts the plans of all CSARs using a process, thus it is only
+ * undeployed when the last of them is undeployed. As the fingerprint contains
+ * the package name, the process can be undeployed with the package of any of
+ * these plans.<br>
+ * <br>
+ * 
+ * The registry is kept in memory. Processes deployed before a restart of the
+ * container are not known and thus are neither reused nor shared.
+ * 
+ * 
+ */
+public class DeployedPlanRegistry {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(DeployedPlanRegistry.class);
+	
+	private final Map<String, DeployedPlan> byFingerprint = new HashMap<String, DeployedPlan>();
+	private final Map<Reference, DeployedPlan> byReference = new HashMap<Reference, DeployedPlan>();
+	
+	
+	/**
+	 * Adds a plan using the process with the given fingerprint, if there is
+	 * one.
+	 * 
+	 * @param fingerprint of the updated package of the plan.
+	 * @param reference the plan.
+	 * @return the deployed process to reuse or <tt>null</tt> if there is none.
+	 */
+	public synchronized DeployedPlan addReference(String fingerprint, Reference reference) {
+		
+		DeployedPlan deployed = this.byFingerprint.get(fingerprint);
+		
+		if (deployed != null) {
+			deployed.references.add(reference);
+			this.byReference.put(reference, deployed);
+			DeployedPlanRegistry.LOG.debug("Process {} is used by {} plans.", deployed.processId, deployed.references.size());
+		}
+		return deployed;
+	}
+	
+	/**
+	 * Registers a new deployment. If a process with the same fingerprint was
+	 * registered in the meantime, the plan is added to it instead.
+	 * 
+	 * @param fingerprint of the deployed package.
+	 * @param processId of the deployed process.
+	 * @param endpoint of the deployed process.
+	 * @param portType of the deployed process.
+	 * @param reference the plan that was deployed.
+	 */
+	public synchronized void register(String fingerprint, String processId, URI endpoint, QName portType, Reference reference) {
+		
+		if (this.addReference(fingerprint, reference) != null) {
+			return;
+		}
+		
+		DeployedPlan deployed = new DeployedPlan(fingerprint, processId, endpoint, portType);
+		deployed.references.add(reference);
+		
+		this.byFingerprint.put(fingerprint, deployed);
+		this.byReference.put(reference, deployed);
+	}
+	
+	/**
+	 * Returns the process used by a plan.
+	 * 
+	 * @param reference the plan.
+	 * @return the deployed process or <tt>null</tt> if the plan is not
+	 *         registered.
+	 */
+	public synchronized DeployedPlan get(Reference reference) {
+		return this.byReference.get(reference);
+	}
+	
+	/**
+	 * Removes a plan that is undeployed.
+	 * 
+	 * @param reference the plan.
+	 * @return <tt>true</tt> if the process has to be undeployed, i.e. the plan
+	 *         was the last one using it or the plan is not registered,
+	 *         otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean release(Reference reference) {
+		
+		DeployedPlan deployed = this.byReference.remove(reference);
+		
+		if (deployed == null) {
+			return true;
+		}
+		
+		deployed.references.remove(reference);
+		
+		if (!deployed.references.isEmpty()) {
+			DeployedPlanRegistry.LOG.debug("Process {} is still used by {} plans.", deployed.processId, deployed.references.size());
+			return false;
+		}
+		
+		this.byFingerprint.remove(deployed.fingerprint);
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Plan of a CSAR using a process.
+	 */
+	public static class Reference {
+		
+		private final CSARID csarID;
+		private final QName planID;
+		
+		
+		public Reference(CSARID csarID, QName planID) {
+			this.csarID = csarID;
+			this.planID = planID;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			
+			if (!(obj instanceof Reference)) {
+				return false;
+			}
+			
+			Reference other = (Reference) obj;
+			return this.csarID.equals(other.csarID) && this.planID.equals(other.planID);
+		}
+		
+		@Override
+		public int hashCode() {
+			return (31 * this.csarID.hashCode()) + this.planID.hashCode();
+		}
+		
+		@Override
+		public String toString() {
+			return this.csarID + "/" + this.planID;
+		}
+	}
+	
+	/**
+	 * Process deployed on the WSO2 BPS.
+	 */
+	public static class DeployedPlan {
+		
+		private final String fingerprint;
+		private final String processId;
+		private final URI endpoint;
+		private final QName portType;
+		private final Set<Reference> references = new HashSet<Reference>();
+		
+		
+		DeployedPlan(String fingerprint, String processId, URI endpoint, QName portType) {
+			this.fingerprint = fingerprint;
+			this.processId = processId;
+			this.endpoint = endpoint;
+			this.portType = portType;
+		}
+		
+		public String getProcessId() {
+			return this.processId;
+		}
+		
+		public URI getEndpoint() {
+			return this.endpoint;
+		}
+		
+		public QName getPortType() {
+			return this.portType;
+		}
+	}
+}
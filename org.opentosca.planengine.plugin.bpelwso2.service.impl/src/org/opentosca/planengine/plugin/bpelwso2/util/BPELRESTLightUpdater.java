@@ -1,7 +1,8 @@
 package org.opentosca.planengine.plugin.bpelwso2.util;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashSet;
@@ -50,6 +51,11 @@ import org.xml.sax.SAXException;
  * This class maps BPEL4RESTLight XML elements into BPELRESTLightElement objects
  * and operates on them for the updates.
  * </p>
+ * <p>
+ * The factories of the parsers are expensive to look up, thus they are shared
+ * by all instances. As they aren't thread-safe, they are only used while an
+ * instance is created.
+ * </p>
  * 
  * <p>
  * Rules for update: <br>
@@ -78,10 +84,11 @@ public class BPELRESTLightUpdater {
 	
 	private static ICoreEndpointService endpointService;
 	private static ICoreEndpointService oldEndpointService;
+	private static DocumentBuilderFactory domFactory = null;
+	private static XPathFactory factory = null;
+	private static TransformerFactory transformerFactory = null;
 	private final DocumentBuilder builder;
-	private final DocumentBuilderFactory domFactory;
-	private final XPathFactory factory;
-	private final TransformerFactory transformerFactory;
+	private final XPath xpath;
 	private final Transformer transformer;
 	private CSARID csarId;
 	
@@ -90,12 +97,17 @@ public class BPELRESTLightUpdater {
 	
 	public BPELRESTLightUpdater() throws ParserConfigurationException, TransformerConfigurationException {
 		// initialize parsers
-		this.domFactory = DocumentBuilderFactory.newInstance();
-		this.domFactory.setNamespaceAware(true);
-		this.builder = this.domFactory.newDocumentBuilder();
-		this.factory = XPathFactory.newInstance();
-		this.transformerFactory = TransformerFactory.newInstance();
-		this.transformer = this.transformerFactory.newTransformer();
+		synchronized (BPELRESTLightUpdater.class) {
+			if (BPELRESTLightUpdater.domFactory == null) {
+				BPELRESTLightUpdater.domFactory = DocumentBuilderFactory.newInstance();
+				BPELRESTLightUpdater.domFactory.setNamespaceAware(true);
+				BPELRESTLightUpdater.factory = XPathFactory.newInstance();
+				BPELRESTLightUpdater.transformerFactory = TransformerFactory.newInstance();
+			}
+			this.builder = BPELRESTLightUpdater.domFactory.newDocumentBuilder();
+			this.xpath = BPELRESTLightUpdater.factory.newXPath();
+			this.transformer = BPELRESTLightUpdater.transformerFactory.newTransformer();
+		}
 	}
 	
 	/**
@@ -111,24 +123,33 @@ public class BPELRESTLightUpdater {
 	 * </p>
 	 * 
 	 * 
-	 * @param processFiles a list of files containing the complete content of a
-	 *            Apache ODE WS-BPEL 2.0 zip file
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file, the changed BPEL file
+	 *            is replaced inside it
 	 * @param csarId a identifier of the CSAR this BPEL file belongs to
 	 * @return true only if some change was made
 	 * @throws IOException is thrown when access of BPEL file failed
 	 * @throws SAXException is thrown when parsing of BPEL file failed
 	 */
-	public boolean changeEndpoints(List<File> processFiles, CSARID csarId) throws IOException, SAXException {
+	public boolean changeEndpoints(PlanArchive plan, CSARID csarId) throws IOException, SAXException {
 		this.csarId = csarId;
-		File bpelFile = this.getBPELFile(processFiles);
+		List<String> bpelFiles = plan.findEntries("bpel");
 		
-		if (bpelFile == null) {
+		if (bpelFiles.isEmpty()) {
 			BPELRESTLightUpdater.LOG.debug("No bpel file found");
 			return false;
 		}
 		
-		BPELRESTLightUpdater.LOG.debug("Parsing bpel file {} ", bpelFile.getAbsoluteFile());
-		Document document = this.builder.parse(bpelFile);
+		// the first bpel file is the process
+		String bpelFile = bpelFiles.get(0);
+		
+		BPELRESTLightUpdater.LOG.debug("Parsing bpel file {} ", bpelFile);
+		Document document;
+		InputStream in = plan.getInputStream(bpelFile);
+		try {
+			document = this.builder.parse(in);
+		} finally {
+			in.close();
+		}
 		
 		// get the elements
 		List<BPELRESTLightElement> elements = this.getAllBPELRESTLightElements(document);
@@ -148,10 +169,12 @@ public class BPELRESTLightUpdater {
 		
 		if (notChanged.isEmpty()) {
 			DOMSource source = new DOMSource(document);
-			StreamResult result = new StreamResult(bpelFile);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			StreamResult result = new StreamResult(out);
 			boolean wroteFile = false;
 			try {
 				this.transformer.transform(source, result);
+				plan.replace(bpelFile, out.toByteArray());
 				wroteFile = true;
 			} catch (TransformerException e) {
 				wroteFile = false;
@@ -218,11 +241,10 @@ public class BPELRESTLightUpdater {
 		List<BPELRESTLightElement> elements = new LinkedList<BPELRESTLightElement>();
 		NodeList result = null;
 		
-		XPath xpath = this.factory.newXPath();
 		XPathExpression expr;
 		try {
 			BPELRESTLightUpdater.LOG.debug("Querying document with {} ", xpathExp);
-			expr = xpath.compile(xpathExp);
+			expr = this.xpath.compile(xpathExp);
 			result = (NodeList) expr.evaluate(document, XPathConstants.NODESET);
 		} catch (XPathExpressionException e) {
 			BPELRESTLightUpdater.LOG.error("Internal Error: XPath expression wasn't valid", e);
@@ -327,24 +349,6 @@ public class BPELRESTLightUpdater {
 		return temp;
 	}
 	
-	/**
-	 * Looks for the first BPEL file it finds in the given list
-	 * 
-	 * @param files a list of files
-	 * @return file which ends with .bpel, else null
-	 */
-	private File getBPELFile(List<File> files) {
-		for (File file : files) {
-			int pos = file.getName().lastIndexOf('.');
-			if ((pos > 0) && (pos < (file.getName().length() - 1))) {
-				if (file.getName().substring(pos + 1).equals("bpel")) {
-					return file;
-				}
-			}
-		}
-		return null;
-	}
-	
 	/**
 	 * Bind method for EndpointService
 	 * 
@@ -1,12 +1,17 @@
 package org.opentosca.planengine.plugin.bpelwso2.util;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.wsdl.Definition;
 import javax.wsdl.Port;
@@ -17,6 +22,7 @@ import javax.wsdl.extensions.ExtensibilityElement;
 import javax.wsdl.extensions.http.HTTPAddress;
 import javax.wsdl.extensions.soap.SOAPAddress;
 import javax.wsdl.factory.WSDLFactory;
+import javax.wsdl.xml.WSDLLocator;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -30,6 +36,7 @@ import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
 
 import com.ibm.wsdl.extensions.http.HTTPConstants;
 import com.ibm.wsdl.extensions.soap.SOAPConstants;
@@ -40,9 +47,16 @@ import com.ibm.wsdl.extensions.soap.SOAPConstants;
  * which are referenced inside a Apache ODE deloy.xml file.
  * </p>
  * <p>
- * The update is done on a list of files which must include one deploy.xml file
- * (schema: http://svn.apache.org/viewvc/ode/trunk/bpel-schemas/src/main/xsd/)
- * and wsdl files which are referenced inside the deploy.xml.
+ * The update is done on a {@link PlanArchive} which must include one
+ * deploy.xml file (schema:
+ * http://svn.apache.org/viewvc/ode/trunk/bpel-schemas/src/main/xsd/) and wsdl
+ * files which are referenced inside the deploy.xml. Each WSDL file is parsed
+ * once, the changed ones replace the original files in the archive. Imports of
+ * the WSDL files are resolved inside the archive.
+ * </p>
+ * <p>
+ * The JAXBContext for the deploy.xml and the WSDLFactory are expensive to
+ * create and thread-safe, thus they are shared by all instances.
  * </p>
  * <p>
  * This class uses the ICoreEndpointService to get the up-to-date endpoints from
@@ -60,6 +74,9 @@ import com.ibm.wsdl.extensions.soap.SOAPConstants;
 public class ODEEndpointUpdater {
 	
 	final private static Logger LOG = LoggerFactory.getLogger(ODEEndpointUpdater.class);
+	private static final String DEPLOY_XML_PACKAGE = "org.apache.ode.schemas.dd._2007._03";
+	private static JAXBContext deployXmlContext = null;
+	private static WSDLFactory sharedFactory = null;
 	private final WSDLFactory factory;
 	private CSARID csarId;
 	// the services are static (bind/unbind too), if not instantiation of
@@ -76,26 +93,53 @@ public class ODEEndpointUpdater {
 	 * @throws WSDLException if no instance of WSDLFactory was found
 	 */
 	public ODEEndpointUpdater() throws WSDLException {
-		this.factory = WSDLFactory.newInstance();
+		this.factory = ODEEndpointUpdater.getWSDLFactory();
+	}
+	
+	/**
+	 * Returns the shared WSDLFactory and creates it if needed
+	 * 
+	 * @return the WSDLFactory
+	 * @throws WSDLException if no instance of WSDLFactory was found
+	 */
+	private static synchronized WSDLFactory getWSDLFactory() throws WSDLException {
+		if (ODEEndpointUpdater.sharedFactory == null) {
+			ODEEndpointUpdater.sharedFactory = WSDLFactory.newInstance();
+		}
+		return ODEEndpointUpdater.sharedFactory;
+	}
+	
+	/**
+	 * Returns the shared JAXBContext of the deploy.xml schema and creates it if
+	 * needed
+	 * 
+	 * @return the JAXBContext
+	 * @throws JAXBException if the JAXBContext couldn't be created
+	 */
+	private static synchronized JAXBContext getDeployXmlContext() throws JAXBException {
+		if (ODEEndpointUpdater.deployXmlContext == null) {
+			ODEEndpointUpdater.deployXmlContext = JAXBContext.newInstance(ODEEndpointUpdater.DEPLOY_XML_PACKAGE, ODEEndpointUpdater.class.getClassLoader());
+		}
+		return ODEEndpointUpdater.deployXmlContext;
 	}
 	
 	/**
 	 * Changes the endpoints of all WSDL files used by the given WS-BPEL 2.0
 	 * Process
 	 * 
-	 * @param processFiles a list of files containing the complete content of a
-	 *            Apache ODE WS-BPEL 2.0 zip file
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file, changed WSDL files are
+	 *            replaced inside it
 	 * @param csarId the identifier of the CSAR where this process/plan is
 	 *            declared
 	 * @return true if every WSDL file used by the process was updated (if
 	 *         needed) with endpoints from the openTOSCA Core, else false
 	 */
-	public boolean changeEndpoints(List<File> processFiles, CSARID csarId) {
+	public boolean changeEndpoints(PlanArchive plan, CSARID csarId) {
 		this.csarId = csarId;
-		Map<QName, List<File>> unchangedFiles = null;
+		Map<QName, List<String>> unchangedFiles = null;
 		
 		try {
-			List<QName> portsInDeployXml = this.getDeployXMLPorts(this.getDeployXMl(processFiles));
+			List<QName> portsInDeployXml = this.getDeployXMLPorts(this.getDeployXML(plan));
 			// check with modelrepo if any of the qnames have to be thrown out
 			// cause they aren't referenced in the CSAR/TOSCA
 			
@@ -122,12 +166,15 @@ public class ODEEndpointUpdater {
 				ODEEndpointUpdater.LOG.debug("No PortTypes to change were found: No portType in plan is referenced in ServiceTemplate");
 				return true;
 			}
-			Map<QName, List<File>> changeMap = this.getWSDLtoChange(portsInDeployXml, this.getAllWSDLFiles(processFiles));
-			unchangedFiles = this.updateWSDLAddresses(changeMap);
+			Map<String, Definition> wsdlDefs = this.readAllWSDLFiles(plan);
+			Map<QName, List<String>> changeMap = this.getWSDLtoChange(portsInDeployXml, wsdlDefs);
+			unchangedFiles = this.updateWSDLAddresses(changeMap, wsdlDefs, plan);
 		} catch (JAXBException e) {
 			ODEEndpointUpdater.LOG.error("Deploy.xml file in process isn't valid", e);
 		} catch (WSDLException e) {
 			ODEEndpointUpdater.LOG.error("Couldn't access wsdl files of process", e);
+		} catch (IOException e) {
+			ODEEndpointUpdater.LOG.error("Couldn't access files of process", e);
 		}
 		
 		if (unchangedFiles == null) {
@@ -135,8 +182,8 @@ public class ODEEndpointUpdater {
 		} else {
 			for (QName portType : unchangedFiles.keySet()) {
 				ODEEndpointUpdater.LOG.warn("Following files weren't changed for PortType {}", portType.toString());
-				for (File file : unchangedFiles.get(portType)) {
-					ODEEndpointUpdater.LOG.warn("WSDL file {} which contained portType {} and could'nt be updated", file.toPath().toString(), portType.toString());
+				for (String file : unchangedFiles.get(portType)) {
+					ODEEndpointUpdater.LOG.warn("WSDL file {} which contained portType {} and could'nt be updated", file, portType.toString());
 				}
 			}
 		}
@@ -146,39 +193,42 @@ public class ODEEndpointUpdater {
 	}
 	
 	/**
-	 * Returns a file named deploy.xml,if it is in the list of files
+	 * Parses the deploy.xml file of the given process
 	 * 
-	 * @param files a list of files
-	 * @return a file object of a deploy.xml (can be invalid) file if it was
-	 *         found in the given list, else null
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file
+	 * @return the content of the deploy.xml file
+	 * @throws JAXBException if the JAXB parser couldn't work properly
+	 * @throws IOException if the process contains no deploy.xml file or it
+	 *             couldn't be read
 	 */
-	private File getDeployXMl(List<File> files) {
-		for (File file : files) {
-			if (file.getName().equals("deploy.xml")) {
-				ODEEndpointUpdater.LOG.debug("Found deploy.xml file");
-				return file;
-			}
+	private TDeployment getDeployXML(PlanArchive plan) throws JAXBException, IOException {
+		String deployXML = plan.findEntry("deploy.xml");
+		if (deployXML == null) {
+			ODEEndpointUpdater.LOG.debug("Didn't find deploy.xml file");
+			throw new IOException("Process doesn't contain a deploy.xml file");
+		}
+		ODEEndpointUpdater.LOG.debug("Found deploy.xml file");
+		// http://svn.apache.org/viewvc/ode/trunk/bpel-schemas/src/main/xsd/
+		// grabbed that and using jaxb
+		Unmarshaller unmarshaller = ODEEndpointUpdater.getDeployXmlContext().createUnmarshaller();
+		InputStream in = plan.getInputStream(deployXML);
+		try {
+			return unmarshaller.unmarshal(new StreamSource(in), TDeployment.class).getValue();
+		} finally {
+			in.close();
 		}
-		ODEEndpointUpdater.LOG.debug("Didn't find deploy.xml file");
-		return null;
 	}
 	
 	/**
 	 * Returns a list of QName's which are referenced in the ODE deploy.xml
 	 * File.<br>
 	 * 
-	 * @param deployXML a file object of a valid deploy.xml File
+	 * @param deploy the content of a valid deploy.xml File
 	 * @return a list of QNames which represent the PortTypes used by the BPEL
 	 *         process to invoke operations
-	 * @throws JAXBException if the JAXB parser couldn't work properly
 	 */
-	private List<QName> getDeployXMLPorts(File deployXML) throws JAXBException {
-		// http://svn.apache.org/viewvc/ode/trunk/bpel-schemas/src/main/xsd/
-		// grabbed that and using jaxb
+	private List<QName> getDeployXMLPorts(TDeployment deploy) {
 		List<QName> qnames = new LinkedList<QName>();
-		JAXBContext context = JAXBContext.newInstance("org.apache.ode.schemas.dd._2007._03", this.getClass().getClassLoader());
-		Unmarshaller unmarshaller = context.createUnmarshaller();
-		TDeployment deploy = unmarshaller.unmarshal(new StreamSource(deployXML), TDeployment.class).getValue();
 		for (org.apache.ode.schemas.dd._2007._03.TDeployment.Process process : deploy.getProcess()) {
 			for (TInvoke invoke : process.getInvoke()) {
 				QName serviceName = invoke.getService().getName();
@@ -192,57 +242,47 @@ public class ODEEndpointUpdater {
 	}
 	
 	/**
-	 * Returns all WSDL files of the given List
+	 * Parses all WSDL files of the given process
 	 * 
-	 * @param files a list of files
-	 * @return a list of WSDL files if there are any
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file
+	 * @return a map of the names of the WSDL files to their WSDL Definitions
+	 * @throws WSDLException if the WSDL parser couldn't parse a file
 	 */
-	private List<File> getAllWSDLFiles(List<File> files) {
-		List<File> tempFiles = new LinkedList<File>();
-		for (File file : files) {
-			if (file.isDirectory()) {
-				// recursive call to allow searching in directories
-				ODEEndpointUpdater.LOG.debug("Found directory inside bpel archive: {}", file.getAbsolutePath());
-				File[] subFiles = file.listFiles();
-				// this is just here to transform the array to a list
-				List<File> temp = new LinkedList<File>();
-				for (int i = 0; i < subFiles.length; i++) {
-					temp.add(subFiles[i]);
-				}
-				tempFiles.addAll(this.getAllWSDLFiles(temp));
-			}
-			int pos = file.getName().lastIndexOf('.');
-			if ((pos > 0) && (pos < (file.getName().length() - 1))) {
-				if (file.getName().substring(pos + 1).equals("wsdl")) {
-					ODEEndpointUpdater.LOG.debug("Adding .wsdl file {} ", file.getName());
-					tempFiles.add(file);
-				}
+	private Map<String, Definition> readAllWSDLFiles(PlanArchive plan) throws WSDLException {
+		Map<String, Definition> wsdlDefs = new LinkedHashMap<String, Definition>();
+		for (String wsdlFile : plan.findEntries("wsdl")) {
+			ODEEndpointUpdater.LOG.debug("Adding .wsdl file {} ", wsdlFile);
+			ArchiveLocator locator = new ArchiveLocator(plan, wsdlFile);
+			try {
+				wsdlDefs.put(wsdlFile, this.factory.newWSDLReader().readWSDL(locator));
+			} finally {
+				locator.close();
 			}
 		}
-		return tempFiles;
+		return wsdlDefs;
 	}
 	
 	/**
 	 * Returns a map with QNames as keys and list of files as values, where the
 	 * QNames are taken out of the given list of portTypes and the files from
-	 * the other given List
+	 * the other given Map
 	 * 
 	 * @param ports a list of portType QName's
-	 * @param wsdlFiles a list of wsdl Files
-	 * @return a Map<QName, List<File>> containing information which porttype is
-	 *         in which wsdl file
-	 * @throws WSDLException
+	 * @param wsdlDefs a map of the names of the wsdl files to their WSDL
+	 *            Definitions
+	 * @return a Map<QName, List<String>> containing information which porttype
+	 *         is in which wsdl file
 	 */
-	private Map<QName, List<File>> getWSDLtoChange(List<QName> ports, List<File> wsdlFiles) throws WSDLException {
-		Map<QName, List<File>> portTypeToFileMap = new HashMap<QName, List<File>>();
+	private Map<QName, List<String>> getWSDLtoChange(List<QName> ports, Map<String, Definition> wsdlDefs) {
+		Map<QName, List<String>> portTypeToFileMap = new HashMap<QName, List<String>>();
 		// we check if we have any porttypes which isn't in the endpoint db
 		for (QName port : ports) {
 			ODEEndpointUpdater.LOG.debug("Searching through wsdls for porttype: {}", port.toString());
-			List<File> filesContainingPortType = new LinkedList<File>();
+			List<String> filesContainingPortType = new LinkedList<String>();
 			QName portType = null;
-			for (File wsdlFile : wsdlFiles) {
-				ODEEndpointUpdater.LOG.debug("Checking if wsdl file {} contains portType {}", wsdlFile.getAbsolutePath(), port.toString());
-				Definition wsdlDef = this.factory.newWSDLReader().readWSDL(wsdlFile.getAbsolutePath());
+			for (String wsdlFile : wsdlDefs.keySet()) {
+				ODEEndpointUpdater.LOG.debug("Checking if wsdl file {} contains portType {}", wsdlFile, port.toString());
+				Definition wsdlDef = wsdlDefs.get(wsdlFile);
 				// check if port is in wsdl file
 				if (!this.checkIfPortIsInWsdlDef(port, wsdlDef)) {
 					continue;
@@ -319,22 +359,29 @@ public class ODEEndpointUpdater {
 	}
 	
 	/**
-	 * Updates the addresses in the given WSDL files
+	 * Updates the addresses in the given WSDL files and replaces the changed
+	 * files in the process
 	 * 
-	 * @param map a map containing <QName,List<File>> pairs. A QName here
+	 * @param map a map containing <QName,List<String>> pairs. A QName here
 	 *            represents a portType that is inside the files
-	 * @return returns a map <QName,List<File>> containing all the files which
+	 * @param wsdlDefs a map of the names of the wsdl files to their WSDL
+	 *            Definitions
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file
+	 * @return returns a map <QName,List<String>> containing all the files which
 	 *         weren't changed
-	 * @throws WSDLException
+	 * @throws WSDLException if a WSDL Definition couldn't be written
 	 */
-	private Map<QName, List<File>> updateWSDLAddresses(Map<QName, List<File>> map) throws WSDLException {
-		Map<QName, List<File>> notChanged = new HashMap<QName, List<File>>();
+	private Map<QName, List<String>> updateWSDLAddresses(Map<QName, List<String>> map, Map<String, Definition> wsdlDefs, PlanArchive plan) throws WSDLException {
+		Map<QName, List<String>> notChanged = new HashMap<QName, List<String>>();
+		Set<String> changedWSDLs = new LinkedHashSet<String>();
 		for (QName portType : map.keySet()) {
-			List<File> notUpdatedWSDLs = new LinkedList<File>();
+			List<String> notUpdatedWSDLs = new LinkedList<String>();
 			// update wsdl files associated with the given porttype
-			for (File wsdlFile : map.get(portType)) {
-				if (!this.updateWSDLAddresses(portType, wsdlFile)) {
-					ODEEndpointUpdater.LOG.error("Unable to update '{}' for porttype '{}'.", wsdlFile.toString(), portType.toString());
+			for (String wsdlFile : map.get(portType)) {
+				if (this.updateWSDLAddresses(portType, wsdlFile, wsdlDefs.get(wsdlFile))) {
+					changedWSDLs.add(wsdlFile);
+				} else {
+					ODEEndpointUpdater.LOG.error("Unable to update '{}' for porttype '{}'.", wsdlFile, portType.toString());
 					notUpdatedWSDLs.add(wsdlFile);
 				}
 			}
@@ -344,20 +391,27 @@ public class ODEEndpointUpdater {
 				notChanged.put(portType, notUpdatedWSDLs);
 			}
 		}
+		// if we changed something, rewrite the the wsdl, once for all
+		// porttypes inside it
+		for (String wsdlFile : changedWSDLs) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			this.factory.newWSDLWriter().writeWSDL(wsdlDefs.get(wsdlFile), out);
+			plan.replace(wsdlFile, out.toByteArray());
+		}
 		return notChanged;
 	}
 	
 	/**
-	 * Updates the addresses inside the given WSDL file
+	 * Updates the addresses inside the given WSDL Definition
 	 * 
 	 * @param portType a QName which represents a PortType
-	 * @param wsdl a File which is from type .wsdl
-	 * @throws WSDLException if the WSDL parser couldn't parse
+	 * @param wsdl the name of the .wsdl file
+	 * @param wsdlDef the WSDL Definition of the file
+	 * @return true if an address was changed, else false
 	 */
-	private boolean updateWSDLAddresses(QName portType, File wsdl) throws WSDLException {
+	private boolean updateWSDLAddresses(QName portType, String wsdl, Definition wsdlDef) {
 		boolean changed = false;
-		ODEEndpointUpdater.LOG.debug("Trying to change WSDL file {} ", wsdl.getName());
-		Definition wsdlDef = this.factory.newWSDLReader().readWSDL(wsdl.getAbsolutePath());
+		ODEEndpointUpdater.LOG.debug("Trying to change WSDL file {} ", wsdl);
 		for (Object o : wsdlDef.getAllServices().values()) {
 			// get the services
 			Service service = (Service) o;
@@ -369,7 +423,7 @@ public class ODEEndpointUpdater {
 					// get the extensible elements out of wsdl and check them
 					// with endpointservice
 					
-					ODEEndpointUpdater.LOG.debug("Found matching porttype for WSDL file {} ", wsdl.getName());
+					ODEEndpointUpdater.LOG.debug("Found matching porttype for WSDL file {} ", wsdl);
 					if (this.changePortAddress(port)) {
 						// changing -> success
 						changed = true;
@@ -377,15 +431,6 @@ public class ODEEndpointUpdater {
 				}
 			}
 		}
-		try {
-			// if we changed something, rewrite the the wsdl
-			if (changed) {
-				this.factory.newWSDLWriter().writeWSDL(wsdlDef, new FileOutputStream(wsdl));
-			}
-		} catch (FileNotFoundException e) {
-			ODEEndpointUpdater.LOG.debug("Couldn't locate wsdl file", e);
-			changed = false;
-		}
 		return changed;
 	}
 	
@@ -514,27 +559,119 @@ public class ODEEndpointUpdater {
 	}
 	
 	/**
-	 * Returns PortType of the bpel process composed of the given files list
+	 * Returns PortType of the given bpel process
 	 * 
-	 * @param planContents List of Files which make up the BPEL Process
+	 * @param plan the Apache ODE WS-BPEL 2.0 zip file
 	 * @return QName which should be exactly the PortType of the given BPEL
 	 *         Process
 	 */
-	public QName getPortType(List<File> planContents) {
+	public QName getPortType(PlanArchive plan) {
 		try {
-			File deployXML = this.getDeployXMl(planContents);
-			JAXBContext context = JAXBContext.newInstance("org.apache.ode.schemas.dd._2007._03", this.getClass().getClassLoader());
-			Unmarshaller unmarshaller = context.createUnmarshaller();
-			TDeployment deploy = unmarshaller.unmarshal(new StreamSource(deployXML), TDeployment.class).getValue();
+			TDeployment deploy = this.getDeployXML(plan);
 			for (TDeployment.Process process : deploy.getProcess()) {
 				return process.getName();
 			}
 		} catch (JAXBException e) {
-			e.printStackTrace();
+			ODEEndpointUpdater.LOG.error("Deploy.xml file in process isn't valid", e);
+		} catch (IOException e) {
+			ODEEndpointUpdater.LOG.error("Couldn't access deploy.xml file of process", e);
 		}
 		return null;
 	}
 	
+	
+	/**
+	 * Resolves a WSDL file and its imports inside a {@link PlanArchive}.
+	 * Imports with an absolute location are read from there.
+	 */
+	private static class ArchiveLocator implements WSDLLocator {
+		
+		private static final String SCHEME = "plan";
+		
+		private final PlanArchive plan;
+		private final String baseURI;
+		private final List<InputStream> opened = new LinkedList<InputStream>();
+		private String latestImportURI = null;
+		
+		
+		ArchiveLocator(PlanArchive plan, String entryName) {
+			this.plan = plan;
+			this.baseURI = ArchiveLocator.toURI(entryName).toString();
+		}
+		
+		private static URI toURI(String entryName) {
+			try {
+				return new URI(ArchiveLocator.SCHEME, null, "/" + entryName, null);
+			} catch (URISyntaxException e) {
+				throw new IllegalArgumentException("Entry name " + entryName + " isn't valid", e);
+			}
+		}
+		
+		@Override
+		public InputSource getBaseInputSource() {
+			return this.open(this.baseURI);
+		}
+		
+		@Override
+		public String getBaseURI() {
+			return this.baseURI;
+		}
+		
+		@Override
+		public InputSource getImportInputSource(String parentLocation, String importLocation) {
+			try {
+				this.latestImportURI = new URI(parentLocation).resolve(importLocation).toString();
+			} catch (URISyntaxException e) {
+				ODEEndpointUpdater.LOG.warn("Couldn't resolve import {} of {}", importLocation, parentLocation);
+				return null;
+			} catch (IllegalArgumentException e) {
+				ODEEndpointUpdater.LOG.warn("Couldn't resolve import {} of {}", importLocation, parentLocation);
+				return null;
+			}
+			return this.open(this.latestImportURI);
+		}
+		
+		@Override
+		public String getLatestImportURI() {
+			return this.latestImportURI;
+		}
+		
+		private InputSource open(String location) {
+			URI uri = URI.create(location);
+			if (!ArchiveLocator.SCHEME.equals(uri.getScheme())) {
+				// not inside the archive, the parser reads it itself
+				return new InputSource(location);
+			}
+			String entryName = uri.getPath().substring(1);
+			if (!this.plan.contains(entryName)) {
+				ODEEndpointUpdater.LOG.warn("File {} referenced inside the process doesn't exist", entryName);
+				return null;
+			}
+			try {
+				InputStream in = this.plan.getInputStream(entryName);
+				this.opened.add(in);
+				InputSource source = new InputSource(in);
+				source.setSystemId(location);
+				return source;
+			} catch (IOException e) {
+				ODEEndpointUpdater.LOG.warn("Couldn't read file " + entryName + " of process", e);
+				return null;
+			}
+		}
+		
+		@Override
+		public void close() {
+			for (InputStream in : this.opened) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					ODEEndpointUpdater.LOG.debug("Couldn't close file of process", e);
+				}
+			}
+			this.opened.clear();
+		}
+	}
+	
 	// /**
 	// * Bind method for ModelRepositoryServices
 	// *
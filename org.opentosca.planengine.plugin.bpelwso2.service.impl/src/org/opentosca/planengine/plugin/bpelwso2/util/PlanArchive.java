@@ -0,0 +1,261 @@
+package org.opentosca.planengine.plugin.bpelwso2.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * This class provides access to the entries of a WS-BPEL 2.0 Process zip file
+ * without unpacking it.
+ * </p>
+ * <p>
+ * The updaters read the entries they need, i.e. the deploy.xml, the WSDL and
+ * the BPEL files, and replace the ones they changed. Only the replaced
+ * entries are held in memory. {@link #writeTo(File)} then streams all entries
+ * of the original zip file in one pass to the updated zip file, using the
+ * replaced content where there is one.
+ * </p>
+ * 
+ * <br>
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * 
+ * @see org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater
+ * @see org.opentosca.planengine.plugin.bpelwso2.util.BPELRESTLightUpdater
+ * 
+ */
+public class PlanArchive implements Closeable {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(PlanArchive.class);
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final ZipFile zipFile;
+	private final Map<String, byte[]> replacedEntries = new HashMap<String, byte[]>();
+	
+	
+	/**
+	 * Opens the given zip file
+	 * 
+	 * @param file a WS-BPEL 2.0 Process zip file
+	 * @throws IOException if the file isn't a readable zip file
+	 */
+	public PlanArchive(File file) throws IOException {
+		this.zipFile = new ZipFile(file);
+	}
+	
+	/**
+	 * Returns the names of all files in the zip file in their order inside it
+	 * 
+	 * @return a list of entry names, without directories
+	 */
+	public List<String> getEntryNames() {
+		List<String> names = new LinkedList<String>();
+		Enumeration<? extends ZipEntry> entries = this.zipFile.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory()) {
+				names.add(entry.getName());
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the name of the first file with the given file name, regardless
+	 * of the directory it is in
+	 * 
+	 * @param fileName the name of the file, e.g. deploy.xml
+	 * @return the entry name if the file was found, else null
+	 */
+	public String findEntry(String fileName) {
+		for (String name : this.getEntryNames()) {
+			if (name.equals(fileName) || name.endsWith("/" + fileName)) {
+				return name;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the names of all files with the given extension
+	 * 
+	 * @param extension the file extension without dot, e.g. wsdl
+	 * @return a list of entry names in their order inside the zip file
+	 */
+	public List<String> findEntries(String extension) {
+		List<String> names = new LinkedList<String>();
+		for (String name : this.getEntryNames()) {
+			if (name.endsWith("." + extension)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Checks whether the zip file contains a file with the given name
+	 * 
+	 * @param name the entry name
+	 * @return true if the file exists, else false
+	 */
+	public boolean contains(String name) {
+		ZipEntry entry = this.zipFile.getEntry(name);
+		return (entry != null) && !entry.isDirectory();
+	}
+	
+	/**
+	 * Opens the content of the given file. If the file was replaced, the
+	 * replaced content is returned.
+	 * 
+	 * @param name the entry name
+	 * @return an InputStream which has to be closed by the caller
+	 * @throws IOException if the file doesn't exist or couldn't be read
+	 */
+	public InputStream getInputStream(String name) throws IOException {
+		byte[] replaced = this.replacedEntries.get(name);
+		if (replaced != null) {
+			return new ByteArrayInputStream(replaced);
+		}
+		ZipEntry entry = this.zipFile.getEntry(name);
+		if (entry == null) {
+			throw new IOException("Entry " + name + " doesn't exist in " + this.zipFile.getName());
+		}
+		return this.zipFile.getInputStream(entry);
+	}
+	
+	/**
+	 * Replaces the content of the given file in the updated zip file
+	 * 
+	 * @param name the entry name
+	 * @param content the new content
+	 */
+	public void replace(String name, byte[] content) {
+		PlanArchive.LOG.debug("Replacing entry {} of {}", name, this.zipFile.getName());
+		this.replacedEntries.put(name, content);
+	}
+	
+	/**
+	 * Computes the fingerprint of the updated zip file. It is the SHA-256 hash
+	 * of the package name and of the names and contents of all files, with the
+	 * replaced content where there is one. Thus it doesn't depend on the order,
+	 * compression or timestamps of the entries.
+	 * 
+	 * @param packageName the name the process is deployed with
+	 * @return the fingerprint as hex string or null if SHA-256 isn't available
+	 * @throws IOException if reading the original zip file failed
+	 */
+	public String getFingerprint(String packageName) throws IOException {
+		MessageDigest digest;
+		MessageDigest contentDigest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+			contentDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			PlanArchive.LOG.error("SHA-256 is not available!", e);
+			return null;
+		}
+		
+		PlanArchive.update(digest, packageName);
+		
+		List<String> names = this.getEntryNames();
+		Collections.sort(names);
+		byte[] buffer = new byte[PlanArchive.BUFFER_SIZE];
+		
+		for (String name : names) {
+			PlanArchive.update(digest, name);
+			InputStream in = this.getInputStream(name);
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					contentDigest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			// the hash of the content has a fixed length, so the content
+			// can't be confused with the next name
+			digest.update(contentDigest.digest());
+		}
+		
+		StringBuilder fingerprint = new StringBuilder();
+		for (byte b : digest.digest()) {
+			fingerprint.append(String.format("%02x", b));
+		}
+		return fingerprint.toString();
+	}
+	
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = value.getBytes(PlanArchive.UTF8);
+		// length prefix, so consecutive values can't be confused
+		digest.update((bytes.length + ":").getBytes(PlanArchive.UTF8));
+		digest.update(bytes);
+	}
+	
+	/**
+	 * Writes the updated zip file. The entries which weren't replaced are
+	 * copied from the original zip file.
+	 * 
+	 * @param target the file to write the updated zip file to
+	 * @throws IOException if reading the original or writing the updated zip
+	 *             file failed
+	 */
+	public void writeTo(File target) throws IOException {
+		PlanArchive.LOG.debug("Writing {} with {} replaced entries to {}", new Object[] {this.zipFile.getName(), this.replacedEntries.size(), target.getAbsolutePath()});
+		byte[] buffer = new byte[PlanArchive.BUFFER_SIZE];
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target));
+		try {
+			Enumeration<? extends ZipEntry> entries = this.zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				// sizes and checksum are computed anew, as the content may have
+				// changed
+				ZipEntry copy = new ZipEntry(entry.getName());
+				copy.setTime(entry.getTime());
+				out.putNextEntry(copy);
+				if (!entry.isDirectory()) {
+					InputStream in = this.getInputStream(entry.getName());
+					try {
+						int read;
+						while ((read = in.read(buffer)) != -1) {
+							out.write(buffer, 0, read);
+						}
+					} finally {
+						in.close();
+					}
+				}
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Closes the original zip file
+	 */
+	@Override
+	public void close() throws IOException {
+		this.zipFile.close();
+	}
+}
@@ -15,6 +15,10 @@
  * {@link org.opentosca.planengine.plugin.bpelwso2.util.ODEEndpointUpdater}
  * class</li>
  * </ul>
+ * Both work on a
+ * {@link org.opentosca.planengine.plugin.bpelwso2.util.PlanArchive}, which
+ * reads the files of a process from its zip file and writes the updated zip
+ * file without unpacking it.<br>
  * <br>
  * </p>
  */
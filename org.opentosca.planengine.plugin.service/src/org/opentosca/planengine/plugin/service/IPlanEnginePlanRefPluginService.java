@@ -78,4 +78,22 @@ public interface IPlanEnginePlanRefPluginService extends IPlanEnginePluginServic
 	 */
 	public boolean undeployPlanReference(QName planId, PlanModelReference planRef, CSARID csarId);
 	
+	/**
+	 * <p>
+	 * Checks whether a PlanModelReference is deployed and can be instantiated.
+	 * </p>
+	 * <p>
+	 * The check is meant to be called frequently, thus implementations should
+	 * answer it cheaply, e.g. from cached state of the plan engine.
+	 * </p>
+	 * 
+	 * @param planId the id of the Plan
+	 * @param planRef the PlanReference element under a Plan element of a
+	 *            ServiceTemplate Definition
+	 * @param csarId the identifier of the CSAR the PlanReference element
+	 *            belongs to
+	 * @return true if the plan is deployed and active, else false
+	 */
+	public boolean isPlanReferenceDeployed(QName planId, PlanModelReference planRef, CSARID csarId);
+	
 }
@@ -1,20 +1,36 @@
 package org.opentosca.planengine.service.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
 import org.opentosca.core.capability.service.ICoreCapabilityService;
 import org.opentosca.core.model.capability.provider.ProviderType;
+import org.opentosca.core.deployment.tracker.service.ICoreDeploymentTrackerService;
 import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.core.model.deployment.plan.PlanDeploymentState;
 import org.opentosca.model.tosca.TPlan;
 import org.opentosca.model.tosca.TPlans;
 import org.opentosca.planengine.plugin.service.IPlanEnginePlanModelPluginService;
 import org.opentosca.planengine.plugin.service.IPlanEnginePlanRefPluginService;
+import org.opentosca.planengine.plugin.service.IPlanEnginePluginService;
+import org.opentosca.settings.Settings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,8 +52,19 @@ import org.slf4j.LoggerFactory;
  * <p>
  * 
  * <p>
- * Where the plans are deployed is business of the respective plugins. There
- * should always be only one plugin for plans written in the same language.
+ * Where the plans are deployed is business of the respective plugins. If
+ * several plugins support the same language, e.g. plugins for different
+ * engines executing WS-BPEL 2.0, the plugin listed in the setting
+ * <tt>planenginePreferredPlugins</tt> is used, otherwise the first bound one.
+ * The plugin that deployed a plan is remembered and used for its
+ * undeployment, even if the setting or the bound plugins changed meanwhile.
+ * </p>
+ * 
+ * <p>
+ * The plans of a ServiceTemplate are independent of each other, thus they are
+ * deployed concurrently by a bounded pool of threads (setting
+ * <tt>planengineDeploymentThreads</tt>). The deployment states are stored in
+ * the Deployment Tracker if it is available.
  * </p>
  * 
  * 
@@ -50,12 +77,19 @@ import org.slf4j.LoggerFactory;
  */
 public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEngineService {
 	
-	// stores PlanReferencePlugins
-	private Map<String, IPlanEnginePlanRefPluginService> refPluginsList = Collections.synchronizedMap(new HashMap<String, IPlanEnginePlanRefPluginService>());
+	// stores PlanReferencePlugins, several plugins may support the same
+	// language
+	private List<IPlanEnginePlanRefPluginService> refPluginsList = new CopyOnWriteArrayList<IPlanEnginePlanRefPluginService>();
 	// stores PlanModelPlugins
-	private Map<String, IPlanEnginePlanModelPluginService> modelPluginsList = Collections.synchronizedMap(new HashMap<String, IPlanEnginePlanModelPluginService>());
+	private List<IPlanEnginePlanModelPluginService> modelPluginsList = new CopyOnWriteArrayList<IPlanEnginePlanModelPluginService>();
+	// the plugins that deployed the plans, by CSARID and plan id
+	private Map<String, IPlanEnginePluginService> deployingPlugins = new ConcurrentHashMap<String, IPlanEnginePluginService>();
 	private ICoreCapabilityService capabilityService;
 	private ICoreCapabilityService oldCapabilityService;
+	private volatile ICoreDeploymentTrackerService deploymentTrackerService;
+	
+	// deploys the plans, created at the first deployment
+	private ExecutorService deploymentExecutor = null;
 	
 	final private static Logger LOG = LoggerFactory.getLogger(PlanEngineImpl.class);
 	
@@ -67,6 +101,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 	public boolean deployPlan(TPlan plan, String targetNamespace, CSARID csarId) {
 		boolean planCheck;
 		String language = plan.getPlanLanguage();
+		String planKey = PlanEngineImpl.getPlanKey(plan, targetNamespace, csarId);
 		// XOR between PlanModel and PlanModelReference
 		if (plan.getPlanModel() != null) {
 			PlanEngineImpl.LOG.info("Searching PlanModelPlugin for plan {} ", plan.getId());
@@ -74,6 +109,9 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			if (plugin != null) {
 				PlanEngineImpl.LOG.info("Found PlanModelPlugin for plan {} ", plan.getId());
 				planCheck = plugin.deployPlan(plan.getPlanModel(), csarId);
+				if (planCheck) {
+					this.deployingPlugins.put(planKey, plugin);
+				}
 			} else {
 				PlanEngineImpl.LOG.warn("No PlanModelPlugin available for plan {} ", plan.getId());
 				planCheck = false;
@@ -86,6 +124,9 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			if (plugin != null) {
 				PlanEngineImpl.LOG.info("Found PlanReferencePlugin for plan {} ", plan.getId());
 				planCheck = plugin.deployPlanReference(planId, plan.getPlanModelReference(), csarId);
+				if (planCheck) {
+					this.deployingPlugins.put(planKey, plugin);
+				}
 			} else {
 				PlanEngineImpl.LOG.warn("No PlanReferencePlugin available for plan {} ", plan.getId());
 				planCheck = false;
@@ -102,10 +143,17 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 	public boolean undeployPlan(TPlan plan, String targetNamespace, CSARID csarId) {
 		boolean planCheck;
 		String language = plan.getPlanLanguage();
+		String planKey = PlanEngineImpl.getPlanKey(plan, targetNamespace, csarId);
+		IPlanEnginePluginService deployingPlugin = this.deployingPlugins.get(planKey);
+		
+		if ((deployingPlugin != null) && !this.modelPluginsList.contains(deployingPlugin) && !this.refPluginsList.contains(deployingPlugin)) {
+			PlanEngineImpl.LOG.warn("The plugin {} that deployed the plan {} isn't available anymore", deployingPlugin.toString(), plan.getId());
+			return false;
+		}
 		
 		if (plan.getPlanModel() != null) {
 			PlanEngineImpl.LOG.info("Searching PlanModelPlugin for plan {} ", plan.getId());
-			IPlanEnginePlanModelPluginService plugin = this.getModelPlugin(language);
+			IPlanEnginePlanModelPluginService plugin = deployingPlugin instanceof IPlanEnginePlanModelPluginService ? (IPlanEnginePlanModelPluginService) deployingPlugin : this.getModelPlugin(language);
 			if (plugin != null) {
 				PlanEngineImpl.LOG.info("Found PlanModelPlugin for plan {} ", plan.getId());
 				
@@ -118,7 +166,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			QName planId = new QName(targetNamespace, plan.getId());
 			PlanEngineImpl.LOG.debug("Created new management plan id " + planId);
 			PlanEngineImpl.LOG.info("Searching PlanReferencePlugin for plan {} ", plan.getId());
-			IPlanEnginePlanRefPluginService plugin = this.getRefPlugin(language);
+			IPlanEnginePlanRefPluginService plugin = deployingPlugin instanceof IPlanEnginePlanRefPluginService ? (IPlanEnginePlanRefPluginService) deployingPlugin : this.getRefPlugin(language);
 			if (plugin != null) {
 				PlanEngineImpl.LOG.info("Found PlanReferencePlugin for plan {} ", plan.getId());
 				planCheck = plugin.undeployPlanReference(planId, plan.getPlanModelReference(), csarId);
@@ -128,14 +176,25 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			}
 		}
 		
+		if (planCheck) {
+			this.deployingPlugins.remove(planKey);
+		}
 		return planCheck;
 	}
 	
+	/**
+	 * @return the key of a plan in the map of the plugins that deployed the
+	 *         plans.
+	 */
+	private static String getPlanKey(TPlan plan, String targetNamespace, CSARID csarId) {
+		return csarId.toString() + "/" + new QName(targetNamespace, plan.getId()).toString();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public List<TPlan> deployPlans(TPlans plans, String targetNamespace, CSARID csarId) {
+	public List<TPlan> deployPlans(TPlans plans, String targetNamespace, final CSARID csarId) {
 		List<TPlan> nonDeployedPlans = new LinkedList<TPlan>();
 		List<TPlan> p = plans.getPlan();
 		
@@ -149,13 +208,47 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			return p;
 		}
 		
-		for (TPlan plan : p) {
+		final String planNamespace = namespace;
+		final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		
+		long start = System.currentTimeMillis();
+		
+		for (final TPlan plan : p) {
 			
-			if (!this.deployPlan(plan, namespace, csarId)) {
-				nonDeployedPlans.add(plan);
+			results.add(this.getDeploymentExecutor().submit(new Callable<Boolean>() {
+				
+				@Override
+				public Boolean call() {
+					
+					long planStart = System.currentTimeMillis();
+					boolean deployed = false;
+					
+					PlanEngineImpl.this.track(csarId, plan, PlanDeploymentState.PLAN_DEPLOYING);
+					
+					try {
+						deployed = PlanEngineImpl.this.deployPlan(plan, planNamespace, csarId);
+					} catch (RuntimeException e) {
+						PlanEngineImpl.LOG.error("Deployment of plan " + plan.getId() + " failed!", e);
+					}
+					
+					PlanEngineImpl.this.track(csarId, plan, deployed ? PlanDeploymentState.PLAN_DEPLOYED : PlanDeploymentState.PLAN_DEPLOYMENT_FAILED);
+					timings.put(plan.getId(), System.currentTimeMillis() - planStart);
+					
+					return deployed;
+				}
+			}));
+		}
+		
+		// keeps the order of the plans
+		for (int i = 0; i < p.size(); i++) {
+			if (!Boolean.TRUE.equals(PlanEngineImpl.getUninterruptibly(results.get(i)))) {
+				nonDeployedPlans.add(p.get(i));
 			}
 		}
 		
+		PlanEngineImpl.LOG.info("Deployment of {} plans of CSAR: " + csarId + " took {} ms. Deployment time per plan in ms: {}", p.size(), System.currentTimeMillis() - start, timings);
+		
 		if (nonDeployedPlans.isEmpty()) {
 			PlanEngineImpl.LOG.info("Deployment of plans was successful");
 		} else {
@@ -207,6 +300,79 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 		return nonUndeployedPlans;
 	}
 	
+	/**
+	 * @return the executor deploying the plans.
+	 */
+	private synchronized ExecutorService getDeploymentExecutor() {
+		
+		if (this.deploymentExecutor == null) {
+			
+			int threads = Integer.parseInt(Settings.getSetting("planengineDeploymentThreads"));
+			
+			this.deploymentExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "PlanEngine-Deployment-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.deploymentExecutor;
+	}
+	
+	/**
+	 * Stores the deployment state of a plan in the Deployment Tracker if it is
+	 * available. The plan is identified by its reference inside the CSAR or by
+	 * its id if it has none.
+	 * 
+	 * @param csarId
+	 * @param plan
+	 * @param state
+	 */
+	private void track(CSARID csarId, TPlan plan, PlanDeploymentState state) {
+		
+		ICoreDeploymentTrackerService deploymentTrackerService = this.deploymentTrackerService;
+		
+		if (deploymentTrackerService != null) {
+			String planRelPath = plan.getPlanModelReference() != null ? plan.getPlanModelReference().getReference() : plan.getId();
+			deploymentTrackerService.storePlanDeploymentInfo(csarId, planRelPath, state);
+		}
+	}
+	
+	/**
+	 * Waits for the result of a deployment even if the thread is interrupted.
+	 * 
+	 * @return the result or <tt>null</tt> if it failed or was cancelled.
+	 */
+	private static <T> T getUninterruptibly(Future<T> future) {
+		
+		boolean interrupted = false;
+		
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					PlanEngineImpl.LOG.error("Deployment of a plan failed!", e.getCause());
+					return null;
+				} catch (CancellationException e) {
+					return null;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
 	/**
 	 * Bind method for PlanModelPlugins
 	 * 
@@ -220,7 +386,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			} else {
 				PlanEngineImpl.LOG.debug("CapabilityService unavailable, couldn't store plugin capabilities, will do later");
 			}
-			this.modelPluginsList.put(planModelPlugin.getLanguageUsed(), planModelPlugin);
+			this.modelPluginsList.add(planModelPlugin);
 			PlanEngineImpl.LOG.debug("Registered PlanEnginePlanModel Plugin {}", planModelPlugin.toString());
 		}
 	}
@@ -238,7 +404,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			} else {
 				PlanEngineImpl.LOG.warn("CapabilityService unavailable, couldn't delete plugin capabilities");
 			}
-			this.modelPluginsList.remove(planModelPlugin.getLanguageUsed());
+			this.modelPluginsList.remove(planModelPlugin);
 			PlanEngineImpl.LOG.debug("Unregistered PlanEnginePlanModel Plugin {}", planModelPlugin.toString());
 		}
 	}
@@ -256,7 +422,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			} else {
 				PlanEngineImpl.LOG.debug("CapabilityService unavailable, couldn't store plugin capabilities, will do later");
 			}
-			this.refPluginsList.put(planRefPlugin.getLanguageUsed(), planRefPlugin);
+			this.refPluginsList.add(planRefPlugin);
 			PlanEngineImpl.LOG.debug("Registered PlanEnginePlanRef Plugin {}", planRefPlugin.toString());
 		}
 	}
@@ -274,7 +440,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			} else {
 				PlanEngineImpl.LOG.warn("CapabilityService unavailable, couldn't delete plugin capabilities");
 			}
-			this.refPluginsList.remove(planRefPlugin.getLanguageUsed());
+			this.refPluginsList.remove(planRefPlugin);
 			PlanEngineImpl.LOG.debug("Unregistered PlanEnginePlanRef Plugin {}", planRefPlugin.toString());
 		}
 	}
@@ -286,7 +452,7 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 	 * @return PlanEnginePlanModelPlugin if there is a plugin, else null
 	 */
 	private IPlanEnginePlanModelPluginService getModelPlugin(String language) {
-		return this.modelPluginsList.get(language);
+		return PlanEngineImpl.selectPlugin(this.modelPluginsList, language);
 	}
 	
 	/**
@@ -296,7 +462,34 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 	 * @return PlanEnginePlanRefPlugin if there is a plugin, else null
 	 */
 	private IPlanEnginePlanRefPluginService getRefPlugin(String language) {
-		return this.refPluginsList.get(language);
+		return PlanEngineImpl.selectPlugin(this.refPluginsList, language);
+	}
+	
+	/**
+	 * Selects the plugin for a language. A plugin whose class is listed in the
+	 * setting <tt>planenginePreferredPlugins</tt> takes precedence over the
+	 * other plugins supporting the language.
+	 * 
+	 * @param plugins the bound plugins
+	 * @param language the language of the plan
+	 * @return the first preferred or else the first plugin supporting the
+	 *         language, null if there is none
+	 */
+	private static <T extends IPlanEnginePluginService> T selectPlugin(List<T> plugins, String language) {
+		List<String> preferred = Arrays.asList(Settings.getSetting("planenginePreferredPlugins").split(";"));
+		T selected = null;
+		
+		for (T plugin : plugins) {
+			if (plugin.getLanguageUsed().equals(language)) {
+				if (preferred.contains(plugin.getClass().getName())) {
+					return plugin;
+				}
+				if (selected == null) {
+					selected = plugin;
+				}
+			}
+		}
+		return selected;
 	}
 	
 	/**
@@ -315,11 +508,11 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 			}
 			
 			// storing capabilities of already registered plugins
-			for (IPlanEnginePlanModelPluginService planModelPlugin : this.modelPluginsList.values()) {
+			for (IPlanEnginePlanModelPluginService planModelPlugin : this.modelPluginsList) {
 				this.capabilityService.storeCapabilities(planModelPlugin.getCapabilties(), planModelPlugin.toString(), ProviderType.PLAN_PLUGIN);
 			}
 			
-			for (IPlanEnginePlanRefPluginService planRefPlugin : this.refPluginsList.values()) {
+			for (IPlanEnginePlanRefPluginService planRefPlugin : this.refPluginsList) {
 				this.capabilityService.storeCapabilities(planRefPlugin.getCapabilties(), planRefPlugin.toString(), ProviderType.PLAN_PLUGIN);
 			}
 			
@@ -342,6 +535,30 @@ public class PlanEngineImpl implements org.opentosca.planengine.service.IPlanEng
 		PlanEngineImpl.LOG.debug("Unregistered CapabilityService {}", capabilityService.toString());
 	}
 	
+	/**
+	 * Bind method for DeploymentTrackerService
+	 * 
+	 * @param deploymentTrackerService the DeploymentTrackerService to bind
+	 */
+	protected void bindDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (deploymentTrackerService != null) {
+			this.deploymentTrackerService = deploymentTrackerService;
+			PlanEngineImpl.LOG.debug("Registered DeploymentTrackerService {}", deploymentTrackerService.toString());
+		}
+	}
+	
+	/**
+	 * Unbind method for DeploymentTrackerService
+	 * 
+	 * @param deploymentTrackerService the DeploymentTrackerService to unbind
+	 */
+	protected void unbindDeploymentTrackerService(ICoreDeploymentTrackerService deploymentTrackerService) {
+		if (this.deploymentTrackerService == deploymentTrackerService) {
+			this.deploymentTrackerService = null;
+		}
+		PlanEngineImpl.LOG.debug("Unregistered DeploymentTrackerService {}", deploymentTrackerService.toString());
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
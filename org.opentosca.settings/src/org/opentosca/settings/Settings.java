@@ -83,6 +83,113 @@ public class Settings implements BundleActivator {
 		// possible file extensions of a TOSCA file, separated by character ";"
 		Settings.setSetting("toscaFileExtensions", "xml;tosca;ste");
 		
+		// /////////////////// SI-ENGINE ///////////////////
+		
+		// time in milliseconds for which the SI-Engine-API remembers the
+		// response of an invocation to answer retries with the same
+		// MessageID or IdempotencyKey
+		Settings.setSetting("siengineIdempotencyTTL", "600000");
+		
+		// maximum number of invocations remembered by the SI-Engine-API
+		Settings.setSetting("siengineIdempotencyMaxEntries", "10000");
+		
+		// number of consecutive failed invocations after which the circuit
+		// breaker of an endpoint opens and rejects further invocations
+		Settings.setSetting("siengineCircuitBreakerFailureThreshold", "5");
+		
+		// time in milliseconds an open circuit breaker rejects invocations
+		// before it lets a probe invocation pass
+		Settings.setSetting("siengineCircuitBreakerOpenTime", "30000");
+		
+		// the timeout of an invocation is the given percentile of the observed
+		// latencies of the invoked operation of the endpoint multiplied with
+		// the given factor
+		Settings.setSetting("siengineTimeoutPercentile", "99");
+		Settings.setSetting("siengineTimeoutMultiplier", "3");
+		
+		// bounds of the timeout in milliseconds; the maximum is used as long
+		// as less than the given number of latencies are known
+		Settings.setSetting("siengineTimeoutMin", "5000");
+		Settings.setSetting("siengineTimeoutMax", "300000");
+		Settings.setSetting("siengineTimeoutMinSamples", "20");
+		
+		// number of latencies after which the histogram of an endpoint halves
+		// its counts to follow the current behavior of the endpoint
+		Settings.setSetting("siengineLatencyHistogramSize", "1000");
+		
+		// if true, the REST plug-in sends its requests with a non-blocking
+		// NIO client, thus concurrent invocations don't need a thread each
+		Settings.setSetting("siengineRestNonBlockingTransport", "false");
+		
+		// number of threads of the non-blocking client of the REST plug-in
+		Settings.setSetting("siengineRestNonBlockingThreads", "4");
+		
+		// maximum number of concurrent connections of the non-blocking client
+		// to a single host; further requests are queued
+		Settings.setSetting("siengineRestMaxConnectionsPerHost", "256");
+		
+		// number of workers of the SI-Engine executing the invocations of
+		// implementation artifacts
+		Settings.setSetting("siengineWorkerThreads", "64");
+		
+		// priority lanes of the invocations as comma separated list of
+		// name:weight[:maxActive[:reserved]]; while several lanes have queued
+		// invocations, each is served proportional to its weight and never
+		// uses more than maxActive workers at the same time; reserved workers
+		// are never used by the other lanes
+		Settings.setSetting("siengineLanes", "critical:8:64:8,default:4:56,bulk:1:48");
+		
+		// lane of the invocations that are not mapped to another lane
+		Settings.setSetting("siengineLaneDefault", "default");
+		
+		// lanes of the operations as comma separated list of
+		// [interfaceName#]operationName=lane; a lane requested by the caller
+		// with the header "Priority" takes precedence
+		Settings.setSetting("siengineLaneMapping", "stop=critical,uninstall=critical,terminate=critical,scaleIn=critical,install=bulk,configure=bulk");
+		
+		// /////////////////// IA-ENGINE ///////////////////
+		
+		// number of ImplementationArtifacts deployed concurrently
+		Settings.setSetting("iaengineDeploymentThreads", "8");
+		
+		// number of ImplementationArtifacts deployed concurrently by the same
+		// plug-in, e.g. to limit the uploads to one application server
+		Settings.setSetting("iaengineDeploymentsPerPlugin", "4");
+		
+		// types of ImplementationArtifacts, separated by character ";", that
+		// are deployed only once if several CSARs contain the same files
+		Settings.setSetting("iaengineDeduplicatedTypes", "{http://www.example.com/ToscaTypes}WAR;{http://www.example.com/ToscaTypes}AAR");
+		
+		// if "true" the ImplementationArtifacts are only registered at the
+		// upload of a CSAR and each of them is deployed at its first invocation
+		Settings.setSetting("iaengineLazyDeployment", "false");
+		
+		// probes, separated by character ";", that warm up a deployed
+		// ImplementationArtifact before it is tracked as deployed ("wsdl",
+		// "head" and "get"); no warm-up if empty
+		Settings.setSetting("iaengineWarmUpProbes", "");
+		
+		// how often the probes are run, the number of ImplementationArtifacts
+		// warmed up concurrently and the timeout of a probe in milliseconds
+		Settings.setSetting("iaengineWarmUpRepetitions", "1");
+		Settings.setSetting("iaengineWarmUpConcurrency", "4");
+		Settings.setSetting("iaengineWarmUpTimeout", "10000");
+		
+		// number of replicas deployed of ImplementationArtifacts by type, e.g.
+		// "{http://www.example.com/ToscaTypes}WAR=3;..."; types not listed are
+		// deployed once
+		Settings.setSetting("iaengineReplicas", "");
+		
+		// /////////////////// PLAN-ENGINE ///////////////////
+		
+		// number of Plans deployed concurrently
+		Settings.setSetting("planengineDeploymentThreads", "4");
+		
+		// class names of plug-ins, separated by character ";", that are used
+		// for the plans of their language if several plug-ins support it,
+		// e.g. to switch between plan engines for benchmarks
+		Settings.setSetting("planenginePreferredPlugins", "");
+		
 		// /////////////////// OTHERS ///////////////////
 		
 		// Container Capabilities
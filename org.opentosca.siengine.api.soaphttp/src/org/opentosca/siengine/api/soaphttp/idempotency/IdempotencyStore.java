@@ -0,0 +1,223 @@
+package org.opentosca.siengine.api.soaphttp.idempotency;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Bounded store of the invocations of the SIEngine-SOAP/HTTP-API.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each invocation carrying a MessageID or a caller-supplied IdempotencyKey is
+ * registered here. As long as the invocation is running, duplicates of it can
+ * wait for its completion. After completion the response is kept for the
+ * configured time to live, so retries get the cached response instead of
+ * invoking the implementation artifact again. If the maximum number of entries
+ * is exceeded the oldest entries are dropped.
+ * 
+ * 
+ * 
+ */
+public class IdempotencyStore {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(IdempotencyStore.class);
+	
+	// Header a caller can use to pass an own key instead of the MessageID.
+	public final static String KEY_HEADER = "IdempotencyKey";
+	
+	// Headers set on the exchange of an invocation.
+	public final static String STORE_KEY_HEADER = "IdempotencyStoreKey";
+	public final static String DUPLICATE_HEADER = "IdempotentDuplicate";
+	public final static String REPLAY_HEADER = "IdempotentReplay";
+	
+	private final long timeToLive;
+	private final Map<String, Entry> entries;
+	private long lastPurge = System.currentTimeMillis();
+	
+	
+	/**
+	 * @param timeToLive in milliseconds of a stored invocation.
+	 * @param maxEntries number of invocations that are stored at most.
+	 */
+	public IdempotencyStore(long timeToLive, final int maxEntries) {
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, false) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, IdempotencyStore.Entry> eldest) {
+				return this.size() > maxEntries;
+			}
+		};
+	}
+	
+	/**
+	 * Registers an invocation.
+	 * 
+	 * @param key of the invocation.
+	 * @return <tt>null</tt> if no invocation with the same key is known, thus
+	 *         the caller has to execute it and to complete it afterwards.
+	 *         Otherwise the entry of the already known invocation.
+	 */
+	public synchronized Entry register(String key) {
+		
+		this.purgeExpired();
+		
+		Entry entry = this.entries.get(key);
+		
+		if ((entry != null) && !entry.isExpired()) {
+			IdempotencyStore.LOG.debug("Invocation with key {} is already known.", key);
+			return entry;
+		}
+		
+		this.entries.put(key, new Entry());
+		return null;
+	}
+	
+	/**
+	 * Stores the response of a registered invocation and releases all waiting
+	 * duplicates.
+	 * 
+	 * @param key of the invocation.
+	 * @param response of the invocation.
+	 */
+	public void complete(String key, Object response) {
+		
+		Entry entry;
+		synchronized (this) {
+			entry = this.entries.get(key);
+		}
+		
+		if (entry != null) {
+			IdempotencyStore.LOG.debug("Invocation with key {} completed.", key);
+			entry.complete(IdempotencyStore.copy(response));
+		}
+	}
+	
+	/**
+	 * Removes a registered invocation that failed, so a retry executes it
+	 * again. Waiting duplicates are released without response.
+	 * 
+	 * @param key of the invocation.
+	 */
+	public void abort(String key) {
+		
+		Entry entry;
+		synchronized (this) {
+			entry = this.entries.get(key);
+			
+			if ((entry == null) || entry.isCompleted()) {
+				return;
+			}
+			this.entries.remove(key);
+		}
+		
+		IdempotencyStore.LOG.debug("Invocation with key {} aborted.", key);
+		entry.complete(null);
+	}
+	
+	/**
+	 * Removes the expired entries. To keep registering cheap this is done at
+	 * most once per second.
+	 */
+	private void purgeExpired() {
+		
+		long now = System.currentTimeMillis();
+		
+		if ((now - this.lastPurge) < 1000) {
+			return;
+		}
+		this.lastPurge = now;
+		
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isExpired()) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Copies the response, because the SIEngine responses (HashMap or DOM
+	 * Document) are mutable and not safe to be shared between threads.
+	 */
+	@SuppressWarnings("unchecked")
+	static Object copy(Object response) {
+		
+		if (response instanceof HashMap) {
+			return new HashMap<String, String>((HashMap<String, String>) response);
+		}
+		if (response instanceof Document) {
+			synchronized (response) {
+				return ((Document) response).cloneNode(true);
+			}
+		}
+		return response;
+	}
+	
+	
+	/**
+	 * Entry of a registered invocation.
+	 */
+	public class Entry {
+		
+		private final long created = System.currentTimeMillis();
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile long completed = -1;
+		private volatile Object response;
+		
+		
+		void complete(Object response) {
+			this.response = response;
+			this.completed = System.currentTimeMillis();
+			this.latch.countDown();
+		}
+		
+		public boolean isCompleted() {
+			return this.completed >= 0;
+		}
+		
+		boolean isExpired() {
+			long start = this.isCompleted() ? this.completed : this.created;
+			return (System.currentTimeMillis() - start) > IdempotencyStore.this.timeToLive;
+		}
+		
+		/**
+		 * Waits until the invocation is completed, but at most until the entry
+		 * would expire.
+		 * 
+		 * @return a copy of the response or <tt>null</tt> if the invocation
+		 *         was aborted or is still running.
+		 * @throws InterruptedException
+		 */
+		public Object awaitResponse() throws InterruptedException {
+			
+			long remaining = IdempotencyStore.this.timeToLive - (System.currentTimeMillis() - this.created);
+			
+			if (remaining > 0) {
+				this.latch.await(remaining, TimeUnit.MILLISECONDS);
+			}
+			return this.getResponse();
+		}
+		
+		/**
+		 * @return a copy of the response or <tt>null</tt> if the invocation is
+		 *         not completed yet.
+		 */
+		public Object getResponse() {
+			return IdempotencyStore.copy(this.response);
+		}
+	}
+}
@@ -0,0 +1,9 @@
+/**
+ * This package contains the store used by the SI-SOAP/HTTP-API to detect
+ * retried invocations and to answer them with the response of the first
+ * invocation.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.api.soaphttp.idempotency;
@@ -0,0 +1,127 @@
+package org.opentosca.siengine.api.soaphttp.processor;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.cxf.common.message.CxfConstants;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.siengine.api.soaphttp.idempotency.IdempotencyStore;
+import org.opentosca.siengine.model.header.SIHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Idempotency-Processor of the SIEngine-SOAP/HTTP-API.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * This processor detects retried operation invocations by their
+ * IdempotencyKey header or, if not set, by their MessageID. The first
+ * invocation of a key is passed to the SIEngine. A duplicate of a completed
+ * invocation gets the cached response. A synchronous duplicate of a running
+ * invocation waits for its response, an asynchronous one is dropped as the
+ * running invocation will call back anyway. The key of an invocation is kept
+ * until its response is stored; it is only released earlier if the
+ * invocation failed, so a retry executes it again.
+ * 
+ * @see IdempotencyStore
+ * 
+ * 
+ */
+public class IdempotentRequestProcessor implements Processor {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(IdempotentRequestProcessor.class);
+	
+	private final IdempotencyStore store;
+	
+	
+	public IdempotentRequestProcessor(IdempotencyStore store) {
+		this.store = store;
+	}
+	
+	@Override
+	public void process(Exchange exchange) throws Exception {
+		
+		if (!"invokeIA".equals(exchange.getIn().getHeader(CxfConstants.OPERATION_NAME))) {
+			return;
+		}
+		
+		String key = exchange.getIn().getHeader(IdempotencyStore.KEY_HEADER, String.class);
+		
+		if ((key == null) || key.isEmpty()) {
+			key = exchange.getIn().getHeader("MessageID", String.class);
+		}
+		
+		if ((key == null) || key.isEmpty()) {
+			IdempotentRequestProcessor.LOG.trace("Invocation without MessageID or IdempotencyKey.");
+			return;
+		}
+		
+		final String storeKey = exchange.getIn().getHeader(SIHeader.CSARID.toString(), CSARID.class) + "/" + key;
+		boolean async = exchange.getIn().getHeader("ReplyTo") != null;
+		
+		IdempotencyStore.Entry entry;
+		
+		while ((entry = this.store.register(storeKey)) != null) {
+			
+			if (entry.isCompleted()) {
+				IdempotentRequestProcessor.LOG.info("Invocation {} was already executed. Replaying its response.", storeKey);
+				this.replay(exchange, entry.getResponse());
+				return;
+			}
+			
+			if (async) {
+				IdempotentRequestProcessor.LOG.info("Invocation {} is already running. Dropping the asynchronous duplicate.", storeKey);
+				exchange.getIn().setHeader(IdempotencyStore.DUPLICATE_HEADER, true);
+				return;
+			}
+			
+			IdempotentRequestProcessor.LOG.info("Invocation {} is already running. Waiting for its response.", storeKey);
+			Object response = entry.awaitResponse();
+			
+			if (response != null) {
+				this.replay(exchange, response);
+				return;
+			}
+			
+			if (!entry.isCompleted()) {
+				throw new IllegalStateException("The invocation with the key " + key + " is still running.");
+			}
+			
+			// the running invocation failed, thus this one executes it again
+			IdempotentRequestProcessor.LOG.debug("Invocation {} was aborted. Executing it again.", storeKey);
+		}
+		
+		exchange.getIn().setHeader(IdempotencyStore.STORE_KEY_HEADER, storeKey);
+		
+		// An asynchronous invocation is executed after its exchange is
+		// completed, thus its key is kept until the SIEngine sends the
+		// response or reports the failure of the invocation.
+		final boolean sync = exchange.getPattern().isOutCapable();
+		
+		// a failed invocation must not block its retries
+		exchange.addOnCompletion(new SynchronizationAdapter() {
+			
+			@Override
+			public void onFailure(Exchange exchange) {
+				IdempotentRequestProcessor.this.store.abort(storeKey);
+			}
+			
+			@Override
+			public void onComplete(Exchange exchange) {
+				if (sync) {
+					// no-op if the response was stored
+					IdempotentRequestProcessor.this.store.abort(storeKey);
+				}
+			}
+		});
+	}
+	
+	private void replay(Exchange exchange, Object response) {
+		exchange.getIn().setHeader(IdempotencyStore.DUPLICATE_HEADER, true);
+		exchange.getIn().setHeader(IdempotencyStore.REPLAY_HEADER, true);
+		exchange.getIn().setBody(response);
+	}
+}
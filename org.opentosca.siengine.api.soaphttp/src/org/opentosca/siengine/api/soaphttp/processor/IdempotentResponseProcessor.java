@@ -0,0 +1,50 @@
+package org.opentosca.siengine.api.soaphttp.processor;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.opentosca.siengine.api.soaphttp.idempotency.IdempotencyStore;
+import org.opentosca.siengine.model.header.SIHeader;
+
+/**
+ * Processor of the SIEngine-SOAP/HTTP-API storing the responses of the
+ * SIEngine.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The response of an invocation registered by the
+ * {@link IdempotentRequestProcessor} is stored, so duplicates of the
+ * invocation can be answered without invoking the SIEngine again. The
+ * response of a failed invocation is not stored, instead the invocation is
+ * released, so a retry executes it again.
+ * 
+ * @see IdempotencyStore
+ * 
+ * 
+ */
+public class IdempotentResponseProcessor implements Processor {
+	
+	private final IdempotencyStore store;
+	
+	
+	public IdempotentResponseProcessor(IdempotencyStore store) {
+		this.store = store;
+	}
+	
+	@Override
+	public void process(Exchange exchange) throws Exception {
+		
+		String storeKey = exchange.getIn().getHeader(IdempotencyStore.STORE_KEY_HEADER, String.class);
+		
+		if (storeKey == null) {
+			return;
+		}
+		
+		if (Boolean.TRUE.equals(exchange.getIn().getHeader(SIHeader.INVOCATIONFAILED_BOOLEAN.toString(), Boolean.class))) {
+			this.store.abort(storeKey);
+		} else {
+			this.store.complete(storeKey, exchange.getIn().getBody());
+		}
+	}
+}
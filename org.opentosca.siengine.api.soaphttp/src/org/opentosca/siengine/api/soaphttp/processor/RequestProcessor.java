@@ -5,8 +5,6 @@ import java.util.HashMap;
 import java.util.List;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
@@ -21,6 +19,7 @@ import org.opentosca.siengine.api.soaphttp.model.InvokeOperationSync;
 import org.opentosca.siengine.api.soaphttp.model.InvokePlan;
 import org.opentosca.siengine.api.soaphttp.model.ParamsMap;
 import org.opentosca.siengine.api.soaphttp.model.ParamsMapItemType;
+import org.opentosca.siengine.model.codec.ParamsCodec;
 import org.opentosca.siengine.model.header.SIHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +48,9 @@ public class RequestProcessor implements Processor {
 	
 	final private static Logger LOG = LoggerFactory.getLogger(RequestProcessor.class);
 	
+	// name of the header by which a caller requests a priority lane
+	public final static String PRIORITY_HEADER = "Priority";
+	
 	
 	@Override
 	public void process(Exchange exchange) throws Exception {
@@ -218,6 +220,13 @@ public class RequestProcessor implements Processor {
 		exchange.getIn().setHeader(SIHeader.OPERATIONNAME_STRING.toString(), operationName);
 		exchange.getIn().setHeader(SIHeader.APIID_STRING.toString(), Activator.apiID);
 		
+		// priority lane requested by the caller as SOAP or HTTP header
+		String priority = exchange.getIn().getHeader(RequestProcessor.PRIORITY_HEADER, String.class);
+		
+		if ((priority != null) && !(priority.isEmpty() || priority.equals("?"))) {
+			exchange.getIn().setHeader(SIHeader.PRIORITY_STRING.toString(), priority);
+		}
+		
 		if (paramsMap != null) {
 			// put key-value params into camel exchange body as hashmap
 			HashMap<String, String> params = new HashMap<String, String>();
@@ -230,9 +239,7 @@ public class RequestProcessor implements Processor {
 		}
 		
 		else if ((doc != null) && (doc.getAny() != null)) {
-			DocumentBuilderFactory dFact = DocumentBuilderFactory.newInstance();
-			DocumentBuilder build = dFact.newDocumentBuilder();
-			Document document = build.newDocument();
+			Document document = ParamsCodec.newDocument();
 			
 			Element element = doc.getAny();
 			
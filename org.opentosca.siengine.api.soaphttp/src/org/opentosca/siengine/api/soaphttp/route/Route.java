@@ -11,7 +11,11 @@ import org.apache.camel.builder.PredicateBuilder;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.cxf.common.message.CxfConstants;
 import org.apache.camel.converter.jaxb.JaxbDataFormat;
+import org.opentosca.settings.Settings;
 import org.opentosca.siengine.api.soaphttp.Activator;
+import org.opentosca.siengine.api.soaphttp.idempotency.IdempotencyStore;
+import org.opentosca.siengine.api.soaphttp.processor.IdempotentRequestProcessor;
+import org.opentosca.siengine.api.soaphttp.processor.IdempotentResponseProcessor;
 import org.opentosca.siengine.api.soaphttp.processor.RequestProcessor;
 import org.opentosca.siengine.api.soaphttp.processor.ResponseProcessor;
 
@@ -29,7 +33,9 @@ import org.opentosca.siengine.api.soaphttp.processor.ResponseProcessor;
  * execution. The response will be transformed, marshalled and send to the
  * recipient. Supported are both synchronous request-response communication and
  * asynchronous communication with callback. MessageID and ReplyTo-address can
- * be passed as parameter of the SOAP body or as WS-A header.
+ * be passed as parameter of the SOAP body or as WS-A header. Retries of an
+ * operation invocation with the same MessageID (or IdempotencyKey header) are
+ * not passed to the SIEngine again, but answered with the stored response.
  * 
  * 
  * 
@@ -74,10 +80,19 @@ public class Route extends RouteBuilder {
 		responseJaxb.setPartClass("org.opentosca.siengine.api.soaphttp.model.InvokeResponse");
 		responseJaxb.setPartNamespace(new QName("http://siserver.org/schema", "invokeResponse"));
 		
+		// Checks if the invocation is a retry of an already known invocation
+		final Predicate DUPLICATE = this.header(IdempotencyStore.DUPLICATE_HEADER).isEqualTo(true);
+		final Predicate REPLAY = this.header(IdempotencyStore.REPLAY_HEADER).isEqualTo(true);
+		
+		IdempotencyStore idempotencyStore = new IdempotencyStore(Long.parseLong(Settings.getSetting("siengineIdempotencyTTL")), Integer.parseInt(Settings.getSetting("siengineIdempotencyMaxEntries")));
+		
 		Processor requestProcessor = new RequestProcessor();
+		Processor idempotentRequestProcessor = new IdempotentRequestProcessor(idempotencyStore);
+		Processor idempotentResponseProcessor = new IdempotentResponseProcessor(idempotencyStore);
 		Processor responseProcessor = new ResponseProcessor();
 		
-		this.from(INVOKE_ENDPOINT).unmarshal(requestJaxb).process(requestProcessor).choice().when(INVOKE_IA).to(SI_ENGINE_IA).when(INVOKE_PLAN).to(SI_ENGINE_PLAN).end();
-		this.from("direct-vm:" + Activator.apiID).process(responseProcessor).marshal(responseJaxb).to("stream:out").choice().when(ASYNC).recipientList(this.simple(CALLBACK_ENDPOINT)).end();
+		this.from(INVOKE_ENDPOINT).unmarshal(requestJaxb).process(requestProcessor).process(idempotentRequestProcessor).choice().when(REPLAY).to("direct:response").when(DUPLICATE).stop().when(INVOKE_IA).to(SI_ENGINE_IA).when(INVOKE_PLAN).to(SI_ENGINE_PLAN).end();
+		this.from("direct-vm:" + Activator.apiID).process(idempotentResponseProcessor).to("direct:response");
+		this.from("direct:response").process(responseProcessor).marshal(responseJaxb).to("stream:out").choice().when(ASYNC).recipientList(this.simple(CALLBACK_ENDPOINT)).end();
 	}
 }
@@ -0,0 +1,166 @@
+package org.opentosca.siengine.model.codec.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.opentosca.siengine.model.codec.ParamsCodec;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+import org.xml.sax.InputSource;
+
+/**
+ * Microbenchmark of the {@link ParamsCodec}.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Compares the codec with the DOM-based conversion the SI-components used
+ * before: a new DocumentBuilderFactory and Transformer per conversion and a
+ * NodeIterator to read the params. Both variants convert the same params map
+ * to an xml string and back. Each variant is warmed up first, then the
+ * average time per round trip is printed.<br>
+ * <br>
+ * 
+ * Run it as a plain Java application with this project, the
+ * org.opentosca.siengine.model bundle and slf4j on the classpath:
+ * 
+ * <pre>
+ * java org.opentosca.siengine.model.codec.test.ParamsCodecBenchmark [params] [iterations]
+ * </pre>
+ * 
+ * 
+ */
+public class ParamsCodecBenchmark {
+	
+	private static final String ROOT_ELEMENT_NAME = "invokeOperation";
+	
+	private static final int DEFAULT_PARAMS = 20;
+	private static final int DEFAULT_ITERATIONS = 20000;
+	
+	// sink for the results, thus the conversions can't be optimized away
+	private static long sink = 0;
+	
+	
+	/**
+	 * @param args optional number of params and number of measured
+	 *            iterations.
+	 * @throws Exception if a conversion fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		
+		int paramCount = args.length > 0 ? Integer.parseInt(args[0]) : ParamsCodecBenchmark.DEFAULT_PARAMS;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : ParamsCodecBenchmark.DEFAULT_ITERATIONS;
+		
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for (int i = 0; i < paramCount; i++) {
+			params.put("param" + i, "value of param " + i);
+		}
+		
+		if (!ParamsCodecBenchmark.codecRoundTrip(params).equals(ParamsCodecBenchmark.domRoundTrip(params))) {
+			throw new IllegalStateException("Both variants have to return the same params.");
+		}
+		
+		System.out.println("Params: " + paramCount + ", iterations: " + iterations);
+		
+		long dom = ParamsCodecBenchmark.measure(false, params, iterations);
+		long codec = ParamsCodecBenchmark.measure(true, params, iterations);
+		
+		System.out.println("DOM:         " + (dom / iterations) + " ns per round trip");
+		System.out.println("ParamsCodec: " + (codec / iterations) + " ns per round trip");
+		System.out.println("Speedup:     " + ((codec == 0) ? "-" : String.format("%.2f", (double) dom / codec)));
+		System.out.println("(" + ParamsCodecBenchmark.sink + ")");
+	}
+	
+	/**
+	 * Warms the variant up and measures the given number of round trips.
+	 * 
+	 * @return the elapsed time in nanoseconds.
+	 */
+	private static long measure(boolean codec, Map<String, String> params, int iterations) throws Exception {
+		
+		for (int i = 0; i < iterations; i++) {
+			ParamsCodecBenchmark.sink += ParamsCodecBenchmark.roundTrip(codec, params).size();
+		}
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++) {
+			ParamsCodecBenchmark.sink += ParamsCodecBenchmark.roundTrip(codec, params).size();
+		}
+		
+		return System.nanoTime() - start;
+	}
+	
+	private static Map<String, String> roundTrip(boolean codec, Map<String, String> params) throws Exception {
+		return codec ? ParamsCodecBenchmark.codecRoundTrip(params) : ParamsCodecBenchmark.domRoundTrip(params);
+	}
+	
+	private static Map<String, String> codecRoundTrip(Map<String, String> params) {
+		return ParamsCodec.toMap(ParamsCodec.toXML(ParamsCodecBenchmark.ROOT_ELEMENT_NAME, params));
+	}
+	
+	private static Map<String, String> domRoundTrip(Map<String, String> params) throws Exception {
+		
+		// map to Document to string
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document document = builder.newDocument();
+		
+		Element rootElement = document.createElement(ParamsCodecBenchmark.ROOT_ELEMENT_NAME);
+		document.appendChild(rootElement);
+		
+		for (Entry<String, String> entry : params.entrySet()) {
+			Element paramElement = document.createElement(entry.getKey());
+			paramElement.setTextContent(entry.getValue());
+			rootElement.appendChild(paramElement);
+		}
+		
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter out = new StringWriter();
+		transformer.transform(new DOMSource(document), new StreamResult(out));
+		
+		// string to Document to map
+		builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document parsed = builder.parse(new InputSource(new StringReader(out.toString())));
+		
+		HashMap<String, String> map = new HashMap<String, String>();
+		
+		NodeIterator iterator = ((DocumentTraversal) parsed).createNodeIterator(parsed.getDocumentElement(), NodeFilter.SHOW_ELEMENT, null, true);
+		
+		for (Node node = iterator.nextNode(); node != null; node = iterator.nextNode()) {
+			
+			StringBuilder content = new StringBuilder();
+			NodeList children = node.getChildNodes();
+			for (int i = 0; i < children.getLength(); i++) {
+				Node child = children.item(i);
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					content.append(child.getTextContent());
+				}
+			}
+			
+			if (!content.toString().trim().isEmpty()) {
+				map.put(((Element) node).getTagName(), content.toString());
+			}
+		}
+		
+		return map;
+	}
+}
@@ -0,0 +1,449 @@
+package org.opentosca.siengine.model.codec;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.InputSource;
+
+/**
+ * Codec for the parameters of invocations shared by the SI-components.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Converts parameter maps to and from the TOSCA-style request and response
+ * envelopes: a root element whose child elements hold the parameters as text.
+ * Strings are read and written with StAX, thus no DOM tree is built if the
+ * caller doesn't need one. The factories are created only once and the
+ * DocumentBuilders are reused per thread.
+ * 
+ * 
+ */
+public class ParamsCodec {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(ParamsCodec.class);
+	
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+	
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return ParamsCodec.documentBuilderFactory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				ParamsCodec.LOG.error("Can't create a DocumentBuilder.", e);
+				return null;
+			}
+		}
+	};
+	
+	static {
+		ParamsCodec.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		ParamsCodec.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		ParamsCodec.documentBuilderFactory.setNamespaceAware(true);
+	}
+	
+	
+	/**
+	 * @return an empty Document created by the DocumentBuilder of the current
+	 *         thread.
+	 */
+	public static Document newDocument() {
+		return ParamsCodec.getDocumentBuilder().newDocument();
+	}
+	
+	/**
+	 * Transfers the params into a Document. Each param becomes a child element
+	 * of the root element.
+	 * 
+	 * @param rootElementNamespaceURI namespace of the root element or
+	 *            <tt>null</tt>.
+	 * @param rootElementName
+	 * @param params
+	 * @return the created Document.
+	 */
+	public static Document toDocument(String rootElementNamespaceURI, String rootElementName, Map<String, String> params) {
+		
+		Document document = ParamsCodec.newDocument();
+		
+		Element rootElement = document.createElementNS(rootElementNamespaceURI, rootElementName);
+		document.appendChild(rootElement);
+		
+		for (Entry<String, String> entry : params.entrySet()) {
+			Element paramElement = document.createElement(entry.getKey());
+			paramElement.setTextContent(entry.getValue());
+			rootElement.appendChild(paramElement);
+		}
+		
+		return document;
+	}
+	
+	/**
+	 * Parses the given string into a Document.
+	 * 
+	 * @param xml
+	 * @return the Document or <tt>null</tt> if the string is <tt>null</tt> or
+	 *         isn't valid xml.
+	 */
+	public static Document toDocument(String xml) {
+		
+		if (xml == null) {
+			return null;
+		}
+		
+		DocumentBuilder builder = ParamsCodec.getDocumentBuilder();
+		
+		try {
+			return builder.parse(new InputSource(new StringReader(xml)));
+			
+		} catch (Exception e) {
+			ParamsCodec.LOG.debug("String isn't xml.");
+			return null;
+			
+		} finally {
+			builder.reset();
+		}
+	}
+	
+	/**
+	 * Writes the params as xml. Each param becomes a child element of the
+	 * root element.
+	 * 
+	 * @param rootElementName
+	 * @param params
+	 * @return the xml string.
+	 */
+	public static String toXML(String rootElementName, Map<String, String> params) {
+		
+		StringWriter out = new StringWriter();
+		
+		try {
+			XMLStreamWriter writer = ParamsCodec.outputFactory.createXMLStreamWriter(out);
+			
+			writer.writeStartElement(rootElementName);
+			
+			for (Entry<String, String> entry : params.entrySet()) {
+				writer.writeStartElement(entry.getKey());
+				if (entry.getValue() != null) {
+					writer.writeCharacters(entry.getValue());
+				}
+				writer.writeEndElement();
+			}
+			
+			writer.writeEndElement();
+			writer.close();
+			
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can't write params as xml.", e);
+		}
+		
+		return out.toString();
+	}
+	
+	/**
+	 * Serializes a Document or Element without the xml declaration.
+	 * 
+	 * @param node to serialize.
+	 * @return the xml string.
+	 */
+	public static String toXML(Node node) {
+		
+		StringWriter out = new StringWriter();
+		
+		try {
+			XMLStreamWriter writer = ParamsCodec.outputFactory.createXMLStreamWriter(out);
+			ParamsCodec.write(node, writer);
+			writer.close();
+			
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Can't serialize node.", e);
+		}
+		
+		return out.toString();
+	}
+	
+	/**
+	 * Transfers a Document into a map. Every element containing text becomes
+	 * an entry with the tag name of the element as key.
+	 * 
+	 * @param document to be transfered to a map.
+	 * @return transfered map.
+	 */
+	public static HashMap<String, String> toMap(Document document) {
+		
+		HashMap<String, String> map = new HashMap<String, String>();
+		
+		if (document.getDocumentElement() != null) {
+			ParamsCodec.collect(document.getDocumentElement(), map);
+		}
+		
+		return map;
+	}
+	
+	/**
+	 * Reads a map from the given xml string without building a Document. The
+	 * entries are the same as {@link #toMap(Document)} returns for the parsed
+	 * string.
+	 * 
+	 * @param xml
+	 * @return transfered map or <tt>null</tt> if the string is <tt>null</tt>
+	 *         or isn't valid xml.
+	 */
+	public static HashMap<String, String> toMap(String xml) {
+		
+		if (xml == null) {
+			return null;
+		}
+		
+		HashMap<String, String> map = new HashMap<String, String>();
+		
+		// tag name and text content of the open elements
+		List<String> names = new ArrayList<String>();
+		List<StringBuilder> contents = new ArrayList<StringBuilder>();
+		boolean rootFound = false;
+		
+		XMLStreamReader reader = null;
+		
+		try {
+			reader = ParamsCodec.inputFactory.createXMLStreamReader(new StringReader(xml));
+			
+			while (reader.hasNext()) {
+				
+				switch (reader.next()) {
+					
+					case XMLStreamConstants.START_ELEMENT:
+						String prefix = reader.getPrefix();
+						names.add(((prefix == null) || prefix.isEmpty()) ? reader.getLocalName() : prefix + ":" + reader.getLocalName());
+						contents.add(null);
+						rootFound = true;
+						break;
+					
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						int last = contents.size() - 1;
+						if (last >= 0) {
+							if (contents.get(last) == null) {
+								contents.set(last, new StringBuilder());
+							}
+							contents.get(last).append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+						}
+						break;
+					
+					case XMLStreamConstants.END_ELEMENT:
+						String name = names.remove(names.size() - 1);
+						StringBuilder content = contents.remove(contents.size() - 1);
+						if ((content != null) && !content.toString().trim().isEmpty()) {
+							map.put(name, content.toString());
+						}
+						break;
+					
+					default:
+						break;
+				}
+			}
+			
+		} catch (XMLStreamException e) {
+			ParamsCodec.LOG.debug("String isn't xml.");
+			return null;
+			
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					ParamsCodec.LOG.debug("Can't close reader.");
+				}
+			}
+		}
+		
+		return rootFound ? map : null;
+	}
+	
+	/**
+	 * Writes a Document or Element to the given writer. Namespace
+	 * declarations of the nodes are kept and missing ones are added.
+	 * 
+	 * @param node to write.
+	 * @param writer
+	 * @throws XMLStreamException
+	 */
+	public static void write(Node node, XMLStreamWriter writer) throws XMLStreamException {
+		
+		switch (node.getNodeType()) {
+			
+			case Node.DOCUMENT_NODE:
+			case Node.DOCUMENT_FRAGMENT_NODE:
+			case Node.ENTITY_REFERENCE_NODE:
+				for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+					ParamsCodec.write(child, writer);
+				}
+				break;
+			
+			case Node.ELEMENT_NODE:
+				ParamsCodec.writeElement((Element) node, writer);
+				break;
+			
+			case Node.TEXT_NODE:
+				writer.writeCharacters(node.getNodeValue());
+				break;
+			
+			case Node.CDATA_SECTION_NODE:
+				writer.writeCData(node.getNodeValue());
+				break;
+			
+			case Node.COMMENT_NODE:
+				writer.writeComment(node.getNodeValue());
+				break;
+			
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				writer.writeProcessingInstruction(((ProcessingInstruction) node).getTarget(), ((ProcessingInstruction) node).getData());
+				break;
+			
+			default:
+				break;
+		}
+	}
+	
+	private static void writeElement(Element element, XMLStreamWriter writer) throws XMLStreamException {
+		
+		String localName = element.getLocalName();
+		String namespaceURI = ParamsCodec.nullToEmpty(element.getNamespaceURI());
+		String prefix = ParamsCodec.nullToEmpty(element.getPrefix());
+		
+		NamedNodeMap attributes = element.getAttributes();
+		
+		// must be checked before the start tag is written, as some writers
+		// bind the namespace of the element while writing it
+		boolean undeclared = (localName != null) && !namespaceURI.equals(ParamsCodec.nullToEmpty(writer.getNamespaceContext().getNamespaceURI(prefix))) && (attributes.getNamedItem(prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix) == null);
+		
+		// elements created without namespace support have no local name
+		if (localName == null) {
+			writer.writeStartElement(element.getNodeName());
+		} else {
+			writer.writeStartElement(prefix, localName, namespaceURI);
+		}
+		
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			String name = attribute.getNodeName();
+			
+			if (name.equals(XMLConstants.XMLNS_ATTRIBUTE)) {
+				ParamsCodec.declare("", attribute.getValue(), writer);
+			} else if (name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+				ParamsCodec.declare(name.substring(6), attribute.getValue(), writer);
+			}
+		}
+		
+		if (undeclared) {
+			ParamsCodec.declare(prefix, namespaceURI, writer);
+		}
+		
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			String name = attribute.getNodeName();
+			
+			if (name.equals(XMLConstants.XMLNS_ATTRIBUTE) || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+				continue;
+			}
+			
+			if ((attribute.getLocalName() == null) || (attribute.getNamespaceURI() == null)) {
+				writer.writeAttribute(name, attribute.getValue());
+				
+			} else {
+				String attributePrefix = ParamsCodec.nullToEmpty(attribute.getPrefix());
+				
+				if (!attribute.getNamespaceURI().equals(writer.getNamespaceContext().getNamespaceURI(attributePrefix)) && !attributePrefix.equals(XMLConstants.XML_NS_PREFIX)) {
+					ParamsCodec.declare(attributePrefix, attribute.getNamespaceURI(), writer);
+				}
+				writer.writeAttribute(attributePrefix, attribute.getNamespaceURI(), attribute.getLocalName(), attribute.getValue());
+			}
+		}
+		
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			ParamsCodec.write(child, writer);
+		}
+		
+		writer.writeEndElement();
+	}
+	
+	private static void declare(String prefix, String namespaceURI, XMLStreamWriter writer) throws XMLStreamException {
+		
+		if (prefix.isEmpty()) {
+			writer.writeDefaultNamespace(namespaceURI);
+			writer.setDefaultNamespace(namespaceURI);
+		} else {
+			writer.writeNamespace(prefix, namespaceURI);
+			writer.setPrefix(prefix, namespaceURI);
+		}
+	}
+	
+	private static void collect(Element element, Map<String, String> map) {
+		
+		StringBuilder content = null;
+		
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			
+			short type = child.getNodeType();
+			
+			if ((type == Node.TEXT_NODE) || (type == Node.CDATA_SECTION_NODE)) {
+				if (content == null) {
+					content = new StringBuilder();
+				}
+				content.append(child.getNodeValue());
+			}
+		}
+		
+		if ((content != null) && !content.toString().trim().isEmpty()) {
+			map.put(element.getTagName(), content.toString());
+		}
+		
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				ParamsCodec.collect((Element) child, map);
+			}
+		}
+	}
+	
+	private static DocumentBuilder getDocumentBuilder() {
+		
+		DocumentBuilder builder = ParamsCodec.documentBuilder.get();
+		
+		if (builder == null) {
+			throw new IllegalStateException("No DocumentBuilder available.");
+		}
+		return builder;
+	}
+	
+	private static String nullToEmpty(String string) {
+		return string == null ? "" : string;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the codec converting the parameters of invocations
+ * between maps and xml, which is shared by all *SI-bundles.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.model.codec;
@@ -16,5 +16,5 @@ package org.opentosca.siengine.model.header;
  * 
  */
 public enum SIHeader {
-	CSARID, SERVICEINSTANCEID_URI, NODEINSTANCEID_STRING, SERVICETEMPLATEID_QNAME, NODETEMPLATEID_STRING, RELATIONSHIPTEMPLATEID_STRING, NODETYPEID_QNAME, RELATIONSHIPTYPEID_QNAME, INTERFACENAME_STRING, OPERATIONNAME_STRING, PLANID_QNAME, ENDPOINT_URI, SPECIFICCONTENT_DOCUMENT, HASOUTPUTPARAMS_BOOLEAN, SYNCINVOCATION_BOOLEAN, APIID_STRING, ARTIFACTTEMPLATEID_QNAME
+	CSARID, SERVICEINSTANCEID_URI, NODEINSTANCEID_STRING, SERVICETEMPLATEID_QNAME, NODETEMPLATEID_STRING, RELATIONSHIPTEMPLATEID_STRING, NODETYPEID_QNAME, RELATIONSHIPTYPEID_QNAME, INTERFACENAME_STRING, OPERATIONNAME_STRING, PLANID_QNAME, ENDPOINT_URI, SPECIFICCONTENT_DOCUMENT, HASOUTPUTPARAMS_BOOLEAN, SYNCINVOCATION_BOOLEAN, APIID_STRING, ARTIFACTTEMPLATEID_QNAME, PRIORITY_STRING, INVOCATIONFAILED_BOOLEAN, INSTANCEPROPERTIES_DOCUMENT
 }
@@ -0,0 +1,46 @@
+package org.opentosca.siengine.plugins.osgi.service;
+
+import java.util.Map;
+
+/**
+ * Interface of ImplementationArtifacts running as OSGi bundles inside the
+ * container.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A bundle deployed by the OSGi-IAEngine-Plug-in registers an implementation
+ * of this interface as OSGi service. The OSGi-SIEngine-Plug-in then invokes
+ * the operations of the ImplementationArtifact directly, i.e. the parameters
+ * are passed in memory without any network or XML overhead.<br>
+ * <br>
+ * 
+ * A bundle can provide several ImplementationArtifacts by registering one
+ * service per interface, each with the service property
+ * {@link #INTERFACE_NAME} set.
+ * 
+ * 
+ */
+public interface IOsgiImplementationArtifact {
+	
+	/**
+	 * Optional service property containing the name of the implemented
+	 * interface of the NodeType or RelationshipType.
+	 */
+	public static final String INTERFACE_NAME = "org.opentosca.ia.interface";
+	
+	
+	/**
+	 * Invokes an operation of the ImplementationArtifact.
+	 * 
+	 * @param interfaceName of the operation. Can be <tt>null</tt>.
+	 * @param operationName to invoke.
+	 * @param params input parameters of the operation.
+	 * 
+	 * @return the output parameters of the operation or <tt>null</tt> if
+	 *         the operation has no output.
+	 */
+	public Map<String, String> invokeOperation(String interfaceName, String operationName, Map<String, String> params);
+	
+}
@@ -0,0 +1,56 @@
+package org.opentosca.siengine.plugins.osgi.service.impl;
+
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Activator of the OSGi-SIEngine-Plug-in.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The activator provides the context of the bundle, which is needed to get the
+ * services of the ImplementationArtifacts.
+ * 
+ * 
+ */
+public class Activator implements BundleActivator {
+	
+	private static BundleContext context;
+	
+	final private static Logger LOG = LoggerFactory.getLogger(Activator.class);
+	
+	
+	public static BundleContext getContext() {
+		return Activator.context;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.osgi.framework.BundleActivator#start(org.osgi.framework.BundleContext
+	 * )
+	 */
+	@Override
+	public void start(BundleContext bundleContext) throws Exception {
+		Activator.context = bundleContext;
+		Activator.LOG.info("OSGI-PLUGIN-STARTED");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
+	 */
+	@Override
+	public void stop(BundleContext bundleContext) throws Exception {
+		Activator.context = null;
+		Activator.LOG.info("OSGI-PLUGIN-STOPPED");
+	}
+	
+}
@@ -0,0 +1,110 @@
+package org.opentosca.siengine.plugins.osgi.service.impl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.opentosca.siengine.model.codec.ParamsCodec;
+import org.opentosca.siengine.model.header.SIHeader;
+import org.opentosca.siengine.plugins.osgi.service.IOsgiImplementationArtifact;
+import org.opentosca.siengine.plugins.osgi.service.impl.servicehandler.ServiceHandler;
+import org.opentosca.siengine.plugins.osgi.service.impl.util.Messages;
+import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * SIEngine-Plug-in for ImplementationArtifacts running as OSGi bundles inside
+ * the container.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The endpoint of such an ImplementationArtifact has the form
+ * <tt>osgi:&lt;symbolic name of the bundle&gt;</tt>. The Plug-in looks up the
+ * {@link IOsgiImplementationArtifact} service registered by this bundle and
+ * calls it directly with the parameter map, thus neither a socket nor any
+ * marshalling is involved. Parameters given as Document are converted once,
+ * the response is returned in the same form as the request.
+ * 
+ * 
+ */
+public class SIEnginePluginOsgiServiceImpl implements ISIEnginePluginService {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(SIEnginePluginOsgiServiceImpl.class);
+	
+	// Supported types defined in messages.properties.
+	static final private String TYPES = Messages.OsgiSIEnginePlugin_types;
+	
+	
+	@Override
+	public Exchange invoke(Exchange exchange) {
+		
+		Message message = exchange.getIn();
+		
+		URI endpoint = message.getHeader(SIHeader.ENDPOINT_URI.toString(), URI.class);
+		String interfaceName = message.getHeader(SIHeader.INTERFACENAME_STRING.toString(), String.class);
+		String operationName = message.getHeader(SIHeader.OPERATIONNAME_STRING.toString(), String.class);
+		
+		SIEnginePluginOsgiServiceImpl.LOG.debug("Invoking operation {} of interface {} at endpoint {} ...", operationName, interfaceName, endpoint);
+		
+		if ((endpoint == null) || (endpoint.getSchemeSpecificPart() == null)) {
+			SIEnginePluginOsgiServiceImpl.LOG.error("No endpoint of the ImplementationArtifact specified.");
+			return exchange;
+		}
+		
+		IOsgiImplementationArtifact ia = ServiceHandler.getImplementationArtifact(endpoint.getSchemeSpecificPart(), interfaceName);
+		
+		if (ia == null) {
+			SIEnginePluginOsgiServiceImpl.LOG.error("No ImplementationArtifact registered by bundle {}.", endpoint.getSchemeSpecificPart());
+			return exchange;
+		}
+		
+		Object params = message.getBody();
+		boolean isDoc = params instanceof Document;
+		
+		Map<String, String> paramsMap;
+		
+		if (isDoc) {
+			paramsMap = ParamsCodec.toMap((Document) params);
+		} else if (params instanceof Map) {
+			@SuppressWarnings("unchecked")
+			Map<String, String> map = (Map<String, String>) params;
+			paramsMap = map;
+		} else {
+			paramsMap = new HashMap<String, String>();
+		}
+		
+		Map<String, String> response = ia.invokeOperation(interfaceName, operationName, paramsMap);
+		
+		HashMap<String, String> responseMap = response != null ? new HashMap<String, String>(response) : new HashMap<String, String>();
+		
+		SIEnginePluginOsgiServiceImpl.LOG.debug("Operation {} returned {} parameters.", operationName, responseMap.size());
+		
+		if (isDoc && !"HashMap".equals(message.getHeader("ParamsMode"))) {
+			message.setBody(ParamsCodec.toDocument(null, operationName + "Response", responseMap));
+		} else {
+			message.setBody(responseMap);
+		}
+		
+		return exchange;
+	}
+	
+	@Override
+	public List<String> getSupportedTypes() {
+		SIEnginePluginOsgiServiceImpl.LOG.debug("Getting Types: {}.", SIEnginePluginOsgiServiceImpl.TYPES);
+		List<String> types = new ArrayList<String>();
+		
+		for (String type : SIEnginePluginOsgiServiceImpl.TYPES.split("[,;]")) {
+			types.add(type.trim());
+		}
+		return types;
+	}
+	
+}
@@ -0,0 +1,9 @@
+/**
+ * This package contains the OSGi-SIEngine-Plug-in. It invokes
+ * ImplementationArtifacts that are registered as OSGi services in the
+ * container directly instead of sending SOAP/HTTP requests.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.plugins.osgi.service.impl;
@@ -0,0 +1,132 @@
+package org.opentosca.siengine.plugins.osgi.service.impl.servicehandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opentosca.siengine.plugins.osgi.service.IOsgiImplementationArtifact;
+import org.opentosca.siengine.plugins.osgi.service.impl.Activator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helper class that handles all needed services for SIEngine-OsgiPlugin.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * In this class the ImplementationArtifacts registered as OSGi services are
+ * binded and unbinded. They are stored by the symbolic name of the bundle
+ * providing them and, if specified, the name of their interface. The service
+ * objects are requested not until the first invocation.
+ * 
+ * 
+ * @see IOsgiImplementationArtifact
+ * 
+ */
+public class ServiceHandler {
+	
+	private final static ConcurrentMap<String, ServiceReference> references = new ConcurrentHashMap<String, ServiceReference>();
+	private final static ConcurrentMap<ServiceReference, IOsgiImplementationArtifact> services = new ConcurrentHashMap<ServiceReference, IOsgiImplementationArtifact>();
+	
+	private final static Logger LOG = LoggerFactory.getLogger(ServiceHandler.class);
+	
+	
+	/**
+	 * Returns the ImplementationArtifact provided by the specified bundle.
+	 * 
+	 * @param symbolicName of the bundle providing the ImplementationArtifact.
+	 * @param interfaceName implemented by the ImplementationArtifact. Can be
+	 *            <tt>null</tt>.
+	 * @return the ImplementationArtifact or <tt>null</tt> if no such service
+	 *         is registered.
+	 */
+	public static IOsgiImplementationArtifact getImplementationArtifact(String symbolicName, String interfaceName) {
+		
+		ServiceReference reference = null;
+		
+		if (interfaceName != null) {
+			reference = ServiceHandler.references.get(ServiceHandler.getKey(symbolicName, interfaceName));
+		}
+		if (reference == null) {
+			reference = ServiceHandler.references.get(ServiceHandler.getKey(symbolicName, null));
+		}
+		if (reference == null) {
+			return null;
+		}
+		
+		IOsgiImplementationArtifact service = ServiceHandler.services.get(reference);
+		
+		if (service == null) {
+			
+			BundleContext context = Activator.getContext();
+			
+			if (context == null) {
+				return null;
+			}
+			
+			service = (IOsgiImplementationArtifact) context.getService(reference);
+			
+			if (service == null) {
+				return null;
+			}
+			
+			IOsgiImplementationArtifact other = ServiceHandler.services.putIfAbsent(reference, service);
+			
+			if (other != null) {
+				// only one reference per service is held
+				context.ungetService(reference);
+				service = other;
+			}
+		}
+		return service;
+	}
+	
+	/**
+	 * Bind ImplementationArtifact
+	 * 
+	 * @param reference of the ImplementationArtifact service.
+	 */
+	public void bindImplementationArtifact(ServiceReference reference) {
+		if ((reference != null) && (reference.getBundle() != null)) {
+			
+			String key = ServiceHandler.getKey(reference);
+			ServiceHandler.references.put(key, reference);
+			
+			ServiceHandler.LOG.debug("Bind ImplementationArtifact: {} bound.", key);
+		} else {
+			ServiceHandler.LOG.error("Bind ImplementationArtifact: Supplied parameter is null!");
+		}
+	}
+	
+	/**
+	 * Unbind ImplementationArtifact
+	 * 
+	 * @param reference of the ImplementationArtifact service.
+	 */
+	public void unbindImplementationArtifact(ServiceReference reference) {
+		
+		// the bundle of an unregistered service is not known anymore
+		for (String key : ServiceHandler.references.keySet()) {
+			ServiceHandler.references.remove(key, reference);
+		}
+		
+		if ((ServiceHandler.services.remove(reference) != null) && (Activator.getContext() != null)) {
+			Activator.getContext().ungetService(reference);
+		}
+		
+		ServiceHandler.LOG.debug("Unbind ImplementationArtifact unbound.");
+	}
+	
+	private static String getKey(ServiceReference reference) {
+		Object interfaceName = reference.getProperty(IOsgiImplementationArtifact.INTERFACE_NAME);
+		return ServiceHandler.getKey(reference.getBundle().getSymbolicName(), interfaceName != null ? interfaceName.toString() : null);
+	}
+	
+	private static String getKey(String symbolicName, String interfaceName) {
+		return interfaceName != null ? symbolicName + "/" + interfaceName : symbolicName;
+	}
+	
+}
@@ -0,0 +1,27 @@
+package org.opentosca.siengine.plugins.osgi.service.impl.util;
+
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Utility class to define Strings in messages.properties.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart<br>
+ * <br>
+ * 
+ * 
+ */
+public class Messages extends NLS {
+	
+	private static final String BUNDLE_NAME = "org.opentosca.siengine.plugins.osgi.service.impl.util.messages"; //$NON-NLS-1$
+	public static String OsgiSIEnginePlugin_types;
+	
+	static {
+		// initialize resource bundle
+		NLS.initializeMessages(Messages.BUNDLE_NAME, Messages.class);
+	}
+	
+	
+	private Messages() {
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the interface ImplementationArtifacts running as OSGi
+ * bundles inside the container have to provide as OSGi service.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.plugins.osgi.service;
@@ -2,6 +2,8 @@ package org.opentosca.siengine.plugins.rest.service.impl;
 
 import org.apache.camel.core.osgi.OsgiDefaultCamelContext;
 import org.apache.camel.impl.DefaultCamelContext;
+import org.opentosca.settings.Settings;
+import org.opentosca.siengine.plugins.rest.service.impl.transport.AsyncHttpTransport;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -24,6 +26,9 @@ public class Activator implements BundleActivator {
 	
 	public static DefaultCamelContext camelContext;
 	
+	// null if the non-blocking transport is disabled
+	public static AsyncHttpTransport asyncTransport;
+	
 	final private static Logger LOG = LoggerFactory.getLogger(Activator.class);
 	
 	
@@ -38,6 +43,13 @@ public class Activator implements BundleActivator {
 	public void start(BundleContext bundleContext) throws Exception {
 		Activator.camelContext = new OsgiDefaultCamelContext(bundleContext);
 		Activator.camelContext.start();
+		
+		if (Boolean.parseBoolean(Settings.getSetting("siengineRestNonBlockingTransport"))) {
+			AsyncHttpTransport transport = new AsyncHttpTransport(Integer.parseInt(Settings.getSetting("siengineRestNonBlockingThreads")), Integer.parseInt(Settings.getSetting("siengineRestMaxConnectionsPerHost")));
+			transport.start();
+			Activator.asyncTransport = transport;
+		}
+		
 		Activator.LOG.info("REST-PLUGIN-STARTED");
 	}
 	
@@ -50,6 +62,12 @@ public class Activator implements BundleActivator {
 	@Override
 	public void stop(BundleContext bundleContext) throws Exception {
 		Activator.camelContext = null;
+		
+		if (Activator.asyncTransport != null) {
+			Activator.asyncTransport.stop();
+			Activator.asyncTransport = null;
+		}
+		
 		Activator.LOG.info("REST-PLUGIN-STOPPED");
 	}
 	
@@ -1,22 +1,20 @@
 package org.opentosca.siengine.plugins.rest.service.impl;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.ProducerTemplate;
+import org.opentosca.siengine.model.codec.ParamsCodec;
 import org.opentosca.siengine.model.header.SIHeader;
 import org.opentosca.siengine.plugins.rest.service.impl.model.ContentType;
 import org.opentosca.siengine.plugins.rest.service.impl.model.DataAssign;
@@ -25,17 +23,16 @@ import org.opentosca.siengine.plugins.rest.service.impl.model.EndpointType;
 import org.opentosca.siengine.plugins.rest.service.impl.model.MethodeType;
 import org.opentosca.siengine.plugins.rest.service.impl.model.ParamsType;
 import org.opentosca.siengine.plugins.rest.service.impl.util.Messages;
-import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
+import org.opentosca.siengine.plugins.rest.service.impl.transport.AsyncHttpTransport;
+import org.opentosca.siengine.plugins.service.IAsyncSIEnginePluginService;
+import org.opentosca.siengine.plugins.service.InvocationFuture;
+import org.opentosca.siengine.plugins.service.circuitbreaker.CircuitBreaker;
+import org.opentosca.siengine.plugins.service.circuitbreaker.CircuitBreakerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.traversal.DocumentTraversal;
-import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.traversal.NodeIterator;
-import org.xml.sax.InputSource;
 
 /**
  * SIEngine-Plug-in for invoking a service over HTTP.<br>
@@ -47,14 +44,27 @@ import org.xml.sax.InputSource;
  * The Plug-in gets needed information (like endpoint of the service or
  * operation to invoke) from the SI-Engine and creates a HTTP message out of it.
  * The Plug-in supports the transfer of parameters via queryString (both in the
- * URL and the body) and xml formatted in the body.
+ * URL and the body) and xml formatted in the body.<br>
+ * <br>
+ * 
+ * Invocations of an endpoint whose circuit breaker is open are rejected
+ * immediately. The socket timeout of an invocation is derived from the
+ * latencies of the endpoint observed so far.<br>
+ * <br>
+ * 
+ * If the non-blocking transport is enabled (setting
+ * siengineRestNonBlockingTransport), requests are sent by the
+ * {@link AsyncHttpTransport} and asynchronous invocations don't block a thread
+ * until the service answered.
+ * 
+ * @see CircuitBreakerRegistry
  * 
  * 
  * @author Michael Zimmermann - zimmerml@studi.informatik.uni-stuttgart.de
  * 
  * 
  */
-public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
+public class SIEnginePluginRestServiceImpl implements IAsyncSIEnginePluginService {
 	
 	final private static Logger LOG = LoggerFactory.getLogger(SIEnginePluginRestServiceImpl.class);
 	
@@ -68,16 +78,50 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 	final String METHOD = "POST";
 	
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public Exchange invoke(Exchange exchange) {
 		
+		InvocationFuture future = this.send(exchange);
+		
+		try {
+			return future.get();
+			
+		} catch (InterruptedException e) {
+			SIEnginePluginRestServiceImpl.LOG.warn("Interrupted while waiting for the response.");
+			Thread.currentThread().interrupt();
+			return null;
+			
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	@Override
+	public InvocationFuture invokeAsync(Exchange exchange) {
+		return this.send(exchange);
+	}
+	
+	/**
+	 * Creates the HTTP request and sends it. If the non-blocking transport is
+	 * enabled the returned future is completed by one of its threads as soon
+	 * as the response arrived, otherwise the request is sent by the camel http
+	 * component and the returned future is already completed.
+	 * 
+	 * @param exchange containing the invocation information.
+	 * @return future of the exchange containing the response.
+	 */
+	@SuppressWarnings("unchecked")
+	private InvocationFuture send(final Exchange exchange) {
+		
 		Message message = exchange.getIn();
 		
 		Object params = message.getBody();
-		String operationName = message.getHeader(SIHeader.OPERATIONNAME_STRING.toString(), String.class);
+		final String operationName = message.getHeader(SIHeader.OPERATIONNAME_STRING.toString(), String.class);
 		String interfaceName = message.getHeader(SIHeader.INTERFACENAME_STRING.toString(), String.class);
-		String endpoint = message.getHeader(SIHeader.ENDPOINT_URI.toString(), String.class);
+		final String endpoint = message.getHeader(SIHeader.ENDPOINT_URI.toString(), String.class);
 		Document specificContenet = message.getHeader(SIHeader.SPECIFICCONTENT_DOCUMENT.toString(), Document.class);
 		
 		HashMap<String, String> paramsMap = null;
@@ -158,11 +202,12 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 					SIEnginePluginRestServiceImpl.LOG.debug("ContenttypeParam set: params into payload as xml.");
 					
 					if (paramsDoc != null) {
-						body = paramsDoc;
+						body = ParamsCodec.toXML(paramsDoc);
 						
 					} else if (paramsMap != null) {
-						body = this.mapToDoc(operationName, paramsMap);
+						body = ParamsCodec.toXML(operationName, paramsMap);
 					}
+					headers.put(Exchange.CONTENT_TYPE, "text/xml; charset=UTF-8");
 				}
 				// ...as urlencoded String
 				else {
@@ -198,12 +243,62 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 			
 		}
 		
+		final CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getCircuitBreaker(endpoint);
+		
+		if (!circuitBreaker.allowRequest()) {
+			SIEnginePluginRestServiceImpl.LOG.error("Circuit breaker of endpoint {} is open. Invocation aborted!", endpoint);
+			return InvocationFuture.completed(null);
+		}
+		
+		if (Activator.asyncTransport != null) {
+			
+			SIEnginePluginRestServiceImpl.LOG.debug("Invoking with the non-blocking transport.");
+			
+			final InvocationFuture future = new InvocationFuture();
+			final boolean isDocument = isDoc;
+			final long start = System.currentTimeMillis();
+			
+			Activator.asyncTransport.send(headers, body, circuitBreaker.getTimeout(operationName), new AsyncHttpTransport.ResponseHandler() {
+				
+				@Override
+				public void onResponse(String response) {
+					circuitBreaker.recordSuccess(operationName, System.currentTimeMillis() - start);
+					try {
+						future.complete(SIEnginePluginRestServiceImpl.this.createResponseExchange(exchange, response, operationName, isDocument));
+					} catch (RuntimeException e) {
+						future.fail(e);
+					}
+				}
+				
+				@Override
+				public void onFailure(Throwable failure) {
+					SIEnginePluginRestServiceImpl.LOG.error("Invocation of endpoint {} failed: {}", endpoint, failure.getMessage());
+					circuitBreaker.recordFailure();
+					future.fail(failure);
+				}
+			});
+			
+			return future;
+		}
+		
+		// Rounded up to full seconds, as each distinct timeout results in an
+		// own http endpoint.
+		long timeout = ((circuitBreaker.getTimeout(operationName) + 999) / 1000) * 1000;
+		SIEnginePluginRestServiceImpl.LOG.debug("Socket timeout: {} ms", timeout);
+		
 		ProducerTemplate template = Activator.camelContext.createProducerTemplate();
-		String responseString = template.requestBodyAndHeaders("http://dummyhost", body, headers, String.class);
 		
-		exchange = this.createResponseExchange(exchange, responseString, operationName, isDoc);
+		String responseString;
+		long start = System.currentTimeMillis();
+		try {
+			responseString = template.requestBodyAndHeaders("http://dummyhost?httpClient.soTimeout=" + timeout, body, headers, String.class);
+		} catch (RuntimeException e) {
+			circuitBreaker.recordFailure();
+			throw e;
+		}
+		circuitBreaker.recordSuccess(operationName, System.currentTimeMillis() - start);
 		
-		return exchange;
+		return InvocationFuture.completed(this.createResponseExchange(exchange, responseString, operationName, isDoc));
 	}
 	
 	/**
@@ -219,7 +314,7 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 		
 		if (paramsDoc != null) {
 			
-			paramsMap = this.docToMap(paramsDoc);
+			paramsMap = ParamsCodec.toMap(paramsDoc);
 			
 		}
 		
@@ -261,28 +356,6 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 		
 	}
 	
-	/**
-	 * Transfers the given string (if it is valid xml) into Document. *
-	 * 
-	 * @param string to generate Document from.
-	 * @return Document or null if string wasn't valid xml.
-	 */
-	private Document stringToDoc(String string) {
-		
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
-		Document doc = null;
-		try {
-			builder = factory.newDocumentBuilder();
-			doc = builder.parse(new InputSource(new StringReader(string)));
-			
-		} catch (Exception e) {
-			SIEnginePluginRestServiceImpl.LOG.debug("Response isn't xml.");
-			return null;
-		}
-		return doc;
-	}
-	
 	/**
 	 * Transfers the given string (if it is a valid queryString) into a HashMap.
 	 * 
@@ -390,74 +463,6 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 		return null;
 	}
 	
-	/**
-	 * Transfers the document to a map.
-	 * 
-	 * @param doc to be transfered to a map.
-	 * @return transfered map.
-	 */
-	private HashMap<String, String> docToMap(Document doc) {
-		HashMap<String, String> map = new HashMap<String, String>();
-		
-		DocumentTraversal traversal = (DocumentTraversal) doc;
-		NodeIterator iterator = traversal.createNodeIterator(doc.getDocumentElement(), NodeFilter.SHOW_ELEMENT, null, true);
-		
-		for (Node node = iterator.nextNode(); node != null; node = iterator.nextNode()) {
-			
-			String name = ((Element) node).getTagName();
-			StringBuilder content = new StringBuilder();
-			NodeList children = node.getChildNodes();
-			for (int i = 0; i < children.getLength(); i++) {
-				Node child = children.item(i);
-				if (child.getNodeType() == Node.TEXT_NODE) {
-					content.append(child.getTextContent());
-				}
-			}
-			
-			if (!content.toString().trim().isEmpty()) {
-				map.put(name, content.toString());
-			}
-		}
-		
-		return map;
-	}
-	
-	/**
-	 * Transfers the paramsMap into a Document.
-	 * 
-	 * @param operationName as root element.
-	 * @param paramsMap
-	 * 
-	 * @return the created Document.
-	 */
-	private Document mapToDoc(String operationName, HashMap<String, String> paramsMap) {
-		
-		Document document;
-		
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentBuilder = null;
-		try {
-			documentBuilder = documentBuilderFactory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
-		
-		document = documentBuilder.newDocument();
-		
-		Element rootElement = document.createElement(operationName);
-		document.appendChild(rootElement);
-		
-		Element mapElement;
-		for (Entry<String, String> entry : paramsMap.entrySet()) {
-			mapElement = document.createElement(entry.getKey());
-			mapElement.setTextContent(entry.getValue());
-			rootElement.appendChild(mapElement);
-			
-		}
-		
-		return document;
-	}
-	
 	/**
 	 * Alters the exchange with the response of the invoked service depending of
 	 * the type of the body.
@@ -475,11 +480,18 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 		
 		SIEnginePluginRestServiceImpl.LOG.debug("Handling the response: {}.", responseString);
 		
-		Document responseDoc = this.stringToDoc(responseString);
-		HashMap<String, String> responseMap;
+		Document responseDoc = null;
+		HashMap<String, String> responseMap = null;
+		
+		// the xml response is read directly into the needed form
+		if (isDoc) {
+			responseDoc = ParamsCodec.toDocument(responseString);
+		} else {
+			responseMap = ParamsCodec.toMap(responseString);
+		}
 		
 		// response was xml
-		if (responseDoc != null) {
+		if ((responseDoc != null) || (responseMap != null)) {
 			
 			SIEnginePluginRestServiceImpl.LOG.debug("Reponse is xml formatted.");
 			
@@ -490,8 +502,6 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 				
 			} else {
 				
-				SIEnginePluginRestServiceImpl.LOG.debug("Transfering xml response into a Hashmap...");
-				responseMap = this.docToMap(responseDoc);
 				SIEnginePluginRestServiceImpl.LOG.debug("Returning response as HashMap.");
 				exchange.getIn().setBody(responseMap);
 			}
@@ -509,7 +519,7 @@ public class SIEnginePluginRestServiceImpl implements ISIEnginePluginService {
 			else if (isDoc) {
 				
 				SIEnginePluginRestServiceImpl.LOG.debug("Transfering response into xml...");
-				responseDoc = this.mapToDoc(operationName, responseMap);
+				responseDoc = ParamsCodec.toDocument(null, operationName, responseMap);
 				
 				exchange.getIn().setBody(responseDoc);
 				
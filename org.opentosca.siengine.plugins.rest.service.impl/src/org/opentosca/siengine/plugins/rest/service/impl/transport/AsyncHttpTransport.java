@@ -0,0 +1,184 @@
+package org.opentosca.siengine.plugins.rest.service.impl.transport;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.eclipse.jetty.client.ContentExchange;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.opentosca.siengine.model.codec.ParamsCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Non-blocking HTTP transport of the REST-SIEngine-Plug-in.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The transport is based on the NIO client of Jetty: all requests in flight
+ * are multiplexed on a selector, thus a small pool of threads serves any
+ * number of concurrent invocations. No thread waits for the response of a
+ * service, instead the {@link ResponseHandler} of the request is called as
+ * soon as the response arrived.
+ * 
+ * 
+ */
+public class AsyncHttpTransport {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(AsyncHttpTransport.class);
+	
+	private final HttpClient client = new HttpClient();
+	
+	
+	/**
+	 * @param threads maximum number of threads handling the I/O of all
+	 *            requests.
+	 * @param maxConnectionsPerAddress maximum number of concurrent connections
+	 *            to a single host; further requests are queued.
+	 */
+	public AsyncHttpTransport(int threads, int maxConnectionsPerAddress) {
+		
+		QueuedThreadPool threadPool = new QueuedThreadPool(threads);
+		threadPool.setMinThreads(threads);
+		threadPool.setName("SIEngine-REST-Plugin-NIO");
+		threadPool.setDaemon(true);
+		
+		this.client.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+		this.client.setThreadPool(threadPool);
+		this.client.setMaxConnectionsPerAddress(maxConnectionsPerAddress);
+	}
+	
+	public void start() throws Exception {
+		this.client.start();
+		AsyncHttpTransport.LOG.debug("Non-blocking HTTP transport started.");
+	}
+	
+	public void stop() throws Exception {
+		this.client.stop();
+		AsyncHttpTransport.LOG.debug("Non-blocking HTTP transport stopped.");
+	}
+	
+	/**
+	 * Sends a request without waiting for its response.
+	 * 
+	 * @param headers of the request as used by the camel http component
+	 *            (<tt>Exchange.HTTP_URI</tt>, <tt>Exchange.HTTP_PATH</tt>,
+	 *            <tt>Exchange.HTTP_QUERY</tt> and
+	 *            <tt>Exchange.HTTP_METHOD</tt>).
+	 * @param body of the request. Either a String, a Document or
+	 *            <tt>null</tt>. Its content type is taken from
+	 *            <tt>Exchange.CONTENT_TYPE</tt> if set.
+	 * @param timeout in milliseconds after which the request expires.
+	 * @param handler that is called with the response.
+	 */
+	public void send(Map<String, Object> headers, Object body, long timeout, final ResponseHandler handler) {
+		
+		String url = AsyncHttpTransport.createURL(headers);
+		
+		ContentExchange request = new ContentExchange(true) {
+			
+			@Override
+			protected void onResponseComplete() throws IOException {
+				
+				int status = this.getResponseStatus();
+				
+				if ((status < 200) || (status >= 300)) {
+					handler.onFailure(new IOException("Invocation failed with HTTP status " + status + "."));
+				} else {
+					handler.onResponse(this.getResponseContent());
+				}
+			}
+			
+			@Override
+			protected void onConnectionFailed(Throwable throwable) {
+				handler.onFailure(throwable);
+			}
+			
+			@Override
+			protected void onException(Throwable throwable) {
+				handler.onFailure(throwable);
+			}
+			
+			@Override
+			protected void onExpire() {
+				handler.onFailure(new IOException("Invocation timed out."));
+			}
+		};
+		
+		request.setURL(url);
+		request.setMethod((String) headers.get(Exchange.HTTP_METHOD));
+		request.setTimeout(timeout);
+		
+		AsyncHttpTransport.LOG.debug("Sending {} request to {}.", request.getMethod(), url);
+		
+		try {
+			
+			Object contentType = headers.get(Exchange.CONTENT_TYPE);
+			
+			if (body instanceof Document) {
+				request.setRequestContentType(contentType != null ? contentType.toString() : "text/xml; charset=UTF-8");
+				request.setRequestContent(new ByteArrayBuffer(ParamsCodec.toXML((Document) body), "UTF-8"));
+				
+			} else if (body != null) {
+				request.setRequestContentType(contentType != null ? contentType.toString() : "application/x-www-form-urlencoded; charset=UTF-8");
+				request.setRequestContent(new ByteArrayBuffer(body.toString(), "UTF-8"));
+			}
+			
+			this.client.send(request);
+			
+		} catch (IOException e) {
+			handler.onFailure(e);
+		} catch (RuntimeException e) {
+			handler.onFailure(e);
+		}
+	}
+	
+	/**
+	 * Creates the URL of a request the same way the camel http component
+	 * does.
+	 */
+	private static String createURL(Map<String, Object> headers) {
+		
+		StringBuilder url = new StringBuilder(headers.get(Exchange.HTTP_URI).toString());
+		
+		Object path = headers.get(Exchange.HTTP_PATH);
+		
+		if ((path != null) && !path.toString().isEmpty()) {
+			if ((url.charAt(url.length() - 1) != '/') && !path.toString().startsWith("/")) {
+				url.append("/");
+			}
+			url.append(path);
+		}
+		
+		Object query = headers.get(Exchange.HTTP_QUERY);
+		
+		if ((query != null) && !query.toString().isEmpty()) {
+			url.append(url.indexOf("?") < 0 ? "?" : "&").append(query);
+		}
+		
+		return url.toString();
+	}
+	
+	
+	/**
+	 * Handler of the response of a request. It is called by one of the I/O
+	 * threads of the transport, thus it must not block.
+	 */
+	public interface ResponseHandler {
+		
+		/**
+		 * @param response content of the successful response.
+		 */
+		public void onResponse(String response);
+		
+		/**
+		 * @param failure why the request failed or expired.
+		 */
+		public void onFailure(Throwable failure);
+	}
+}
@@ -8,15 +8,6 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
@@ -24,10 +15,11 @@ import org.apache.camel.ProducerTemplate;
 import org.opentosca.core.model.artifact.AbstractArtifact;
 import org.opentosca.core.model.artifact.file.AbstractFile;
 import org.opentosca.core.model.csar.id.CSARID;
-import org.opentosca.model.instancedata.NodeInstance;
-import org.opentosca.model.instancedata.ServiceInstance;
 import org.opentosca.settings.Settings;
+import org.opentosca.siengine.model.codec.ParamsCodec;
 import org.opentosca.siengine.model.header.SIHeader;
+import org.opentosca.siengine.plugins.script.service.impl.cache.HostingChainCache;
+import org.opentosca.siengine.plugins.script.service.impl.cache.HostingChainCache.HostingChain;
 import org.opentosca.siengine.plugins.script.service.impl.servicehandler.ServiceHandler;
 import org.opentosca.siengine.plugins.script.service.impl.util.Messages;
 import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
@@ -126,225 +118,215 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 		
 		String serviceTemplateName = ServiceHandler.toscaEngineService.getNameOfReference(csarID, serviceTemplateID);
 		
+		// InstanceData requested during this invocation by NodeTemplateID
+		Map<String, Document> instanceDataProperties = new HashMap<String, Document>();
+		
+		// the SI-Engine may already have fetched the InstanceData of the
+		// invoked NodeTemplate
+		Document nodeInstanceProperties = message.getHeader(SIHeader.INSTANCEPROPERTIES_DOCUMENT.toString(), Document.class);
+		
+		if ((nodeInstanceProperties != null) && (nodeTemplateID != null)) {
+			instanceDataProperties.put(nodeTemplateID, nodeInstanceProperties);
+		}
+		
 		if (params instanceof HashMap) {
 			
 			@SuppressWarnings("unchecked")
 			HashMap<String, String> paramsMap = (HashMap<String, String>) params;
 			
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder;
+			SIEnginePluginScriptServiceImpl.LOG.debug("Creating the xml request...");
 			
-			Document definitions = null;
+			Document definitions = ParamsCodec.newDocument();
+			Element rootElement = definitions.createElementNS("http://docs.oasis-open.org/tosca/ns/2011/12", "Definitions");
+			rootElement.setAttribute("id", serviceTemplateID.getLocalPart());
+			rootElement.setAttribute("name", serviceTemplateName);
+			rootElement.setAttribute("targetNamespace", "http://www.opentosca.org/script");
+			rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:toscaBase", "http://docs.oasis-open.org/tosca/ns/2011/12/ToscaBaseTypes");
+			rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:s", "http://www.opentosca.org/script");
+			rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+			rootElement.setAttribute("xsi:schemaLocation", "http://docs.oasis-open.org/tosca/ns/2011/12 TOSCA-v1.0-cs02.xsd");
+			definitions.appendChild(rootElement);
 			
-			try {
+			// add ArtifactTemplate or ArtifactSpecificContent
+			if (artifactTemplateNode != null) {
 				
-				SIEnginePluginScriptServiceImpl.LOG.debug("Creating the xml request...");
+				artifactTemplateNode = this.getArtifactTemplateNodeWithResolvedReferences(definitions, artifactTemplateNode, csarID, artifactTemplateID);
 				
-				docBuilder = docFactory.newDocumentBuilder();
-				definitions = docBuilder.newDocument();
-				Element rootElement = definitions.createElementNS("http://docs.oasis-open.org/tosca/ns/2011/12", "Definitions");
-				rootElement.setAttribute("id", serviceTemplateID.getLocalPart());
-				rootElement.setAttribute("name", serviceTemplateName);
-				rootElement.setAttribute("targetNamespace", "http://www.opentosca.org/script");
-				rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:toscaBase", "http://docs.oasis-open.org/tosca/ns/2011/12/ToscaBaseTypes");
-				rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:s", "http://www.opentosca.org/script");
-				rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
-				rootElement.setAttribute("xsi:schemaLocation", "http://docs.oasis-open.org/tosca/ns/2011/12 TOSCA-v1.0-cs02.xsd");
-				definitions.appendChild(rootElement);
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding the ArtifactTemplate...");
 				
-				// add ArtifactTemplate or ArtifactSpecificContent
-				if (artifactTemplateNode != null) {
-					
-					artifactTemplateNode = this.getArtifactTemplateNodeWithResolvedReferences(definitions, artifactTemplateNode, csarID, artifactTemplateID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding the ArtifactTemplate...");
-					
-					rootElement.appendChild(artifactTemplateNode);
-					
-				} else if (artifactSpecificContent != null) {
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("ArtifactTemplate not specified. Adding ArtifactSpecificContent instead...");
-					
-					Element artifactTemplateElement = definitions.createElement("ArtifactTemplate");
-					rootElement.appendChild(artifactTemplateElement);
-					Element content = artifactSpecificContent.getDocumentElement();
-					definitions.adoptNode(content);
-					artifactTemplateElement.appendChild(content);
-				}
+				rootElement.appendChild(artifactTemplateNode);
 				
-				// artifactInstanceContext
-				SIEnginePluginScriptServiceImpl.LOG.debug("Creating ArtifactContext element...");
+			} else if (artifactSpecificContent != null) {
 				
-				Element artifactContext = definitions.createElementNS("http://www.opentosca.org/script", "ArtifactContext");
-				artifactContext.setPrefix("s");
+				SIEnginePluginScriptServiceImpl.LOG.debug("ArtifactTemplate not specified. Adding ArtifactSpecificContent instead...");
 				
-				// Files
-				SIEnginePluginScriptServiceImpl.LOG.debug("Creating files element ...");
+				Element artifactTemplateElement = definitions.createElement("ArtifactTemplate");
+				rootElement.appendChild(artifactTemplateElement);
+				Element content = artifactSpecificContent.getDocumentElement();
+				definitions.adoptNode(content);
+				artifactTemplateElement.appendChild(content);
+			}
+			
+			// artifactInstanceContext
+			SIEnginePluginScriptServiceImpl.LOG.debug("Creating ArtifactContext element...");
+			
+			Element artifactContext = definitions.createElementNS("http://www.opentosca.org/script", "ArtifactContext");
+			artifactContext.setPrefix("s");
+			
+			// Files
+			SIEnginePluginScriptServiceImpl.LOG.debug("Creating files element ...");
+			
+			Element files = definitions.createElement("Files");
+			String url = (SIEnginePluginScriptServiceImpl.CONTAINERA_API_URL + "/CSARs/" + csarID.getFileName() + "/Content/");
+			files.setAttribute("url", url);
+			
+			SIEnginePluginScriptServiceImpl.LOG.debug("Files URL: {}", url);
+			SIEnginePluginScriptServiceImpl.LOG.debug("Adding files element to ArtifactContext...");
+			
+			artifactContext.appendChild(files);
+			
+			// Create OperationParameters element
+			Element operationParameters = null;
+			if (nodeTemplateID != null) {
 				
-				Element files = definitions.createElement("Files");
-				String url = (SIEnginePluginScriptServiceImpl.CONTAINERA_API_URL + "/CSARs/" + csarID.getFileName() + "/Content/");
-				files.setAttribute("url", url);
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating Operation element of NodeType: {} ...", nodeTypeID);
 				
-				SIEnginePluginScriptServiceImpl.LOG.debug("Files URL: {}", url);
-				SIEnginePluginScriptServiceImpl.LOG.debug("Adding files element to ArtifactContext...");
+				operationParameters = this.getOperationParametersOfANodeTypeElement(csarID, nodeTypeID, interfaceName, operationName, paramsMap, definitions);
 				
-				artifactContext.appendChild(files);
+			} else if (relationshipTemplateID != null) {
 				
-				// Create OperationParameters element
-				Element operationParameters = null;
-				if (nodeTemplateID != null) {
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating Operation element of NodeType: {} ...", nodeTypeID);
-					
-					operationParameters = this.getOperationParametersOfANodeTypeElement(csarID, nodeTypeID, interfaceName, operationName, paramsMap, definitions);
-					
-				} else if (relationshipTemplateID != null) {
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating Operation element of RelationshipType: {} ...", relationshipTypeID);
-					
-					operationParameters = this.getOperationParametersOfARelationshipTypeElement(csarID, relationshipTypeID, interfaceName, operationName, paramsMap, definitions);
-				}
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating Operation element of RelationshipType: {} ...", relationshipTypeID);
 				
-				SIEnginePluginScriptServiceImpl.LOG.debug("Adding Operation element to ArtifactContext...");
+				operationParameters = this.getOperationParametersOfARelationshipTypeElement(csarID, relationshipTypeID, interfaceName, operationName, paramsMap, definitions);
+			}
+			
+			SIEnginePluginScriptServiceImpl.LOG.debug("Adding Operation element to ArtifactContext...");
+			
+			artifactContext.appendChild(operationParameters);
+			
+			if (nodeTemplateID != null) {
 				
-				artifactContext.appendChild(operationParameters);
+				// Node element
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating Node element ...");
 				
-				if (nodeTemplateID != null) {
-					
-					// Node element
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating Node element ...");
-					
-					Element node = definitions.createElement("Node");
-					
-					Element nodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding Node element to ArtifactContext...");
-					
-					node.appendChild(nodeProperties);
-					
-					// HostProperties element
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element ...");
-					
-					Element hostElement = this.getHostPropertiesElement(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding host element to ArtifactContext...");
-					
-					node.appendChild(hostElement);
-					artifactContext.appendChild(node);
-					
-				} else if (relationshipTypeID != null) {
-					
-					// Relationship
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating Relationship element ...");
-					
-					Element relationshipElement = definitions.createElement("Relationship");
-					
-					Element boundToElement = definitions.createElement("OperationBoundTo");
-					
-					boolean isBoundToSourceNode = ServiceHandler.toscaEngineService.isOperationOfRelationshipBoundToSourceNode(csarID, relationshipTypeID, interfaceName, operationName);
-					
-					// If not bound to source, the operation has to be bound to
-					// target node.
-					// @TODO: If SourceInterface & TargetInterface both have an
-					// operation with the same name, it is unclear if it is
-					// bound to source or target node. New InputParameter for
-					// SI-Interface needed which specifies if operation is bound
-					// to source or target node.
-					if (isBoundToSourceNode) {
-						boundToElement.setTextContent("source");
-					} else {
-						boundToElement.setTextContent("target");
-					}
-					
-					Element relationshipTemplateProperties = relationshipTemplatePropertiesDoc.getDocumentElement();
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding Relationship element to ArtifactContext...");
-					
-					definitions.adoptNode(relationshipTemplateProperties);
-					relationshipElement.appendChild(boundToElement);
-					relationshipElement.appendChild(relationshipTemplateProperties);
-					artifactContext.appendChild(relationshipElement);
-					
-					// SourceNode
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating SourceNode element to ArtifactContext...");
-					
-					Element sourceNode = definitions.createElement("SourceNode");
-					
-					String sourceNodeTemplate = ServiceHandler.toscaEngineService.getSourceNodeTemplateIDOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
-					
-					// SourceNode: NodeProperties
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating NodeProperties element of the SourceNode...");
-					
-					Element sourceNodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, serviceTemplateName, sourceNodeTemplate, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding NodeProperties element of the SourceNode to SourceNode element...");
-					
-					sourceNode.appendChild(sourceNodeProperties);
-					
-					// SourceNode: HostProperties
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element of the SourceNode...");
-					
-					Element sourceHostProperties = this.getHostPropertiesElement(csarID, serviceTemplateID, serviceTemplateName, sourceNodeTemplate, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding HostProperties element of the SourceNode to SourceNode element...");
-					
-					sourceNode.appendChild(sourceHostProperties);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding SourceNode element to ArtifactContext...");
-					
-					artifactContext.appendChild(sourceNode);
-					
-					// TargetNode
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating TargetNode element to ArtifactContext...");
-					
-					Element targetNode = definitions.createElement("TargetNode");
-					
-					String targetNodeTemplate = ServiceHandler.toscaEngineService.getTargetNodeTemplateIDOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
-					
-					// SourceNode: NodeProperties
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating NodeProperties element of the TargetNode...");
-					
-					Element targetNodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, serviceTemplateName, targetNodeTemplate, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding NodeProperties element of the TargetNode to TargetNode element...");
-					
-					targetNode.appendChild(targetNodeProperties);
-					
-					// SourceNode: HostProperties
-					SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element of the TargetNode...");
-					
-					Element targetHostProperties = this.getHostPropertiesElement(csarID, serviceTemplateID, serviceTemplateName, targetNodeTemplate, definitions, serviceInstanceID);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding HostProperties element of the TargetNode to TargetNode element...");
-					
-					targetNode.appendChild(targetHostProperties);
-					
-					SIEnginePluginScriptServiceImpl.LOG.debug("Adding TargetNode element to ArtifactContext...");
-					
-					artifactContext.appendChild(targetNode);
-					
+				Element node = definitions.createElement("Node");
+				
+				Element nodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, instanceDataProperties, nodeTemplateID, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding Node element to ArtifactContext...");
+				
+				node.appendChild(nodeProperties);
+				
+				// HostProperties element
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element ...");
+				
+				Element hostElement = this.getHostPropertiesElement(csarID, serviceTemplateID, instanceDataProperties, nodeTemplateID, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding host element to ArtifactContext...");
+				
+				node.appendChild(hostElement);
+				artifactContext.appendChild(node);
+				
+			} else if (relationshipTypeID != null) {
+				
+				// Relationship
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating Relationship element ...");
+				
+				Element relationshipElement = definitions.createElement("Relationship");
+				
+				Element boundToElement = definitions.createElement("OperationBoundTo");
+				
+				boolean isBoundToSourceNode = ServiceHandler.toscaEngineService.isOperationOfRelationshipBoundToSourceNode(csarID, relationshipTypeID, interfaceName, operationName);
+				
+				// If not bound to source, the operation has to be bound to
+				// target node.
+				// @TODO: If SourceInterface & TargetInterface both have an
+				// operation with the same name, it is unclear if it is
+				// bound to source or target node. New InputParameter for
+				// SI-Interface needed which specifies if operation is bound
+				// to source or target node.
+				if (isBoundToSourceNode) {
+					boundToElement.setTextContent("source");
+				} else {
+					boundToElement.setTextContent("target");
 				}
 				
-				SIEnginePluginScriptServiceImpl.LOG.debug("Adding ArtifactContext element to Definition...");
+				Element relationshipTemplateProperties = relationshipTemplatePropertiesDoc.getDocumentElement();
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding Relationship element to ArtifactContext...");
+				
+				definitions.adoptNode(relationshipTemplateProperties);
+				relationshipElement.appendChild(boundToElement);
+				relationshipElement.appendChild(relationshipTemplateProperties);
+				artifactContext.appendChild(relationshipElement);
+				
+				// SourceNode
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating SourceNode element to ArtifactContext...");
+				
+				Element sourceNode = definitions.createElement("SourceNode");
+				
+				String sourceNodeTemplate = ServiceHandler.toscaEngineService.getSourceNodeTemplateIDOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
+				
+				// SourceNode: NodeProperties
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating NodeProperties element of the SourceNode...");
+				
+				Element sourceNodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, instanceDataProperties, sourceNodeTemplate, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding NodeProperties element of the SourceNode to SourceNode element...");
+				
+				sourceNode.appendChild(sourceNodeProperties);
+				
+				// SourceNode: HostProperties
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element of the SourceNode...");
+				
+				Element sourceHostProperties = this.getHostPropertiesElement(csarID, serviceTemplateID, instanceDataProperties, sourceNodeTemplate, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding HostProperties element of the SourceNode to SourceNode element...");
+				
+				sourceNode.appendChild(sourceHostProperties);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding SourceNode element to ArtifactContext...");
+				
+				artifactContext.appendChild(sourceNode);
+				
+				// TargetNode
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating TargetNode element to ArtifactContext...");
+				
+				Element targetNode = definitions.createElement("TargetNode");
 				
-				rootElement.appendChild(artifactContext);
+				String targetNodeTemplate = ServiceHandler.toscaEngineService.getTargetNodeTemplateIDOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
 				
-				SIEnginePluginScriptServiceImpl.LOG.debug("Created xml: ");
+				// SourceNode: NodeProperties
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating NodeProperties element of the TargetNode...");
 				
-				TransformerFactory.newInstance().newTransformer().transform(new DOMSource(definitions), new StreamResult(System.out));
+				Element targetNodeProperties = this.getNodePropertiesElement(csarID, serviceTemplateID, instanceDataProperties, targetNodeTemplate, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding NodeProperties element of the TargetNode to TargetNode element...");
+				
+				targetNode.appendChild(targetNodeProperties);
+				
+				// SourceNode: HostProperties
+				SIEnginePluginScriptServiceImpl.LOG.debug("Creating HostProperties element of the TargetNode...");
+				
+				Element targetHostProperties = this.getHostPropertiesElement(csarID, serviceTemplateID, instanceDataProperties, targetNodeTemplate, definitions, serviceInstanceID);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding HostProperties element of the TargetNode to TargetNode element...");
+				
+				targetNode.appendChild(targetHostProperties);
+				
+				SIEnginePluginScriptServiceImpl.LOG.debug("Adding TargetNode element to ArtifactContext...");
+				
+				artifactContext.appendChild(targetNode);
 				
-			} catch (ParserConfigurationException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (TransformerConfigurationException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (TransformerException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (TransformerFactoryConfigurationError e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			}
+			
+			SIEnginePluginScriptServiceImpl.LOG.debug("Adding ArtifactContext element to Definition...");
+			
+			rootElement.appendChild(artifactContext);
+			
+			// serialized only if it is logged
+			if (SIEnginePluginScriptServiceImpl.LOG.isTraceEnabled()) {
+				SIEnginePluginScriptServiceImpl.LOG.trace("Created xml: {}", ParamsCodec.toXML(definitions));
 			}
 			
 			Map<String, Object> headers = new HashMap<String, Object>();
@@ -376,13 +358,13 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 	/**
 	 * @param csarID
 	 * @param serviceTemplateID
-	 * @param serviceTemplateName
+	 * @param instanceDataProperties
 	 * @param nodeTemplateID
 	 * @param definitions
 	 * @param serviceInstanceID
 	 * @return
 	 */
-	private Element getNodePropertiesElement(CSARID csarID, QName serviceTemplateID, String serviceTemplateName, String nodeTemplateID, Document definitions, URI serviceInstanceID) {
+	private Element getNodePropertiesElement(CSARID csarID, QName serviceTemplateID, Map<String, Document> instanceDataProperties, String nodeTemplateID, Document definitions, URI serviceInstanceID) {
 		
 		String nodeTypeName = ServiceHandler.toscaEngineService.getNodeTypeOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID).getLocalPart();
 		
@@ -392,7 +374,7 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 		Element propsElement = null;
 		
 		SIEnginePluginScriptServiceImpl.LOG.debug("Requesting stored InstanceData for NodeTemplate: {} ", nodeTemplateID);
-		Document props = this.getInstanceDataProperties(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, serviceInstanceID);
+		Document props = this.getInstanceDataProperties(serviceTemplateID, instanceDataProperties, nodeTemplateID, serviceInstanceID);
 		
 		if (props != null) {
 			SIEnginePluginScriptServiceImpl.LOG.debug("No InstanceData stored for NodeTemplate {}. Using default properties.", nodeTemplateID);
@@ -421,7 +403,7 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 	 * 
 	 * @param csarID
 	 * @param serviceTemplateID
-	 * @param serviceTemplateName
+	 * @param instanceDataProperties
 	 * @param nodeTemplateID
 	 * @param definitions
 	 * @param serviceInstanceID
@@ -430,9 +412,9 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 	 * 
 	 * @return host element.
 	 */
-	private Element getHostPropertiesElement(CSARID csarID, QName serviceTemplateID, String serviceTemplateName, String nodeTemplateID, Document definitions, URI serviceInstanceID) {
+	private Element getHostPropertiesElement(CSARID csarID, QName serviceTemplateID, Map<String, Document> instanceDataProperties, String nodeTemplateID, Document definitions, URI serviceInstanceID) {
 		
-		String hostNodeTemplateID = this.getOperatingSystemNodeTemplateID(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, serviceInstanceID);
+		String hostNodeTemplateID = this.getOperatingSystemNodeTemplateID(csarID, serviceTemplateID, instanceDataProperties, nodeTemplateID, serviceInstanceID);
 		
 		Element hostPropertiesElement = definitions.createElement("HostProperties");
 		
@@ -446,7 +428,7 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 			
 			SIEnginePluginScriptServiceImpl.LOG.debug("Requesting stored InstanceData for NodeTemplate: {} ", hostNodeTemplateID);
 			
-			Document props = this.getInstanceDataProperties(csarID, serviceTemplateID, serviceTemplateName, hostNodeTemplateID, serviceInstanceID);
+			Document props = this.getInstanceDataProperties(serviceTemplateID, instanceDataProperties, hostNodeTemplateID, serviceInstanceID);
 			
 			if (props != null) {
 				SIEnginePluginScriptServiceImpl.LOG.debug("No InstanceData stored for NodeTemplate {}. Using default properties.", hostNodeTemplateID);
@@ -470,49 +452,89 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 	 * underneath the defined nodeTemplate containing the three properties
 	 * address, SSSHUser & SSHPrivateKey.
 	 * 
+	 * The hosting chain of the nodeTemplate is resolved only once per
+	 * ServiceTemplate and taken from the HostingChainCache afterwards. Only
+	 * the InstanceData of the NodeTemplates of the chain are requested for
+	 * each invocation.
+	 * 
 	 * @param csarID
 	 * @param serviceTemplateID
-	 * @param serviceTemplateName
+	 * @param instanceDataProperties
 	 * @param nodeTemplateID
 	 * @param serviceInstanceID
 	 * @return
 	 */
-	private String getOperatingSystemNodeTemplateID(CSARID csarID, QName serviceTemplateID, String serviceTemplateName, String nodeTemplateID, URI serviceInstanceID) {
+	private String getOperatingSystemNodeTemplateID(CSARID csarID, QName serviceTemplateID, Map<String, Document> instanceDataProperties, String nodeTemplateID, URI serviceInstanceID) {
 		
 		SIEnginePluginScriptServiceImpl.LOG.debug("Searching the OperatingSystemNode of NodeTemplate: {} ...", nodeTemplateID);
 		
-		Document propsDefaults = ServiceHandler.toscaEngineService.getPropertiesOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID);
-		Document propsInstanceData = this.getInstanceDataProperties(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, serviceInstanceID);
+		HostingChain chain = HostingChainCache.get(csarID, serviceTemplateID, nodeTemplateID);
 		
-		QName relationshipType = new QName(SIEnginePluginScriptServiceImpl.HOSTED_ON_NAMESPACE, SIEnginePluginScriptServiceImpl.HOSTED_ON_LOCALPART);
+		if (chain == null) {
+			chain = this.resolveHostingChain(csarID, serviceTemplateID, nodeTemplateID);
+			HostingChainCache.put(csarID, serviceTemplateID, chain);
+		} else {
+			SIEnginePluginScriptServiceImpl.LOG.debug("Using cached hosting chain: {}", chain);
+		}
 		
-		while ((!this.isOperatingSystemNode(propsDefaults)) && (!this.isOperatingSystemNode(propsInstanceData)) && (nodeTemplateID != null)) {
+		for (int i = 0; i < chain.size(); i++) {
 			
-			SIEnginePluginScriptServiceImpl.LOG.debug("{} isn't the OperatingSystemNode.", nodeTemplateID);
-			SIEnginePluginScriptServiceImpl.LOG.debug("Getting the underneath Node for checking if it is the OperatingSystemNode...");
+			String chainNodeTemplateID = chain.getNodeTemplateID(i);
 			
-			nodeTemplateID = ServiceHandler.toscaEngineService.getRelatedNodeTemplateID(csarID, serviceTemplateID, nodeTemplateID, relationshipType);
-			
-			if (nodeTemplateID != null) {
-				SIEnginePluginScriptServiceImpl.LOG.debug("Checking if the underneath Node: {} is the OperatingSystemNode.", nodeTemplateID);
-				
-				propsDefaults = ServiceHandler.toscaEngineService.getPropertiesOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID);
-				propsInstanceData = this.getInstanceDataProperties(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, serviceInstanceID);
-				
-			} else {
-				SIEnginePluginScriptServiceImpl.LOG.debug("No underneath Node found.");
+			if (chain.isOperatingSystemNodeByDefaults(i) || this.isOperatingSystemNode(this.getInstanceDataProperties(serviceTemplateID, instanceDataProperties, chainNodeTemplateID, serviceInstanceID))) {
+				SIEnginePluginScriptServiceImpl.LOG.debug("OperatingSystemNode found: {}", chainNodeTemplateID);
+				return chainNodeTemplateID;
 			}
 			
+			SIEnginePluginScriptServiceImpl.LOG.debug("{} isn't the OperatingSystemNode.", chainNodeTemplateID);
 		}
 		
-		if (nodeTemplateID != null) {
-			SIEnginePluginScriptServiceImpl.LOG.debug("OperatingSystemNode found: {}", nodeTemplateID);
-		}
+		SIEnginePluginScriptServiceImpl.LOG.debug("No underneath Node found.");
 		
-		return nodeTemplateID;
+		return null;
 		
 	}
 	
+	/**
+	 * Resolves the hosting chain of the defined nodeTemplate by following the
+	 * hostedOn relationships until a Node is reached whose default properties
+	 * identify it as OperatingSystemNode or no underneath Node exists.
+	 * 
+	 * @param csarID
+	 * @param serviceTemplateID
+	 * @param nodeTemplateID
+	 * @return the hosting chain starting with the nodeTemplate itself.
+	 */
+	private HostingChain resolveHostingChain(CSARID csarID, QName serviceTemplateID, String nodeTemplateID) {
+		
+		SIEnginePluginScriptServiceImpl.LOG.debug("Resolving the hosting chain of NodeTemplate: {} ...", nodeTemplateID);
+		
+		QName relationshipType = new QName(SIEnginePluginScriptServiceImpl.HOSTED_ON_NAMESPACE, SIEnginePluginScriptServiceImpl.HOSTED_ON_LOCALPART);
+		
+		List<String> nodeTemplateIDs = new ArrayList<String>();
+		List<Boolean> operatingSystemNodes = new ArrayList<Boolean>();
+		
+		// the contains check prevents endless loops on cyclic topologies
+		while ((nodeTemplateID != null) && !nodeTemplateIDs.contains(nodeTemplateID)) {
+			
+			Document propsDefaults = ServiceHandler.toscaEngineService.getPropertiesOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID);
+			boolean isOperatingSystemNode = this.isOperatingSystemNode(propsDefaults);
+			
+			nodeTemplateIDs.add(nodeTemplateID);
+			operatingSystemNodes.add(isOperatingSystemNode);
+			
+			if (isOperatingSystemNode) {
+				break;
+			}
+			
+			SIEnginePluginScriptServiceImpl.LOG.debug("Getting the underneath Node of {} ...", nodeTemplateID);
+			
+			nodeTemplateID = ServiceHandler.toscaEngineService.getRelatedNodeTemplateID(csarID, serviceTemplateID, nodeTemplateID, relationshipType);
+		}
+		
+		return new HostingChain(nodeTemplateIDs, operatingSystemNodes);
+	}
+	
 	/**
 	 * Checks if the passed xml document contains the needed properties
 	 * identifying an OperationSystem Node.
@@ -709,47 +731,43 @@ public class SIEnginePluginScriptServiceImpl implements ISIEnginePluginService {
 	}
 	
 	/**
-	 * @param csarID
+	 * Returns the properties of the latest NodeInstance of the NodeTemplate.
+	 * The InstanceData of each NodeTemplate is requested at most once per
+	 * invocation, afterwards it is taken from instanceDataProperties.
+	 * 
 	 * @param serviceTemplateID
-	 * @param serviceTemplateName
+	 * @param instanceDataProperties InstanceData already requested during this
+	 *            invocation.
 	 * @param nodeTemplateID
 	 * @param serviceInstanceID
-	 * @return the in the InstanceService stored properties for the specified
-	 *         parameters or null if it can not be found.
+	 * @return a copy of the in the InstanceService stored properties for the
+	 *         specified parameters, which can be adopted by the caller, or null
+	 *         if it can not be found.
 	 */
-	private Document getInstanceDataProperties(CSARID csarID, QName serviceTemplateID, String serviceTemplateName, String nodeTemplateID, URI serviceInstanceID) {
+	private Document getInstanceDataProperties(QName serviceTemplateID, Map<String, Document> instanceDataProperties, String nodeTemplateID, URI serviceInstanceID) {
 		
-		if (serviceInstanceID != null) {
-			
-			List<ServiceInstance> serviceInstanceList = ServiceHandler.instanceDataService.getServiceInstances(serviceInstanceID, serviceTemplateName, serviceTemplateID);
+		if (serviceInstanceID == null) {
+			return null;
+		}
+		
+		if (!instanceDataProperties.containsKey(nodeTemplateID)) {
 			
 			QName nodeTemplateQName = new QName(serviceTemplateID.getNamespaceURI(), nodeTemplateID);
 			
-			for (ServiceInstance serviceInstance : serviceInstanceList) {
-				
-				if (serviceInstance.getCSAR_ID().toString().equals(csarID.toString())) {
-					
-					List<NodeInstance> nodeInstanceList = serviceInstance.getNodeInstances();
-					
-					for (NodeInstance nodeInstance : nodeInstanceList) {
-						
-						if (nodeInstance.getNodeTemplateID().equals(nodeTemplateQName)) {
-							
-							return nodeInstance.getProperties();
-							
-						} else {
-							SIEnginePluginScriptServiceImpl.LOG.debug("No InstanceData found for NodeTemplate: {}.", nodeTemplateQName);
-						}
-						
-					}
-					
-				} else {
-					SIEnginePluginScriptServiceImpl.LOG.debug("No InstanceData found for CsarID: " + csarID + ", ServiceTemplateID: " + serviceTemplateID + ", ServiceTemplateName: " + serviceTemplateName + " and ServiceInstanceID: " + serviceInstanceID);
-				}
-			}
+			Document props = ServiceHandler.instanceDataService.getNodeInstanceProperties(serviceInstanceID, nodeTemplateQName);
 			
+			if (props == null) {
+				SIEnginePluginScriptServiceImpl.LOG.debug("No InstanceData found for NodeTemplate: {}.", nodeTemplateQName);
+			}
+			instanceDataProperties.put(nodeTemplateID, props);
 		}
-		return null;
+		
+		Document props = instanceDataProperties.get(nodeTemplateID);
+		
+		if (props == null) {
+			return null;
+		}
+		return (Document) props.cloneNode(true);
 	}
 	
 	/**
@@ -0,0 +1,176 @@
+package org.opentosca.siengine.plugins.script.service.impl.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+import org.opentosca.core.model.csar.id.CSARID;
+import org.opentosca.toscaengine.service.IToscaEngineService;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the hosting chains of NodeTemplates for the SIEngine-ScriptPlugin.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A hosting chain starts at a NodeTemplate and follows the hostedOn
+ * relationships down to the first NodeTemplate whose properties identify it
+ * as OperatingSystemNode (or to the last NodeTemplate of the stack if there
+ * is none). The chains are resolved lazily per ServiceTemplate and are
+ * dropped as soon as the ToscaEngine deletes the content of the CSAR.
+ * 
+ * 
+ * @see IToscaEngineService#CSAR_CONTENT_CLEARED_TOPIC
+ * 
+ */
+public class HostingChainCache implements EventHandler {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(HostingChainCache.class);
+	
+	// CSARID -> ServiceTemplateID -> NodeTemplateID -> HostingChain
+	private static final ConcurrentMap<CSARID, ConcurrentMap<QName, ConcurrentMap<String, HostingChain>>> cache = new ConcurrentHashMap<CSARID, ConcurrentMap<QName, ConcurrentMap<String, HostingChain>>>();
+	
+	
+	/**
+	 * Returns the cached hosting chain of a NodeTemplate.
+	 * 
+	 * @param csarID
+	 * @param serviceTemplateID
+	 * @param nodeTemplateID
+	 * @return the hosting chain or null if it is not cached yet.
+	 */
+	public static HostingChain get(CSARID csarID, QName serviceTemplateID, String nodeTemplateID) {
+		
+		ConcurrentMap<QName, ConcurrentMap<String, HostingChain>> serviceTemplates = HostingChainCache.cache.get(csarID);
+		
+		if (serviceTemplates != null) {
+			ConcurrentMap<String, HostingChain> chains = serviceTemplates.get(serviceTemplateID);
+			
+			if (chains != null) {
+				return chains.get(nodeTemplateID);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Stores a resolved hosting chain. As each NodeTemplate of the chain has
+	 * the remaining part of the chain as own hosting chain, these are stored
+	 * as well.
+	 * 
+	 * @param csarID
+	 * @param serviceTemplateID
+	 * @param chain resolved hosting chain.
+	 */
+	public static void put(CSARID csarID, QName serviceTemplateID, HostingChain chain) {
+		
+		ConcurrentMap<QName, ConcurrentMap<String, HostingChain>> serviceTemplates = HostingChainCache.cache.get(csarID);
+		
+		if (serviceTemplates == null) {
+			serviceTemplates = new ConcurrentHashMap<QName, ConcurrentMap<String, HostingChain>>();
+			ConcurrentMap<QName, ConcurrentMap<String, HostingChain>> existing = HostingChainCache.cache.putIfAbsent(csarID, serviceTemplates);
+			if (existing != null) {
+				serviceTemplates = existing;
+			}
+		}
+		
+		ConcurrentMap<String, HostingChain> chains = serviceTemplates.get(serviceTemplateID);
+		
+		if (chains == null) {
+			chains = new ConcurrentHashMap<String, HostingChain>();
+			ConcurrentMap<String, HostingChain> existing = serviceTemplates.putIfAbsent(serviceTemplateID, chains);
+			if (existing != null) {
+				chains = existing;
+			}
+		}
+		
+		for (int i = 0; i < chain.size(); i++) {
+			HostingChain subChain = chain.subChain(i);
+			chains.putIfAbsent(subChain.getNodeTemplateID(0), subChain);
+		}
+		
+		HostingChainCache.LOG.debug("Cached hosting chain {} of ServiceTemplate {}.", chain, serviceTemplateID);
+	}
+	
+	/**
+	 * Drops all cached hosting chains of a CSAR.
+	 * 
+	 * @param csarID
+	 */
+	public static void invalidate(CSARID csarID) {
+		if (HostingChainCache.cache.remove(csarID) != null) {
+			HostingChainCache.LOG.debug("Dropped the cached hosting chains of CSAR {}.", csarID);
+		}
+	}
+	
+	@Override
+	public void handleEvent(Event event) {
+		
+		if (IToscaEngineService.CSAR_CONTENT_CLEARED_TOPIC.equals(event.getTopic())) {
+			
+			Object csarID = event.getProperty("CSARID");
+			
+			if (csarID instanceof CSARID) {
+				HostingChainCache.invalidate((CSARID) csarID);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Immutable hosting chain of a NodeTemplate. For each NodeTemplate of the
+	 * chain it is stored if its default properties already identify it as
+	 * OperatingSystemNode, thus this has only to be checked against the
+	 * InstanceData at invocation time.
+	 */
+	public static class HostingChain {
+		
+		private final List<String> nodeTemplateIDs;
+		private final List<Boolean> operatingSystemNodes;
+		
+		
+		public HostingChain(List<String> nodeTemplateIDs, List<Boolean> operatingSystemNodes) {
+			this.nodeTemplateIDs = Collections.unmodifiableList(new ArrayList<String>(nodeTemplateIDs));
+			this.operatingSystemNodes = Collections.unmodifiableList(new ArrayList<Boolean>(operatingSystemNodes));
+		}
+		
+		public int size() {
+			return this.nodeTemplateIDs.size();
+		}
+		
+		public String getNodeTemplateID(int index) {
+			return this.nodeTemplateIDs.get(index);
+		}
+		
+		/**
+		 * @param index of the NodeTemplate in the chain.
+		 * @return if the default properties of the NodeTemplate identify it as
+		 *         OperatingSystemNode.
+		 */
+		public boolean isOperatingSystemNodeByDefaults(int index) {
+			return this.operatingSystemNodes.get(index);
+		}
+		
+		HostingChain subChain(int fromIndex) {
+			if (fromIndex == 0) {
+				return this;
+			}
+			return new HostingChain(this.nodeTemplateIDs.subList(fromIndex, this.size()), this.operatingSystemNodes.subList(fromIndex, this.size()));
+		}
+		
+		@Override
+		public String toString() {
+			return this.nodeTemplateIDs.toString();
+		}
+	}
+	
+}
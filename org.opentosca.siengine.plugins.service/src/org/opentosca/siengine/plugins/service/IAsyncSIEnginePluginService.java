@@ -0,0 +1,33 @@
+package org.opentosca.siengine.plugins.service;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Interface of the SIEngine-Plug-ins supporting asynchronous invocations.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Such a Plug-in returns immediately and completes the returned future as
+ * soon as the invoked service answered. The Plug-in is registered as
+ * {@link ISIEnginePluginService} like every other Plug-in.
+ * 
+ * 
+ */
+public interface IAsyncSIEnginePluginService extends ISIEnginePluginService {
+	
+	/**
+	 * Invokes a service like an ImplementationArtifact asynchronously.
+	 * 
+	 * @param exchange contains all needed information like endpoint of the
+	 *            service, the operation to invoke and the data to be
+	 *            transferred.
+	 * 
+	 * @return future that is completed with the exchange containing the
+	 *         response of the invoked service as body of the message.
+	 * 
+	 */
+	public InvocationFuture invokeAsync(Exchange exchange);
+	
+}
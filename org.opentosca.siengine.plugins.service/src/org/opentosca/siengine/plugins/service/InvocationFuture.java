@@ -0,0 +1,178 @@
+package org.opentosca.siengine.plugins.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Result of an asynchronous invocation of a SIEngine-Plug-in.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Besides waiting for the result like for every other {@link Future},
+ * listeners can be registered that are notified as soon as the invocation is
+ * completed. Thus the caller doesn't need to block a thread per invocation.
+ * 
+ * 
+ * @see IAsyncSIEnginePluginService
+ * 
+ */
+public class InvocationFuture implements Future<Exchange> {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(InvocationFuture.class);
+	
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final List<Listener> listeners = new ArrayList<Listener>();
+	
+	private volatile Exchange response;
+	private volatile Throwable failure;
+	private volatile boolean cancelled = false;
+	
+	
+	/**
+	 * @param response of an invocation that was executed synchronously.
+	 * @return an already completed future.
+	 */
+	public static InvocationFuture completed(Exchange response) {
+		InvocationFuture future = new InvocationFuture();
+		future.complete(response);
+		return future;
+	}
+	
+	/**
+	 * Completes the invocation.
+	 * 
+	 * @param response exchange containing the response of the invoked service
+	 *            or <tt>null</tt> if the invocation was aborted.
+	 * @return <tt>false</tt> if the invocation was already completed.
+	 */
+	public boolean complete(Exchange response) {
+		return this.finish(response, null, false);
+	}
+	
+	/**
+	 * Completes the invocation with a failure.
+	 * 
+	 * @param failure of the invocation.
+	 * @return <tt>false</tt> if the invocation was already completed.
+	 */
+	public boolean fail(Throwable failure) {
+		return this.finish(null, failure, false);
+	}
+	
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return this.finish(null, null, true);
+	}
+	
+	private boolean finish(Exchange response, Throwable failure, boolean cancelled) {
+		
+		List<Listener> toNotify;
+		
+		synchronized (this) {
+			
+			if (this.isDone()) {
+				return false;
+			}
+			
+			this.response = response;
+			this.failure = failure;
+			this.cancelled = cancelled;
+			this.latch.countDown();
+			
+			toNotify = new ArrayList<Listener>(this.listeners);
+			this.listeners.clear();
+		}
+		
+		for (Listener listener : toNotify) {
+			this.notify(listener);
+		}
+		return true;
+	}
+	
+	/**
+	 * Registers a listener. If the invocation is already completed, the
+	 * listener is notified immediately by the calling thread.
+	 * 
+	 * @param listener to notify.
+	 */
+	public void addListener(Listener listener) {
+		
+		synchronized (this) {
+			if (!this.isDone()) {
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		this.notify(listener);
+	}
+	
+	private void notify(Listener listener) {
+		try {
+			listener.invocationCompleted(this);
+		} catch (RuntimeException e) {
+			InvocationFuture.LOG.error("Listener of an invocation failed.", e);
+		}
+	}
+	
+	@Override
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+	
+	@Override
+	public boolean isDone() {
+		return this.latch.getCount() == 0;
+	}
+	
+	@Override
+	public Exchange get() throws InterruptedException, ExecutionException {
+		this.latch.await();
+		return this.getResult();
+	}
+	
+	@Override
+	public Exchange get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		
+		if (!this.latch.await(timeout, unit)) {
+			throw new TimeoutException("The invocation is not completed yet.");
+		}
+		return this.getResult();
+	}
+	
+	private Exchange getResult() throws ExecutionException {
+		
+		if (this.cancelled) {
+			throw new CancellationException();
+		}
+		if (this.failure != null) {
+			throw new ExecutionException(this.failure);
+		}
+		return this.response;
+	}
+	
+	
+	/**
+	 * Listener of an invocation.
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called as soon as the invocation is completed, failed or cancelled.
+		 * 
+		 * @param future of the completed invocation.
+		 */
+		public void invocationCompleted(InvocationFuture future);
+	}
+}
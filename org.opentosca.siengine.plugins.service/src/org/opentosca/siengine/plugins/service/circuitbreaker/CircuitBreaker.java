@@ -0,0 +1,217 @@
+package org.opentosca.siengine.plugins.service.circuitbreaker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of an endpoint invoked by a SIEngine-Plug-in.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The breaker is <tt>CLOSED</tt> as long as the endpoint answers. After the
+ * configured number of consecutive failures it is <tt>OPEN</tt> and
+ * invocations are rejected immediately. When the open time elapsed, the
+ * breaker is <tt>HALF_OPEN</tt> and lets a single probe invocation pass: if it
+ * succeeds the breaker closes again, otherwise it opens again.<br>
+ * <br>
+ * 
+ * Additionally the breaker keeps a latency histogram per operation of the
+ * endpoint, from which the timeout of the next invocation of the operation is
+ * derived. Thus e.g. many fast status calls don't shorten the timeout of a
+ * long-running installation of the same endpoint.
+ * 
+ * 
+ * @see CircuitBreakerRegistry
+ * 
+ */
+public class CircuitBreaker {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+	
+	
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+	
+	
+	private final String endpoint;
+	private final CircuitBreakerRegistry.Configuration config;
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+	private long probeStartedAt = 0;
+	
+	
+	CircuitBreaker(String endpoint, CircuitBreakerRegistry.Configuration config) {
+		this.endpoint = endpoint;
+		this.config = config;
+	}
+	
+	/**
+	 * Checks if the endpoint may be invoked now. If the breaker is half-open,
+	 * the caller is the probe and has to report its result.
+	 * 
+	 * @return <tt>true</tt> if the invocation may pass, <tt>false</tt> if it
+	 *         has to be rejected.
+	 */
+	public synchronized boolean allowRequest() {
+		
+		long now = System.currentTimeMillis();
+		
+		switch (this.state) {
+			case CLOSED:
+				return true;
+			
+			case OPEN:
+				if ((now - this.openedAt) < this.config.openTime) {
+					return false;
+				}
+				CircuitBreaker.LOG.info("Circuit breaker of endpoint {} is half-open. Letting a probe invocation pass.", this.endpoint);
+				this.state = State.HALF_OPEN;
+				this.probeStartedAt = now;
+				return true;
+			
+			default:
+				// a probe that never reported must not block the endpoint
+				// forever
+				if ((now - this.probeStartedAt) < this.config.openTime) {
+					return false;
+				}
+				this.probeStartedAt = now;
+				return true;
+		}
+	}
+	
+	/**
+	 * Checks without changing the state of the breaker if an invocation would
+	 * pass now, e.g. to choose between several replicas of an endpoint.
+	 * 
+	 * @return <tt>false</tt> if {@link #allowRequest()} would reject an
+	 *         invocation now.
+	 */
+	public synchronized boolean isAvailable() {
+		
+		long now = System.currentTimeMillis();
+		
+		switch (this.state) {
+			case CLOSED:
+				return true;
+			
+			case OPEN:
+				return (now - this.openedAt) >= this.config.openTime;
+			
+			default:
+				return (now - this.probeStartedAt) >= this.config.openTime;
+		}
+	}
+	
+	/**
+	 * Reports a successful invocation and records its latency.
+	 * 
+	 * @param operation name of the invoked operation. May be <tt>null</tt>.
+	 * @param latency of the invocation in milliseconds.
+	 */
+	public synchronized void recordSuccess(String operation, long latency) {
+		this.getHistogram(operation).record(latency);
+		this.recordSuccess();
+	}
+	
+	/**
+	 * Reports a successful invocation whose latency says nothing about the
+	 * processing time of the endpoint (e.g. a one-way invocation).
+	 */
+	public synchronized void recordSuccess() {
+		
+		this.consecutiveFailures = 0;
+		
+		if (this.state != State.CLOSED) {
+			CircuitBreaker.LOG.info("Endpoint {} answered again. Closing its circuit breaker.", this.endpoint);
+			this.state = State.CLOSED;
+		}
+	}
+	
+	/**
+	 * Reports a failed or timed out invocation.
+	 */
+	public synchronized void recordFailure() {
+		
+		this.consecutiveFailures++;
+		
+		if ((this.state == State.HALF_OPEN) || ((this.state == State.CLOSED) && (this.consecutiveFailures >= this.config.failureThreshold))) {
+			CircuitBreaker.LOG.warn("Endpoint {} failed {} times in a row. Opening its circuit breaker for {} ms.", this.endpoint, this.consecutiveFailures, this.config.openTime);
+			this.state = State.OPEN;
+			this.openedAt = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Returns the timeout for the next invocation of an operation of the
+	 * endpoint. As long as too few latencies of the operation are known the
+	 * maximum timeout is used, afterwards the configured percentile of its
+	 * latencies multiplied with the configured factor, bounded by the minimum
+	 * and maximum timeout.
+	 * 
+	 * @param operation name of the operation. May be <tt>null</tt>.
+	 * @return timeout in milliseconds.
+	 */
+	public long getTimeout(String operation) {
+		
+		LatencyHistogram histogram = this.getHistogram(operation);
+		
+		if (histogram.getCount() < this.config.timeoutMinSamples) {
+			return this.config.timeoutMax;
+		}
+		
+		long timeout = (long) (histogram.getPercentile(this.config.timeoutPercentile) * this.config.timeoutMultiplier);
+		
+		return Math.max(this.config.timeoutMin, Math.min(this.config.timeoutMax, timeout));
+	}
+	
+	public synchronized State getState() {
+		return this.state;
+	}
+	
+	public String getEndpoint() {
+		return this.endpoint;
+	}
+	
+	/**
+	 * Returns the latency histogram of an operation and creates it if needed.
+	 * 
+	 * @param operation name of the operation. May be <tt>null</tt>.
+	 * @return the histogram of the operation.
+	 */
+	public LatencyHistogram getHistogram(String operation) {
+		
+		String key = operation != null ? operation : "";
+		LatencyHistogram histogram = this.histograms.get(key);
+		
+		if (histogram == null) {
+			histogram = new LatencyHistogram(this.config.histogramDecayThreshold);
+			LatencyHistogram existing = this.histograms.putIfAbsent(key, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+	
+	@Override
+	public String toString() {
+		
+		StringBuilder builder = new StringBuilder(this.endpoint + " " + this.getState());
+		
+		for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+			builder.append(" ").append(entry.getKey()).append(": ").append(entry.getValue()).append(" timeout=").append(this.getTimeout(entry.getKey())).append("ms");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,83 @@
+package org.opentosca.siengine.plugins.service.circuitbreaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opentosca.settings.Settings;
+
+/**
+ * Registry of the circuit breakers of the endpoints invoked by the
+ * SIEngine-Plug-ins.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Each endpoint has exactly one circuit breaker, which is shared by all
+ * Plug-ins invoking it. The behavior of the breakers is configured by the
+ * siengineCircuitBreaker* and siengineTimeout* settings.
+ * 
+ * 
+ * @see CircuitBreaker
+ * 
+ */
+public class CircuitBreakerRegistry {
+	
+	private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	
+	private static volatile Configuration config;
+	
+	
+	/**
+	 * Returns the circuit breaker of an endpoint and creates it if needed.
+	 * 
+	 * @param endpoint URI of the endpoint.
+	 * @return the circuit breaker of the endpoint.
+	 */
+	public static CircuitBreaker getCircuitBreaker(String endpoint) {
+		
+		CircuitBreaker breaker = CircuitBreakerRegistry.breakers.get(endpoint);
+		
+		if (breaker == null) {
+			breaker = new CircuitBreaker(endpoint, CircuitBreakerRegistry.getConfiguration());
+			CircuitBreaker existing = CircuitBreakerRegistry.breakers.putIfAbsent(endpoint, breaker);
+			if (existing != null) {
+				breaker = existing;
+			}
+		}
+		return breaker;
+	}
+	
+	/**
+	 * @return the circuit breakers of all endpoints invoked so far.
+	 */
+	public static List<CircuitBreaker> getCircuitBreakers() {
+		return new ArrayList<CircuitBreaker>(CircuitBreakerRegistry.breakers.values());
+	}
+	
+	private static Configuration getConfiguration() {
+		
+		if (CircuitBreakerRegistry.config == null) {
+			CircuitBreakerRegistry.config = new Configuration();
+		}
+		return CircuitBreakerRegistry.config;
+	}
+	
+	
+	/**
+	 * Configuration of the circuit breakers read from the settings.
+	 */
+	static class Configuration {
+		
+		final int failureThreshold = Integer.parseInt(Settings.getSetting("siengineCircuitBreakerFailureThreshold"));
+		final long openTime = Long.parseLong(Settings.getSetting("siengineCircuitBreakerOpenTime"));
+		final double timeoutPercentile = Double.parseDouble(Settings.getSetting("siengineTimeoutPercentile"));
+		final double timeoutMultiplier = Double.parseDouble(Settings.getSetting("siengineTimeoutMultiplier"));
+		final long timeoutMin = Long.parseLong(Settings.getSetting("siengineTimeoutMin"));
+		final long timeoutMax = Long.parseLong(Settings.getSetting("siengineTimeoutMax"));
+		final long timeoutMinSamples = Long.parseLong(Settings.getSetting("siengineTimeoutMinSamples"));
+		final long histogramDecayThreshold = Long.parseLong(Settings.getSetting("siengineLatencyHistogramSize"));
+	}
+}
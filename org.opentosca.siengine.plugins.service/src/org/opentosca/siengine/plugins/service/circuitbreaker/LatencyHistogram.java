@@ -0,0 +1,114 @@
+package org.opentosca.siengine.plugins.service.circuitbreaker;
+
+/**
+ * Histogram of the latencies of the invocations of an endpoint.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The latencies are counted in logarithmic buckets (four buckets per power of
+ * two milliseconds), thus the relative error of a percentile is at most about
+ * 19%. To follow the current behavior of the endpoint, all counts are halved
+ * as soon as the histogram contains the configured number of samples.
+ * 
+ * 
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKETS = 4;
+	
+	// covers latencies up to 2^31 ms
+	private static final int BUCKETS = 32 * LatencyHistogram.SUB_BUCKETS;
+	
+	private final long[] counts = new long[LatencyHistogram.BUCKETS];
+	private final long decayThreshold;
+	private long total = 0;
+	
+	
+	/**
+	 * @param decayThreshold number of samples after which all counts are
+	 *            halved.
+	 */
+	public LatencyHistogram(long decayThreshold) {
+		this.decayThreshold = decayThreshold;
+	}
+	
+	/**
+	 * Records the latency of an invocation.
+	 * 
+	 * @param latency in milliseconds.
+	 */
+	public synchronized void record(long latency) {
+		
+		this.counts[LatencyHistogram.bucketOf(latency)]++;
+		this.total++;
+		
+		if (this.total >= this.decayThreshold) {
+			this.total = 0;
+			for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+				this.counts[i] = this.counts[i] / 2;
+				this.total += this.counts[i];
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of samples the histogram currently contains.
+	 */
+	public synchronized long getCount() {
+		return this.total;
+	}
+	
+	/**
+	 * Returns the upper bound of the bucket containing the requested
+	 * percentile.
+	 * 
+	 * @param percentile between 0 and 100.
+	 * @return latency in milliseconds or -1 if the histogram is empty.
+	 */
+	public synchronized long getPercentile(double percentile) {
+		
+		if (this.total == 0) {
+			return -1;
+		}
+		
+		long rank = (long) Math.ceil((percentile / 100) * this.total);
+		long seen = 0;
+		
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			seen += this.counts[i];
+			if ((seen >= rank) && (seen > 0)) {
+				return LatencyHistogram.upperBoundOf(i);
+			}
+		}
+		return LatencyHistogram.upperBoundOf(LatencyHistogram.BUCKETS - 1);
+	}
+	
+	private static int bucketOf(long latency) {
+		
+		if (latency < 1) {
+			return 0;
+		}
+		
+		int power = 63 - Long.numberOfLeadingZeros(latency);
+		
+		// position of the latency between 2^power and 2^(power+1)
+		int sub = power >= 2 ? (int) ((latency >> (power - 2)) & 3) : (int) ((latency << (2 - power)) & 3);
+		
+		return Math.min((power * LatencyHistogram.SUB_BUCKETS) + sub, LatencyHistogram.BUCKETS - 1);
+	}
+	
+	private static long upperBoundOf(int bucket) {
+		
+		int power = bucket / LatencyHistogram.SUB_BUCKETS;
+		int sub = bucket % LatencyHistogram.SUB_BUCKETS;
+		
+		return ((1L << power) * (LatencyHistogram.SUB_BUCKETS + sub + 1)) / LatencyHistogram.SUB_BUCKETS;
+	}
+	
+	@Override
+	public String toString() {
+		return "[samples=" + this.getCount() + ", p50=" + this.getPercentile(50) + "ms, p90=" + this.getPercentile(90) + "ms, p99=" + this.getPercentile(99) + "ms]";
+	}
+}
@@ -0,0 +1,10 @@
+/**
+ * This package contains the circuit breakers and latency histograms of the
+ * endpoints invoked by the SI-Engine-Plugins. They are used to reject
+ * invocations of unavailable endpoints immediately and to derive the timeouts
+ * of the invocations from the observed latencies.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.plugins.service.circuitbreaker;
@@ -5,30 +5,24 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import org.apache.camel.ConsumerTemplate;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.ProducerTemplate;
+import org.apache.cxf.endpoint.Client;
+import org.opentosca.siengine.model.codec.ParamsCodec;
 import org.opentosca.siengine.model.header.SIHeader;
 import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
+import org.opentosca.siengine.plugins.service.circuitbreaker.CircuitBreaker;
+import org.opentosca.siengine.plugins.service.circuitbreaker.CircuitBreakerRegistry;
 import org.opentosca.siengine.plugins.soaphttp.service.impl.route.AsyncRoute;
 import org.opentosca.siengine.plugins.soaphttp.service.impl.util.Messages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.traversal.DocumentTraversal;
-import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.traversal.NodeIterator;
 
 import com.predic8.wsdl.Binding;
 import com.predic8.wsdl.BindingOperation;
@@ -46,7 +40,14 @@ import com.predic8.wsdl.WSDLParser;
  * operation to invoke) from the SI-Engine and creates a SOAP message out of it.
  * If needed the Plug-in parses the WSDL of the service. The Plug-in supports
  * synchronous request-response communication, asynchronous communication with
- * callbacks and one-way invocation.
+ * callbacks and one-way invocation.<br>
+ * <br>
+ * 
+ * Invocations of an endpoint whose circuit breaker is open are rejected
+ * immediately. The receive timeout of an invocation is derived from the
+ * latencies of the endpoint observed so far.
+ * 
+ * @see CircuitBreakerRegistry
  * 
  * @author Michael Zimmermann - zimmerml@studi.informatik.uni-stuttgart.de
  */
@@ -94,6 +95,13 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 		
 		headers.put("endpoint", endpoint.replace("?wsdl", ""));
 		
+		CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getCircuitBreaker(endpoint.replace("?wsdl", ""));
+		
+		if (!circuitBreaker.allowRequest()) {
+			SIEnginePluginSoapHttpServiceImpl.LOG.error("Circuit breaker of endpoint {} is open. Invocation aborted!", circuitBreaker.getEndpoint());
+			return null;
+		}
+		
 		Document document = null;
 		
 		SIEnginePluginSoapHttpServiceImpl.LOG.info("Creating invocation message.");
@@ -112,7 +120,13 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 			
 			SIEnginePluginSoapHttpServiceImpl.LOG.info("Parsing WSDL at: {}.", endpoint);
 			
-			Definitions wsdl = parser.parse(endpoint.toString());
+			Definitions wsdl;
+			try {
+				wsdl = parser.parse(endpoint.toString());
+			} catch (RuntimeException e) {
+				circuitBreaker.recordFailure();
+				throw e;
+			}
 			
 			// Jump-Label to stop both loops at once
 			searchOperation: for (Binding bind : wsdl.getBindings()) {
@@ -171,7 +185,7 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 				return null;
 			}
 			
-			document = this.mapToDoc(rootElementNamespaceURI, rootElementName, paramsMap);
+			document = ParamsCodec.toDocument(rootElementNamespaceURI, rootElementName, paramsMap);
 			
 		}
 		
@@ -179,7 +193,12 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 			
 			document = (Document) params;
 			
-			messagingPattern = this.determineMP(message, operationName, hastOutputParams, endpoint);
+			try {
+				messagingPattern = this.determineMP(message, operationName, hastOutputParams, endpoint);
+			} catch (RuntimeException e) {
+				circuitBreaker.recordFailure();
+				throw e;
+			}
 			
 		}
 		
@@ -190,6 +209,19 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 		
 		SIEnginePluginSoapHttpServiceImpl.LOG.debug("Invoking the web service.");
 		
+		// Plans may run arbitrarily long, thus only the invocations of
+		// implementation artifacts get an adaptive timeout.
+		if (message.getHeader(SIHeader.PLANID_QNAME.toString()) == null) {
+			
+			long timeout = circuitBreaker.getTimeout(operationName);
+			SIEnginePluginSoapHttpServiceImpl.LOG.debug("Receive timeout: {} ms", timeout);
+			
+			// passed to the request context of the cxf client
+			Map<String, Object> requestContext = new HashMap<String, Object>();
+			requestContext.put("javax.xml.ws.client.receiveTimeout", timeout);
+			headers.put(Client.REQUEST_CONTEXT, requestContext);
+		}
+		
 		ProducerTemplate template = Activator.camelContext.createProducerTemplate();
 		
 		ConsumerTemplate consumer = Activator.camelContext.createConsumerTemplate();
@@ -200,12 +232,25 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 		
 		if (messagingPattern.equals(this.REQUST_RESPONSE)) {
 			SIEnginePluginSoapHttpServiceImpl.LOG.debug("Sync invocation.");
-			response = template.requestBodyAndHeaders("direct:Sync-WS-Invoke", document, headers, Document.class);
+			long start = System.currentTimeMillis();
+			try {
+				response = template.requestBodyAndHeaders("direct:Sync-WS-Invoke", document, headers, Document.class);
+			} catch (RuntimeException e) {
+				circuitBreaker.recordFailure();
+				throw e;
+			}
+			circuitBreaker.recordSuccess(operationName, System.currentTimeMillis() - start);
 		}
 		
 		else if (messagingPattern.equals(this.REQUEST_ONLY)) {
 			SIEnginePluginSoapHttpServiceImpl.LOG.debug("Request-only invocation.");
-			template.sendBodyAndHeaders("direct:RequestOnly-WS-Invoke", document, headers);
+			try {
+				template.sendBodyAndHeaders("direct:RequestOnly-WS-Invoke", document, headers);
+			} catch (RuntimeException e) {
+				circuitBreaker.recordFailure();
+				throw e;
+			}
+			circuitBreaker.recordSuccess();
 			return null;
 		}
 		
@@ -219,7 +264,16 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 			
 			SIEnginePluginSoapHttpServiceImpl.exchangeMap.put(messageID, exchange);
 			
-			template.sendBodyAndHeaders("direct:Async-WS-Invoke", document, headers);
+			try {
+				template.sendBodyAndHeaders("direct:Async-WS-Invoke", document, headers);
+			} catch (RuntimeException e) {
+				SIEnginePluginSoapHttpServiceImpl.exchangeMap.remove(messageID);
+				circuitBreaker.recordFailure();
+				throw e;
+			}
+			// the latency of the callback depends on the operation, not on
+			// the endpoint
+			circuitBreaker.recordSuccess();
 			
 			Exchange ex = null;
 			String messageIDToCheck = null;
@@ -263,7 +317,7 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 			
 			SIEnginePluginSoapHttpServiceImpl.LOG.debug("Transforming Document to HashMap...");
 			
-			HashMap<String, String> responseMap = this.resDocToMap(response);
+			HashMap<String, String> responseMap = ParamsCodec.toMap(response);
 			
 			exchange.getIn().setBody(responseMap);
 			
@@ -277,38 +331,6 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 		return exchange;
 	}
 	
-	/**
-	 * Transfers the response document to a map.
-	 * 
-	 * @param responseDocument to be transfered to a map.
-	 * @return transfered map.
-	 */
-	private HashMap<String, String> resDocToMap(Document responseDocument) {
-		HashMap<String, String> reponseMap = new HashMap<String, String>();
-		
-		DocumentTraversal traversal = (DocumentTraversal) responseDocument;
-		NodeIterator iterator = traversal.createNodeIterator(responseDocument.getDocumentElement(), NodeFilter.SHOW_ELEMENT, null, true);
-		
-		for (Node node = iterator.nextNode(); node != null; node = iterator.nextNode()) {
-			
-			String name = ((Element) node).getTagName();
-			StringBuilder content = new StringBuilder();
-			NodeList children = node.getChildNodes();
-			for (int i = 0; i < children.getLength(); i++) {
-				Node child = children.item(i);
-				if (child.getNodeType() == Node.TEXT_NODE) {
-					content.append(child.getTextContent());
-				}
-			}
-			
-			if (!content.toString().trim().isEmpty()) {
-				reponseMap.put(name, content.toString());
-			}
-		}
-		
-		return reponseMap;
-	}
-	
 	/**
 	 * Determine if the specified operation of the specified wsdl defines output
 	 * parameter.
@@ -408,44 +430,6 @@ public class SIEnginePluginSoapHttpServiceImpl implements ISIEnginePluginService
 		return null;
 	}
 	
-	/**
-	 * Transfers the paramsMap into a Document.
-	 * 
-	 * @param rootElementNamespaceURI
-	 * @param rootElementName
-	 * @param paramsMap
-	 * 
-	 * @return the created Document.
-	 */
-	private Document mapToDoc(String rootElementNamespaceURI, String rootElementName, HashMap<String, String> paramsMap) {
-		
-		Document document;
-		
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentBuilder = null;
-		try {
-			documentBuilder = documentBuilderFactory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			SIEnginePluginSoapHttpServiceImpl.LOG.error("Some error occured.");
-			e.printStackTrace();
-		}
-		
-		document = documentBuilder.newDocument();
-		
-		Element rootElement = document.createElementNS(rootElementNamespaceURI, rootElementName);
-		document.appendChild(rootElement);
-		
-		Element mapElement;
-		for (Entry<String, String> entry : paramsMap.entrySet()) {
-			mapElement = document.createElement(entry.getKey());
-			mapElement.setTextContent(entry.getValue());
-			rootElement.appendChild(mapElement);
-			
-		}
-		
-		return document;
-	}
-	
 	/**
 	 * @return the keys of the map containing stored messageIds and exchange
 	 *         objects.
@@ -11,6 +11,7 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.component.cxf.CxfPayload;
 import org.apache.cxf.binding.soap.SoapHeader;
+import org.apache.cxf.endpoint.Client;
 import org.apache.cxf.helpers.DOMUtils;
 import org.xml.sax.SAXException;
 
@@ -40,7 +41,11 @@ public class HeaderProcessor implements Processor {
 		Map<String, Object> headers = exchange.getIn().getHeaders();
 		for (Map.Entry<String, Object> entry : headers.entrySet()) {
 			
-			if (entry.getKey().equalsIgnoreCase("ReplyTo")) {
+			if (entry.getKey().equals(Client.REQUEST_CONTEXT)) {
+				
+				// configuration of the cxf client, not part of the message
+				
+			} else if (entry.getKey().equalsIgnoreCase("ReplyTo")) {
 				
 				String xml1 = "<?xml version=\"1.0\" encoding=\"utf-8\"?><ReplyTo " + "xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">" + entry.getValue().toString() + "</ReplyTo>";
 				SoapHeader replyToSoapHeader = new SoapHeader(new QName("http://www.w3.org/2005/08/addressing", "ReplyTo"), DOMUtils.readXml(new StringReader(xml1)).getDocumentElement());
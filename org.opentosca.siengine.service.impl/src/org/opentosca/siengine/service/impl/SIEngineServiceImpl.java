@@ -1,33 +1,47 @@
 package org.opentosca.siengine.service.impl;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.ProducerTemplate;
+import org.eclipse.osgi.framework.console.CommandInterpreter;
+import org.eclipse.osgi.framework.console.CommandProvider;
 import org.opentosca.core.endpoint.service.ICoreEndpointService;
 import org.opentosca.core.model.csar.id.CSARID;
 import org.opentosca.core.model.endpoint.wsdl.WSDLEndpoint;
-import org.opentosca.model.instancedata.NodeInstance;
-import org.opentosca.model.instancedata.ServiceInstance;
+import org.opentosca.iaengine.service.IIAEngineService;
+import org.opentosca.siengine.model.codec.ParamsCodec;
 import org.opentosca.siengine.model.header.SIHeader;
+import org.opentosca.siengine.plugins.service.IAsyncSIEnginePluginService;
 import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
+import org.opentosca.siengine.plugins.service.InvocationFuture;
 import org.opentosca.siengine.service.ISIEngineService;
+import org.opentosca.settings.Settings;
+import org.opentosca.siengine.service.impl.balancer.ReplicaBalancer;
+import org.opentosca.siengine.service.impl.scheduler.Lane;
+import org.opentosca.siengine.service.impl.scheduler.WeightedFairScheduler;
 import org.opentosca.siengine.service.impl.servicehandler.ServiceHandler;
 import org.opentosca.toscaengine.service.IToscaEngineService;
+import org.opentosca.util.concurrent.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.traversal.DocumentTraversal;
-import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.traversal.NodeIterator;
 
 /**
  * Engine for delegating invoke-requests of implementation artifacts or plans to
@@ -47,7 +61,9 @@ import org.w3c.dom.traversal.NodeIterator;
  * which plug-in can execute the invoke-request, the engine needs a specified
  * property like <tt>{@literal <}namespace:InvocationType{@literal >}...
  * {@literal <}/namespace:InvocationType{@literal >}</tt>. The engine also can
- * update request parameters from stored InstanceData.
+ * update request parameters from stored InstanceData. The invocations of
+ * implementation artifacts are executed by priority lanes, thus e.g.
+ * termination requests don't queue behind bulk installations.
  * 
  * @see ISIEnginePluginService
  * @see IToscaEngineService
@@ -58,13 +74,120 @@ import org.w3c.dom.traversal.NodeIterator;
  * 
  */
 
-public class SIEngineServiceImpl implements ISIEngineService {
+public class SIEngineServiceImpl implements ISIEngineService, CommandProvider {
 	
 	private final static Logger LOG = LoggerFactory.getLogger(SIEngineServiceImpl.class);
 	
+	// Sends the responses of asynchronous plug-ins back to the callers, so
+	// the threads of the plug-ins are never blocked by a caller.
+	private static ExecutorService responseSender = null;
+	
+	// Resolutions of implementation artifacts in progress by CSARID,
+	// ServiceTemplateID, NodeTemplateID or RelationshipTemplateID, interface
+	// and operation.
+	private final static SingleFlight<List<Object>, ResolvedIA> iaResolutions = new SingleFlight<List<Object>, ResolvedIA>("IA resolutions");
+	
+	// Distributes the invocations of implementation artifacts between their
+	// replicas.
+	private final static ReplicaBalancer balancer = new ReplicaBalancer();
+	
+	
+	// Executes the invocations of implementation artifacts by priority lanes.
+	private static WeightedFairScheduler scheduler = null;
+	
 	
 	@Override
-	public void invokeIA(Exchange exchange) {
+	public void invokeIA(final Exchange exchange) {
+		
+		Message message = exchange.getIn();
+		
+		Lane lane = SIEngineServiceImpl.getScheduler().getLane(message.getHeader(SIHeader.INTERFACENAME_STRING.toString(), String.class), message.getHeader(SIHeader.OPERATIONNAME_STRING.toString(), String.class), message.getHeader(SIHeader.PRIORITY_STRING.toString(), String.class));
+		
+		SIEngineServiceImpl.LOG.debug("Queueing invocation in lane {}.", lane.getName());
+		
+		if (exchange.getPattern().isOutCapable()) {
+			
+			// the caller expects the response in the same exchange, a failure
+			// fails the exchange
+			SIEngineServiceImpl.getScheduler().executeAndWait(lane, new Runnable() {
+				
+				@Override
+				public void run() {
+					SIEngineServiceImpl.this.executeInvokeIA(exchange);
+				}
+			});
+			
+		} else {
+			
+			// the exchange is already completed when the invocation is
+			// executed, thus a failure has to be reported by a response
+			SIEngineServiceImpl.getScheduler().execute(lane, new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						SIEngineServiceImpl.this.executeInvokeIA(exchange);
+					} catch (RuntimeException e) {
+						SIEngineServiceImpl.this.handleFailure(exchange, e);
+						throw e;
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the executor sending the responses of asynchronous plug-ins.
+	 */
+	private static synchronized ExecutorService getResponseSender() {
+		
+		if (SIEngineServiceImpl.responseSender == null) {
+			
+			SIEngineServiceImpl.responseSender = Executors.newFixedThreadPool(8, new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SIEngine-Response-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return SIEngineServiceImpl.responseSender;
+	}
+	
+	/**
+	 * Stops the scheduler and sending the responses of asynchronous plug-ins
+	 * when the component is deactivated. Already queued invocations are still
+	 * executed.
+	 */
+	protected void deactivate() {
+		
+		synchronized (SIEngineServiceImpl.class) {
+			if (SIEngineServiceImpl.scheduler != null) {
+				SIEngineServiceImpl.scheduler.shutdown();
+				SIEngineServiceImpl.scheduler = null;
+			}
+			if (SIEngineServiceImpl.responseSender != null) {
+				SIEngineServiceImpl.responseSender.shutdown();
+				SIEngineServiceImpl.responseSender = null;
+			}
+		}
+		SIEngineServiceImpl.LOG.debug("SI-Engine deactivated.");
+	}
+	
+	private static synchronized WeightedFairScheduler getScheduler() {
+		
+		if (SIEngineServiceImpl.scheduler == null) {
+			SIEngineServiceImpl.scheduler = new WeightedFairScheduler(Integer.parseInt(Settings.getSetting("siengineWorkerThreads")), Settings.getSetting("siengineLanes"), Settings.getSetting("siengineLaneDefault"), Settings.getSetting("siengineLaneMapping"), Long.parseLong(Settings.getSetting("siengineLatencyHistogramSize")));
+		}
+		return SIEngineServiceImpl.scheduler;
+	}
+	
+	private void executeInvokeIA(Exchange exchange) {
 		
 		SIEngineServiceImpl.LOG.info("Starting SI-Engine: InvokeIA");
 		
@@ -109,13 +232,17 @@ public class SIEngineServiceImpl implements ISIEngineService {
 				SIEngineServiceImpl.LOG.info("Getting InstanceData from InstanceDataService...");
 				SIEngineServiceImpl.LOG.info("Old inputParams Map: {}", inputParams.toString());
 				
-				String serviceTemplateName = ServiceHandler.toscaEngineService.getNameOfReference(csarID, serviceTemplateID);
-				
-				HashMap<String, String> propertiesMap = this.getInstanceDataProperties(csarID, serviceTemplateID, serviceTemplateName, nodeTemplateID, serviceInstanceID);
+				Document properties = this.getInstanceDataProperties(serviceTemplateID, nodeTemplateID, serviceInstanceID);
+				HashMap<String, String> propertiesMap = properties != null ? ParamsCodec.toMap(properties) : null;
 				
-				SIEngineServiceImpl.LOG.info("Propeties from InstanceData Service: {}", propertiesMap.toString());
+				SIEngineServiceImpl.LOG.info("Propeties from InstanceData Service: {}", propertiesMap);
 				
-				inputParams.putAll(propertiesMap);
+				if (propertiesMap != null) {
+					inputParams.putAll(propertiesMap);
+					// plug-ins needing the properties again needn't fetch
+					// them a second time
+					message.setHeader(SIHeader.INSTANCEPROPERTIES_DOCUMENT.toString(), properties);
+				}
 				
 				SIEngineServiceImpl.LOG.info("New inputParams Map: {}", inputParams.toString());
 				
@@ -140,181 +267,267 @@ public class SIEngineServiceImpl implements ISIEngineService {
 			SIEngineServiceImpl.LOG.warn("There are no input parameters.");
 		}
 		
-		boolean wasFound = false;
-		String invocationType = null;
+		ResolvedIA ia = null;
 		
-		if (nodeTemplateID != null) {
-			
-			SIEngineServiceImpl.LOG.info("Getting information about the ImplementationArtifact from TOSCA Engine...");
-			QName nodeTypeID = ServiceHandler.toscaEngineService.getNodeTypeOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID);
+		if ((nodeTemplateID != null) || (relationshipTemplateID != null)) {
+			ia = this.resolveIA(csarID, serviceTemplateID, nodeTemplateID, relationshipTemplateID, neededInterface, neededOperation);
+		}
+		
+		if (ia != null) {
 			
-			SIEngineServiceImpl.LOG.info("Getting nodeTypeImplementationIDs of NodeType: {} from CSAR: {}", nodeTypeID, csarID);
+			SIEngineServiceImpl.LOG.debug("InvocationType found: {} ", ia.invocationType);
 			
-			List<QName> nodeTypeImplementationIDs = ServiceHandler.toscaEngineService.getNodeTypeImplementationsOfNodeType(csarID, nodeTypeID);
-			SIEngineServiceImpl.LOG.debug("nodeTypeImplementationIDs: {}", nodeTypeImplementationIDs.toString());
+			URI endpoint = SIEngineServiceImpl.balancer.acquire(ia.endpoints);
+			boolean async = false;
 			
-			// Jump-Label to stop both loops at once
-			searchIA: for (QName nodeTypeImplementationID : nodeTypeImplementationIDs) {
+			try {
 				
-				List<String> implementationArtifactNames = ServiceHandler.toscaEngineService.getImplementationArtifactNamesOfNodeTypeImplementation(csarID, nodeTypeImplementationID);
-				SIEngineServiceImpl.LOG.debug("implementationArtifactNames: {}", implementationArtifactNames.toString());
+				SIEngineServiceImpl.LOG.debug("Endpoint: " + endpoint.toString());
 				
-				for (String implementationArtifactName : implementationArtifactNames) {
+				message.setHeader(SIHeader.ENDPOINT_URI.toString(), endpoint);
+				message.setHeader(SIHeader.HASOUTPUTPARAMS_BOOLEAN.toString(), ia.hasOutputParams);
+				
+				if (ia.specificContent != null) {
 					
-					// Check if needed interface/operation is provided
-					if (this.isCorrectIA(csarID, nodeTypeID, nodeTypeImplementationID, null, null, implementationArtifactName, neededOperation, neededInterface)) {
-						
-						QName artifactTemplateID = ServiceHandler.toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
-						SIEngineServiceImpl.LOG.debug("artifactTemplateID: {}", artifactTemplateID.toString());
-						
-						String artifactType = ServiceHandler.toscaEngineService.getArtifactTypeOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName).toString();
-						
-						invocationType = this.isSupported(artifactType, csarID, artifactTemplateID);
-						
-						if (invocationType != null) {
-							SIEngineServiceImpl.LOG.debug("InvocationType found: {} ", invocationType);
-							
-							SIEngineServiceImpl.LOG.info("Getting Endpoint for ImplementationArtifact: {} from NodeTypeImplementation: {}", implementationArtifactName, nodeTypeImplementationID);
-							// EndpointService needs to be refactored.
-							// Distinction of WSDL &
-							// REST Endpoints is obsolete.
-							WSDLEndpoint wsdlEndpoint = ServiceHandler.endpointService.getWSDLEndpointForIa(csarID, nodeTypeImplementationID, implementationArtifactName);
-							
-							// Check if implementation artifact has a stored
-							// endpoint and thus was deployed
-							if (wsdlEndpoint != null) {
-								
-								URI endpoint = wsdlEndpoint.getURI();
-								SIEngineServiceImpl.LOG.debug("Endpoint: " + endpoint.toString());
-								
-								message.setHeader(SIHeader.ENDPOINT_URI.toString(), endpoint);
-								
-								boolean hasInputParams = ServiceHandler.toscaEngineService.hasOperationOfANodeTypeSpecifiedInputParams(csarID, nodeTypeID, neededInterface, neededOperation);
-								boolean hasOutputParams = ServiceHandler.toscaEngineService.hasOperationOfANodeTypeSpecifiedOutputParams(csarID, nodeTypeID, neededInterface, neededOperation);
-								
-								if (hasInputParams && !hasOutputParams) {
-									message.setHeader(SIHeader.HASOUTPUTPARAMS_BOOLEAN.toString(), false);
-								} else {
-									message.setHeader(SIHeader.HASOUTPUTPARAMS_BOOLEAN.toString(), true);
-								}
-								
-								Document specificContent = ServiceHandler.toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
-								
-								if (specificContent != null) {
-									
-									SIEngineServiceImpl.LOG.debug("ArtifactSpecificContent specified!");
-									message.setHeader(SIHeader.SPECIFICCONTENT_DOCUMENT.toString(), specificContent);
-								}
-								
-								SIEngineServiceImpl.LOG.debug("ArtifactSpecificContent specified!");
-								message.setHeader(SIHeader.ARTIFACTTEMPLATEID_QNAME.toString(), artifactTemplateID);
-								
-								message.setHeader(SIHeader.NODETYPEID_QNAME.toString(), nodeTypeID);
-								
-								wasFound = true;
-								
-								// Invokable implementation artifact that
-								// provides correct
-								// interface/operation found. Stop loops.
-								break searchIA;
-								
-							}
-						}
+					SIEngineServiceImpl.LOG.debug("ArtifactSpecificContent specified!");
+					// the resolution may be shared with concurrent
+					// invocations, thus each of them gets its own copy. The
+					// DOM isn't thread-safe even for reads, thus the copies
+					// are made one after another.
+					Node specificContent;
+					synchronized (ia.specificContent) {
+						specificContent = ia.specificContent.cloneNode(true);
 					}
+					message.setHeader(SIHeader.SPECIFICCONTENT_DOCUMENT.toString(), specificContent);
+				}
+				
+				message.setHeader(SIHeader.ARTIFACTTEMPLATEID_QNAME.toString(), ia.artifactTemplateID);
+				
+				if (ia.nodeTypeID != null) {
+					message.setHeader(SIHeader.NODETYPEID_QNAME.toString(), ia.nodeTypeID);
+				} else {
+					message.setHeader(SIHeader.RELATIONSHIPTYPEID_QNAME.toString(), ia.relationshipTypeID);
+				}
+				
+				async = this.callMatchingAsyncPlugin(exchange, ia.invocationType, endpoint);
+				
+				if (async) {
+					// response is sent and the replica released as soon as
+					// the plug-in completed it
+					return;
+				}
+				
+				exchange = this.callMatchingPlugin(exchange, ia.invocationType);
+				
+			} finally {
+				if (!async) {
+					SIEngineServiceImpl.balancer.release(endpoint);
 				}
 			}
 			
-		} else if (relationshipTemplateID != null) {
-			
-			SIEngineServiceImpl.LOG.info("Getting information about the ImplementationArtifact from TOSCA Engine...");
-			QName relationshipTypeID = ServiceHandler.toscaEngineService.getRelationshipTypeOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
+		} else {
+			SIEngineServiceImpl.LOG.warn("No invokable implementation artifact found that provides required interface/operation");
+		}
+		
+		this.handleResponse(exchange);
+	}
+	
+	/**
+	 * Determines the implementation artifact providing the needed
+	 * interface/operation of a NodeTemplate or RelationshipTemplate.
+	 * Concurrent invocations of the same operation of the same template share
+	 * one resolution.
+	 * 
+	 * @return the resolved implementation artifact or <tt>null</tt> if no
+	 *         invokable implementation artifact was found.
+	 */
+	private ResolvedIA resolveIA(final CSARID csarID, final QName serviceTemplateID, final String nodeTemplateID, final String relationshipTemplateID, final String neededInterface, final String neededOperation) {
+		
+		List<Object> key = Arrays.<Object> asList(csarID, serviceTemplateID, nodeTemplateID, relationshipTemplateID, neededInterface, neededOperation);
+		
+		ResolvedIA ia = SIEngineServiceImpl.iaResolutions.execute(key, new Callable<ResolvedIA>() {
 			
-			SIEngineServiceImpl.LOG.info("Getting RelationshipTypeImplementationIDs of RelationshipType: {} from CSAR: {}", relationshipTypeID, csarID);
+			@Override
+			public ResolvedIA call() {
+				
+				if (nodeTemplateID != null) {
+					return SIEngineServiceImpl.this.resolveIAOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID, neededInterface, neededOperation);
+				}
+				return SIEngineServiceImpl.this.resolveIAOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID, neededInterface, neededOperation);
+			}
+		});
+		
+		SIEngineServiceImpl.LOG.debug("{}", SIEngineServiceImpl.iaResolutions);
+		
+		return ia;
+	}
+	
+	private ResolvedIA resolveIAOfNodeTemplate(CSARID csarID, QName serviceTemplateID, String nodeTemplateID, String neededInterface, String neededOperation) {
+		
+		SIEngineServiceImpl.LOG.info("Getting information about the ImplementationArtifact from TOSCA Engine...");
+		QName nodeTypeID = ServiceHandler.toscaEngineService.getNodeTypeOfNodeTemplate(csarID, serviceTemplateID, nodeTemplateID);
+		
+		SIEngineServiceImpl.LOG.info("Getting nodeTypeImplementationIDs of NodeType: {} from CSAR: {}", nodeTypeID, csarID);
+		
+		List<QName> nodeTypeImplementationIDs = ServiceHandler.toscaEngineService.getNodeTypeImplementationsOfNodeType(csarID, nodeTypeID);
+		SIEngineServiceImpl.LOG.debug("nodeTypeImplementationIDs: {}", nodeTypeImplementationIDs.toString());
+		
+		for (QName nodeTypeImplementationID : nodeTypeImplementationIDs) {
 			
-			List<QName> relationshipTypeImplementationIDs = ServiceHandler.toscaEngineService.getRelationshipTypeImplementationsOfRelationshipType(csarID, relationshipTypeID);
-			SIEngineServiceImpl.LOG.debug("relationshipTypeImplementationIDs: {}", relationshipTypeImplementationIDs.toString());
+			List<String> implementationArtifactNames = ServiceHandler.toscaEngineService.getImplementationArtifactNamesOfNodeTypeImplementation(csarID, nodeTypeImplementationID);
+			SIEngineServiceImpl.LOG.debug("implementationArtifactNames: {}", implementationArtifactNames.toString());
 			
-			// Jump-Label to stop both loops at once
-			searchIA: for (QName relationshipTypeImplementationID : relationshipTypeImplementationIDs) {
+			for (String implementationArtifactName : implementationArtifactNames) {
 				
-				List<String> implementationArtifactNames = ServiceHandler.toscaEngineService.getImplementationArtifactNamesOfRelationshipTypeImplementation(csarID, relationshipTypeImplementationID);
-				SIEngineServiceImpl.LOG.debug("implementationArtifactNames: {}", implementationArtifactNames.toString());
-				
-				for (String implementationArtifactName : implementationArtifactNames) {
+				// Check if needed interface/operation is provided
+				if (this.isCorrectIA(csarID, nodeTypeID, nodeTypeImplementationID, null, null, implementationArtifactName, neededOperation, neededInterface)) {
 					
-					// Check if needed interface/operation is provided
-					if (this.isCorrectIA(csarID, null, null, relationshipTypeID, relationshipTypeImplementationID, implementationArtifactName, neededOperation, neededInterface)) {
-						
-						QName artifactTemplateID = ServiceHandler.toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName);
-						SIEngineServiceImpl.LOG.debug("artifactTemplateID: {}", artifactTemplateID.toString());
+					QName artifactTemplateID = ServiceHandler.toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+					SIEngineServiceImpl.LOG.debug("artifactTemplateID: {}", artifactTemplateID.toString());
+					
+					String artifactType = ServiceHandler.toscaEngineService.getArtifactTypeOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName).toString();
+					
+					String invocationType = this.isSupported(artifactType, csarID, artifactTemplateID);
+					
+					if (invocationType != null) {
 						
-						String artifactType = ServiceHandler.toscaEngineService.getArtifactTypeOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName).toString();
+						SIEngineServiceImpl.LOG.info("Getting Endpoint for ImplementationArtifact: {} from NodeTypeImplementation: {}", implementationArtifactName, nodeTypeImplementationID);
+						// EndpointService needs to be refactored.
+						// Distinction of WSDL &
+						// REST Endpoints is obsolete.
+						List<WSDLEndpoint> wsdlEndpoints = ServiceHandler.endpointService.getWSDLEndpointsForIa(csarID, nodeTypeImplementationID, implementationArtifactName);
 						
-						invocationType = this.isSupported(artifactType, csarID, artifactTemplateID);
+						// Implementation artifacts registered for lazy
+						// deployment are deployed at their first invocation
+						if (wsdlEndpoints.isEmpty() && this.deployOnDemand(csarID, nodeTypeImplementationID, implementationArtifactName)) {
+							wsdlEndpoints = ServiceHandler.endpointService.getWSDLEndpointsForIa(csarID, nodeTypeImplementationID, implementationArtifactName);
+						}
 						
-						if (invocationType != null) {
-							SIEngineServiceImpl.LOG.debug("InvocationType found: {} ", invocationType);
+						// Check if implementation artifact has a stored
+						// endpoint and thus was deployed
+						if (!wsdlEndpoints.isEmpty()) {
+							
+							ResolvedIA ia = new ResolvedIA();
+							ia.invocationType = invocationType;
+							ia.endpoints = SIEngineServiceImpl.getURIs(wsdlEndpoints);
+							ia.artifactTemplateID = artifactTemplateID;
+							ia.nodeTypeID = nodeTypeID;
+							
+							boolean hasInputParams = ServiceHandler.toscaEngineService.hasOperationOfANodeTypeSpecifiedInputParams(csarID, nodeTypeID, neededInterface, neededOperation);
+							boolean hasOutputParams = ServiceHandler.toscaEngineService.hasOperationOfANodeTypeSpecifiedOutputParams(csarID, nodeTypeID, neededInterface, neededOperation);
 							
-							SIEngineServiceImpl.LOG.info("Getting Endpoint for ImplementationArtifact: {} from RelationshipTypeImplementation: {}", implementationArtifactName, relationshipTypeImplementationID);
-							// EndpointService needs to be refactored.
-							// Distinction of WSDL &
-							// REST Endpoints is obsolete.
-							WSDLEndpoint wsdlEndpoint = ServiceHandler.endpointService.getWSDLEndpointForIa(csarID, relationshipTypeImplementationID, implementationArtifactName);
+							ia.hasOutputParams = !(hasInputParams && !hasOutputParams);
 							
-							// Check if implementation artifact has a stored
-							// endpoint and thus was deployed
-							if (wsdlEndpoint != null) {
-								
-								URI endpoint = wsdlEndpoint.getURI();
-								SIEngineServiceImpl.LOG.debug("Endpoint: " + endpoint.toString());
-								
-								message.setHeader(SIHeader.ENDPOINT_URI.toString(), endpoint);
-								
-								boolean hasInputParams = ServiceHandler.toscaEngineService.hasOperationOfARelationshipTypeSpecifiedInputParams(csarID, relationshipTypeID, neededInterface, neededOperation);
-								boolean hasOutputParams = ServiceHandler.toscaEngineService.hasOperationOfARelationshipTypeSpecifiedOutputParams(csarID, relationshipTypeID, neededInterface, neededOperation);
-								
-								if (hasInputParams && !hasOutputParams) {
-									message.setHeader(SIHeader.HASOUTPUTPARAMS_BOOLEAN.toString(), false);
-								} else {
-									message.setHeader(SIHeader.HASOUTPUTPARAMS_BOOLEAN.toString(), true);
-								}
-								
-								Document specificContent = ServiceHandler.toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName);
-								
-								if (specificContent != null) {
-									
-									SIEngineServiceImpl.LOG.debug("ArtifactSpecificContent specified!");
-									message.setHeader(SIHeader.SPECIFICCONTENT_DOCUMENT.toString(), specificContent);
-								}
-								
-								SIEngineServiceImpl.LOG.debug("ArtifactSpecificContent specified!");
-								message.setHeader(SIHeader.ARTIFACTTEMPLATEID_QNAME.toString(), artifactTemplateID);
-								
-								message.setHeader(SIHeader.RELATIONSHIPTYPEID_QNAME.toString(), relationshipTypeID);
-								
-								wasFound = true;
-								
-								// Invokable implementation artifact that
-								// provides correct
-								// interface/operation found. Stop loops.
-								break searchIA;
-								
-							}
+							ia.specificContent = ServiceHandler.toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfANodeTypeImplementation(csarID, nodeTypeImplementationID, implementationArtifactName);
+							
+							// Invokable implementation artifact that
+							// provides correct interface/operation found.
+							return ia;
 						}
 					}
 				}
 			}
 		}
+		return null;
+	}
+	
+	/**
+	 * @return the URIs of the endpoints of all replicas of an implementation
+	 *         artifact.
+	 */
+	private static List<URI> getURIs(List<WSDLEndpoint> wsdlEndpoints) {
+		
+		List<URI> endpoints = new ArrayList<URI>();
+		
+		for (WSDLEndpoint wsdlEndpoint : wsdlEndpoints) {
+			endpoints.add(wsdlEndpoint.getURI());
+		}
+		return endpoints;
+	}
+	
+	/**
+	 * Asks the IAEngine to deploy an implementation artifact that isn't
+	 * deployed yet. Concurrent invocations wait for the same deployment.
+	 * 
+	 * @return <tt>true</tt> if the implementation artifact is deployed now.
+	 */
+	private boolean deployOnDemand(CSARID csarID, QName nodeTypeImplementationID, String implementationArtifactName) {
+		
+		IIAEngineService iaEngineService = ServiceHandler.iaEngineService;
+		
+		if (iaEngineService == null) {
+			return false;
+		}
+		
+		try {
+			return iaEngineService.deployImplementationArtifact(csarID, nodeTypeImplementationID, implementationArtifactName);
+		} catch (RuntimeException e) {
+			SIEngineServiceImpl.LOG.error("Deployment of ImplementationArtifact " + implementationArtifactName + " on demand failed!", e);
+			return false;
+		}
+	}
+	
+	private ResolvedIA resolveIAOfRelationshipTemplate(CSARID csarID, QName serviceTemplateID, String relationshipTemplateID, String neededInterface, String neededOperation) {
+		
+		SIEngineServiceImpl.LOG.info("Getting information about the ImplementationArtifact from TOSCA Engine...");
+		QName relationshipTypeID = ServiceHandler.toscaEngineService.getRelationshipTypeOfRelationshipTemplate(csarID, serviceTemplateID, relationshipTemplateID);
 		
-		if (wasFound) {
+		SIEngineServiceImpl.LOG.info("Getting RelationshipTypeImplementationIDs of RelationshipType: {} from CSAR: {}", relationshipTypeID, csarID);
+		
+		List<QName> relationshipTypeImplementationIDs = ServiceHandler.toscaEngineService.getRelationshipTypeImplementationsOfRelationshipType(csarID, relationshipTypeID);
+		SIEngineServiceImpl.LOG.debug("relationshipTypeImplementationIDs: {}", relationshipTypeImplementationIDs.toString());
+		
+		for (QName relationshipTypeImplementationID : relationshipTypeImplementationIDs) {
 			
-			exchange = this.callMatchingPlugin(exchange, invocationType);
+			List<String> implementationArtifactNames = ServiceHandler.toscaEngineService.getImplementationArtifactNamesOfRelationshipTypeImplementation(csarID, relationshipTypeImplementationID);
+			SIEngineServiceImpl.LOG.debug("implementationArtifactNames: {}", implementationArtifactNames.toString());
 			
-		} else {
-			SIEngineServiceImpl.LOG.warn("No invokable implementation artifact found that provides required interface/operation");
+			for (String implementationArtifactName : implementationArtifactNames) {
+				
+				// Check if needed interface/operation is provided
+				if (this.isCorrectIA(csarID, null, null, relationshipTypeID, relationshipTypeImplementationID, implementationArtifactName, neededOperation, neededInterface)) {
+					
+					QName artifactTemplateID = ServiceHandler.toscaEngineService.getArtifactTemplateOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName);
+					SIEngineServiceImpl.LOG.debug("artifactTemplateID: {}", artifactTemplateID.toString());
+					
+					String artifactType = ServiceHandler.toscaEngineService.getArtifactTypeOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName).toString();
+					
+					String invocationType = this.isSupported(artifactType, csarID, artifactTemplateID);
+					
+					if (invocationType != null) {
+						
+						SIEngineServiceImpl.LOG.info("Getting Endpoint for ImplementationArtifact: {} from RelationshipTypeImplementation: {}", implementationArtifactName, relationshipTypeImplementationID);
+						// EndpointService needs to be refactored.
+						// Distinction of WSDL &
+						// REST Endpoints is obsolete.
+						List<WSDLEndpoint> wsdlEndpoints = ServiceHandler.endpointService.getWSDLEndpointsForIa(csarID, relationshipTypeImplementationID, implementationArtifactName);
+						
+						// Check if implementation artifact has a stored
+						// endpoint and thus was deployed
+						if (!wsdlEndpoints.isEmpty()) {
+							
+							ResolvedIA ia = new ResolvedIA();
+							ia.invocationType = invocationType;
+							ia.endpoints = SIEngineServiceImpl.getURIs(wsdlEndpoints);
+							ia.artifactTemplateID = artifactTemplateID;
+							ia.relationshipTypeID = relationshipTypeID;
+							
+							boolean hasInputParams = ServiceHandler.toscaEngineService.hasOperationOfARelationshipTypeSpecifiedInputParams(csarID, relationshipTypeID, neededInterface, neededOperation);
+							boolean hasOutputParams = ServiceHandler.toscaEngineService.hasOperationOfARelationshipTypeSpecifiedOutputParams(csarID, relationshipTypeID, neededInterface, neededOperation);
+							
+							ia.hasOutputParams = !(hasInputParams && !hasOutputParams);
+							
+							ia.specificContent = ServiceHandler.toscaEngineService.getArtifactSpecificContentOfAImplementationArtifactOfARelationshipTypeImplementation(csarID, relationshipTypeImplementationID, implementationArtifactName);
+							
+							// Invokable implementation artifact that
+							// provides correct interface/operation found.
+							return ia;
+						}
+					}
+				}
+			}
 		}
-		
-		this.handleResponse(exchange);
+		return null;
 	}
 	
 	@Override
@@ -421,6 +634,105 @@ public class SIEngineServiceImpl implements ISIEngineService {
 		return exchange;
 	}
 	
+	/**
+	 * Calls the plug-in that supports the specific invocation-type without
+	 * waiting for its response, if the plug-in supports asynchronous
+	 * invocations and the caller doesn't wait for the response within the
+	 * exchange. The response is sent back to the caller as soon as the plug-in
+	 * completed the invocation.
+	 * 
+	 * @param exchange to be given the plug-in.
+	 * @param invokeType that a plug-in is searched for.
+	 * @param endpoint the replica invoked, released as soon as the plug-in
+	 *            completed the invocation.
+	 * 
+	 * @return <tt>true</tt> if the plug-in was called asynchronously,
+	 *         <tt>false</tt> if it has to be called synchronously.
+	 */
+	private boolean callMatchingAsyncPlugin(final Exchange exchange, String invokeType, final URI endpoint) {
+		
+		if (exchange.getPattern().isOutCapable()) {
+			return false;
+		}
+		
+		ISIEnginePluginService plugin;
+		synchronized (ServiceHandler.pluginServices) {
+			plugin = ServiceHandler.pluginServices.get(invokeType);
+		}
+		
+		if (!(plugin instanceof IAsyncSIEnginePluginService)) {
+			return false;
+		}
+		
+		SIEngineServiceImpl.LOG.info("Matching asynchronous SI-Plug-in found: {}. Calling it.", plugin.toString());
+		
+		InvocationFuture future = ((IAsyncSIEnginePluginService) plugin).invokeAsync(exchange);
+		
+		if (future.isDone()) {
+			SIEngineServiceImpl.balancer.release(endpoint);
+			this.handleAsyncResponse(exchange, future);
+			
+		} else {
+			
+			future.addListener(new InvocationFuture.Listener() {
+				
+				@Override
+				public void invocationCompleted(final InvocationFuture completed) {
+					
+					SIEngineServiceImpl.balancer.release(endpoint);
+					
+					SIEngineServiceImpl.getResponseSender().execute(new Runnable() {
+						
+						@Override
+						public void run() {
+							SIEngineServiceImpl.this.handleAsyncResponse(exchange, completed);
+						}
+					});
+				}
+			});
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Sends the response of a completed asynchronous invocation. If the
+	 * invocation failed, was cancelled or aborted, a fault is sent instead, as
+	 * the caller waits for the callback like for the one of a synchronous
+	 * invocation.
+	 * 
+	 * @param exchange given the plug-in.
+	 * @param future of the completed invocation.
+	 */
+	private void handleAsyncResponse(Exchange exchange, InvocationFuture future) {
+		
+		Throwable failure = null;
+		
+		try {
+			Exchange response = future.get();
+			
+			if (response != null) {
+				this.handleResponse(response);
+				return;
+			}
+			SIEngineServiceImpl.LOG.error("Invocation was aborted.");
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = e;
+			
+		} catch (ExecutionException e) {
+			SIEngineServiceImpl.LOG.error("Invocation failed: {}", e.getCause().getMessage());
+			failure = e.getCause();
+			
+		} catch (CancellationException e) {
+			SIEngineServiceImpl.LOG.warn("Invocation was cancelled.");
+			failure = e;
+		}
+		
+		this.handleFailure(exchange, failure);
+	}
+	
 	/**
 	 * Checks if the defined implementation artifact provides the needed
 	 * interface/operation.
@@ -588,93 +900,30 @@ public class SIEngineServiceImpl implements ISIEngineService {
 	}
 	
 	/**
-	 * @param csarID
+	 * Fetches the properties of the latest NodeInstance of the NodeTemplate
+	 * with a single query.
+	 * 
 	 * @param serviceTemplateID
-	 * @param serviceTemplateName
 	 * @param nodeTemplateID
 	 * @param serviceInstanceID
 	 * @return the in the InstanceService stored properties for the specified
 	 *         parameters or null if it can not be found.
 	 */
-	private HashMap<String, String> getInstanceDataProperties(CSARID csarID, QName serviceTemplateID, String serviceTemplateName, String nodeTemplateID, URI serviceInstanceID) {
-		
-		HashMap<String, String> propertiesMap = new HashMap<String, String>();
+	private Document getInstanceDataProperties(QName serviceTemplateID, String nodeTemplateID, URI serviceInstanceID) {
 		
 		if (serviceInstanceID != null) {
 			
-			List<ServiceInstance> serviceInstanceList = ServiceHandler.instanceDataService.getServiceInstances(serviceInstanceID, serviceTemplateName, serviceTemplateID);
-			
 			QName nodeTemplateQName = new QName(serviceTemplateID.getNamespaceURI(), nodeTemplateID);
 			
-			for (ServiceInstance serviceInstance : serviceInstanceList) {
-				
-				if (serviceInstance.getCSAR_ID().toString().equals(csarID.toString())) {
-					/**
-					 * This is a workaround. The first statement should work,
-					 * but unfortunately does not (the list is null / empty).
-					 * We were not able to identify the root of the error, in
-					 * debug mode it seemed to work but in "production" mode
-					 * not. Somehow the lazy loading mechanism of JPA /
-					 * EclipseLink seems to not work properly.
-					 */
-//					List<NodeInstance> nodeInstanceList = serviceInstance.getNodeInstances();
-					List<NodeInstance> nodeInstanceList = ServiceHandler.instanceDataService.getNodeInstances(null, null, null, serviceInstanceID);
-					
-					for (NodeInstance nodeInstance : nodeInstanceList) {
-						
-						if (nodeInstance.getNodeTemplateID().equals(nodeTemplateQName)) {
-							
-							Document doc = nodeInstance.getProperties();
-							
-							propertiesMap = this.docToMap(doc);
-							
-							return propertiesMap;
-							
-						} else {
-							SIEngineServiceImpl.LOG.debug("No InstanceData found NodeTemplate: {}.", nodeTemplateQName);
-						}
-						
-					}
-					
-				} else {
-					SIEngineServiceImpl.LOG.debug("No InstanceData found for CsarID: " + csarID + ", ServiceTemplateID: " + serviceTemplateID + ", ServiceTemplateName: " + serviceTemplateName + " and ServiceInstanceID: " + serviceInstanceID);
-				}
-			}
-			
-		}
-		return null;
-	}
-	
-	/**
-	 * Transfers the properties document to a map.
-	 * 
-	 * @param propertiesDocument to be transfered to a map.
-	 * @return transfered map.
-	 */
-	private HashMap<String, String> docToMap(Document propertiesDocument) {
-		HashMap<String, String> reponseMap = new HashMap<String, String>();
-		
-		DocumentTraversal traversal = (DocumentTraversal) propertiesDocument;
-		NodeIterator iterator = traversal.createNodeIterator(propertiesDocument.getDocumentElement(), NodeFilter.SHOW_ELEMENT, null, true);
-		
-		for (Node node = iterator.nextNode(); node != null; node = iterator.nextNode()) {
+			Document doc = ServiceHandler.instanceDataService.getNodeInstanceProperties(serviceInstanceID, nodeTemplateQName);
 			
-			String name = ((Element) node).getTagName();
-			StringBuilder content = new StringBuilder();
-			NodeList children = node.getChildNodes();
-			for (int i = 0; i < children.getLength(); i++) {
-				Node child = children.item(i);
-				if (child.getNodeType() == Node.TEXT_NODE) {
-					content.append(child.getTextContent());
-				}
+			if (doc != null) {
+				return doc;
 			}
 			
-			if (!content.toString().trim().isEmpty()) {
-				reponseMap.put(name, content.toString());
-			}
+			SIEngineServiceImpl.LOG.debug("No InstanceData found for NodeTemplate: {} and ServiceInstanceID: {}", nodeTemplateQName, serviceInstanceID);
 		}
-		
-		return reponseMap;
+		return null;
 	}
 	
 	/**
@@ -703,4 +952,61 @@ public class SIEngineServiceImpl implements ISIEngineService {
 		
 	}
 	
+	/**
+	 * Answers an asynchronous invocation that failed, thus the caller waiting
+	 * for the callback doesn't hang. The response contains the message of the
+	 * failure as parameter <tt>Fault</tt> and is marked as failed, so the api
+	 * doesn't store it as response of the invocation.
+	 * 
+	 * @param exchange of the failed invocation.
+	 * @param failure of the invocation. May be <tt>null</tt>.
+	 */
+	private void handleFailure(Exchange exchange, Throwable failure) {
+		
+		HashMap<String, String> fault = new HashMap<String, String>();
+		fault.put("Fault", failure != null ? String.valueOf(failure.getMessage()) : "Invocation failed.");
+		
+		exchange.setException(null);
+		exchange.getIn().setBody(fault);
+		exchange.getIn().setHeader(SIHeader.INVOCATIONFAILED_BOOLEAN.toString(), true);
+		
+		this.handleResponse(exchange);
+	}
+	
+	@Override
+	public String getHelp() {
+		StringBuffer buf = new StringBuffer();
+		buf.append("---OpenTOSCA SI-Engine---\n");
+		buf.append("\tsiengine_lanes - Shows the metrics of the priority lanes\n");
+		buf.append("\tsiengine_replicas - Shows the invocations of the replicas of implementation artifacts\n");
+		return buf.toString();
+	}
+	
+	public void _siengine_lanes(CommandInterpreter commandInterpreter) {
+		for (String metrics : SIEngineServiceImpl.getScheduler().getMetrics()) {
+			commandInterpreter.println(metrics);
+		}
+	}
+	
+	public void _siengine_replicas(CommandInterpreter commandInterpreter) {
+		for (String metrics : SIEngineServiceImpl.balancer.getMetrics()) {
+			commandInterpreter.println(metrics);
+		}
+	}
+	
+	
+	/**
+	 * Implementation artifact resolved for the invocation of an operation.
+	 */
+	private static class ResolvedIA {
+		
+		private String invocationType;
+		// endpoints of all replicas
+		private List<URI> endpoints;
+		private boolean hasOutputParams;
+		private Document specificContent;
+		private QName artifactTemplateID;
+		private QName nodeTypeID;
+		private QName relationshipTypeID;
+	}
 }
@@ -0,0 +1,211 @@
+package org.opentosca.siengine.service.impl.balancer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opentosca.siengine.plugins.service.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Balancer choosing the replica of an implementation artifact an invocation
+ * is sent to.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * Of the replicas whose circuit breaker lets invocations pass, the one with
+ * the least outstanding invocations is chosen. Ties are broken by a rotating
+ * start, thus idle replicas are used in turn. If the circuit breakers of all
+ * replicas are open, the invocation is sent to one of them anyway and the
+ * plug-in decides whether it is rejected.<br>
+ * <br>
+ * 
+ * Each replica chosen by {@link #acquire(List)} has to be released by
+ * {@link #release(URI)} as soon as the invocation is completed.<br>
+ * <br>
+ * 
+ * Replicas that weren't invoked for {@link #IDLE_TIMEOUT} ms and have no
+ * outstanding invocations are forgotten, thus the replicas of undeployed
+ * implementation artifacts don't accumulate.
+ * 
+ * 
+ * @see CircuitBreakerRegistry
+ * 
+ */
+public class ReplicaBalancer {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(ReplicaBalancer.class);
+	
+	public static final long IDLE_TIMEOUT = 10 * 60 * 1000;
+	
+	private final ConcurrentMap<URI, Replica> replicas = new ConcurrentHashMap<URI, Replica>();
+	private final AtomicInteger rotation = new AtomicInteger();
+	private final AtomicLong lastPruning = new AtomicLong(System.currentTimeMillis());
+	
+	
+	/**
+	 * Chooses the replica to invoke and counts the invocation as outstanding.
+	 * 
+	 * @param endpoints of the replicas, must not be empty.
+	 * @return the endpoint of the chosen replica.
+	 */
+	public URI acquire(List<URI> endpoints) {
+		
+		List<URI> candidates = new ArrayList<URI>();
+		
+		for (URI endpoint : endpoints) {
+			// keyed like the circuit breakers of the plug-ins
+			if (CircuitBreakerRegistry.getCircuitBreaker(endpoint.toString().replace("?wsdl", "")).isAvailable()) {
+				candidates.add(endpoint);
+			}
+		}
+		
+		if (candidates.isEmpty()) {
+			ReplicaBalancer.LOG.warn("No replica of {} is available. Choosing one of all replicas.", endpoints);
+			candidates = endpoints;
+		}
+		
+		this.pruneIdleReplicas();
+		
+		URI chosen = null;
+		Replica chosenReplica = null;
+		
+		// a replica that is pruned concurrently is chosen again
+		while ((chosenReplica == null) || !chosenReplica.acquire()) {
+			
+			int start = (this.rotation.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+			
+			chosenReplica = null;
+			
+			for (int i = 0; i < candidates.size(); i++) {
+				
+				URI endpoint = candidates.get((start + i) % candidates.size());
+				Replica replica = this.getReplica(endpoint);
+				
+				if ((chosenReplica == null) || (replica.outstanding.get() < chosenReplica.outstanding.get())) {
+					chosen = endpoint;
+					chosenReplica = replica;
+				}
+			}
+		}
+		
+		if (endpoints.size() > 1) {
+			ReplicaBalancer.LOG.debug("Replica {} of {} replicas chosen.", chosen, endpoints.size());
+		}
+		return chosen;
+	}
+	
+	/**
+	 * Counts an invocation of a replica as completed.
+	 * 
+	 * @param endpoint of the replica returned by {@link #acquire(List)}.
+	 */
+	public void release(URI endpoint) {
+		
+		Replica replica = this.replicas.get(endpoint);
+		
+		if (replica != null) {
+			replica.outstanding.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return the outstanding and total invocations of each replica invoked
+	 *         recently.
+	 */
+	public List<String> getMetrics() {
+		
+		List<String> metrics = new ArrayList<String>();
+		
+		for (Map.Entry<URI, Replica> entry : this.replicas.entrySet()) {
+			metrics.add(entry.getKey() + ": " + entry.getValue().outstanding.get() + " outstanding, " + entry.getValue().invocations.get() + " invocations");
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Forgets the idle replicas, at most once per {@link #IDLE_TIMEOUT}.
+	 */
+	private void pruneIdleReplicas() {
+		
+		long now = System.currentTimeMillis();
+		long last = this.lastPruning.get();
+		
+		if (((now - last) < ReplicaBalancer.IDLE_TIMEOUT) || !this.lastPruning.compareAndSet(last, now)) {
+			return;
+		}
+		
+		for (Map.Entry<URI, Replica> entry : this.replicas.entrySet()) {
+			if (entry.getValue().remove(now - ReplicaBalancer.IDLE_TIMEOUT)) {
+				this.replicas.remove(entry.getKey(), entry.getValue());
+				ReplicaBalancer.LOG.debug("Replica {} is idle and forgotten.", entry.getKey());
+			}
+		}
+	}
+	
+	private Replica getReplica(URI endpoint) {
+		
+		Replica replica = this.replicas.get(endpoint);
+		
+		if (replica == null) {
+			replica = new Replica();
+			Replica existing = this.replicas.putIfAbsent(endpoint, replica);
+			if (existing != null) {
+				replica = existing;
+			}
+		}
+		return replica;
+	}
+	
+	
+	/**
+	 * Invocation counts of a replica.
+	 */
+	private static class Replica {
+		
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicLong invocations = new AtomicLong();
+		private long lastAcquired = System.currentTimeMillis();
+		private boolean isRemoved = false;
+		
+		
+		/**
+		 * Counts an invocation as outstanding.
+		 * 
+		 * @return <tt>false</tt> if the replica was removed.
+		 */
+		synchronized boolean acquire() {
+			
+			if (this.isRemoved) {
+				return false;
+			}
+			
+			this.outstanding.incrementAndGet();
+			this.invocations.incrementAndGet();
+			this.lastAcquired = System.currentTimeMillis();
+			return true;
+		}
+		
+		/**
+		 * Removes the replica if it is idle.
+		 * 
+		 * @param idleSince time the replica has to be unused since.
+		 * @return <tt>true</tt> if the replica was removed.
+		 */
+		synchronized boolean remove(long idleSince) {
+			
+			if ((this.outstanding.get() == 0) && (this.lastAcquired < idleSince)) {
+				this.isRemoved = true;
+			}
+			return this.isRemoved;
+		}
+	}
+}
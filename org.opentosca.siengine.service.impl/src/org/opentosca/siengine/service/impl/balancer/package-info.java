@@ -0,0 +1,8 @@
+/**
+ * This package contains the balancer of the SI-Engine that distributes the
+ * invocations of implementation artifacts between their replicas.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.service.impl.balancer;
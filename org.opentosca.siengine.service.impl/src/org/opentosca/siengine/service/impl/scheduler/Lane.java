@@ -0,0 +1,123 @@
+package org.opentosca.siengine.service.impl.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.opentosca.siengine.plugins.service.circuitbreaker.LatencyHistogram;
+
+/**
+ * Priority lane of the {@link WeightedFairScheduler}.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * A lane gets a share of the workers of the scheduler proportional to its
+ * weight as long as it has queued invocations. Optionally the number of its
+ * invocations executed at the same time is limited, thus the remaining workers
+ * are available for the other lanes, and a number of workers is reserved for
+ * it, which the other lanes never use.<br>
+ * <br>
+ * 
+ * The state of the lane is guarded by the scheduler, the metrics are read
+ * without locking and thus may be slightly outdated.
+ * 
+ * 
+ */
+public class Lane {
+	
+	private final String name;
+	private final int weight;
+	private final int maxActive;
+	private final int reserved;
+	
+	// queued invocations and virtual finish time of the last one
+	final Deque<WeightedFairScheduler.Task> queue = new ArrayDeque<WeightedFairScheduler.Task>();
+	double lastFinish = 0;
+	
+	// metrics
+	volatile int active = 0;
+	volatile long submitted = 0;
+	volatile long completed = 0;
+	volatile long failed = 0;
+	private final LatencyHistogram waitTimes;
+	
+	
+	/**
+	 * @param name of the lane.
+	 * @param weight share of the workers relative to the other lanes.
+	 * @param maxActive maximum number of invocations executed at the same
+	 *            time.
+	 * @param reserved number of workers only used by this lane.
+	 * @param histogramSize number of wait times after which the histogram of
+	 *            the lane halves its counts.
+	 */
+	Lane(String name, int weight, int maxActive, int reserved, long histogramSize) {
+		this.name = name;
+		this.weight = Math.max(1, weight);
+		this.maxActive = Math.max(1, maxActive);
+		this.reserved = Math.min(this.maxActive, Math.max(0, reserved));
+		this.waitTimes = new LatencyHistogram(histogramSize);
+	}
+	
+	public String getName() {
+		return this.name;
+	}
+	
+	public int getWeight() {
+		return this.weight;
+	}
+	
+	public int getMaxActive() {
+		return this.maxActive;
+	}
+	
+	/**
+	 * @return the number of workers the other lanes don't use.
+	 */
+	public int getReserved() {
+		return this.reserved;
+	}
+	
+	/**
+	 * @return the number of waiting invocations.
+	 */
+	public int getQueued() {
+		return this.queue.size();
+	}
+	
+	/**
+	 * @return the number of invocations currently executed.
+	 */
+	public int getActive() {
+		return this.active;
+	}
+	
+	public long getSubmitted() {
+		return this.submitted;
+	}
+	
+	public long getCompleted() {
+		return this.completed;
+	}
+	
+	/**
+	 * @return the number of executed invocations that threw an exception.
+	 */
+	public long getFailed() {
+		return this.failed;
+	}
+	
+	/**
+	 * @return histogram of the time in milliseconds the invocations waited in
+	 *         the lane.
+	 */
+	public LatencyHistogram getWaitTimes() {
+		return this.waitTimes;
+	}
+	
+	@Override
+	public String toString() {
+		return this.name + "[weight=" + this.weight + ", maxActive=" + this.maxActive + ", reserved=" + this.reserved + ", queued=" + this.getQueued() + ", active=" + this.active + ", submitted=" + this.submitted + ", completed=" + this.completed + ", failed=" + this.failed + ", wait=" + this.waitTimes + "]";
+	}
+}
@@ -0,0 +1,402 @@
+package org.opentosca.siengine.service.impl.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler executing the invocations of the SI-Engine by priority lanes.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The invocations are queued per {@link Lane} and executed by a fixed number
+ * of workers. The next invocation is chosen by start-time fair queuing: each
+ * invocation gets a virtual start time and the one with the smallest start
+ * time of all lanes is executed first. As the virtual time of a lane advances
+ * by the inverse of its weight per invocation, a lane with weight 8 is served
+ * eight times as often as a lane with weight 1 while both have queued
+ * invocations, but an idle lane doesn't accumulate credit.<br>
+ * <br>
+ * 
+ * The workers reserved for a lane are never used by the other lanes, thus
+ * e.g. termination requests find a worker even if all other workers are busy
+ * with long-running installations.<br>
+ * <br>
+ * 
+ * The lane of an invocation is determined by the requested lane (e.g. given by
+ * the caller in a header) or by a mapping of the interface and operation name.
+ * 
+ * 
+ */
+public class WeightedFairScheduler {
+	
+	final private static Logger LOG = LoggerFactory.getLogger(WeightedFairScheduler.class);
+	
+	private final Map<String, Lane> lanes = new LinkedHashMap<String, Lane>();
+	private final Map<String, Lane> mapping = new HashMap<String, Lane>();
+	private final Lane defaultLane;
+	private final int workers;
+	
+	// marks the workers to execute nested invocations directly
+	private final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>();
+	
+	private double virtualTime = 0;
+	private long sequence = 0;
+	private boolean shutdown = false;
+	
+	
+	/**
+	 * Creates the scheduler and starts its workers.
+	 * 
+	 * @param workers number of threads executing the invocations.
+	 * @param lanes definition of the lanes as comma separated list of
+	 *            <tt>name:weight[:maxActive[:reserved]]</tt>.
+	 * @param defaultLane name of the lane of all invocations that are not
+	 *            mapped to another lane.
+	 * @param mapping comma separated list of
+	 *            <tt>[interfaceName#]operationName=lane</tt>.
+	 * @param histogramSize number of wait times after which the histograms of
+	 *            the lanes halve their counts.
+	 */
+	public WeightedFairScheduler(int workers, String lanes, String defaultLane, String mapping, long histogramSize) {
+		
+		workers = Math.max(1, workers);
+		this.workers = workers;
+		
+		for (String definition : lanes.split(",")) {
+			
+			String[] parts = definition.trim().split(":");
+			
+			if (parts[0].isEmpty()) {
+				continue;
+			}
+			
+			try {
+				int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+				int maxActive = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : workers;
+				int reserved = parts.length > 3 ? Integer.parseInt(parts[3].trim()) : 0;
+				this.lanes.put(parts[0], new Lane(parts[0], weight, maxActive, reserved, histogramSize));
+			} catch (NumberFormatException e) {
+				WeightedFairScheduler.LOG.warn("Invalid definition of lane \"{}\" is ignored.", definition);
+			}
+		}
+		
+		if (!this.lanes.containsKey(defaultLane)) {
+			this.lanes.put(defaultLane, new Lane(defaultLane, 1, workers, 0, histogramSize));
+		}
+		this.defaultLane = this.lanes.get(defaultLane);
+		
+		int reserved = 0;
+		for (Lane lane : this.lanes.values()) {
+			reserved += lane.getReserved();
+		}
+		if (reserved >= workers) {
+			WeightedFairScheduler.LOG.warn("{} of {} workers are reserved, lanes without reservation may not be served.", reserved, workers);
+		}
+		
+		for (String entry : mapping.split(",")) {
+			
+			int separator = entry.lastIndexOf('=');
+			
+			if (separator <= 0) {
+				continue;
+			}
+			
+			Lane lane = this.lanes.get(entry.substring(separator + 1).trim());
+			
+			if (lane == null) {
+				WeightedFairScheduler.LOG.warn("Mapping \"{}\" refers to an unknown lane and is ignored.", entry);
+			} else {
+				this.mapping.put(entry.substring(0, separator).trim(), lane);
+			}
+		}
+		
+		for (int i = 1; i <= workers; i++) {
+			Thread worker = new Thread(new Worker(), "SIEngine-Worker-" + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		
+		WeightedFairScheduler.LOG.debug("Started {} workers for lanes {}.", workers, this.lanes.keySet());
+	}
+	
+	/**
+	 * Determines the lane of an invocation. A requested lane takes precedence
+	 * over the mapping of interface and operation, which takes precedence over
+	 * the mapping of the operation only.
+	 * 
+	 * @param interfaceName of the invoked operation. May be <tt>null</tt>.
+	 * @param operationName of the invoked operation. May be <tt>null</tt>.
+	 * @param requestedLane name of the lane requested by the caller. May be
+	 *            <tt>null</tt>.
+	 * @return the lane of the invocation.
+	 */
+	public Lane getLane(String interfaceName, String operationName, String requestedLane) {
+		
+		if ((requestedLane != null) && this.lanes.containsKey(requestedLane)) {
+			return this.lanes.get(requestedLane);
+		}
+		
+		Lane lane = this.mapping.get(interfaceName + "#" + operationName);
+		
+		if (lane == null) {
+			lane = this.mapping.get(operationName);
+		}
+		return lane != null ? lane : this.defaultLane;
+	}
+	
+	/**
+	 * Queues an invocation without waiting for it.
+	 * 
+	 * @param lane of the invocation.
+	 * @param invocation to execute.
+	 */
+	public void execute(Lane lane, Runnable invocation) {
+		this.enqueue(lane, invocation);
+	}
+	
+	/**
+	 * Queues an invocation and waits until it is executed. Invocations made by
+	 * a worker itself are executed immediately, as waiting for another worker
+	 * could exhaust all workers.
+	 * 
+	 * @param lane of the invocation.
+	 * @param invocation to execute.
+	 */
+	public void executeAndWait(Lane lane, final Runnable invocation) {
+		
+		if (this.isWorker.get() != null) {
+			invocation.run();
+			return;
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		final RuntimeException[] failure = new RuntimeException[1];
+		
+		this.enqueue(lane, new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					invocation.run();
+				} catch (RuntimeException e) {
+					failure[0] = e;
+					throw e;
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		
+		boolean interrupted = false;
+		
+		while (latch.getCount() > 0) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+	
+	/**
+	 * Stops the scheduler. Already queued invocations are still executed, then
+	 * the workers terminate. New invocations are rejected.
+	 */
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		this.notifyAll();
+		WeightedFairScheduler.LOG.debug("Scheduler is shut down.");
+	}
+	
+	/**
+	 * @return the lanes of the scheduler.
+	 */
+	public Collection<Lane> getLanes() {
+		return this.lanes.values();
+	}
+	
+	/**
+	 * @return the metrics of all lanes, one line per lane.
+	 */
+	public List<String> getMetrics() {
+		
+		List<String> metrics = new ArrayList<String>();
+		
+		synchronized (this) {
+			for (Lane lane : this.lanes.values()) {
+				metrics.add(lane.toString());
+			}
+		}
+		return metrics;
+	}
+	
+	private synchronized void enqueue(Lane lane, Runnable invocation) {
+		
+		if (this.shutdown) {
+			throw new RejectedExecutionException("The scheduler is shut down.");
+		}
+		
+		double start = Math.max(this.virtualTime, lane.lastFinish);
+		lane.lastFinish = start + (1.0 / lane.getWeight());
+		
+		lane.queue.addLast(new Task(invocation, start, this.sequence++));
+		lane.submitted++;
+		
+		this.notify();
+	}
+	
+	/**
+	 * Waits for the invocation with the smallest virtual start time of all
+	 * lanes that didn't reach their maximum number of active invocations and
+	 * wouldn't use a worker reserved for another lane.
+	 * 
+	 * @return the invocation or <tt>null</tt> if the scheduler is shut down
+	 *         and no invocations are queued anymore.
+	 */
+	private synchronized Task take(Lane[] laneOfTask) throws InterruptedException {
+		
+		while (true) {
+			
+			Lane next = null;
+			boolean queued = false;
+			
+			// idle workers and workers reserved for lanes but not used by them
+			int idle = this.workers;
+			int unusedReserved = 0;
+			
+			for (Lane lane : this.lanes.values()) {
+				idle -= lane.active;
+				unusedReserved += Math.max(0, lane.getReserved() - lane.active);
+			}
+			
+			for (Lane lane : this.lanes.values()) {
+				
+				Task head = lane.queue.peekFirst();
+				queued |= head != null;
+				
+				if ((head == null) || (lane.active >= lane.getMaxActive())) {
+					continue;
+				}
+				
+				int reservedForOthers = unusedReserved - Math.max(0, lane.getReserved() - lane.active);
+				
+				if (idle <= reservedForOthers) {
+					continue;
+				}
+				
+				Task best = next == null ? null : next.queue.peekFirst();
+				
+				if ((best == null) || (head.start < best.start) || ((head.start == best.start) && (head.sequence < best.sequence))) {
+					next = lane;
+				}
+			}
+			
+			if (next != null) {
+				Task task = next.queue.pollFirst();
+				next.active++;
+				this.virtualTime = task.start;
+				next.getWaitTimes().record(System.currentTimeMillis() - task.queued);
+				laneOfTask[0] = next;
+				return task;
+			}
+			
+			if (this.shutdown && !queued) {
+				return null;
+			}
+			
+			this.wait();
+		}
+	}
+	
+	private synchronized void done(Lane lane, boolean failed) {
+		
+		lane.active--;
+		lane.completed++;
+		
+		if (failed) {
+			lane.failed++;
+		}
+		
+		WeightedFairScheduler.LOG.debug("Invocation of lane {} completed.", lane);
+		
+		// a slot of a limited lane is free again
+		this.notifyAll();
+	}
+	
+	
+	/**
+	 * Queued invocation.
+	 */
+	static class Task {
+		
+		private final Runnable invocation;
+		private final double start;
+		private final long sequence;
+		private final long queued = System.currentTimeMillis();
+		
+		
+		Task(Runnable invocation, double start, long sequence) {
+			this.invocation = invocation;
+			this.start = start;
+			this.sequence = sequence;
+		}
+	}
+	
+	/**
+	 * Worker executing the queued invocations.
+	 */
+	private class Worker implements Runnable {
+		
+		@Override
+		public void run() {
+			
+			WeightedFairScheduler.this.isWorker.set(Boolean.TRUE);
+			Lane[] laneOfTask = new Lane[1];
+			
+			while (true) {
+				
+				Task task;
+				
+				try {
+					task = WeightedFairScheduler.this.take(laneOfTask);
+				} catch (InterruptedException e) {
+					return;
+				}
+				
+				if (task == null) {
+					return;
+				}
+				
+				boolean failed = true;
+				
+				try {
+					task.invocation.run();
+					failed = false;
+				} catch (Throwable e) {
+					// also errors, otherwise the worker would be lost for good
+					WeightedFairScheduler.LOG.error("Invocation of lane {} failed.", laneOfTask[0].getName(), e);
+				} finally {
+					WeightedFairScheduler.this.done(laneOfTask[0], failed);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the scheduler of the SI-Engine that executes the
+ * invocations of implementation artifacts by priority lanes.<br />
+ * <br />
+ * Copyright 2013 IAAS University of Stuttgart <br />
+ * <br />
+ */
+package org.opentosca.siengine.service.impl.scheduler;
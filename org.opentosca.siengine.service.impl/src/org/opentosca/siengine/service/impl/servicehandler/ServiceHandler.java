@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.opentosca.core.endpoint.service.ICoreEndpointService;
+import org.opentosca.iaengine.service.IIAEngineService;
 import org.opentosca.instancedata.service.IInstanceDataService;
 import org.opentosca.siengine.plugins.service.ISIEnginePluginService;
 import org.opentosca.toscaengine.service.IToscaEngineService;
@@ -25,6 +26,7 @@ import org.slf4j.LoggerFactory;
  * @see ISIEnginePluginService
  * @see IToscaEngineService
  * @see ICoreEndpointService
+ * @see IIAEngineService
  * 
  * @author Michael Zimmermann - zimmerml@studi.informatik.uni-stuttgart.de
  * 
@@ -38,6 +40,7 @@ public class ServiceHandler {
 	public static ICoreEndpointService endpointService, oldEndpointService;
 	public static IToscaEngineService toscaEngineService,
 			oldToscaEngineService;
+	public static IIAEngineService iaEngineService, oldIAEngineService;
 	
 	private final static Logger LOG = LoggerFactory.getLogger(ServiceHandler.class);
 	
@@ -148,6 +151,41 @@ public class ServiceHandler {
 		ServiceHandler.LOG.debug("Unbind InstanceDataServiceInterface unbound.");
 	}
 	
+	/**
+	 * Bind IAEngineService
+	 * 
+	 * @param iaEngineService
+	 */
+	public void bindIAEngineService(IIAEngineService iaEngineService) {
+		if (iaEngineService != null) {
+			if (ServiceHandler.iaEngineService == null) {
+				ServiceHandler.iaEngineService = iaEngineService;
+			} else {
+				ServiceHandler.oldIAEngineService = iaEngineService;
+				ServiceHandler.iaEngineService = iaEngineService;
+			}
+			
+			ServiceHandler.LOG.debug("Bind IAEngineService: {} bound.", iaEngineService.toString());
+		} else {
+			ServiceHandler.LOG.error("Bind IAEngineService: Supplied parameter is null!");
+		}
+	}
+	
+	/**
+	 * Unbind IAEngineService
+	 * 
+	 * @param iaEngineService
+	 */
+	public void unbindIAEngineService(IIAEngineService iaEngineService) {
+		if (ServiceHandler.oldIAEngineService == null) {
+			ServiceHandler.iaEngineService = null;
+		} else {
+			ServiceHandler.oldIAEngineService = null;
+		}
+		
+		ServiceHandler.LOG.debug("Unbind IAEngineService unbound.");
+	}
+	
 	/**
 	 * Bind SIPluginServices and store them in local HashMap.
 	 * 
@@ -36,6 +36,14 @@ import org.w3c.dom.Node;
  */
 public interface IToscaEngineService {
 	
+	/**
+	 * Topic of the OSGi event which is posted each time the stored content of
+	 * a CSAR is deleted. The property "CSARID" of the event contains the
+	 * CSARID of the affected CSAR. Components caching data derived from the
+	 * ToscaEngine can subscribe to this topic for invalidating their caches.
+	 */
+	public static final String CSAR_CONTENT_CLEARED_TOPIC = "org_opentosca_toscaengine/cleared";
+	
 	/**
 	 * This method returns the ToscaReferenceMapper.
 	 * 
@@ -3,6 +3,7 @@ package org.opentosca.toscaengine.service.impl.servicehandler;
 import org.opentosca.core.file.service.ICoreFileService;
 import org.opentosca.toscaengine.xmlserializer.service.IXMLSerializerService;
 import org.opentosca.util.fileaccess.service.IFileAccessService;
+import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,6 +12,7 @@ public class ServiceHandler {
 	public static ICoreFileService coreFileService = null;
 	public static IXMLSerializerService xmlSerializerService = null;
 	public static IFileAccessService fileAccessService = null;
+	public static EventAdmin eventAdmin = null;
 	
 	private Logger LOG = LoggerFactory.getLogger(ServiceHandler.class);
 	
@@ -56,4 +58,18 @@ public class ServiceHandler {
 		this.LOG.debug("Unbind of the IFileAccessService.");
 		ServiceHandler.fileAccessService = null;
 	}
+	
+	protected void bindEventAdmin(EventAdmin service) {
+		if (service == null) {
+			this.LOG.error("Service EventAdmin is null.");
+		} else {
+			this.LOG.debug("Bind of the EventAdmin.");
+			ServiceHandler.eventAdmin = service;
+		}
+	}
+	
+	protected void unbindEventAdmin(EventAdmin service) {
+		this.LOG.debug("Unbind of the EventAdmin.");
+		ServiceHandler.eventAdmin = null;
+	}
 }
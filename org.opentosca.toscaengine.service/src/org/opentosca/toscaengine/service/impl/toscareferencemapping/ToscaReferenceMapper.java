@@ -28,9 +28,11 @@ import org.opentosca.model.tosca.referencemapping.CsarIDToWSDLDocuments;
 import org.opentosca.model.tosca.referencemapping.DocumentMap;
 import org.opentosca.model.tosca.referencemapping.MapQNameNode;
 import org.opentosca.model.tosca.referencemapping.ReferenceMap;
+import org.opentosca.toscaengine.service.IToscaEngineService;
 import org.opentosca.toscaengine.service.IToscaReferenceMapper;
 import org.opentosca.toscaengine.service.impl.servicehandler.ServiceHandler;
 import org.opentosca.toscaengine.xmlserializer.service.IXMLSerializerService;
+import org.osgi.service.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -98,6 +100,8 @@ public class ToscaReferenceMapper implements IToscaReferenceMapper {
 		this.mapDefinitionsIDToLocationString.remove(csarID);
 		this.mapElementIDToDefinitionsID.remove(csarID);
 		
+		this.postClearedEvent(csarID);
+		
 		if (this.containsCSARData(csarID)) {
 			return false;
 		}
@@ -105,6 +109,25 @@ public class ToscaReferenceMapper implements IToscaReferenceMapper {
 		
 	}
 	
+	/**
+	 * Notifies the components which cache data derived from the content of a
+	 * CSAR that this content was deleted.
+	 * 
+	 * @param csarID of the deleted CSAR
+	 */
+	private void postClearedEvent(CSARID csarID) {
+		
+		if (ServiceHandler.eventAdmin == null) {
+			this.LOG.debug("No EventAdmin bound, thus the deletion of \"" + csarID + "\" is not published.");
+			return;
+		}
+		
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("CSARID", csarID);
+		ServiceHandler.eventAdmin.sendEvent(new Event(IToscaEngineService.CSAR_CONTENT_CLEARED_TOPIC, properties));
+		
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,152 @@
+package org.opentosca.util.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent computations of the same key.<br>
+ * <br>
+ * 
+ * Copyright 2013 IAAS University of Stuttgart <br>
+ * <br>
+ * 
+ * The first caller of a key executes the computation, all callers asking for
+ * the same key while it is in progress wait for it and get the same result.
+ * Nothing is cached: as soon as the computation is completed, the next caller
+ * starts a new one. Thus the result is always as fresh as without coalescing.<br>
+ * <br>
+ * 
+ * As the callers of a key share the result, it must not be modified by them.
+ * Mutable results like DOM Documents have to be copied by each caller.<br>
+ * <br>
+ * 
+ * Each instance counts its calls and executed computations, thus the
+ * difference is the number of avoided duplicated computations.
+ * 
+ * 
+ * @param <K> type of the keys. Must implement <tt>equals</tt> and
+ *            <tt>hashCode</tt>.
+ * @param <V> type of the results.
+ */
+public class SingleFlight<K, V> {
+	
+	private final String name;
+	
+	private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+	
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong executions = new AtomicLong();
+	
+	
+	/**
+	 * @param name of the coalescing point, used by {@link #toString()}.
+	 */
+	public SingleFlight(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Returns the result of the computation of the key. If another caller is
+	 * already computing it, its result is returned instead of computing it
+	 * again.
+	 * 
+	 * @param key of the computation.
+	 * @param computation to execute if no computation of the key is in
+	 *            progress.
+	 * @return the result of the computation.
+	 * @throws RuntimeException thrown by the computation. Checked exceptions
+	 *             are wrapped.
+	 */
+	public V execute(K key, Callable<V> computation) {
+		
+		this.calls.incrementAndGet();
+		
+		FutureTask<V> task = new FutureTask<V>(computation);
+		FutureTask<V> running = this.inFlight.putIfAbsent(key, task);
+		
+		if (running == null) {
+			
+			this.executions.incrementAndGet();
+			
+			try {
+				task.run();
+			} finally {
+				this.inFlight.remove(key, task);
+			}
+			running = task;
+		}
+		
+		return SingleFlight.getResult(running);
+	}
+	
+	/**
+	 * Waits for the result. The wait is not interruptible as the computation
+	 * runs in the thread of another caller and thus will be completed anyway.
+	 */
+	private static <V> V getResult(FutureTask<V> task) {
+		
+		boolean interrupted = false;
+		
+		try {
+			while (true) {
+				try {
+					return task.get();
+					
+				} catch (InterruptedException e) {
+					interrupted = true;
+					
+				} catch (ExecutionException e) {
+					
+					Throwable cause = e.getCause();
+					
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of calls of {@link #execute(Object, Callable)}.
+	 */
+	public long getCalls() {
+		return this.calls.get();
+	}
+	
+	/**
+	 * @return the number of actually executed computations.
+	 */
+	public long getExecutions() {
+		return this.executions.get();
+	}
+	
+	/**
+	 * @return the number of calls that shared the result of an already
+	 *         running computation.
+	 */
+	public long getCoalesced() {
+		// calls are counted before executions, thus read executions first
+		long executions = this.getExecutions();
+		return this.getCalls() - executions;
+	}
+	
+	@Override
+	public String toString() {
+		long executions = this.getExecutions();
+		long calls = this.getCalls();
+		return this.name + "[calls=" + calls + ", executions=" + executions + ", coalesced=" + (calls - executions) + "]";
+	}
+}
@@ -0,0 +1,6 @@
+/**
+ * This package provides utilities for components that are called by many
+ * threads at once.
+ * 
+ */
+package org.opentosca.util.concurrent;
@@ -28,29 +28,27 @@ import org.opentosca.util.http.service.IHTTPService;
  * {@link org.opentosca.util.http.service.IHTTPService} interface. A lot of
  * methods currently offer only very basic functionality which could be extended
  * in the future if the need arises. <br>
- * All methods make use of the Apache HttpComponents.
+ * All methods make use of the Apache HttpComponents. Each request uses its own
+ * client, thus the service can be used by several threads at the same time.
  * 
  * @author Nedim Karaoguz - nedim.karaoguz@developers.opentosca.org
  * 
  */
 public class HttpServiceImpl implements IHTTPService {
 	
-	DefaultHttpClient client;
-	
-	
 	@Override
 	public HttpResponse Get(String uri, List<Cookie> cookies) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpGet get = new HttpGet(uri);
 		
 		if (cookies != null) {
 			for (Cookie c : cookies) {
-				((AbstractHttpClient) this.client).getCookieStore().addCookie(c);
+				((AbstractHttpClient) client).getCookieStore().addCookie(c);
 				
 			}
 		}
 		
-		HttpResponse response = this.client.execute(get);
+		HttpResponse response = client.execute(get);
 		
 		return response;
 		// TODO Return something useful maybe... like an InputStream
@@ -58,9 +56,9 @@ public class HttpServiceImpl implements IHTTPService {
 	
 	@Override
 	public HttpResponse Get(String uri) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpGet get = new HttpGet(uri);
-		HttpResponse response = this.client.execute(get);
+		HttpResponse response = client.execute(get);
 		
 		return response;
 		// TODO Return something useful maybe... like an InputStream
@@ -68,10 +66,10 @@ public class HttpServiceImpl implements IHTTPService {
 	
 	@Override
 	public HttpResponse Get(String uri, String username, String password) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
-		this.client.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+		DefaultHttpClient client = new DefaultHttpClient();
+		client.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
 		HttpGet get = new HttpGet(uri);
-		HttpResponse response = this.client.execute(get);
+		HttpResponse response = client.execute(get);
 		
 		return response;
 		// TODO Return something useful maybe... like an InputStream
@@ -79,87 +77,87 @@ public class HttpServiceImpl implements IHTTPService {
 	
 	@Override
 	public HttpResponse Head(String uri) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpHead head = new HttpHead(uri);
-		HttpResponse response = this.client.execute(head);
+		HttpResponse response = client.execute(head);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Post(String uri, HttpEntity httpEntity) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpPost post = new HttpPost(uri);
 		post.setEntity(httpEntity);
-		HttpResponse response = this.client.execute(post);
+		HttpResponse response = client.execute(post);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Post(String uri, HttpEntity httpEntity, List<Cookie> cookies) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpPost post = new HttpPost(uri);
 		post.setEntity(httpEntity);
 		if (cookies != null) {
 			for (Cookie c : cookies) {
-				((AbstractHttpClient) this.client).getCookieStore().addCookie(c);
+				((AbstractHttpClient) client).getCookieStore().addCookie(c);
 				
 			}
 		}
-		HttpResponse response = this.client.execute(post);
+		HttpResponse response = client.execute(post);
 		return response;
 	}
 	
 	@Override
 	public List<Cookie> PostCookies(String uri, HttpEntity httpEntity) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpPost post = new HttpPost(uri);
 		post.setEntity(httpEntity);
-		this.client.execute(post);
-		List<Cookie> cookies = ((AbstractHttpClient) this.client).getCookieStore().getCookies();
-		// this.client.getConnectionManager().shutdown();
+		client.execute(post);
+		List<Cookie> cookies = ((AbstractHttpClient) client).getCookieStore().getCookies();
+		// client.getConnectionManager().shutdown();
 		return cookies;
 	}
 	
 	@Override
 	public HttpResponse Put(String uri, HttpEntity httpEntity) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpPut put = new HttpPut(uri);
 		put.setEntity(httpEntity);
-		HttpResponse response = this.client.execute(put);
+		HttpResponse response = client.execute(put);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Put(String uri, HttpEntity httpEntity, String username, String password) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
-		this.client.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+		DefaultHttpClient client = new DefaultHttpClient();
+		client.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
 		HttpPut put = new HttpPut(uri);
 		put.setEntity(httpEntity);
-		HttpResponse response = this.client.execute(put);
+		HttpResponse response = client.execute(put);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Delete(String uri) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpDelete del = new HttpDelete(uri);
-		HttpResponse response = this.client.execute(del);
+		HttpResponse response = client.execute(del);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Trace(String uri) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpTrace trace = new HttpTrace(uri);
-		HttpResponse response = this.client.execute(trace);
+		HttpResponse response = client.execute(trace);
 		return response;
 	}
 	
 	@Override
 	public HttpResponse Options(String uri) throws ClientProtocolException, IOException {
-		this.client = new DefaultHttpClient();
+		DefaultHttpClient client = new DefaultHttpClient();
 		HttpOptions options = new HttpOptions(uri);
-		HttpResponse response = this.client.execute(options);
+		HttpResponse response = client.execute(options);
 		return response;
 	}
 }